@@ -0,0 +1,74 @@
+// Long-lived PhantomJS renderer worker used by b7.tools.tracking.RendererProcessPool
+// Reads one request per line from stdin and writes one response per request to stdout
+//
+// Requests:
+//   PING                                  -> health check
+//   RENDER <milliseconds_to_wait> <URL>   -> load the URL, wait for its JavaScript, and return the page HTML
+//
+// Every response is a header line "<STATUS> <byte_length>" followed by exactly byte_length bytes of UTF-8 content
+//   PONG 0                 -> reply to PING
+//   OK <byte_length>       -> content is the page HTML
+//   ERROR <byte_length>    -> content is an error message
+//
+// Usage: <phantomjs_executable> rendererworker.js
+var webpage = require('webpage');
+var system = require('system');
+
+// Number of bytes a String takes up when written out as UTF-8
+function utf8Length(text) {
+    return unescape(encodeURIComponent(text)).length;
+}
+
+function respond(status, content) {
+    system.stdout.write(status + ' ' + utf8Length(content) + '\n' + content);
+    system.stdout.flush();
+}
+
+function render(url, waitTime, done) {
+    var page = webpage.create();
+    page.open(url, function (status) {
+        if (status !== 'success') {
+            page.close();
+            respond('ERROR', 'Unable to access URL ' + url);
+            done();
+        } else {
+            window.setTimeout(function() {
+                var content = page.content;
+                page.close();
+                respond('OK', content);
+                done();
+            }, waitTime);
+        }
+    });
+}
+
+// Handle requests one at a time (reading stdin blocks, so only read the next request once the last one is answered)
+function nextRequest() {
+    var line = system.stdin.readLine();
+    if (line === null || line === undefined || (line === '' && system.stdin.atEnd())) {
+        phantom.exit();
+        return;
+    }
+    line = line.replace(/\r$/, '');
+
+    if (line === 'PING') {
+        respond('PONG', '');
+        window.setTimeout(nextRequest, 0);
+    } else if (line.indexOf('RENDER ') === 0) {
+        var parts = line.split(' ');
+        var waitTime = parseInt(parts[1]);
+        var url = parts.slice(2).join(' ');
+        // Set wait time to 0 if it is a negative number / invalid number
+        if (isNaN(waitTime) || waitTime < 0) {
+            waitTime = 0;
+        }
+        render(url, waitTime, function() {
+            window.setTimeout(nextRequest, 0);
+        });
+    } else {
+        respond('ERROR', 'Unknown request: ' + line);
+        window.setTimeout(nextRequest, 0);
+    }
+}
+
+nextRequest();
@@ -1,4 +1,7 @@
 import b7.tools.tracking.AnimeCrawlerController;
+import b7.tools.tracking.HedgedFetcher;
+import b7.tools.tracking.HttpTransport;
+import b7.tools.tracking.SentaiFilmworksCrawler;
 
 import java.util.Scanner;
 
@@ -20,6 +23,21 @@ public class AnimePriceTracker {
     public static final int UPDATE_RIGHT_STUF_CRAWL_DATA_SINGLE_THREADED = 8;
     public static final int MAKE_CSVS = 9;
     public static final int OPEN_GUI = 10;
+    public static final int RESUME_RIGHT_STUF_CRAWL_DATA = 11;
+    public static final int UPDATE_SENTAI_FILMWORKS_CRAWL_DATA_INCREMENTAL = 12;
+    public static final int REBUILD_CRAWL_DATA_FROM_ARCHIVES = 13;
+
+    // Argument which turns on hedging of slow Sentai Filmworks product requests
+    public static final String HEDGE_REQUESTS_ARGUMENT = "hedge";
+
+    // Argument which turns on archiving every page fetched by price updates
+    public static final String ARCHIVE_PAGES_ARGUMENT = "archive";
+
+    // Argument which turns off the disk cache of plain HTTP responses
+    public static final String NO_HTTP_CACHE_ARGUMENT = "nocache";
+
+    // Start of the argument which sets how many megabytes the disk cache of plain HTTP responses can use (0 turns it off)
+    public static final String HTTP_CACHE_SIZE_ARGUMENT_PREFIX = "cachemb=";
 
     // Controller instance variable
     private static AnimeCrawlerController animeCrawlerController = new AnimeCrawlerController(
@@ -28,6 +46,41 @@ public class AnimePriceTracker {
     );
 
     public static void main(String[] args) {
+        // Let the JDK keep enough idle connections open per store for the crawlers to reuse (must be set before any request)
+        HttpTransport.configureMaxKeepAliveConnections(HttpTransport.DEFAULT_MAX_KEEP_ALIVE_CONNECTIONS);
+
+        // Check if user specified argument "hedge" to give slow Sentai Filmworks product requests a second attempt
+        for(String arg : args) {
+            if(HEDGE_REQUESTS_ARGUMENT.compareTo(arg.toLowerCase()) == 0) {
+                SentaiFilmworksCrawler.setProductJsonHedgedFetcher(new HedgedFetcher("sentai-filmworks",
+                        HedgedFetcher.DEFAULT_HEDGE_PERCENTILE, HedgedFetcher.DEFAULT_HEDGE_BUDGET_FRACTION));
+            }
+        }
+
+        // Check if user specified argument "archive" to keep every page fetched by price updates in the page archives
+        for(String arg : args) {
+            if(ARCHIVE_PAGES_ARGUMENT.compareTo(arg.toLowerCase()) == 0) {
+                animeCrawlerController.setArchivePages(true);
+            }
+        }
+
+        // Check if user specified argument "nocache" or "cachemb=<megabytes>" to turn off or size the HTTP response cache
+        for(String arg : args) {
+            String lowerCaseArg = arg.toLowerCase();
+            if(NO_HTTP_CACHE_ARGUMENT.compareTo(lowerCaseArg) == 0) {
+                HttpTransport.setDefaultResponseCacheMaxBytes(0);
+            }
+            else if(lowerCaseArg.startsWith(HTTP_CACHE_SIZE_ARGUMENT_PREFIX)) {
+                try {
+                    long cacheMegabytes = Long.parseLong(lowerCaseArg.substring(HTTP_CACHE_SIZE_ARGUMENT_PREFIX.length()));
+                    HttpTransport.setDefaultResponseCacheMaxBytes(cacheMegabytes * 1024 * 1024);
+                }
+                catch(NumberFormatException ex) {
+                    System.err.println("[ERROR] Invalid HTTP cache size in argument \"" + arg + "\"; keeping the default size");
+                }
+            }
+        }
+
         // Check if user specified argument "gui" to indicate to directly open the GUI
         if(args.length >= 1 && "gui".compareTo(args[0].toLowerCase()) == 0) {
             animeCrawlerController.openGUI();
@@ -95,6 +148,15 @@ public class AnimePriceTracker {
                 case OPEN_GUI:
                     openAnimePriceTrackerGUI(true);
                     break;
+                case RESUME_RIGHT_STUF_CRAWL_DATA:
+                    animeCrawlerController.resumeRightStufCrawlerPriceUpdate();
+                    break;
+                case UPDATE_SENTAI_FILMWORKS_CRAWL_DATA_INCREMENTAL:
+                    animeCrawlerController.runSentaiFilmworksCrawlerIncrementalPriceUpdate();
+                    break;
+                case REBUILD_CRAWL_DATA_FROM_ARCHIVES:
+                    animeCrawlerController.rebuildCrawlDataFromArchives();
+                    break;
                 case EXIT_OPTION:
                     break;
                 default: {
@@ -118,12 +180,15 @@ public class AnimePriceTracker {
         System.out.println(getCommandString(PARSE_BASE_RIGHT_STUF_PAGE , "Parse base Right Stuf page"));
         System.out.println(getCommandString(VISIT_ALL_SENTAI_FILMWORKS_PAGES, "Visit all Sentai Filmworks pages"));
         System.out.println(getCommandString(VISIT_ALL_RIGHT_STUF_PAGES, "Visit all Right Stuf pages"));
-        System.out.println(getCommandString(UPDATE_ALL_CRAWL_DATA, "Update crawl data for Sentai Filmworks and Right Stuf (both multithreaded)"));
+        System.out.println(getCommandString(UPDATE_ALL_CRAWL_DATA, "Update crawl data for Sentai Filmworks and Right Stuf (both multithreaded, at the same time)"));
         System.out.println(getCommandString(UPDATE_SENTAI_FILMWORKS_CRAWL_DATA, "Update crawl data for Sentai Filmworks"));
         System.out.println(getCommandString(UPDATE_RIGHT_STUF_CRAWL_DATA_MULTITHREADED, "Update crawl data for Right Stuf (multithreaded)"));
         System.out.println(getCommandString(UPDATE_RIGHT_STUF_CRAWL_DATA_SINGLE_THREADED, "Update crawl data for Right Stuf (single threaded)"));
         System.out.println(getCommandString(MAKE_CSVS, "Generate CSVs from crawl data"));
         System.out.println(getCommandString(OPEN_GUI, "Open price tracker GUI"));
+        System.out.println(getCommandString(RESUME_RIGHT_STUF_CRAWL_DATA, "Resume today's unfinished Right Stuf update (multithreaded)"));
+        System.out.println(getCommandString(UPDATE_SENTAI_FILMWORKS_CRAWL_DATA_INCREMENTAL, "Update crawl data for Sentai Filmworks (only products changed since the last incremental update)"));
+        System.out.println(getCommandString(REBUILD_CRAWL_DATA_FROM_ARCHIVES, "Rebuild crawl data from page archives (offline, saved to " + AnimeCrawlerController.REBUILT_CRAWL_DATA_PATH + ")"));
         System.out.print("--> ");
     }
 
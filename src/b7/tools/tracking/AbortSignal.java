@@ -0,0 +1,73 @@
+package b7.tools.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets one thread abort blocking work another thread is doing. Blocking reads from a connection do not
+ * stop when their thread is interrupted, so the work registers how to abort itself (like disconnecting
+ * the connection it is reading from), and abort() runs that from whichever thread gives up on the work
+ */
+public class AbortSignal {
+
+    private List<Runnable> abortActions;  // What to run to abort the work (run once, by abort())
+    private boolean aborted;  // Whether abort() has been called
+
+    /**
+     * Constructs a new AbortSignal that has not been aborted
+     */
+    public AbortSignal() {
+        abortActions = new ArrayList<Runnable>();
+    }
+
+    /**
+     * Registers how to abort the work. If the signal was already aborted, the action is run right away
+     * @param abortAction what to run to abort the work (like closing the stream being read)
+     */
+    public void onAbort(Runnable abortAction) {
+        synchronized(this) {
+            if(!aborted) {
+                abortActions.add(abortAction);
+                return;
+            }
+        }
+        runAbortAction(abortAction);
+    }
+
+    /**
+     * Aborts the work, running every abort action registered so far (later calls do nothing)
+     */
+    public void abort() {
+        List<Runnable> actionsToRun;
+        synchronized(this) {
+            if(aborted) {
+                return;
+            }
+            aborted = true;
+            actionsToRun = abortActions;
+            abortActions = new ArrayList<Runnable>();
+        }
+        for(Runnable abortAction : actionsToRun) {
+            runAbortAction(abortAction);
+        }
+    }
+
+    /**
+     * Checks if the work has been aborted
+     * @return true if abort() has been called, false otherwise
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    // An abort action that fails is reported, but does not keep the rest from running
+    private static void runAbortAction(Runnable abortAction) {
+        try {
+            abortAction.run();
+        }
+        catch(RuntimeException ex) {
+            System.err.println("[ERROR] Could not abort work");
+            ex.printStackTrace();
+        }
+    }
+}
@@ -5,10 +5,18 @@ import b7.tools.DateTool;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Main controller of crawlers used for
@@ -23,6 +31,19 @@ public class AnimeCrawlerController {
     public static final String CSVS_PATH = "savedata/csvs/";  // Folder we save CSVs from crawl data in
     public static final String SENTAI_FILMWORKS_CRAWLER_CSV_FILENAME = CSVS_PATH + DateTool.findCurrentDateString() + "_sentaifilmworks.csv";
     public static final String RIGHT_STUF_CRAWLER_CSV_FILENAME = CSVS_PATH + DateTool.findCurrentDateString() + "_rightstuf.csv";
+    public static final String CHECKPOINTS_PATH = "savedata/checkpoints/";  // Folder we save progress of running updates in
+    public static final String RIGHT_STUF_CHECKPOINT_FILENAME = CHECKPOINTS_PATH + "rightstuf.json";
+    public static final String SITEMAPS_PATH = "savedata/sitemaps/";  // Folder we save what the store sitemaps said on the last update in
+    public static final String SENTAI_FILMWORKS_SITEMAP_FILENAME = SITEMAPS_PATH + "sentaifilmworks.json";
+    public static final String FINGERPRINTS_PATH = "savedata/fingerprints/";  // Folder we save listing page fingerprints from the last update in
+    public static final String SENTAI_FILMWORKS_FINGERPRINTS_FILENAME = FINGERPRINTS_PATH + "sentaifilmworks.json";
+    public static final String RIGHT_STUF_FINGERPRINTS_FILENAME = FINGERPRINTS_PATH + "rightstuf.json";
+    public static final String ARCHIVES_PATH = "savedata/archives/";  // Folder we archive the raw pages of every update in (one archive per store per day)
+    public static final String SENTAI_FILMWORKS_ARCHIVES_PATH = ARCHIVES_PATH + "sentaifilmworks/";
+    public static final String RIGHT_STUF_ARCHIVES_PATH = ARCHIVES_PATH + "rightstuf/";
+    public static final String REBUILT_CRAWL_DATA_PATH = "savedata/rebuilt/";  // Folder we save crawl data rebuilt from the page archives in
+    public static final String SENTAI_FILMWORKS_REBUILT_CRAWL_DATA_FILENAME = REBUILT_CRAWL_DATA_PATH + "sentaifilmworks.json";
+    public static final String RIGHT_STUF_REBUILT_CRAWL_DATA_FILENAME = REBUILT_CRAWL_DATA_PATH + "rightstuf.json";
 
     // The SentaiFilmworksCrawler being used by the controller
     private SentaiFilmworksCrawler sentaiFilmworksCrawler;
@@ -30,6 +51,9 @@ public class AnimeCrawlerController {
     // The RightStufCrawler being used by the controller
     private RightStufCrawler rightStufCrawler;
 
+    // Whether price updates archive every page they fetch (in the store's folder under ARCHIVES_PATH)
+    private volatile boolean archivePages;
+
     /**
      * Constructs a new AnimeCrawlerController with no pre-loaded data
      */
@@ -57,7 +81,8 @@ public class AnimeCrawlerController {
     /**
      * Uses the Sentai Filmworks Crawler to visit all pages (to get updated pricing information)
      * @param printProgress true to print out found products to standard output, false to not print
-     * @param parallelism how many parallel threads to use (defaults to available processor count if non-positive number given)
+     * @param parallelism most requests to the store that can be in flight at once, with the HostRateController settling on
+     *                    the actual number below this cap (defaults to the crawler's DEFAULT_PARALLELISM if non-positive number given)
      * @return true if all pages were successfully visited, false otherwise
      */
     public boolean visitAllSentaiFilmworksPagesMultithreaded(boolean printProgress, int parallelism) {
@@ -67,7 +92,8 @@ public class AnimeCrawlerController {
     /**
      * Uses the Right Stuf Crawler to visit all pages (to get updated pricing information)
      * @param printProgress true to print out found products to standard output, false to not print
-     * @param parallelism how many parallel threads to use (defaults to available processor count if non-positive number given)
+     * @param parallelism most requests to the store that can be in flight at once, with the HostRateController settling on
+     *                    the actual number below this cap (defaults to the crawler's DEFAULT_PARALLELISM if non-positive number given)
      * @return true if all pages were successfully visited, false otherwise
      */
     public boolean visitAllRightStufPagesMultithreaded(boolean printProgress, int parallelism) {
@@ -542,37 +568,81 @@ public class AnimeCrawlerController {
      * Runs the AnimeCrawlerController to load existing crawl data, visit all pages,
      * update information, and save the results back. Will set printProgress to true
      * for AnimeCrawlerController.visitAllSentaiFilmworksPagesSingleThreaded() to print out progress
-     * during page crawling
+     * during page crawling. Stores are updated at the same time (they are different hosts, each with
+     * its own in-flight request budget), and each store is saved as soon as its update finishes
      * @param updateSentaiFilmworks true to update price information for Sentai Filmworks listings, false to not
      * @param updateRightStuf true to update price information for Right Stuf listing, false to not
      */
     public void runAnimeCrawlerControllerPriceUpdate(boolean updateSentaiFilmworks, boolean updateRightStuf) {
-        // Load existing data and try to update that information
         long startTime = System.currentTimeMillis();
 
-        // Visit Sentai Filmworks if boolean argument is set to true
+        // Collect the store updates to run (each one gives back how many milliseconds it took)
+        Map<String, Callable<Long>> storeUpdates = new LinkedHashMap<String, Callable<Long>>();
         if(updateSentaiFilmworks) {
-            runSentaiFilmworksCrawlerPriceUpdateMultithreaded();
+            storeUpdates.put("Sentai Filmworks", this::runSentaiFilmworksCrawlerPriceUpdateMultithreaded);
         }
-
-        // Visit Right Stuf if boolean argument is set to true
         if(updateRightStuf) {
-            runRightStufCrawlerPriceUpdateMultithreaded();
+            storeUpdates.put("Right Stuf", () -> runRightStufCrawlerPriceUpdateMultithreaded(false));
+        }
+        if(storeUpdates.isEmpty()) {
+            return;
+        }
+
+        // Start every store update at once, then wait for all of them
+        Map<String, Future<Long>> storeRunTimes = new LinkedHashMap<String, Future<Long>>();
+        ExecutorService storeUpdateExecutor = Executors.newFixedThreadPool(storeUpdates.size());
+        try {
+            for(Map.Entry<String, Callable<Long>> storeUpdate : storeUpdates.entrySet()) {
+                storeRunTimes.put(storeUpdate.getKey(), storeUpdateExecutor.submit(storeUpdate.getValue()));
+            }
+
+            StringBuilder summary = new StringBuilder("\nPrice update timings:");
+            for(Map.Entry<String, Future<Long>> storeRunTime : storeRunTimes.entrySet()) {
+                summary.append("\n    ").append(storeRunTime.getKey()).append(": ");
+                try {
+                    summary.append(storeRunTime.getValue().get() / 1000.0).append(" seconds");
+                }
+                catch(ExecutionException ex) {
+                    System.err.println("[ERROR] Price update for " + storeRunTime.getKey() + " failed");
+                    ex.getCause().printStackTrace();
+                    summary.append("failed");
+                }
+            }
+            double runTimeInSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            summary.append("\n    Total: ").append(runTimeInSeconds).append(" seconds");
+            System.out.println(summary);
+        }
+        catch(InterruptedException ex) {
+            System.err.println("[ERROR] Interrupted while waiting for price updates to finish");
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            storeUpdateExecutor.shutdownNow();
         }
     }
 
     /**
      * Updates Sentai Filmworks Crawler with current price information and saves
      * the new information (multithreaded version)
+     * @return how long (in milliseconds) the price update took
      */
-    private void runSentaiFilmworksCrawlerPriceUpdateMultithreaded() {
+    private long runSentaiFilmworksCrawlerPriceUpdateMultithreaded() {
         // Load existing data and try to update that information
         long startTime = System.currentTimeMillis();
 
-        // Visit Sentai Filmworks
+        // Visit Sentai Filmworks (skipping listing pages that did not change since the last update)
+        ListingPageFingerprints listingPageFingerprints = loadListingPageFingerprints(SENTAI_FILMWORKS_FINGERPRINTS_FILENAME,
+                SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        sentaiFilmworksCrawler.setListingPageFingerprints(listingPageFingerprints);
+        PageArchive pageArchive = openTodaysPageArchive(SENTAI_FILMWORKS_ARCHIVES_PATH);
+        sentaiFilmworksCrawler.setPageArchive(pageArchive);
         boolean visitSuccessful = visitAllSentaiFilmworksPagesMultithreaded(true, 0);
+        sentaiFilmworksCrawler.setPageArchive(null);
+        closePageArchive(pageArchive);
+        sentaiFilmworksCrawler.setListingPageFingerprints(null);
         if(visitSuccessful) {
             System.out.println("\nVisiting all pages worked for Sentai Filmworks!\n");
+            CrawlerDataHandler.saveListingPageFingerprints(listingPageFingerprints, SENTAI_FILMWORKS_FINGERPRINTS_FILENAME);
         }
         else {
             System.out.println("\nVisiting all pages for Sentai Filmworks failed (likely accessing too many pages too rapidly on website)\n");
@@ -584,6 +654,47 @@ public class AnimeCrawlerController {
         long runTime = endTime - startTime;
         double runTimeInSeconds = runTime / 1000.0;
         System.out.println("\nTook " + runTimeInSeconds + " seconds to run price update for Sentai Filmworks");
+        return runTime;
+    }
+
+    /**
+     * Updates Sentai Filmworks Crawler with current price information by only requesting the products that changed
+     * since the last incremental update (according to the store's sitemap), and saves the new information. What the
+     * sitemap said is saved to SENTAI_FILMWORKS_SITEMAP_FILENAME for the next incremental update
+     */
+    public void runSentaiFilmworksCrawlerIncrementalPriceUpdate() {
+        // Load existing data and try to update that information
+        long startTime = System.currentTimeMillis();
+
+        // Pick up what the sitemap said on the last incremental update (without it, every product counts as changed)
+        SitemapSnapshot sitemapSnapshot = null;
+        if(new File(SENTAI_FILMWORKS_SITEMAP_FILENAME).exists()) {
+            sitemapSnapshot = CrawlerDataHandler.loadSitemapSnapshot(SENTAI_FILMWORKS_SITEMAP_FILENAME);
+        }
+        if(sitemapSnapshot == null) {
+            System.out.println("No sitemap snapshot from an earlier update; every product will be requested");
+            sitemapSnapshot = new SitemapSnapshot(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        }
+
+        // Visit the Sentai Filmworks products that changed
+        PageArchive pageArchive = openTodaysPageArchive(SENTAI_FILMWORKS_ARCHIVES_PATH);
+        sentaiFilmworksCrawler.setPageArchive(pageArchive);
+        boolean visitSuccessful = sentaiFilmworksCrawler.visitChangedProducts(sitemapSnapshot, true, 0);
+        sentaiFilmworksCrawler.setPageArchive(null);
+        closePageArchive(pageArchive);
+        if(visitSuccessful) {
+            System.out.println("\nVisiting changed products worked for Sentai Filmworks!\n");
+        }
+        else {
+            System.out.println("\nVisiting changed products for Sentai Filmworks failed (likely accessing too many pages too rapidly on website)\n");
+        }
+
+        // Save the updated information back to file (products that failed are not in the snapshot, so they are requested next time)
+        CrawlerDataHandler.saveSitemapSnapshot(sitemapSnapshot, SENTAI_FILMWORKS_SITEMAP_FILENAME);
+        saveSentaiFilmworksCrawler(SENTAI_FILMWORKS_CRAWLER_FILENAME);
+        long endTime = System.currentTimeMillis();
+        double runTimeInSeconds = (endTime - startTime) / 1000.0;
+        System.out.println("\nTook " + runTimeInSeconds + " seconds to run incremental price update for Sentai Filmworks");
     }
 
     /**
@@ -594,10 +705,19 @@ public class AnimeCrawlerController {
         // Load existing data and try to update that information
         long startTime = System.currentTimeMillis();
 
-        // Visit Sentai Filmworks
+        // Visit Sentai Filmworks (skipping listing pages that did not change since the last update)
+        ListingPageFingerprints listingPageFingerprints = loadListingPageFingerprints(SENTAI_FILMWORKS_FINGERPRINTS_FILENAME,
+                SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        sentaiFilmworksCrawler.setListingPageFingerprints(listingPageFingerprints);
+        PageArchive pageArchive = openTodaysPageArchive(SENTAI_FILMWORKS_ARCHIVES_PATH);
+        sentaiFilmworksCrawler.setPageArchive(pageArchive);
         boolean visitSuccessful = visitAllSentaiFilmworksPagesSingleThreaded(true);
+        sentaiFilmworksCrawler.setPageArchive(null);
+        closePageArchive(pageArchive);
+        sentaiFilmworksCrawler.setListingPageFingerprints(null);
         if(visitSuccessful) {
             System.out.println("\nVisiting all pages worked for Sentai Filmworks!\n");
+            CrawlerDataHandler.saveListingPageFingerprints(listingPageFingerprints, SENTAI_FILMWORKS_FINGERPRINTS_FILENAME);
         }
         else {
             System.out.println("\nVisiting all pages for Sentai Filmworks failed (likely accessing too many pages too rapidly on website)\n");
@@ -611,21 +731,66 @@ public class AnimeCrawlerController {
         System.out.println("\nTook " + runTimeInSeconds + " seconds to run price update for Sentai Filmworks");
     }
 
+    /**
+     * Resumes a Right Stuf price update that did not finish today from its checkpoint (pages the checkpoint
+     * has are not loaded again), and saves the new information. Starts a new update if there is no checkpoint
+     * from today to resume
+     */
+    public void resumeRightStufCrawlerPriceUpdate() {
+        runRightStufCrawlerPriceUpdateMultithreaded(true);
+    }
+
     /**
      * Updates Right Stuf Crawler with current price information and saves
-     * the new information (multithreaded version)
+     * the new information (multithreaded version). Progress is checkpointed to RIGHT_STUF_CHECKPOINT_FILENAME
+     * while the update runs, and the checkpoint is deleted once the update succeeds
+     * @param resume true to resume from today's checkpoint (if there is one), false to start a new update
+     * @return how long (in milliseconds) the price update took
      */
-    private void runRightStufCrawlerPriceUpdateMultithreaded() {
+    private long runRightStufCrawlerPriceUpdateMultithreaded(boolean resume) {
         // Load existing data and try to update that information
         long startTime = System.currentTimeMillis();
 
-        // Visit Right Stuf
-        boolean visitSuccessful = visitAllRightStufPagesMultithreaded(true, 0);
+        // Pick up today's checkpoint if resuming, otherwise start a new one
+        CrawlCheckpoint checkpoint = null;
+        if(resume && new File(RIGHT_STUF_CHECKPOINT_FILENAME).exists()) {
+            checkpoint = CrawlerDataHandler.loadCrawlCheckpoint(RIGHT_STUF_CHECKPOINT_FILENAME);
+            if(checkpoint != null && !checkpoint.canResume(RightStufCrawler.CRAWL_DATA_TITLE)) {
+                System.out.println("Checkpoint in " + RIGHT_STUF_CHECKPOINT_FILENAME + " is from " + checkpoint.getCrawlDate()
+                        + ", so it cannot be resumed today; starting a new update");
+                checkpoint = null;
+            }
+        }
+        if(checkpoint == null) {
+            if(resume) {
+                System.out.println("No checkpoint from today to resume; starting a new update");
+            }
+            checkpoint = new CrawlCheckpoint(RightStufCrawler.CRAWL_DATA_TITLE);
+        }
+        else {
+            System.out.println("Resuming from checkpoint with " + checkpoint.getCompletedPages().size() + " pages ("
+                    + checkpoint.findObservationCount() + " products) already done");
+        }
+
+        // Visit Right Stuf (skipping listing pages that did not change since the last update)
+        ListingPageFingerprints listingPageFingerprints = loadListingPageFingerprints(RIGHT_STUF_FINGERPRINTS_FILENAME,
+                RightStufCrawler.CRAWL_DATA_TITLE);
+        rightStufCrawler.setListingPageFingerprints(listingPageFingerprints);
+        PageArchive pageArchive = openTodaysPageArchive(RIGHT_STUF_ARCHIVES_PATH);
+        rightStufCrawler.setPageArchive(pageArchive);
+        boolean visitSuccessful = rightStufCrawler.visitAllPagesMultithreaded(true, 0, checkpoint, RIGHT_STUF_CHECKPOINT_FILENAME);
+        rightStufCrawler.setPageArchive(null);
+        closePageArchive(pageArchive);
+        rightStufCrawler.setListingPageFingerprints(null);
         if(visitSuccessful) {
             System.out.println("\nVisiting all pages worked for Right Stuf!\n");
+            new File(RIGHT_STUF_CHECKPOINT_FILENAME).delete();
+            CrawlerDataHandler.saveListingPageFingerprints(listingPageFingerprints, RIGHT_STUF_FINGERPRINTS_FILENAME);
         }
         else {
             System.out.println("\nVisiting all pages for Right Stuf failed (likely accessing too many pages too rapidly on website)\n");
+            System.out.println("Progress was checkpointed to " + RIGHT_STUF_CHECKPOINT_FILENAME
+                    + "; resume the Right Stuf update today to skip the pages already done\n");
         }
 
         // Save the updated information back to file
@@ -634,6 +799,7 @@ public class AnimeCrawlerController {
         long runTime = endTime - startTime;
         double runTimeInSeconds = runTime / 1000.0;
         System.out.println("\nTook " + runTimeInSeconds + " seconds to run price update for Right Stuf");
+        return runTime;
     }
 
     /**
@@ -644,10 +810,19 @@ public class AnimeCrawlerController {
         // Load existing data and try to update that information
         long startTime = System.currentTimeMillis();
 
-        // Visit Right Stuf
+        // Visit Right Stuf (skipping listing pages that did not change since the last update)
+        ListingPageFingerprints listingPageFingerprints = loadListingPageFingerprints(RIGHT_STUF_FINGERPRINTS_FILENAME,
+                RightStufCrawler.CRAWL_DATA_TITLE);
+        rightStufCrawler.setListingPageFingerprints(listingPageFingerprints);
+        PageArchive pageArchive = openTodaysPageArchive(RIGHT_STUF_ARCHIVES_PATH);
+        rightStufCrawler.setPageArchive(pageArchive);
         boolean visitSuccessful = visitAllRightStufPagesSingleThreaded(true);
+        rightStufCrawler.setPageArchive(null);
+        closePageArchive(pageArchive);
+        rightStufCrawler.setListingPageFingerprints(null);
         if(visitSuccessful) {
             System.out.println("\nVisiting all pages worked for Right Stuf!\n");
+            CrawlerDataHandler.saveListingPageFingerprints(listingPageFingerprints, RIGHT_STUF_FINGERPRINTS_FILENAME);
         }
         else {
             System.out.println("\nVisiting all pages for Right Stuf failed (likely accessing too many pages too rapidly on website)\n");
@@ -661,6 +836,106 @@ public class AnimeCrawlerController {
         System.out.println("\nTook " + runTimeInSeconds + " seconds to run price update for Right Stuf");
     }
 
+    /**
+     * Loads the listing page fingerprints saved by the last successful update of a store
+     * @param filename the file the store's listing page fingerprints are saved in
+     * @param storeName name of the store
+     * @return the loaded listing page fingerprints, or new (empty) ones if there are none to load
+     */
+    private ListingPageFingerprints loadListingPageFingerprints(String filename, String storeName) {
+        ListingPageFingerprints listingPageFingerprints = null;
+        if(new File(filename).exists()) {
+            listingPageFingerprints = CrawlerDataHandler.loadListingPageFingerprints(filename);
+        }
+        return listingPageFingerprints == null ? new ListingPageFingerprints(storeName) : listingPageFingerprints;
+    }
+
+    /**
+     * Turns archiving the pages fetched by price updates on or off. With it on, every page a price update
+     * fetches is appended to today's archive of the store (in the store's folder under ARCHIVES_PATH)
+     * @param archivePages true to archive the pages fetched by price updates, false to not archive them
+     */
+    public void setArchivePages(boolean archivePages) {
+        this.archivePages = archivePages;
+    }
+
+    /**
+     * Opens today's page archive of a store for a price update to append its pages to
+     * @param archivesPath folder the store's archives are kept in
+     * @return today's page archive of the store, or null if pages are not being archived (or the archive could not be opened)
+     */
+    private PageArchive openTodaysPageArchive(String archivesPath) {
+        if(!archivePages) {
+            return null;
+        }
+        String archiveFilename = PageArchive.findArchiveFilename(archivesPath, DateTool.findCurrentDateString());
+        try {
+            return new PageArchive(archiveFilename);
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Could not open page archive " + archiveFilename + "; pages will not be archived");
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Closes a page archive once a price update is done with it
+     * @param pageArchive the page archive to close (nothing is done if null)
+     */
+    private void closePageArchive(PageArchive pageArchive) {
+        if(pageArchive == null) {
+            return;
+        }
+        try {
+            pageArchive.close();
+            System.out.println("Archived " + pageArchive.getAppendedCount() + " pages to " + pageArchive.getArchiveFilename());
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Could not close page archive " + pageArchive.getArchiveFilename());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Rebuilds the crawl data of every store from its page archives, without contacting the stores: the extractors
+     * are run over every archived page (spread over every processor), and every product is merged into new crawl data
+     * as priced on the day of its archive. The rebuilt crawl data is saved to REBUILT_CRAWL_DATA_PATH (the crawl data
+     * of the crawlers is left alone, so the rebuilt crawl data can be checked before it replaces anything)
+     */
+    public void rebuildCrawlDataFromArchives() {
+        long startTime = System.currentTimeMillis();
+        rebuildCrawlDataFromArchives(SentaiFilmworksCrawler.CRAWL_DATA_TITLE, SENTAI_FILMWORKS_ARCHIVES_PATH,
+                SentaiFilmworksCrawler::extractArchivedPage, SENTAI_FILMWORKS_REBUILT_CRAWL_DATA_FILENAME);
+        rebuildCrawlDataFromArchives(RightStufCrawler.CRAWL_DATA_TITLE, RIGHT_STUF_ARCHIVES_PATH,
+                RightStufCrawler::extractArchivedPage, RIGHT_STUF_REBUILT_CRAWL_DATA_FILENAME);
+        double runTimeInSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.println("\nTook " + runTimeInSeconds + " seconds to rebuild crawl data from page archives");
+    }
+
+    /**
+     * Rebuilds the crawl data of a store from its page archives, and saves it
+     * @param crawlDataTitle title of the store's crawl data
+     * @param archivesPath folder the store's archives are kept in
+     * @param extractor extracts the products from the store's archived pages
+     * @param filename where to save the rebuilt crawl data
+     */
+    private void rebuildCrawlDataFromArchives(String crawlDataTitle, String archivesPath, PageArchive.PageExtractor extractor, String filename) {
+        List<String> archiveFilenames = PageArchive.findArchiveFilenames(archivesPath);
+        if(archiveFilenames.isEmpty()) {
+            System.out.println("No page archives in " + archivesPath + " to rebuild " + crawlDataTitle + " from");
+            return;
+        }
+
+        CrawlData crawlData = new CrawlData(crawlDataTitle);
+        if(!PageArchive.mergeArchives(crawlData, archiveFilenames, extractor, 0)) {
+            System.out.println("Some page archives in " + archivesPath + " could not be read; rebuilding from the rest");
+        }
+        CrawlerDataHandler.saveCrawlData(crawlData, filename);
+        System.out.println("Rebuilt " + crawlDataTitle + " (" + crawlData.getProductMap().size() + " products) from "
+                + archiveFilenames.size() + " page archives into " + filename);
+    }
+
     /**
      * Saves crawl data in CSV format back to a file
      */
@@ -0,0 +1,220 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a store update that is still running: which listing pages are done (and what was observed on them),
+ * so an update that dies partway through can be resumed on the same day without loading those pages again.
+ * Saved and loaded with CrawlerDataHandler
+ */
+public class CrawlCheckpoint {
+
+    // How many newly completed pages a crawler collects before saving the checkpoint again
+    public static final int DEFAULT_SAVE_INTERVAL_PAGES = 5;
+
+    private String storeName;  // Name of the store being updated
+    private String crawlDate;  // Day the update started on (a checkpoint from another day cannot be resumed)
+    private List<CompletedPage> completedPages;  // Listing pages that are done
+    private int unsavedPageCount;  // Pages completed since the checkpoint was last saved (not saved itself)
+
+    /**
+     * Constructs a new CrawlCheckpoint with no store name, for today, and with no completed pages
+     */
+    public CrawlCheckpoint() {
+        this("");
+    }
+
+    /**
+     * Constructs a new CrawlCheckpoint for today with no completed pages
+     * @param storeName name of the store being updated
+     */
+    public CrawlCheckpoint(String storeName) {
+        this.storeName = storeName;
+        crawlDate = DateTool.findCurrentDateString();
+        completedPages = new ArrayList<CompletedPage>();
+    }
+
+    /**
+     * Returns the name of the store being updated
+     * @return the name of the store being updated
+     */
+    public String getStoreName() {
+        return storeName;
+    }
+
+    /**
+     * Sets the name of the store being updated
+     * @param storeName the new name of the store being updated
+     */
+    public void setStoreName(String storeName) {
+        this.storeName = storeName;
+    }
+
+    /**
+     * Returns the day the update started on
+     * @return the day the update started on
+     */
+    public String getCrawlDate() {
+        return crawlDate;
+    }
+
+    /**
+     * Sets the day the update started on
+     * @param crawlDate the new day the update started on
+     */
+    public void setCrawlDate(String crawlDate) {
+        this.crawlDate = crawlDate;
+    }
+
+    /**
+     * Returns the listing pages that are done
+     * @return the listing pages that are done (synchronize on the checkpoint while reading it)
+     */
+    public synchronized List<CompletedPage> getCompletedPages() {
+        return completedPages;
+    }
+
+    /**
+     * Sets the listing pages that are done
+     * @param completedPages the new listing pages that are done
+     */
+    public synchronized void setCompletedPages(List<CompletedPage> completedPages) {
+        this.completedPages = completedPages == null ? new ArrayList<CompletedPage>() : new ArrayList<CompletedPage>(completedPages);
+    }
+
+    /**
+     * Checks if the checkpoint can be resumed today
+     * @param storeName name of the store that is about to be updated
+     * @return true if the checkpoint is for the given store and was started today
+     */
+    public boolean canResume(String storeName) {
+        return this.storeName.equals(storeName) && DateTool.findCurrentDateString().equals(crawlDate);
+    }
+
+    /**
+     * Looks up a listing page that is done
+     * @param pageNumber the page number to look up
+     * @return the completed page, or null if the page is not done yet
+     */
+    public synchronized CompletedPage findCompletedPage(int pageNumber) {
+        for(CompletedPage completedPage : completedPages) {
+            if(completedPage.getPageNumber() == pageNumber) {
+                return completedPage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a listing page as done
+     * @param pageNumber the page number that is done
+     * @param hasNextPage true if the page links to a next page
+     * @param observations the products observed on the page
+     * @return how many pages have been completed since the checkpoint was last saved
+     */
+    public synchronized int recordCompletedPage(int pageNumber, boolean hasNextPage, List<ProductObservation> observations) {
+        if(findCompletedPage(pageNumber) == null) {
+            completedPages.add(new CompletedPage(pageNumber, hasNextPage, observations));
+            unsavedPageCount++;
+        }
+        return unsavedPageCount;
+    }
+
+    /**
+     * Notes that the checkpoint was just saved
+     */
+    public synchronized void markSaved() {
+        unsavedPageCount = 0;
+    }
+
+    /**
+     * Works out how many products were observed on all the completed pages
+     * @return how many observations the checkpoint holds
+     */
+    public synchronized int findObservationCount() {
+        int observationCount = 0;
+        for(CompletedPage completedPage : completedPages) {
+            observationCount += completedPage.getObservations().size();
+        }
+        return observationCount;
+    }
+
+    /**
+     * A listing page that is done, with what was observed on it
+     */
+    public static class CompletedPage {
+        private int pageNumber;  // Number of the listing page
+        private boolean nextPage;  // Whether the page links to a next page
+        private List<ProductObservation> observations;  // Products observed on the page
+
+        /**
+         * Constructs a new CompletedPage for page 0 with no next page and no observations
+         */
+        public CompletedPage() {
+            this(0, false, null);
+        }
+
+        /**
+         * Constructs a new CompletedPage
+         * @param pageNumber number of the listing page
+         * @param nextPage true if the page links to a next page
+         * @param observations products observed on the page (null for none)
+         */
+        public CompletedPage(int pageNumber, boolean nextPage, List<ProductObservation> observations) {
+            this.pageNumber = pageNumber;
+            this.nextPage = nextPage;
+            this.observations = observations == null ? new ArrayList<ProductObservation>() : new ArrayList<ProductObservation>(observations);
+        }
+
+        /**
+         * Returns the number of the listing page
+         * @return the number of the listing page
+         */
+        public int getPageNumber() {
+            return pageNumber;
+        }
+
+        /**
+         * Sets the number of the listing page
+         * @param pageNumber the new number of the listing page
+         */
+        public void setPageNumber(int pageNumber) {
+            this.pageNumber = pageNumber;
+        }
+
+        /**
+         * Returns whether the page links to a next page
+         * @return true if the page links to a next page
+         */
+        public boolean isNextPage() {
+            return nextPage;
+        }
+
+        /**
+         * Sets whether the page links to a next page
+         * @param nextPage true if the page links to a next page
+         */
+        public void setNextPage(boolean nextPage) {
+            this.nextPage = nextPage;
+        }
+
+        /**
+         * Returns the products observed on the page
+         * @return the products observed on the page
+         */
+        public List<ProductObservation> getObservations() {
+            return observations;
+        }
+
+        /**
+         * Sets the products observed on the page
+         * @param observations the new products observed on the page
+         */
+        public void setObservations(List<ProductObservation> observations) {
+            this.observations = observations;
+        }
+    }
+}
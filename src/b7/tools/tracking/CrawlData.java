@@ -1,5 +1,7 @@
 package b7.tools.tracking;
 
+import b7.tools.DateTool;
+
 import java.util.*;
 
 /**
@@ -131,6 +133,75 @@ public class CrawlData {
         }
     }
 
+    /**
+     * Extends the latest PriceDateInfo of a Product to end today (for a Product known to be unchanged since
+     * it was last visited, so it kept the same price the whole time)
+     * @param productName the name of the Product to extend
+     * @return true if the Product was extended to today, false if there is no such Product or it has no price history
+     */
+    public boolean extendLatestPriceToToday(String productName) {
+        Product product = productMap.get(productName);
+        if(product == null) {
+            return false;
+        }
+        PriceDateInfo latestPriceDateInfo = product.findLatestPriceDateInfo();
+        if(latestPriceDateInfo == null) {
+            return false;
+        }
+        String today = DateTool.findCurrentDateString();
+        if(latestPriceDateInfo.getEndDate().compareTo(today) < 0) {
+            latestPriceDateInfo.setEndDate(today);
+        }
+        return true;
+    }
+
+    /**
+     * Extends the latest PriceDateInfo of every Product with one of the given URLs to end today
+     * (several Products can share a URL, like the video formats of one show)
+     * @param productURLs URLs of the Products to extend
+     * @return the URLs that at least one Product was extended to today for
+     */
+    public Set<String> extendLatestPricesToToday(Set<String> productURLs) {
+        Set<String> extendedProductURLs = new HashSet<String>();
+        for(Product product : productMap.values()) {
+            if(productURLs.contains(product.getProductURL()) && extendLatestPriceToToday(product.getProductName())) {
+                extendedProductURLs.add(product.getProductURL());
+            }
+        }
+        return extendedProductURLs;
+    }
+
+    /**
+     * Finds the latest price of every Product with one of the given URLs
+     * @param productURLs URLs of the Products to look up
+     * @return an observation with the latest price of every such Product that has price history
+     */
+    public List<ProductObservation> findLatestObservations(Set<String> productURLs) {
+        List<ProductObservation> latestObservations = new ArrayList<ProductObservation>();
+        for(Product product : productMap.values()) {
+            PriceDateInfo latestPriceDateInfo = product.findLatestPriceDateInfo();
+            if(productURLs.contains(product.getProductURL()) && latestPriceDateInfo != null) {
+                latestObservations.add(new ProductObservation(product.getProductName(), product.getProductURL(),
+                        latestPriceDateInfo.getPrice()));
+            }
+        }
+        return latestObservations;
+    }
+
+    /**
+     * Finds the URLs of every Product with a latest PriceDateInfo that could be extended to today
+     * @return the URLs of the Products that have price history
+     */
+    public Set<String> findPricedProductURLs() {
+        Set<String> pricedProductURLs = new HashSet<String>();
+        for(Product product : productMap.values()) {
+            if(product.findLatestPriceDateInfo() != null) {
+                pricedProductURLs.add(product.getProductURL());
+            }
+        }
+        return pricedProductURLs;
+    }
+
     /**
      * Returns the name of the crawl data and the product map contents as a String
      * @return String containing crawl data name and product map contents
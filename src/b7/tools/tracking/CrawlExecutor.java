@@ -0,0 +1,102 @@
+package b7.tools.tracking;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor for the fetching side of a crawl, sized by how many requests we are willing to have
+ * in flight at once (a politeness limit on the store), rather than by how many processors
+ * the machine has. CrawlPipeline runs its fetch workers on one, and every network request
+ * made through runRequest() waits for one of the in-flight request permits before it starts
+ */
+public class CrawlExecutor implements AutoCloseable {
+
+    // How many requests can be in flight at once when no (or a non-positive) limit is given
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 8;
+
+    private String name;  // Name used for the threads of this executor (helps when reading thread dumps)
+    private int maxInFlightRequests;  // Maximum number of requests that can be running at once
+    private Semaphore inFlightRequestPermits;  // Permits handed out to running requests
+    private ExecutorService fetchExecutor;  // One thread per request that can be in flight
+
+    /**
+     * Constructs a new CrawlExecutor
+     * @param name name to give to the threads of the executor
+     * @param maxInFlightRequests maximum number of requests to allow in flight at once
+     *                            (defaults to DEFAULT_MAX_IN_FLIGHT_REQUESTS if non-positive number given)
+     */
+    public CrawlExecutor(String name, int maxInFlightRequests) {
+        this.name = name;
+        this.maxInFlightRequests = maxInFlightRequests <= 0 ? DEFAULT_MAX_IN_FLIGHT_REQUESTS : maxInFlightRequests;
+        inFlightRequestPermits = new Semaphore(this.maxInFlightRequests, true);
+        fetchExecutor = Executors.newFixedThreadPool(this.maxInFlightRequests, createThreadFactory(name));
+    }
+
+    /**
+     * Returns the maximum number of requests this executor allows in flight at once
+     * @return the maximum number of requests this executor allows in flight at once
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Runs a fetching task on one of the executor's threads (tasks beyond getMaxInFlightRequests() wait for a free thread)
+     * @param fetchTask the task to run
+     */
+    public void execute(Runnable fetchTask) {
+        fetchExecutor.execute(fetchTask);
+    }
+
+    /**
+     * Runs the given network request once an in-flight request permit is available
+     * @param request the request to run
+     * @param <T> the result type of the request
+     * @return the result of the request, or null if the thread was interrupted while waiting for a permit
+     */
+    public <T> T runRequest(Supplier<T> request) {
+        try {
+            inFlightRequestPermits.acquire();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("[ERROR] Interrupted while waiting to make a request on " + name);
+            return null;
+        }
+        try {
+            return request.get();
+        }
+        finally {
+            inFlightRequestPermits.release();
+        }
+    }
+
+    /**
+     * Stops the executor's threads, interrupting the tasks still running (tasks that have not started are dropped)
+     */
+    @Override
+    public void close() {
+        fetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Creates a ThreadFactory that makes named daemon threads (so a stuck crawl can never keep the program open)
+     * @param threadNamePrefix prefix to use for the names of the threads
+     * @return the ThreadFactory
+     */
+    private static ThreadFactory createThreadFactory(final String threadNamePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,516 @@
+package b7.tools.tracking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Crawl split into stages joined by bounded queues, so network waits, parsing, and merging into the
+ * crawl data overlap instead of running one after another on each page task:
+ * <ol>
+ *     <li>fetch: I/O-sized pool of threads that download pages, run on a CrawlExecutor (which limits how many
+ *         requests are in flight at once)</li>
+ *     <li>parse: CPU-sized pool of threads that turn page contents into ProductObservations
+ *         (and into follow-up requests, like a listing page's product JSON)</li>
+ *     <li>merge: a single thread that hands every observation to the crawler (and runs every merge action a parser
+ *         gave back), so the crawl data only ever has one writer</li>
+ * </ol>
+ * A full queue makes the stage feeding it wait (backpressure). Follow-up requests made by the parse stage skip
+ * the limit on submitted requests, so parse threads never wait on fetch threads that are waiting on them
+ */
+public class CrawlPipeline implements AutoCloseable {
+
+    // Default sizes of the stages
+    public static final int DEFAULT_FETCH_WORKERS = CrawlExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+    public static final int DEFAULT_PARSE_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    // How often (in milliseconds) idle stage threads check whether the pipeline has been closed
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    private String name;  // Name used for the threads of this pipeline
+    private Consumer<ProductObservation> merger;  // Adds observations to the crawl data (only ever called from the merge thread)
+
+    private BlockingQueue<PageRequest> fetchQueue;  // Requests waiting to be fetched
+    private BlockingQueue<FetchedPage> parseQueue;  // Fetched pages waiting to be parsed
+    private BlockingQueue<ParsedBatch> mergeQueue;  // Parsed observations waiting to be merged
+    private Semaphore submittedRequestPermits;  // Limits how many submitted requests can wait in the fetch queue
+
+    private CrawlExecutor fetchWorkers;  // Runs the fetch workers, and makes their requests wait for an in-flight request permit
+    private ExecutorService parseWorkers;
+    private ExecutorService mergeWorker;
+
+    private StageStats fetchStats;
+    private StageStats parseStats;
+    private StageStats mergeStats;
+
+    private final Object completionLock = new Object();  // Guards (and is notified about) pendingRequests reaching zero
+    private int pendingRequests;  // Requests submitted or followed up whose observations have not all been merged yet
+    private AtomicInteger failedRequests;  // Requests that could not be fetched or parsed
+    private volatile boolean closed;  // Whether the pipeline has been closed
+
+    /**
+     * Constructs a new CrawlPipeline and starts its stage threads
+     * @param name name to give the threads of the pipeline
+     * @param fetchWorkers how many pages can be fetched at once (defaults to DEFAULT_FETCH_WORKERS if non-positive number given)
+     * @param parseWorkers how many pages can be parsed at once (defaults to DEFAULT_PARSE_WORKERS if non-positive number given)
+     * @param queueCapacity how many items each queue between stages can hold (defaults to DEFAULT_QUEUE_CAPACITY if non-positive number given)
+     * @param merger adds an observation to the crawl data (called from a single thread, in the order observations are merged)
+     */
+    public CrawlPipeline(String name, int fetchWorkers, int parseWorkers, int queueCapacity, Consumer<ProductObservation> merger) {
+        this.name = name;
+        this.merger = merger;
+        int fetchWorkerCount = fetchWorkers <= 0 ? DEFAULT_FETCH_WORKERS : fetchWorkers;
+        int parseWorkerCount = parseWorkers <= 0 ? DEFAULT_PARSE_WORKERS : parseWorkers;
+        int capacity = queueCapacity <= 0 ? DEFAULT_QUEUE_CAPACITY : queueCapacity;
+
+        fetchQueue = new LinkedBlockingQueue<PageRequest>();
+        parseQueue = new LinkedBlockingQueue<FetchedPage>(capacity);
+        mergeQueue = new LinkedBlockingQueue<ParsedBatch>(capacity);
+        submittedRequestPermits = new Semaphore(capacity);
+        failedRequests = new AtomicInteger(0);
+
+        fetchStats = new StageStats("fetch", fetchQueue);
+        parseStats = new StageStats("parse", parseQueue);
+        mergeStats = new StageStats("merge", mergeQueue);
+
+        this.fetchWorkers = new CrawlExecutor(name + "-fetch", fetchWorkerCount);
+        for(int i = 0; i < fetchWorkerCount; i++) {
+            this.fetchWorkers.execute(this::runFetchWorker);
+        }
+        this.parseWorkers = startWorkers(name + "-parse", parseWorkerCount, this::runParseWorker);
+        this.mergeWorker = startWorkers(name + "-merge", 1, this::runMergeWorker);
+    }
+
+    /**
+     * Submits a request to the pipeline, waiting if too many submitted requests are already waiting to be fetched
+     * @param request the request to fetch, parse, and merge
+     * @throws InterruptedException if the thread was interrupted while waiting for room in the fetch queue
+     */
+    public void submit(PageRequest request) throws InterruptedException {
+        if(closed) {
+            throw new IllegalStateException("Cannot submit a request to a closed crawl pipeline");
+        }
+        submittedRequestPermits.acquire();
+        request.holdsSubmitPermit = true;
+        addPendingRequest(request);
+    }
+
+    /**
+     * Waits for every request (and every follow-up request) to be fetched, parsed, and merged
+     * @return true if every request was fetched and parsed successfully, false if any of them failed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean awaitCompletion() throws InterruptedException {
+        synchronized(completionLock) {
+            while(pendingRequests > 0) {
+                completionLock.wait();
+            }
+        }
+        return failedRequests.get() == 0;
+    }
+
+    /**
+     * Returns how many requests could not be fetched or parsed
+     * @return how many requests failed
+     */
+    public int getFailedRequestCount() {
+        return failedRequests.get();
+    }
+
+    /**
+     * Returns the statistics of the fetch stage
+     * @return the statistics of the fetch stage
+     */
+    public StageStats getFetchStats() {
+        return fetchStats;
+    }
+
+    /**
+     * Returns the statistics of the parse stage
+     * @return the statistics of the parse stage
+     */
+    public StageStats getParseStats() {
+        return parseStats;
+    }
+
+    /**
+     * Returns the statistics of the merge stage
+     * @return the statistics of the merge stage
+     */
+    public StageStats getMergeStats() {
+        return mergeStats;
+    }
+
+    /**
+     * Describes the queue depth and throughput of every stage
+     * @return one line describing all the stages
+     */
+    public String findStatsSummary() {
+        return name + " pipeline: " + fetchStats + "; " + parseStats + "; " + mergeStats + "; " + failedRequests.get() + " failed";
+    }
+
+    /**
+     * Stops every stage thread (work still in the queues is dropped)
+     */
+    @Override
+    public void close() {
+        closed = true;
+        fetchWorkers.close();
+        parseWorkers.shutdownNow();
+        mergeWorker.shutdownNow();
+    }
+
+    /**
+     * Starts a pool of threads that each run the given worker loop
+     */
+    private static ExecutorService startWorkers(final String threadName, int workerCount, Runnable workerLoop) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for(int i = 0; i < workerCount; i++) {
+            workers.execute(workerLoop);
+        }
+        return workers;
+    }
+
+    // Counts a request as pending and puts it in the fetch queue (which has no capacity limit of its own)
+    private void addPendingRequest(PageRequest request) {
+        synchronized(completionLock) {
+            pendingRequests++;
+        }
+        fetchQueue.add(request);
+    }
+
+    // Marks a request as done (successfully or not), waking up awaitCompletion() once nothing is pending
+    private void completeRequest(PageRequest request, boolean succeeded) {
+        if(!succeeded) {
+            failedRequests.incrementAndGet();
+        }
+        synchronized(completionLock) {
+            pendingRequests--;
+            if(pendingRequests == 0) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
+    private void runFetchWorker() {
+        try {
+            while(!closed) {
+                PageRequest request = fetchQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(request == null) {
+                    continue;
+                }
+                if(request.holdsSubmitPermit) {
+                    request.holdsSubmitPermit = false;
+                    submittedRequestPermits.release();
+                }
+
+                long startTime = System.nanoTime();
+                String content;
+                try {
+                    content = fetchWorkers.runRequest(() -> request.fetcher.apply(request.url));
+                }
+                catch(Throwable ex) {  // Errors too, since a request that never completes would hang awaitCompletion()
+                    ex.printStackTrace();
+                    content = null;
+                }
+                fetchStats.recordItem(System.nanoTime() - startTime);
+
+                if(content == null) {
+                    System.err.println("[ERROR] Could not fetch " + request.url + " (skipping it)");
+                    completeRequest(request, false);
+                }
+                else {
+                    parseQueue.put(new FetchedPage(request, content));
+                }
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runParseWorker() {
+        try {
+            while(!closed) {
+                FetchedPage fetchedPage = parseQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(fetchedPage == null) {
+                    continue;
+                }
+
+                long startTime = System.nanoTime();
+                ParsedPage parsedPage;
+                try {
+                    parsedPage = fetchedPage.request.parser.parse(fetchedPage.request, fetchedPage.content);
+                }
+                catch(Throwable ex) {
+                    ex.printStackTrace();
+                    System.err.println("[ERROR] Could not parse " + fetchedPage.request.url + " (skipping it)");
+                    parsedPage = null;
+                }
+                parseStats.recordItem(System.nanoTime() - startTime);
+
+                if(parsedPage == null) {
+                    completeRequest(fetchedPage.request, false);
+                    continue;
+                }
+                // Follow-ups are counted as pending before this request completes, so the pipeline never looks finished early
+                for(PageRequest followUpRequest : parsedPage.followUpRequests) {
+                    addPendingRequest(followUpRequest);
+                }
+                mergeQueue.put(new ParsedBatch(fetchedPage.request, parsedPage.observations, parsedPage.mergeAction));
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runMergeWorker() {
+        try {
+            while(!closed) {
+                ParsedBatch parsedBatch = mergeQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(parsedBatch == null) {
+                    continue;
+                }
+
+                long startTime = System.nanoTime();
+                boolean merged = true;
+                for(ProductObservation observation : parsedBatch.observations) {
+                    try {
+                        merger.accept(observation);
+                    }
+                    catch(Throwable ex) {
+                        ex.printStackTrace();
+                        System.err.println("[ERROR] Could not merge " + observation + " (skipping it)");
+                        merged = false;
+                    }
+                }
+                // The merge action only runs once everything else from the page is in the crawl data
+                if(merged && parsedBatch.mergeAction != null) {
+                    try {
+                        parsedBatch.mergeAction.run();
+                    }
+                    catch(Throwable ex) {
+                        ex.printStackTrace();
+                        System.err.println("[ERROR] Could not finish merging " + parsedBatch.request.url);
+                        merged = false;
+                    }
+                }
+                mergeStats.recordItem(System.nanoTime() - startTime);
+                completeRequest(parsedBatch.request, merged);
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses the contents of a fetched request
+     */
+    public interface PageParser {
+
+        /**
+         * Parses the contents of a fetched request
+         * @param request the request that was fetched
+         * @param content the fetched contents
+         * @return the observations found in the contents (and any follow-up requests to make)
+         * @throws Exception if the contents could not be parsed (the request is then counted as failed)
+         */
+        ParsedPage parse(PageRequest request, String content) throws Exception;
+    }
+
+    /**
+     * A URL to fetch, along with how to fetch it and how to parse what comes back
+     */
+    public static class PageRequest {
+        private final String url;
+        private final Function<String, String> fetcher;
+        private final PageParser parser;
+        private boolean holdsSubmitPermit;  // Whether the request took a permit in submit() that must be given back
+
+        /**
+         * Constructs a new PageRequest
+         * @param url the URL to fetch
+         * @param fetcher fetches the URL, giving back null if it could not be fetched
+         * @param parser parses what the fetcher gave back
+         */
+        public PageRequest(String url, Function<String, String> fetcher, PageParser parser) {
+            this.url = url;
+            this.fetcher = fetcher;
+            this.parser = parser;
+        }
+
+        /**
+         * Returns the URL to fetch
+         * @return the URL to fetch
+         */
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    /**
+     * What a parser found on a page: product observations, further requests to make, and any other
+     * change to the crawl data the page leads to (which has to be made by the merge thread)
+     */
+    public static class ParsedPage {
+        private final List<ProductObservation> observations;
+        private final List<PageRequest> followUpRequests;
+        private final Runnable mergeAction;
+
+        /**
+         * Constructs a new ParsedPage
+         * @param observations the product observations found on the page (null for none)
+         * @param followUpRequests further requests the page leads to (null for none)
+         */
+        public ParsedPage(List<ProductObservation> observations, List<PageRequest> followUpRequests) {
+            this(observations, followUpRequests, null);
+        }
+
+        /**
+         * Constructs a new ParsedPage with work for the merge thread to do once the page's observations are merged
+         * (like carrying products over to today). The request only counts as merged if the merge action finishes too
+         * @param observations the product observations found on the page (null for none)
+         * @param followUpRequests further requests the page leads to (null for none)
+         * @param mergeAction run on the merge thread after every observation was merged without error (null for none)
+         */
+        public ParsedPage(List<ProductObservation> observations, List<PageRequest> followUpRequests, Runnable mergeAction) {
+            this.observations = observations == null ? Collections.<ProductObservation>emptyList() : observations;
+            this.followUpRequests = followUpRequests == null ? Collections.<PageRequest>emptyList() : followUpRequests;
+            this.mergeAction = mergeAction;
+        }
+
+        /**
+         * Returns the product observations found on the page
+         * @return the product observations found on the page
+         */
+        public List<ProductObservation> getObservations() {
+            return observations;
+        }
+
+        /**
+         * Returns the further requests the page leads to
+         * @return the further requests the page leads to
+         */
+        public List<PageRequest> getFollowUpRequests() {
+            return followUpRequests;
+        }
+    }
+
+    /**
+     * Queue depth and throughput of one stage
+     */
+    public static class StageStats {
+        private final String stageName;
+        private final BlockingQueue<?> inputQueue;
+        private final AtomicLong processedItems;
+        private final AtomicLong busyNanos;
+        private final long startNanos;
+
+        private StageStats(String stageName, BlockingQueue<?> inputQueue) {
+            this.stageName = stageName;
+            this.inputQueue = inputQueue;
+            processedItems = new AtomicLong(0);
+            busyNanos = new AtomicLong(0);
+            startNanos = System.nanoTime();
+        }
+
+        private void recordItem(long itemNanos) {
+            processedItems.incrementAndGet();
+            busyNanos.addAndGet(itemNanos);
+        }
+
+        /**
+         * Returns the name of the stage
+         * @return the name of the stage
+         */
+        public String getStageName() {
+            return stageName;
+        }
+
+        /**
+         * Returns how many items are waiting for the stage
+         * @return how many items are in the stage's input queue
+         */
+        public int getQueueDepth() {
+            return inputQueue.size();
+        }
+
+        /**
+         * Returns how many items the stage has handled
+         * @return how many items the stage has handled
+         */
+        public long getProcessedCount() {
+            return processedItems.get();
+        }
+
+        /**
+         * Works out how many items per second the stage has handled since the pipeline started
+         * @return items handled per second
+         */
+        public double findThroughputPerSecond() {
+            double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+            return elapsedSeconds <= 0 ? 0 : processedItems.get() / elapsedSeconds;
+        }
+
+        /**
+         * Works out how long the stage spent on each item on average
+         * @return average milliseconds spent per item (0 if no items were handled)
+         */
+        public double findAverageItemMillis() {
+            long items = processedItems.get();
+            return items == 0 ? 0 : busyNanos.get() / 1e6 / items;
+        }
+
+        /**
+         * Returns the stats as a String
+         * @return the stage name, items handled, throughput, average time per item, and queue depth
+         */
+        @Override
+        public String toString() {
+            return String.format("%s %d done (%.1f/s, %.1f ms each, %d queued)", stageName, getProcessedCount(),
+                    findThroughputPerSecond(), findAverageItemMillis(), getQueueDepth());
+        }
+    }
+
+    // A fetched request waiting to be parsed
+    private static class FetchedPage {
+        private final PageRequest request;
+        private final String content;
+
+        private FetchedPage(PageRequest request, String content) {
+            this.request = request;
+            this.content = content;
+        }
+    }
+
+    // Observations from one request waiting to be merged
+    private static class ParsedBatch {
+        private final PageRequest request;
+        private final List<ProductObservation> observations;
+        private final Runnable mergeAction;
+
+        private ParsedBatch(PageRequest request, List<ProductObservation> observations, Runnable mergeAction) {
+            this.request = request;
+            this.observations = new ArrayList<ProductObservation>(observations);
+            this.mergeAction = mergeAction;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package b7.tools.tracking;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * htmlunit WebConnection used while crawling stores. Requests to hosts other than the store's
+ * (analytics, ads, widgets) and requests for resources the crawlers never read (style sheets,
+ * images, fonts, media) are answered with an empty response without touching the network.
+ * The store's static JavaScript is cached by the WebClient itself (see HtmlUnitCrawlProfile)
+ */
+public class CrawlWebConnection extends WebConnectionWrapper {
+
+    // Path endings of resources that the crawlers never need
+    public static final List<String> BLOCKED_RESOURCE_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(
+            ".css", ".png", ".jpg", ".jpeg", ".gif", ".svg", ".webp", ".ico", ".bmp",
+            ".woff", ".woff2", ".ttf", ".otf", ".eot", ".mp4", ".webm", ".mp3"));
+
+    private List<String> allowedHostSuffixes;  // Hosts (or parent domains) that requests are allowed to go to
+
+    /**
+     * Constructs a new CrawlWebConnection that wraps the WebClient's current connection
+     * @param webClient the WebClient to wrap the connection of
+     * @param allowedHostSuffixes hosts (or parent domains, like "example.com") requests are allowed to go to
+     */
+    public CrawlWebConnection(WebClient webClient, Collection<String> allowedHostSuffixes) {
+        super(webClient);
+        this.allowedHostSuffixes = new ArrayList<String>();
+        for(String allowedHostSuffix : allowedHostSuffixes) {
+            this.allowedHostSuffixes.add(allowedHostSuffix.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Answers the request with an empty response if it is blocked, or from the network otherwise
+     * @param request the request to answer
+     * @return the response to the request
+     * @throws IOException if the request had to go to the network and failed
+     */
+    @Override
+    public WebResponse getResponse(WebRequest request) throws IOException {
+        if(isBlocked(request.getUrl())) {
+            return createEmptyResponse(request);
+        }
+        return super.getResponse(request);
+    }
+
+    /**
+     * Closes the wrapped connection
+     * @throws IOException if the wrapped connection could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        }
+        catch(IOException | RuntimeException ex) {
+            throw ex;
+        }
+        catch(Exception ex) {
+            throw new IOException("Could not close the wrapped connection", ex);
+        }
+    }
+
+    /**
+     * Checks if a request to the URL should be answered with an empty response
+     * @param url the URL to check
+     * @return true if the URL is on a host that is not allowed or is a resource type the crawlers do not need
+     */
+    public boolean isBlocked(URL url) {
+        String protocol = url.getProtocol();
+        if(!"http".equals(protocol) && !"https".equals(protocol)) {
+            return false;  // about:blank, data: URLs and the like never reach the network anyway
+        }
+        if(!isAllowedHost(url.getHost())) {
+            return true;
+        }
+        String path = url.getPath().toLowerCase(Locale.ROOT);
+        for(String blockedResourceExtension : BLOCKED_RESOURCE_EXTENSIONS) {
+            if(path.endsWith(blockedResourceExtension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the host is one of the allowed hosts (or is under one of the allowed parent domains)
+     * @param host the host to check
+     * @return true if requests to the host are allowed
+     */
+    private boolean isAllowedHost(String host) {
+        String lowercaseHost = host.toLowerCase(Locale.ROOT);
+        for(String allowedHostSuffix : allowedHostSuffixes) {
+            if(lowercaseHost.equals(allowedHostSuffix) || lowercaseHost.endsWith("." + allowedHostSuffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Static JavaScript is recognized by its path, since query strings usually only carry cache-busting versions
+    private static boolean isStaticScript(URL url) {
+        return url.getPath().toLowerCase(Locale.ROOT).endsWith(".js");
+    }
+
+    /**
+     * Creates an empty 200 response to a blocked request
+     * @param request the blocked request
+     * @return an empty response
+     */
+    private static WebResponse createEmptyResponse(WebRequest request) {
+        List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        String contentType = isStaticScript(request.getUrl()) ? "application/javascript" : "text/plain";
+        headers.add(new NameValuePair("Content-Type", contentType));
+        return new WebResponse(new WebResponseData(new byte[0], 200, "OK", headers), request, 0);
+    }
+}
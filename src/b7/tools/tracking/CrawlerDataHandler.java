@@ -7,6 +7,8 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.Set;
 
@@ -179,6 +181,172 @@ public class CrawlerDataHandler {
         return null;
     }
 
+    /**
+     * Saves the given CrawlCheckpoint into the specified filename (.json format suggested)
+     * @param checkpoint the CrawlCheckpoint to save (crawlers can keep adding to it while it is being saved)
+     * @param filename the file to save the CrawlCheckpoint to
+     */
+    public static void saveCrawlCheckpoint(CrawlCheckpoint checkpoint, String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        // Try to infer a path of folders that we might have to make from the filename
+        int forwardSlashLastIndex = filename.lastIndexOf("/");
+        File path = null;
+        File file = new File(filename);
+        File temporaryFile = new File(filename + ".tmp");
+        if(forwardSlashLastIndex != -1) {
+            path = new File(filename.substring(0, forwardSlashLastIndex));
+        }
+        try {
+            if(path!= null && !path.exists()) {  // Create path directories if they do not exist
+                path.mkdirs();
+            }
+            // Write to a temporary file first, so dying partway through a save does not lose the previous checkpoint
+            synchronized(checkpoint) {
+                mapper.writeValue(temporaryFile, checkpoint);
+                checkpoint.markSaved();
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not save Crawl Checkpoint to " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not save Crawl Checkpoint to " + filename);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a CrawlCheckpoint object from the specified filename
+     * @param filename the file to load a CrawlCheckpoint from
+     * @return the loaded CrawlCheckpoint, or null if there was an issue with loading the file
+     */
+    public static CrawlCheckpoint loadCrawlCheckpoint(String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        File file = new File(filename);
+        try {
+            return mapper.readValue(file, CrawlCheckpoint.class);
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not load Crawl Checkpoint from " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not load Crawl Checkpoint from " + filename);
+            ex.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Saves the given SitemapSnapshot into the specified filename (.json format suggested)
+     * @param sitemapSnapshot the SitemapSnapshot to save
+     * @param filename the file to save the SitemapSnapshot to
+     */
+    public static void saveSitemapSnapshot(SitemapSnapshot sitemapSnapshot, String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        // Try to infer a path of folders that we might have to make from the filename
+        int forwardSlashLastIndex = filename.lastIndexOf("/");
+        File path = null;
+        File file = new File(filename);
+        if(forwardSlashLastIndex != -1) {
+            path = new File(filename.substring(0, forwardSlashLastIndex));
+        }
+        try {
+            if(path!= null && !path.exists()) {  // Create path directories if they do not exist
+                path.mkdirs();
+            }
+            synchronized(sitemapSnapshot) {
+                mapper.writeValue(file, sitemapSnapshot);
+            }
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not save Sitemap Snapshot to " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not save Sitemap Snapshot to " + filename);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a SitemapSnapshot object from the specified filename
+     * @param filename the file to load a SitemapSnapshot from
+     * @return the loaded SitemapSnapshot, or null if there was an issue with loading the file
+     */
+    public static SitemapSnapshot loadSitemapSnapshot(String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        File file = new File(filename);
+        try {
+            return mapper.readValue(file, SitemapSnapshot.class);
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not load Sitemap Snapshot from " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not load Sitemap Snapshot from " + filename);
+            ex.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Saves the given ListingPageFingerprints into the specified filename (.json format suggested)
+     * @param listingPageFingerprints the ListingPageFingerprints to save
+     * @param filename the file to save the ListingPageFingerprints to
+     */
+    public static void saveListingPageFingerprints(ListingPageFingerprints listingPageFingerprints, String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        // Try to infer a path of folders that we might have to make from the filename
+        int forwardSlashLastIndex = filename.lastIndexOf("/");
+        File path = null;
+        File file = new File(filename);
+        if(forwardSlashLastIndex != -1) {
+            path = new File(filename.substring(0, forwardSlashLastIndex));
+        }
+        try {
+            if(path!= null && !path.exists()) {  // Create path directories if they do not exist
+                path.mkdirs();
+            }
+            synchronized(listingPageFingerprints) {
+                mapper.writeValue(file, listingPageFingerprints);
+            }
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not save Listing Page Fingerprints to " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not save Listing Page Fingerprints to " + filename);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a ListingPageFingerprints object from the specified filename
+     * @param filename the file to load a ListingPageFingerprints from
+     * @return the loaded ListingPageFingerprints, or null if there was an issue with loading the file
+     */
+    public static ListingPageFingerprints loadListingPageFingerprints(String filename) {
+        ObjectMapper mapper = new ObjectMapper();
+        File file = new File(filename);
+        try {
+            return mapper.readValue(file, ListingPageFingerprints.class);
+        }
+        catch(JsonMappingException ex) {
+            System.err.println("[ERROR] JsonMappingException Could not load Listing Page Fingerprints from " + filename);
+            ex.printStackTrace();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not load Listing Page Fingerprints from " + filename);
+            ex.printStackTrace();
+        }
+        return null;
+    }
+
     /**
      * Takes the given crawl data, and saves it in a Excel-friendly CSV format to the specified filename
      * @param crawlData the crawl data to generate a CSV for
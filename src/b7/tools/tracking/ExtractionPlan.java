@@ -0,0 +1,157 @@
+package b7.tools.tracking;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.util.Arrays;
+
+/**
+ * A precompiled plan for pulling products out of a store's listing pages. The CSS selectors are parsed into
+ * evaluators once (when the plan is made) instead of on every product, each field lookup stops at its first
+ * match instead of collecting every match, and field values are written into a Record that is reused from one
+ * product to the next. Field text comes from the parsed page, which already has HTML entities (like "&amp;amp;") decoded
+ */
+public class ExtractionPlan {
+
+    private final Evaluator productEvaluator;  // Matches the element holding everything listed for one product
+    private final Field[] fields;  // What to read from each product
+    private final Evaluator[] fieldEvaluators;  // Compiled selector of each field
+
+    /**
+     * Constructs a new ExtractionPlan, compiling its selectors
+     * @param productSelector CSS selector matching the element holding everything listed for one product
+     * @param fields what to read from each product (a field's index is its position in this list)
+     * @throws org.jsoup.select.Selector.SelectorParseException if one of the selectors is not valid CSS
+     */
+    public ExtractionPlan(String productSelector, Field... fields) {
+        productEvaluator = QueryParser.parse(productSelector);
+        this.fields = fields;
+        fieldEvaluators = new Evaluator[fields.length];
+        for(int i = 0; i < fields.length; i++) {
+            fieldEvaluators[i] = QueryParser.parse(fields[i].selector);
+        }
+    }
+
+    /**
+     * Finds the element of every product on a page
+     * @param root the page (or the part of it) to look through
+     * @return the element of every product, in page order
+     */
+    public Elements findProducts(Element root) {
+        return Collector.collect(productEvaluator, root);
+    }
+
+    /**
+     * Finds the first element (in page order) a field's selector matches inside a product
+     * @param fieldIndex index of the field
+     * @param productElement the element of the product
+     * @return the first matching element, or null if nothing matches
+     */
+    public Element findFirst(int fieldIndex, Element productElement) {
+        return findFirst(fieldEvaluators[fieldIndex], productElement, productElement);
+    }
+
+    // Depth-first walk through the child nodes (instead of children(), which makes a new list for every element)
+    private static Element findFirst(Evaluator evaluator, Element root, Element element) {
+        if(evaluator.matches(root, element)) {
+            return element;
+        }
+        for(int i = 0; i < element.childNodeSize(); i++) {
+            Node childNode = element.childNode(i);
+            if(childNode instanceof Element) {
+                Element match = findFirst(evaluator, root, (Element) childNode);
+                if(match != null) {
+                    return match;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a record with room for every field of this plan
+     * @return a new, empty record
+     */
+    public Record createRecord() {
+        return new Record(fields.length);
+    }
+
+    /**
+     * Reads every field of a product into a record (overwriting what the record held for the previous product)
+     * @param productElement the element of the product
+     * @param record the record to write the field values into (made by createRecord())
+     */
+    public void extract(Element productElement, Record record) {
+        for(int i = 0; i < fields.length; i++) {
+            Element fieldElement = findFirst(i, productElement);
+            if(fieldElement == null) {
+                record.values[i] = "";
+            }
+            else if(fields[i].attributeName == null) {
+                record.values[i] = fieldElement.text().trim();
+            }
+            else {
+                record.values[i] = fieldElement.attr(fields[i].attributeName);
+            }
+        }
+    }
+
+    /**
+     * Something to read from each product: the text or an attribute of the first element a selector matches
+     */
+    public static class Field {
+        private final String selector;
+        private final String attributeName;
+
+        /**
+         * Constructs a new Field
+         * @param selector CSS selector of the element to read, looked for inside the product's element
+         * @param attributeName name of the attribute to read from the element (null to read the element's text)
+         */
+        public Field(String selector, String attributeName) {
+            this.selector = selector;
+            this.attributeName = attributeName;
+        }
+
+        /**
+         * Returns the CSS selector of the element to read
+         * @return the CSS selector of the element to read
+         */
+        public String getSelector() {
+            return selector;
+        }
+
+        /**
+         * Returns the name of the attribute to read
+         * @return the name of the attribute to read (null if the element's text is read)
+         */
+        public String getAttributeName() {
+            return attributeName;
+        }
+    }
+
+    /**
+     * The field values read from one product (reused from one product to the next)
+     */
+    public static class Record {
+        private final String[] values;
+
+        private Record(int fieldCount) {
+            values = new String[fieldCount];
+            Arrays.fill(values, "");
+        }
+
+        /**
+         * Returns the value read for a field
+         * @param fieldIndex index of the field
+         * @return the value read for the field (empty String if the product had nothing matching the field)
+         */
+        public String getValue(int fieldIndex) {
+            return values[fieldIndex];
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package b7.tools.tracking;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Chooses between a plain HTTP fetch and a headless browser for each kind of page. The first time
+ * a URL pattern is seen, the page is fetched with plain HTTP and checked for the markers the crawler
+ * needs (CSS selectors); the headless browser is only used if the markers are missing from the plain page but
+ * show up once the page's JavaScript runs (a page without them either way is just empty). The decision
+ * is remembered per URL pattern (and optionally saved to disk for the next run), and is checked again
+ * every REVERIFY_INTERVAL fetches in case the store changes how its pages are built
+ */
+public class FetchStrategySelector {
+
+    /**
+     * Ways a page can be fetched
+     */
+    public enum Strategy {
+        PLAIN,  // Plain HTTP GET (WebCrawler.readUrlContents)
+        HEADLESS  // Headless browser that runs the page's JavaScript (WebCrawler.readUrlContentsWithJavaScriptHtmlunit)
+    }
+
+    // Where the shared selector saves its decisions
+    public static final String DEFAULT_DECISIONS_FILENAME = "savedata/fetchstrategies.json";
+
+    // How many fetches of a URL pattern go by between checks that its decision still holds
+    public static final int REVERIFY_INTERVAL = 25;
+
+    // The selector used by the crawlers when no other selector has been chosen
+    private static FetchStrategySelector defaultSelector;
+
+    private String decisionsFilename;  // File the decisions are saved to (null to keep them in memory only)
+    private Map<String, Strategy> decisions;  // Decided strategy for each URL pattern (plus markers)
+    private Map<String, AtomicInteger> fetchCounts;  // How many times each URL pattern (plus markers) has been fetched
+
+    /**
+     * Constructs a new FetchStrategySelector
+     * @param decisionsFilename file to load decisions from and save decisions to (null to keep decisions in memory only)
+     */
+    public FetchStrategySelector(String decisionsFilename) {
+        this.decisionsFilename = decisionsFilename;
+        decisions = new ConcurrentHashMap<String, Strategy>();
+        fetchCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        if(decisionsFilename != null && new File(decisionsFilename).exists()) {
+            loadDecisions();
+        }
+    }
+
+    /**
+     * Returns the selector shared by all crawlers (creating one that saves to DEFAULT_DECISIONS_FILENAME if needed)
+     * @return the selector shared by all crawlers
+     */
+    public static synchronized FetchStrategySelector getDefaultSelector() {
+        if(defaultSelector == null) {
+            defaultSelector = new FetchStrategySelector(DEFAULT_DECISIONS_FILENAME);
+        }
+        return defaultSelector;
+    }
+
+    /**
+     * Sets the selector shared by all crawlers
+     * @param selector the new selector to share (ignored if null)
+     */
+    public static synchronized void setDefaultSelector(FetchStrategySelector selector) {
+        if(selector != null) {
+            defaultSelector = selector;
+        }
+    }
+
+    /**
+     * Turns a URL into the pattern decisions are remembered by: the scheme, host, and path,
+     * with runs of digits in the path replaced by "#" and the query / fragment dropped
+     * (so every page of a listing shares one pattern)
+     * @param url the URL to find the pattern of
+     * @return the URL's pattern
+     */
+    public static String findUrlPattern(String url) {
+        int queryIndex = url.indexOf('?');
+        int fragmentIndex = url.indexOf('#');
+        int endIndex = url.length();
+        if(queryIndex != -1) {
+            endIndex = queryIndex;
+        }
+        if(fragmentIndex != -1 && fragmentIndex < endIndex) {
+            endIndex = fragmentIndex;
+        }
+        return url.substring(0, endIndex).replaceAll("[0-9]+", "#");
+    }
+
+    /**
+     * Fetches a page with whichever strategy gets the given markers onto the page most cheaply
+     * @param url the URL to fetch
+     * @param webClientPool gives the pool to borrow the headless browser from (only called if one is needed, so a
+     *                      crawl that never needs it never starts one)
+     * @param markerSelectors CSS selectors which must all match something for the page to be usable
+     *                        (also used as the ready selectors of the headless browser)
+     * @return the HTML of the page, or null if the page could not be fetched
+     */
+    public String fetch(String url, Supplier<HtmlUnitWebClientPool> webClientPool, String... markerSelectors) {
+        return fetch(url, webClientPool, null, markerSelectors);
+    }
+
+    /**
+     * Fetches a page with whichever strategy gets the given markers onto the page most cheaply, reading a plainly
+     * fetched page only up to the given cutoff (the headless browser always gives back the whole page)
+     * @param url the URL to fetch
+     * @param webClientPool gives the pool to borrow the headless browser from (only called if one is needed)
+     * @param cutoff where to stop reading a plainly fetched page (null to read the whole page; the markers must come before it)
+     * @param markerSelectors CSS selectors which must all match something for the page to be usable
+     *                        (also used as the ready selectors of the headless browser)
+     * @return the HTML of the page, or null if the page could not be fetched
+     */
+    public String fetch(String url, Supplier<HtmlUnitWebClientPool> webClientPool, PageStreamReader.Cutoff cutoff,
+                        String... markerSelectors) {
+        String decisionKey = findDecisionKey(url, markerSelectors);
+        Strategy decision = decisions.get(decisionKey);
+        int fetchCount = fetchCounts.computeIfAbsent(decisionKey, key -> new AtomicInteger(0)).incrementAndGet();
+        boolean verify = decision == null || fetchCount % REVERIFY_INTERVAL == 0;
+
+        if(decision == Strategy.HEADLESS && !verify) {
+            return fetchHeadless(url, webClientPool, markerSelectors);
+        }
+
+        String pageHTML = WebCrawler.readUrlContents(url, cutoff);
+        if(pageHTML == null) {
+            // A failed request says nothing about whether the page needs JavaScript, so leave the decision alone
+            return decision == Strategy.HEADLESS ? fetchHeadless(url, webClientPool, markerSelectors) : null;
+        }
+        if(!verify) {
+            return pageHTML;
+        }
+
+        if(hasMarkers(pageHTML, markerSelectors)) {
+            recordDecision(decisionKey, Strategy.PLAIN);
+            return pageHTML;
+        }
+
+        // The markers can also be missing because there is nothing to show (an empty page past the last page, or a
+        //   soft error page), so only switch once the headless browser shows the page is real and has the markers
+        String headlessHTML = fetchHeadless(url, webClientPool, markerSelectors);
+        if(headlessHTML != null && hasMarkers(headlessHTML, markerSelectors)) {
+            recordDecision(decisionKey, Strategy.HEADLESS);
+            return headlessHTML;
+        }
+        return decision == Strategy.HEADLESS && headlessHTML != null ? headlessHTML : pageHTML;
+    }
+
+    /**
+     * Looks up the strategy decided for a URL and its markers
+     * @param url the URL to look up
+     * @param markerSelectors the markers the page was fetched for
+     * @return the strategy decided for the URL's pattern, or null if no decision has been made yet
+     */
+    public Strategy findDecision(String url, String... markerSelectors) {
+        return decisions.get(findDecisionKey(url, markerSelectors));
+    }
+
+    /**
+     * Checks if the HTML has something matching every marker
+     * @param pageHTML the HTML to check
+     * @param markerSelectors CSS selectors that must all match something
+     * @return true if every marker matches something in the HTML
+     */
+    public static boolean hasMarkers(String pageHTML, String... markerSelectors) {
+        Document document = Jsoup.parse(pageHTML);
+        for(String markerSelector : markerSelectors) {
+            if(document.select(markerSelector).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The same URL pattern can need different strategies depending on what the crawler is looking for on it
+    private static String findDecisionKey(String url, String... markerSelectors) {
+        return findUrlPattern(url) + " " + String.join(" ", markerSelectors);
+    }
+
+    /**
+     * Fetches a page with the headless browser (getting the pool to borrow it from only now)
+     * @return the HTML of the page, or null if the page could not be fetched
+     */
+    private static String fetchHeadless(String url, Supplier<HtmlUnitWebClientPool> webClientPool,
+                                        String... markerSelectors) {
+        String pageHTML = WebCrawler.readUrlContentsWithJavaScriptHtmlunit(url, webClientPool.get(), markerSelectors);
+        return "".equals(pageHTML) ? null : pageHTML;
+    }
+
+    /**
+     * Remembers a decision, saving all the decisions if it is a new one
+     * @param decisionKey the URL pattern (plus markers) the decision is for
+     * @param strategy the decided strategy
+     */
+    private void recordDecision(String decisionKey, Strategy strategy) {
+        if(decisions.put(decisionKey, strategy) != strategy && decisionsFilename != null) {
+            saveDecisions();
+        }
+    }
+
+    /**
+     * Saves the decisions to decisionsFilename
+     */
+    private synchronized void saveDecisions() {
+        File file = new File(decisionsFilename);
+        File path = file.getParentFile();
+        try {
+            if(path != null && !path.exists()) {  // Create path directories if they do not exist
+                path.mkdirs();
+            }
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, new TreeMap<String, Strategy>(decisions));
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not save fetch strategy decisions to " + decisionsFilename);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the decisions saved in decisionsFilename
+     */
+    private void loadDecisions() {
+        try {
+            Map<String, Strategy> loadedDecisions = new ObjectMapper().readValue(new File(decisionsFilename),
+                    new TypeReference<Map<String, Strategy>>() {});
+            decisions.putAll(loadedDecisions);
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not load fetch strategy decisions from " + decisionsFilename);
+            ex.printStackTrace();
+        }
+    }
+}
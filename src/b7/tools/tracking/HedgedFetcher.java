@@ -0,0 +1,246 @@
+package b7.tools.tracking;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs fetches with hedging: if a fetch has not finished by the time most recent fetches had
+ * (a latency percentile of the last LATENCY_WINDOW_SIZE fetches), a second attempt of the same fetch
+ * is started, and whichever attempt succeeds first wins. The other attempt is aborted through its
+ * AbortSignal (which disconnects the connection it is blocked reading from, giving back its host permit),
+ * and its result is ignored if it still finishes. Hedges are limited to a fraction of all fetches, and
+ * attempts run on a bounded number of threads, so a slow server does not get twice the load
+ */
+public class HedgedFetcher implements AutoCloseable {
+
+    // Default settings
+    public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+    public static final double DEFAULT_HEDGE_BUDGET_FRACTION = 0.10;
+
+    // Most attempts that can run at once (more wait for a thread, and no fetch is hedged while every thread is busy)
+    public static final int DEFAULT_MAX_ATTEMPT_THREADS = 16;
+
+    // How many recent fetch latencies (of the winning attempts) the hedge delay is worked out from
+    public static final int LATENCY_WINDOW_SIZE = 200;
+
+    // How many successful fetches need to be seen before any fetch is hedged
+    public static final int MIN_LATENCY_SAMPLES = 20;
+
+    private double hedgePercentile;  // Latency percentile (0 to 1) a fetch has to pass before it is hedged
+    private double hedgeBudgetFraction;  // Most hedges allowed, as a fraction of all fetches
+    private ThreadPoolExecutor attemptExecutor;  // Runs the attempts, so the caller can stop waiting on a slow one
+
+    private long[] latencyWindow;  // Latencies (in milliseconds) of the winning attempts of recent fetches, as a ring
+    private int latencySamples;  // How many latencies have been recorded in total
+
+    private AtomicLong fetches;  // How many fetches were made
+    private AtomicLong hedges;  // How many fetches were hedged
+    private AtomicLong hedgeWins;  // How many hedged fetches were won by the hedge
+
+    /**
+     * Constructs a new HedgedFetcher running at most DEFAULT_MAX_ATTEMPT_THREADS attempts at once
+     * @param name name to give the threads the attempts run on
+     * @param hedgePercentile latency percentile (0 to 1) a fetch has to pass before it is hedged
+     *                        (defaults to DEFAULT_HEDGE_PERCENTILE if value outside of (0, 1) given)
+     * @param hedgeBudgetFraction most hedges allowed, as a fraction of all fetches
+     *                            (defaults to DEFAULT_HEDGE_BUDGET_FRACTION if negative number given)
+     */
+    public HedgedFetcher(String name, double hedgePercentile, double hedgeBudgetFraction) {
+        this(name, hedgePercentile, hedgeBudgetFraction, DEFAULT_MAX_ATTEMPT_THREADS);
+    }
+
+    /**
+     * Constructs a new HedgedFetcher
+     * @param name name to give the threads the attempts run on
+     * @param hedgePercentile latency percentile (0 to 1) a fetch has to pass before it is hedged
+     *                        (defaults to DEFAULT_HEDGE_PERCENTILE if value outside of (0, 1) given)
+     * @param hedgeBudgetFraction most hedges allowed, as a fraction of all fetches
+     *                            (defaults to DEFAULT_HEDGE_BUDGET_FRACTION if negative number given)
+     * @param maxAttemptThreads most attempts that can run at once
+     *                          (defaults to DEFAULT_MAX_ATTEMPT_THREADS if non-positive number given)
+     */
+    public HedgedFetcher(final String name, double hedgePercentile, double hedgeBudgetFraction, int maxAttemptThreads) {
+        this.hedgePercentile = hedgePercentile <= 0 || hedgePercentile >= 1 ? DEFAULT_HEDGE_PERCENTILE : hedgePercentile;
+        this.hedgeBudgetFraction = hedgeBudgetFraction < 0 ? DEFAULT_HEDGE_BUDGET_FRACTION : hedgeBudgetFraction;
+        if(maxAttemptThreads <= 0) {
+            maxAttemptThreads = DEFAULT_MAX_ATTEMPT_THREADS;
+        }
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        attemptExecutor = new ThreadPoolExecutor(maxAttemptThreads, maxAttemptThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-hedged-fetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        attemptExecutor.allowCoreThreadTimeOut(true);
+        latencyWindow = new long[LATENCY_WINDOW_SIZE];
+        fetches = new AtomicLong(0);
+        hedges = new AtomicLong(0);
+        hedgeWins = new AtomicLong(0);
+    }
+
+    /**
+     * Runs a fetch, starting a second attempt of it if the first is slower than the hedge delay (and the budget
+     * and a free attempt thread allow). Once the fetch has a result, every attempt still running is aborted
+     * @param attempt one attempt of the fetch, which gives back null if the attempt failed, and registers with the
+     *                given AbortSignal how to stop it (like WebCrawler.readUrlContents(url, abortSignal) does)
+     * @param <T> type of the fetched result
+     * @return the result of the first attempt to succeed, or null if every attempt failed
+     */
+    public <T> T fetch(final Function<AbortSignal, T> attempt) {
+        fetches.incrementAndGet();
+        final CompletableFuture<T> winner = new CompletableFuture<T>();
+        final AtomicInteger runningAttempts = new AtomicInteger(1);
+        final AbortSignal primaryAbortSignal = new AbortSignal();
+        final AbortSignal hedgeAbortSignal = new AbortSignal();
+        Future<?> primaryAttempt = attemptExecutor.submit(() -> runAttempt(attempt, primaryAbortSignal, winner, runningAttempts, false));
+        Future<?> hedgeAttempt = null;
+        try {
+            long hedgeDelayMillis = findHedgeDelayMillis();
+            if(hedgeDelayMillis >= 0) {
+                try {
+                    return winner.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+                }
+                catch(TimeoutException ex) {
+                    // The fetch is slower than usual, so hedge it if the budget allows (and the hedge would not have to wait)
+                    if(!winner.isDone() && attemptExecutor.getActiveCount() < attemptExecutor.getMaximumPoolSize()
+                            && takeHedgeBudget()) {
+                        runningAttempts.incrementAndGet();
+                        hedgeAttempt = attemptExecutor.submit(() -> runAttempt(attempt, hedgeAbortSignal, winner, runningAttempts, true));
+                    }
+                }
+            }
+            return winner.get();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException ex) {
+            return null;
+        }
+        finally {
+            // Blocking reads ignore interrupts, so the attempts are also aborted (which disconnects their connections)
+            primaryAbortSignal.abort();
+            hedgeAbortSignal.abort();
+            primaryAttempt.cancel(true);
+            if(hedgeAttempt != null) {
+                hedgeAttempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Works out how long a fetch can run before it is hedged
+     * @return the hedge percentile of recent fetch latencies (in milliseconds),
+     *         or -1 if too few fetches have succeeded to tell
+     */
+    public synchronized long findHedgeDelayMillis() {
+        if(latencySamples < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        long[] sortedLatencies = Arrays.copyOf(latencyWindow, Math.min(latencySamples, LATENCY_WINDOW_SIZE));
+        Arrays.sort(sortedLatencies);
+        int percentileIndex = (int) Math.ceil(hedgePercentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(percentileIndex, 0)];
+    }
+
+    /**
+     * Returns how many fetches were made
+     * @return how many fetches were made
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * Returns how many fetches were hedged
+     * @return how many fetches had a second attempt started
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Returns how many hedged fetches were won by the second attempt
+     * @return how many hedged fetches were won by the second attempt
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Stops the threads the attempts run on (interrupting any attempts still running; fetches still waiting on
+     * them abort them as they give up)
+     */
+    @Override
+    public void close() {
+        attemptExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs one attempt, and makes its result the fetch's result if it is the first attempt to succeed
+     * (or if it is the last attempt to fail). Only the latency of the attempt that wins is recorded, since
+     * the other attempt is aborted (or finishes after the fetch is over)
+     */
+    private <T> void runAttempt(Function<AbortSignal, T> attempt, AbortSignal abortSignal, CompletableFuture<T> winner,
+                                AtomicInteger runningAttempts, boolean isHedge) {
+        long startTime = System.nanoTime();
+        T result = null;
+        try {
+            result = attempt.apply(abortSignal);
+        }
+        catch(RuntimeException ex) {
+            if(!winner.isDone() && !abortSignal.isAborted()) {
+                System.err.println("[ERROR] Hedged fetch attempt failed");
+                ex.printStackTrace();
+            }
+        }
+
+        if(result != null) {
+            // Record the latency and count the hedge win before completing, so they are counted by the time the caller
+            //   sees the result (the lock keeps the other attempt from completing in between)
+            synchronized(winner) {
+                if(!winner.isDone()) {
+                    recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                    if(isHedge) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    winner.complete(result);
+                }
+            }
+        }
+        else if(runningAttempts.decrementAndGet() == 0) {
+            synchronized(winner) {
+                winner.complete(null);
+            }
+        }
+    }
+
+    // Uses up one hedge from the budget, if there is one left
+    private boolean takeHedgeBudget() {
+        long hedgesSoFar;
+        do {
+            hedgesSoFar = hedges.get();
+            if(hedgesSoFar + 1 > fetches.get() * hedgeBudgetFraction) {
+                return false;
+            }
+        }
+        while(!hedges.compareAndSet(hedgesSoFar, hedgesSoFar + 1));
+        return true;
+    }
+
+    private synchronized void recordLatency(long latencyMillis) {
+        latencyWindow[latencySamples % LATENCY_WINDOW_SIZE] = latencyMillis;
+        latencySamples++;
+    }
+}
@@ -0,0 +1,348 @@
+package b7.tools.tracking;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts how hard the crawlers hit each host. Every request to a host waits for a permit, which is
+ * limited in two ways: how many requests to the host can be in flight at once, and a token bucket
+ * which spaces requests out over time. Both limits rise additively while the host answers quickly
+ * and successfully, and are cut multiplicatively when it answers 429 / 5xx, fails, or starts answering
+ * much slower than usual (so each crawl settles near the fastest rate the store will put up with).
+ * What counts as usual is kept for each kind of request to a host (see findRequestKind()), since small
+ * product JSON files, 304 responses, and large listing pages from one host take very different times
+ */
+public class HostRateController {
+
+    // Starting and bounding values for the in-flight request limit of each host
+    public static final double DEFAULT_INITIAL_CONCURRENCY = 4;
+    public static final double MIN_CONCURRENCY = 1;
+    public static final double MAX_CONCURRENCY = 32;
+
+    // Starting and bounding values for the requests per second of each host
+    public static final double DEFAULT_INITIAL_REQUESTS_PER_SECOND = 8;
+    public static final double MIN_REQUESTS_PER_SECOND = 0.5;
+    public static final double MAX_REQUESTS_PER_SECOND = 64;
+
+    // How much the limits grow for each healthy response (concurrency grows by about 1 per full window of responses)
+    public static final double ADDITIVE_INCREASE = 1.0;
+
+    // What the limits are multiplied by when the host shows signs of strain
+    public static final double MULTIPLICATIVE_DECREASE = 0.5;
+
+    // Limits are cut at most once per this many milliseconds, so one burst of errors does not cut them to the floor
+    public static final long DECREASE_COOLDOWN_MILLIS = 2000;
+
+    // A response this many times slower than the host's usual latency counts as a sign of strain
+    public static final double LATENCY_STRAIN_FACTOR = 3.0;
+
+    // How much each response moves the usual latency of its kind of request (exponentially weighted moving average)
+    public static final double LATENCY_SMOOTHING = 0.1;
+
+    // Longest a 429 / 503 Retry-After header can pause a host for
+    public static final long MAX_RETRY_AFTER_MILLIS = 60000;
+
+    // Status code to report for a request that failed without a response
+    public static final int FAILED_REQUEST_STATUS = -1;
+
+    // Status code to report for a request that was aborted by the crawler (says nothing about the host)
+    public static final int ABORTED_REQUEST_STATUS = -2;
+
+    // The controller used by WebCrawler when no other controller has been chosen
+    private static HostRateController defaultController;
+
+    private double initialConcurrency;  // In-flight request limit each host starts at
+    private double initialRequestsPerSecond;  // Requests per second each host starts at
+    private Map<String, HostState> hostStates;  // Limits and usage of each host, by host name
+
+    /**
+     * Constructs a new HostRateController with the default starting limits
+     */
+    public HostRateController() {
+        this(DEFAULT_INITIAL_CONCURRENCY, DEFAULT_INITIAL_REQUESTS_PER_SECOND);
+    }
+
+    /**
+     * Constructs a new HostRateController
+     * @param initialConcurrency in-flight request limit each host starts at (clamped to MIN_CONCURRENCY - MAX_CONCURRENCY)
+     * @param initialRequestsPerSecond requests per second each host starts at
+     *                                 (clamped to MIN_REQUESTS_PER_SECOND - MAX_REQUESTS_PER_SECOND)
+     */
+    public HostRateController(double initialConcurrency, double initialRequestsPerSecond) {
+        this.initialConcurrency = clamp(initialConcurrency, MIN_CONCURRENCY, MAX_CONCURRENCY);
+        this.initialRequestsPerSecond = clamp(initialRequestsPerSecond, MIN_REQUESTS_PER_SECOND, MAX_REQUESTS_PER_SECOND);
+        hostStates = new ConcurrentHashMap<String, HostState>();
+    }
+
+    /**
+     * Returns the controller shared by all crawlers (creating it with default settings if needed)
+     * @return the controller shared by all crawlers
+     */
+    public static synchronized HostRateController getDefaultController() {
+        if(defaultController == null) {
+            defaultController = new HostRateController();
+        }
+        return defaultController;
+    }
+
+    /**
+     * Sets the controller shared by all crawlers
+     * @param controller the new controller to share (ignored if null)
+     */
+    public static synchronized void setDefaultController(HostRateController controller) {
+        if(controller != null) {
+            defaultController = controller;
+        }
+    }
+
+    /**
+     * Waits until a request to the URL's host is allowed. Every permit must be given back with release()
+     * @param url the URL about to be requested
+     * @return the permit for the request (URLs without an HTTP host, like about:blank, are never held up)
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public Permit acquire(String url) throws InterruptedException {
+        String host = findHost(url);
+        if(host == null) {
+            return new Permit(null, null);
+        }
+        HostState hostState = hostStates.computeIfAbsent(host, h -> new HostState(initialConcurrency, initialRequestsPerSecond));
+        hostState.acquire();
+        return new Permit(hostState, findRequestKind(url));
+    }
+
+    /**
+     * Gives back a permit, adjusting the host's limits based on how the request went (including how long it took)
+     * @param permit the permit to give back (ignored if null)
+     * @param statusCode HTTP status code of the response (FAILED_REQUEST_STATUS if the request failed without a response)
+     * @param retryAfter value of the response's Retry-After header (null if there was none)
+     */
+    public void release(Permit permit, int statusCode, String retryAfter) {
+        release(permit, statusCode, retryAfter, true);
+    }
+
+    /**
+     * Gives back a permit, adjusting the host's limits based on how the request went
+     * @param permit the permit to give back (ignored if null)
+     * @param statusCode HTTP status code of the response (FAILED_REQUEST_STATUS if the request failed without a response)
+     * @param retryAfter value of the response's Retry-After header (null if there was none)
+     * @param measureLatency true to judge the host by how long the request took, false if the permit was also held
+     *                       for work besides the request (like rendering the page in a headless browser)
+     */
+    public void release(Permit permit, int statusCode, String retryAfter, boolean measureLatency) {
+        if(permit == null || permit.hostState == null || permit.released) {
+            return;
+        }
+        permit.released = true;
+        long latencyMillis = measureLatency ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - permit.startNanos) : -1;
+        permit.hostState.release(permit.requestKind, statusCode, latencyMillis, parseRetryAfterMillis(retryAfter));
+    }
+
+    /**
+     * Returns the current in-flight request limit of a host
+     * @param host the host to look up
+     * @return the host's in-flight request limit (the starting limit if the host has not been requested yet)
+     */
+    public double findConcurrencyLimit(String host) {
+        HostState hostState = hostStates.get(host.toLowerCase(Locale.ROOT));
+        if(hostState == null) {
+            return initialConcurrency;
+        }
+        synchronized(hostState) {
+            return hostState.concurrencyLimit;
+        }
+    }
+
+    /**
+     * Returns the current requests per second of a host
+     * @param host the host to look up
+     * @return the host's requests per second (the starting rate if the host has not been requested yet)
+     */
+    public double findRequestsPerSecond(String host) {
+        HostState hostState = hostStates.get(host.toLowerCase(Locale.ROOT));
+        if(hostState == null) {
+            return initialRequestsPerSecond;
+        }
+        synchronized(hostState) {
+            return hostState.requestsPerSecond;
+        }
+    }
+
+    /**
+     * Finds the host of an HTTP(S) URL
+     * @param url the URL to find the host of
+     * @return the lowercase host of the URL, or null if the URL is not an HTTP(S) URL with a host
+     */
+    public static String findHost(String url) {
+        try {
+            URL parsedURL = new URL(url);
+            String protocol = parsedURL.getProtocol();
+            if((!"http".equals(protocol) && !"https".equals(protocol)) || parsedURL.getHost().isEmpty()) {
+                return null;
+            }
+            return parsedURL.getHost().toLowerCase(Locale.ROOT);
+        }
+        catch(MalformedURLException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds what kind of request a URL is, to keep the usual latency of each kind apart: the first part of its path,
+     * along with its file extension (so /products/show-a.js and /products/show-a are different kinds)
+     * @param url the URL to find the kind of request of
+     * @return the kind of request the URL is (like "products.js", or "" for the root of the host)
+     */
+    public static String findRequestKind(String url) {
+        try {
+            String path = new URL(url).getPath();
+            int segmentStart = path.startsWith("/") ? 1 : 0;
+            int segmentEnd = path.indexOf('/', segmentStart);
+            String firstSegment = path.substring(segmentStart, segmentEnd < 0 ? path.length() : segmentEnd);
+            String lastSegment = path.substring(path.lastIndexOf('/') + 1);
+            int extensionStart = lastSegment.lastIndexOf('.');
+            return extensionStart < 0 ? firstSegment : firstSegment + lastSegment.substring(extensionStart);
+        }
+        catch(MalformedURLException ex) {
+            return "";
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date; only the number of seconds form is used
+    private static long parseRetryAfterMillis(String retryAfter) {
+        if(retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.min(Long.parseLong(retryAfter.trim()) * 1000, MAX_RETRY_AFTER_MILLIS);
+        }
+        catch(NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Permission to make one request, which must be given back with release() once the request is done
+     */
+    public static class Permit {
+        private final HostState hostState;  // State of the host the request is to (null if the request is not controlled)
+        private final String requestKind;  // What kind of request it is (see findRequestKind())
+        private final long startNanos;  // When the request was allowed to start
+        private boolean released;  // Whether the permit has been given back
+
+        private Permit(HostState hostState, String requestKind) {
+            this.hostState = hostState;
+            this.requestKind = requestKind;
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Limits and usage of one host
+     */
+    private static class HostState {
+        private double concurrencyLimit;  // How many requests can be in flight at once
+        private double requestsPerSecond;  // How quickly tokens refill
+        private double tokens;  // Requests that can start right away
+        private long lastRefillNanos;  // When the tokens were last refilled
+        private int inFlight;  // Requests currently in flight
+        private Map<String, Double> usualLatencyMillis;  // Moving average of the response latencies of each kind of request
+        private long lastDecreaseMillis;  // When the limits were last cut
+        private long pausedUntilMillis;  // No requests start before this time (set by Retry-After)
+
+        private HostState(double concurrencyLimit, double requestsPerSecond) {
+            this.concurrencyLimit = concurrencyLimit;
+            this.requestsPerSecond = requestsPerSecond;
+            tokens = 1;
+            lastRefillNanos = System.nanoTime();
+            usualLatencyMillis = new HashMap<String, Double>();
+        }
+
+        /**
+         * Waits for room in flight, for a token, and for any pause to pass, then takes a spot in flight
+         */
+        private synchronized void acquire() throws InterruptedException {
+            while(true) {
+                refillTokens();
+                long pauseMillis = pausedUntilMillis - System.currentTimeMillis();
+                boolean hasRoom = inFlight < Math.floor(concurrencyLimit);
+                if(hasRoom && tokens >= 1 && pauseMillis <= 0) {
+                    tokens -= 1;
+                    inFlight++;
+                    return;
+                }
+
+                // Sleep until the next token or the end of the pause (a release wakes us up sooner)
+                long waitMillis;
+                if(pauseMillis > 0) {
+                    waitMillis = pauseMillis;
+                }
+                else if(!hasRoom) {
+                    waitMillis = 0;  // Only a release can make room
+                }
+                else {
+                    waitMillis = (long) Math.ceil((1 - tokens) * 1000 / requestsPerSecond);
+                }
+                wait(Math.max(waitMillis, pauseMillis > 0 || hasRoom ? 1 : 0));
+            }
+        }
+
+        /**
+         * Frees a spot in flight and adjusts the limits based on how the request went. The response is judged against
+         * the usual latency of its kind of request, which every response (slow ones too) then moves, so a lasting change
+         * in how quickly the host answers only cuts the limits until the usual latency has caught up with it
+         * @param requestKind what kind of request it was (responses that were not modified are kept apart from the rest)
+         * @param latencyMillis how long the request took (negative if it is not to be judged by how long it took)
+         */
+        private synchronized void release(String requestKind, int statusCode, long latencyMillis, long retryAfterMillis) {
+            inFlight--;
+            if(statusCode == ABORTED_REQUEST_STATUS) {
+                notifyAll();
+                return;
+            }
+            String latencyKind = statusCode == 304 ? requestKind + " 304" : requestKind;
+            Double usualLatency = usualLatencyMillis.get(latencyKind);
+            boolean strained = statusCode == FAILED_REQUEST_STATUS || statusCode == 429 || statusCode >= 500
+                    || (usualLatency != null && usualLatency > 0 && latencyMillis > usualLatency * LATENCY_STRAIN_FACTOR);
+            if(statusCode != FAILED_REQUEST_STATUS && latencyMillis >= 0) {
+                usualLatencyMillis.put(latencyKind, usualLatency == null ? latencyMillis
+                        : usualLatency + LATENCY_SMOOTHING * (latencyMillis - usualLatency));
+            }
+            if(strained) {
+                long now = System.currentTimeMillis();
+                if(now - lastDecreaseMillis >= DECREASE_COOLDOWN_MILLIS) {
+                    lastDecreaseMillis = now;
+                    concurrencyLimit = clamp(concurrencyLimit * MULTIPLICATIVE_DECREASE, MIN_CONCURRENCY, MAX_CONCURRENCY);
+                    requestsPerSecond = clamp(requestsPerSecond * MULTIPLICATIVE_DECREASE, MIN_REQUESTS_PER_SECOND,
+                            MAX_REQUESTS_PER_SECOND);
+                }
+                if(retryAfterMillis > 0) {
+                    pausedUntilMillis = Math.max(pausedUntilMillis, now + retryAfterMillis);
+                }
+            }
+            else {
+                concurrencyLimit = clamp(concurrencyLimit + ADDITIVE_INCREASE / concurrencyLimit, MIN_CONCURRENCY, MAX_CONCURRENCY);
+                requestsPerSecond = clamp(requestsPerSecond + ADDITIVE_INCREASE / concurrencyLimit, MIN_REQUESTS_PER_SECOND,
+                        MAX_REQUESTS_PER_SECOND);
+            }
+            notifyAll();
+        }
+
+        // Adds the tokens earned since the last refill (holding at most enough for one full window of requests)
+        private void refillTokens() {
+            long now = System.nanoTime();
+            double earnedTokens = (now - lastRefillNanos) / 1e9 * requestsPerSecond;
+            tokens = Math.min(Math.max(concurrencyLimit, 1), tokens + earnedTokens);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package b7.tools.tracking;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * Lean htmlunit rendering profile for crawling store listing pages. Pages are rendered
+ * without CSS or images, only the store's own hosts are contacted (see CrawlWebConnection),
+ * and the store's static scripts (and their compiled form) are cached across page loads
+ */
+public class HtmlUnitCrawlProfile {
+
+    // How many entries (responses / compiled scripts) each client's cache can hold
+    public static final int SCRIPT_CACHE_MAX_SIZE = 200;
+
+    // How many pages of history a client keeps (crawling never goes back, so old pages only waste memory)
+    public static final int HISTORY_SIZE_LIMIT = 1;
+
+    /**
+     * Creates a WebClient set up for store crawling
+     * @param allowedHostSuffixes hosts (or parent domains, like "example.com") the client may make requests to
+     * @return a new WebClient using the store crawling profile
+     */
+    public static WebClient createStoreCrawlingWebClient(String... allowedHostSuffixes) {
+        // Turn off the error messages from htmlunit
+        java.util.logging.Logger.getLogger("com.gargoylesoftware").setLevel(Level.OFF);
+
+        WebClient webClient = new WebClient();
+        WebClientOptions options = webClient.getOptions();
+        options.setTimeout(HttpTransport.getDefaultTransport().getReadTimeoutMillis());
+        options.setCssEnabled(false);
+        options.setDownloadImages(false);
+        options.setAppletEnabled(false);
+        options.setGeolocationEnabled(false);
+        options.setPopupBlockerEnabled(true);
+        options.setHistorySizeLimit(HISTORY_SIZE_LIMIT);
+        options.setThrowExceptionOnScriptError(false);
+        options.setPrintContentOnFailingStatusCode(false);
+
+        webClient.setCache(new ScriptCache());
+        webClient.setWebConnection(new CrawlWebConnection(webClient, Arrays.asList(allowedHostSuffixes)));
+        return webClient;
+    }
+
+    /**
+     * htmlunit Cache that keeps static scripts (and the compiled scripts htmlunit stores alongside them)
+     * even when the store's response headers do not allow caching, since listing pages all load the same
+     * bundles. Other responses are cached only when their headers allow it
+     */
+    private static class ScriptCache extends Cache {
+
+        private static final long serialVersionUID = 1L;
+
+        private ScriptCache() {
+            setMaxSize(SCRIPT_CACHE_MAX_SIZE);
+        }
+
+        @Override
+        protected boolean isCacheable(WebRequest request, WebResponse response) {
+            boolean isStaticScript = request.getHttpMethod() == HttpMethod.GET && response.getStatusCode() == 200
+                    && request.getUrl().getPath().toLowerCase(Locale.ROOT).endsWith(".js");
+            return isStaticScript || super.isCacheable(request, response);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package b7.tools.tracking;
+
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Bounded pool of htmlunit WebClient objects, so that crawl threads can reuse an already-started
+ * headless browser for each page instead of starting (and leaking) a new one every time.
+ * Clients are reset between pages, and are closed and replaced once they have loaded too many
+ * pages or once the heap is getting full
+ */
+public class HtmlUnitWebClientPool implements AutoCloseable {
+
+    // Default settings for the shared pool
+    public static final int DEFAULT_MAX_CLIENTS = 4;
+    public static final int DEFAULT_PREWARMED_CLIENTS = 1;
+    public static final int DEFAULT_MAX_USES_PER_CLIENT = 25;
+    public static final double DEFAULT_MAX_HEAP_USAGE = 0.80;
+
+    // How often (in milliseconds) a borrower waiting for a client checks whether the pool has been closed
+    private static final long BORROW_POLL_MILLIS = 200;
+
+    // The pool used by WebCrawler when no other pool has been chosen
+    private static HtmlUnitWebClientPool defaultPool;
+
+    private int maxClients;  // Most clients that can exist at once (borrowers wait when all of them are in use)
+    private int maxUsesPerClient;  // How many pages a client can load before it gets replaced
+    private double maxHeapUsage;  // Fraction of the maximum heap which, once in use, makes returned clients get replaced
+    private Supplier<WebClient> webClientFactory;  // Creates new clients for the pool
+
+    private BlockingQueue<WebClient> idleClients;  // Clients ready to be borrowed
+    private Map<WebClient, AtomicInteger> clientUses;  // How many pages each existing client has loaded
+    private int createdClients;  // How many clients currently exist (idle or borrowed)
+    private volatile boolean closed;  // Whether the pool has been closed
+
+    /**
+     * Constructs a new HtmlUnitWebClientPool with default settings that creates clients with createDefaultWebClient()
+     */
+    public HtmlUnitWebClientPool() {
+        this(DEFAULT_MAX_CLIENTS, DEFAULT_PREWARMED_CLIENTS, DEFAULT_MAX_USES_PER_CLIENT, DEFAULT_MAX_HEAP_USAGE,
+                HtmlUnitWebClientPool::createDefaultWebClient);
+    }
+
+    /**
+     * Constructs a new HtmlUnitWebClientPool
+     * @param maxClients most clients that can exist at once (defaults to DEFAULT_MAX_CLIENTS if non-positive number given)
+     * @param prewarmedClients how many clients to create right away (capped at maxClients)
+     * @param maxUsesPerClient how many pages a client can load before being replaced
+     *                         (defaults to DEFAULT_MAX_USES_PER_CLIENT if non-positive number given)
+     * @param maxHeapUsage fraction (0 to 1) of the maximum heap which, once in use, causes returned clients to be replaced
+     *                     (defaults to DEFAULT_MAX_HEAP_USAGE if value outside of (0, 1] given)
+     * @param webClientFactory creates new clients for the pool
+     */
+    public HtmlUnitWebClientPool(int maxClients, int prewarmedClients, int maxUsesPerClient, double maxHeapUsage,
+                                 Supplier<WebClient> webClientFactory) {
+        this.maxClients = maxClients <= 0 ? DEFAULT_MAX_CLIENTS : maxClients;
+        this.maxUsesPerClient = maxUsesPerClient <= 0 ? DEFAULT_MAX_USES_PER_CLIENT : maxUsesPerClient;
+        this.maxHeapUsage = maxHeapUsage <= 0 || maxHeapUsage > 1 ? DEFAULT_MAX_HEAP_USAGE : maxHeapUsage;
+        this.webClientFactory = webClientFactory;
+        idleClients = new LinkedBlockingQueue<WebClient>();
+        clientUses = new ConcurrentHashMap<WebClient, AtomicInteger>();
+
+        // Start up some clients ahead of time, so the first pages do not pay for starting the JavaScript engine
+        int clientsToPrewarm = Math.min(prewarmedClients, this.maxClients);
+        for(int i = 0; i < clientsToPrewarm; i++) {
+            idleClients.add(createClient());
+        }
+    }
+
+    /**
+     * Returns the pool shared by all crawlers (creating it with default settings if needed)
+     * @return the pool shared by all crawlers
+     */
+    public static synchronized HtmlUnitWebClientPool getDefaultPool() {
+        if(defaultPool == null) {
+            defaultPool = new HtmlUnitWebClientPool();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool shared by all crawlers (closing the previous shared pool)
+     * @param pool the new pool to share (ignored if null)
+     */
+    public static synchronized void setDefaultPool(HtmlUnitWebClientPool pool) {
+        if(pool != null) {
+            if(defaultPool != null && defaultPool != pool) {
+                defaultPool.close();
+            }
+            defaultPool = pool;
+        }
+    }
+
+    /**
+     * Creates a WebClient with the settings the crawlers use by default
+     * @return a new WebClient
+     */
+    public static WebClient createDefaultWebClient() {
+        // Turn off the error messages from htmlunit
+        java.util.logging.Logger.getLogger("com.gargoylesoftware").setLevel(Level.OFF);
+
+        // Use the same timeouts as the shared HttpTransport, so stuck sockets do not hang the crawl
+        WebClient webClient = new WebClient();
+        webClient.getOptions().setTimeout(HttpTransport.getDefaultTransport().getReadTimeoutMillis());
+        return webClient;
+    }
+
+    /**
+     * Borrows a client from the pool, waiting for one to be given back if every client is in use
+     * @return a client that must be given back with giveBack() once the caller is done with it
+     * @throws InterruptedException if the thread was interrupted while waiting for a client
+     * @throws IllegalStateException if the pool is closed (or gets closed while waiting for a client)
+     */
+    public WebClient borrow() throws InterruptedException {
+        while(true) {
+            synchronized(this) {
+                if(closed) {
+                    throw new IllegalStateException("Cannot borrow a WebClient from a closed pool");
+                }
+                WebClient webClient = idleClients.poll();
+                if(webClient != null) {
+                    return webClient;
+                }
+
+                // No idle client, so make a new one if we are allowed to
+                if(createdClients < maxClients) {
+                    return createClient();
+                }
+            }
+
+            // Every client is in use; a closed pool never gets them back, so wait in steps and check in between
+            WebClient webClient = idleClients.poll(BORROW_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if(webClient != null) {
+                if(closed) {
+                    destroyClient(webClient);
+                    throw new IllegalStateException("Cannot borrow a WebClient from a closed pool");
+                }
+                return webClient;
+            }
+        }
+    }
+
+    /**
+     * Gives a borrowed client back to the pool. The client is reset for the next page, or closed and
+     * replaced if it has loaded too many pages or the heap is getting full
+     * @param webClient the client to give back (ignored if null)
+     */
+    public void giveBack(WebClient webClient) {
+        if(webClient == null) {
+            return;
+        }
+
+        AtomicInteger uses = clientUses.get(webClient);
+        int usesSoFar = uses == null ? maxUsesPerClient : uses.incrementAndGet();
+        boolean recycle = closed || usesSoFar >= maxUsesPerClient || isHeapUsageTooHigh();
+        if(!recycle) {
+            try {
+                resetClient(webClient);
+            }
+            catch(IOException | RuntimeException ex) {
+                System.err.println("[ERROR] Could not reset WebClient for reuse; replacing it");
+                ex.printStackTrace();
+                recycle = true;
+            }
+        }
+
+        if(recycle) {
+            destroyClient(webClient);
+
+            // Put a fresh client in its place, so any thread waiting in borrow() is not left waiting forever
+            if(!closed) {
+                idleClients.offer(createClient());
+            }
+        }
+        else {
+            idleClients.offer(webClient);
+        }
+    }
+
+    /**
+     * Closes every idle client, and makes sure borrowed clients are closed when they are given back
+     */
+    @Override
+    public void close() {
+        List<WebClient> clientsToClose = new ArrayList<WebClient>();
+        synchronized(this) {
+            closed = true;
+            idleClients.drainTo(clientsToClose);
+        }
+        for(WebClient webClient : clientsToClose) {
+            destroyClient(webClient);
+        }
+    }
+
+    /**
+     * Creates a new client and starts tracking its uses
+     * @return the new client
+     */
+    private synchronized WebClient createClient() {
+        WebClient webClient = webClientFactory.get();
+        clientUses.put(webClient, new AtomicInteger(0));
+        createdClients++;
+        return webClient;
+    }
+
+    /**
+     * Closes a client and stops tracking it (which frees up a spot in the pool for a new client)
+     * @param webClient the client to close
+     */
+    private void destroyClient(WebClient webClient) {
+        synchronized(this) {
+            if(clientUses.remove(webClient) != null) {
+                createdClients--;
+            }
+        }
+        try {
+            webClient.close();
+        }
+        catch(RuntimeException ex) {
+            System.err.println("[ERROR] Could not cleanly close WebClient");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Resets a client so the next page starts from a clean state: stops any background JavaScript,
+     * closes extra windows, empties the current window, and clears cookies
+     * @param webClient the client to reset
+     */
+    private static void resetClient(WebClient webClient) throws IOException {
+        WebWindow currentWindow = webClient.getCurrentWindow();
+        for(TopLevelWindow topLevelWindow : new ArrayList<TopLevelWindow>(webClient.getTopLevelWindows())) {
+            if(topLevelWindow != currentWindow) {
+                topLevelWindow.close();
+            }
+        }
+
+        currentWindow = webClient.getCurrentWindow();
+        if(currentWindow != null) {
+            JavaScriptJobManager jobManager = currentWindow.getJobManager();
+            if(jobManager != null) {
+                jobManager.removeAllJobs();
+            }
+            // Replacing the page with a blank one lets the old page's DOM be garbage collected
+            webClient.getPage(currentWindow, new WebRequest(WebClient.URL_ABOUT_BLANK));
+        }
+        webClient.getCookieManager().clearCookies();
+    }
+
+    /**
+     * Checks if more of the heap is in use than the pool allows
+     * @return true if the used fraction of the maximum heap is above maxHeapUsage
+     */
+    private boolean isHeapUsageTooHigh() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        return usedMemory > runtime.maxMemory() * maxHeapUsage;
+    }
+}
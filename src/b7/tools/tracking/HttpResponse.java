@@ -0,0 +1,130 @@
+package b7.tools.tracking;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Simple class to represent the result of a single
+ * HTTP request made through an HttpTransport
+ */
+public class HttpResponse {
+
+    private String url;  // The URL that was requested
+    private int statusCode;  // The HTTP status code the server responded with
+    private byte[] body;  // The (already decompressed) bytes of the response body
+    private String charsetName;  // The charset to use to decode the body into text
+    private Map<String, List<String>> headers;  // Response headers, looked up without caring about case
+
+    /**
+     * Constructs a new HttpResponse
+     * @param url the URL that was requested
+     * @param statusCode the HTTP status code of the response
+     * @param body the decompressed bytes of the response body (null is treated as an empty body)
+     * @param charsetName the charset to decode the body with
+     * @param headers the response headers (null is treated as no headers)
+     */
+    public HttpResponse(String url, int statusCode, byte[] body, String charsetName, Map<String, List<String>> headers) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.body = body == null ? new byte[0] : body;
+        this.charsetName = charsetName == null ? HttpTransport.DEFAULT_CHARSET : charsetName;
+        this.headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        if(headers != null) {
+            for(Map.Entry<String, List<String>> header : headers.entrySet()) {
+                // HttpURLConnection reports the status line under a null key, which we do not need to keep
+                if(header.getKey() != null) {
+                    this.headers.put(header.getKey(), header.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the URL that was requested
+     * @return the URL that was requested
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the HTTP status code of the response
+     * @return the HTTP status code of the response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns true if the response has a 2xx status code
+     * @return true if the response has a 2xx status code, false otherwise
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * Returns the decompressed bytes of the response body
+     * @return the decompressed bytes of the response body
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the charset used to decode the response body
+     * @return the charset used to decode the response body
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    /**
+     * Returns the response body decoded with the charset reported by the server
+     * (or DEFAULT_CHARSET of HttpTransport if the server did not report one / reported an unknown one)
+     * @return the response body as a String
+     */
+    public String getBodyAsString() {
+        try {
+            return new String(body, charsetName);
+        }
+        catch(UnsupportedEncodingException ex) {
+            System.err.println("[ERROR] Unknown charset " + charsetName + " for " + url + "; decoding with " + HttpTransport.DEFAULT_CHARSET);
+            try {
+                return new String(body, HttpTransport.DEFAULT_CHARSET);
+            }
+            catch(UnsupportedEncodingException ex2) {
+                return new String(body);
+            }
+        }
+    }
+
+    /**
+     * Returns the first value of the given response header
+     * @param name the name of the header (case does not matter)
+     * @return the first value of the header, or null if the header was not present
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        if(values == null || values.size() == 0) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    /**
+     * Returns all the response headers
+     * @return an unmodifiable view of the response headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP " + statusCode + " (" + body.length + " bytes) for " + url;
+    }
+}
@@ -0,0 +1,373 @@
+package b7.tools.tracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Disk-backed cache of HTTP responses, used by HttpTransport to revalidate pages instead of downloading
+ * them again. Only successful responses with an ETag or Last-Modified header are kept. Each response is
+ * stored as a gzip-compressed body file plus a small properties file holding its URL and validators.
+ * When the cache grows past its size limit, the least recently used responses are deleted
+ */
+public class HttpResponseCache {
+
+    // Default settings for the shared cache
+    public static final String DEFAULT_CACHE_PATH = "savedata/httpcache/";
+    public static final long DEFAULT_MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+    // File endings of the two files each cached response is stored in
+    public static final String METADATA_FILE_EXTENSION = ".properties";
+    public static final String BODY_FILE_EXTENSION = ".body.gz";
+
+    // Keys used in the metadata files
+    private static final String URL_KEY = "url";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String CONTENT_TYPE_KEY = "contentType";
+    private static final String CHARSET_KEY = "charset";
+
+    private File directory;  // Folder the cached responses are stored in
+    private long maxBytes;  // Most bytes (of compressed bodies) the cache can hold before evicting responses
+    private long storedBytes;  // Bytes (of compressed bodies) the cache currently holds
+    private Map<String, CacheEntry> entries;  // Cached responses by key, in least recently used order
+
+    private AtomicLong hits;  // Requests answered from the cache after the server confirmed it was unchanged
+    private AtomicLong misses;  // Requests that had to download the response
+
+    /**
+     * Constructs a new HttpResponseCache, picking up any responses already stored in the directory
+     * @param directoryPath folder to store cached responses in (created if it does not exist)
+     * @param maxBytes most bytes of compressed bodies to keep (defaults to DEFAULT_MAX_CACHE_BYTES if non-positive number given)
+     */
+    public HttpResponseCache(String directoryPath, long maxBytes) {
+        directory = new File(directoryPath);
+        this.maxBytes = maxBytes <= 0 ? DEFAULT_MAX_CACHE_BYTES : maxBytes;
+        entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+        hits = new AtomicLong(0);
+        misses = new AtomicLong(0);
+        if(!directory.exists()) {
+            directory.mkdirs();
+        }
+        loadEntries();
+    }
+
+    /**
+     * Finds the headers that ask the server to only send the URL's response if it changed since it was cached
+     * @param url the URL about to be requested
+     * @return If-None-Match / If-Modified-Since headers for the cached response, or an empty map if the URL is not cached
+     */
+    public synchronized Map<String, String> findRevalidationHeaders(String url) {
+        Map<String, String> revalidationHeaders = new HashMap<String, String>();
+        CacheEntry entry = entries.get(findKey(url));
+        if(entry != null) {
+            if(entry.etag != null) {
+                revalidationHeaders.put("If-None-Match", entry.etag);
+            }
+            if(entry.lastModified != null) {
+                revalidationHeaders.put("If-Modified-Since", entry.lastModified);
+            }
+        }
+        return revalidationHeaders;
+    }
+
+    /**
+     * Loads the cached response for a URL (after the server answered 304 Not Modified), marking it as recently used
+     * @param url the URL to load the cached response of
+     * @return the cached response as a 200 response, or null if the URL is not cached or its files could not be read
+     */
+    public HttpResponse findCachedResponse(String url) {
+        String key = findKey(url);
+        CacheEntry entry;
+        synchronized(this) {
+            entry = entries.get(key);
+        }
+        if(entry == null) {
+            return null;
+        }
+
+        try {
+            byte[] body = readCompressed(new File(directory, key + BODY_FILE_EXTENSION));
+            // Keep the recently used order across runs by touching the metadata file
+            new File(directory, key + METADATA_FILE_EXTENSION).setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return new HttpResponse(url, 200, body, entry.charset, entry.createHeaders());
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Could not read cached response for " + url + "; removing it from the cache");
+            ex.printStackTrace();
+            remove(url);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a downloaded response, replacing any cached response for the same URL. Responses with no ETag or
+     * Last-Modified header to revalidate with, and pages that are gone (404 / 410), are removed from the cache instead.
+     * Other unsuccessful responses (which are often temporary) leave the cache as it is
+     * @param response the downloaded response
+     */
+    public void store(HttpResponse response) {
+        misses.incrementAndGet();
+        String url = response.getUrl();
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        int statusCode = response.getStatusCode();
+        if(statusCode == 404 || statusCode == 410 || (statusCode == 200 && etag == null && lastModified == null)) {
+            remove(url);
+            return;
+        }
+        if(statusCode != 200) {
+            return;
+        }
+
+        String key = findKey(url);
+        CacheEntry entry = new CacheEntry(url, etag, lastModified, response.getHeader("Content-Type"), response.getCharsetName());
+        File bodyFile = new File(directory, key + BODY_FILE_EXTENSION);
+        File metadataFile = new File(directory, key + METADATA_FILE_EXTENSION);
+        try {
+            // Write to temporary files first, so a crash never leaves a half-written response in the cache
+            File temporaryBodyFile = File.createTempFile(key, BODY_FILE_EXTENSION, directory);
+            File temporaryMetadataFile = File.createTempFile(key, METADATA_FILE_EXTENSION + ".tmp", directory);
+            writeCompressed(temporaryBodyFile, response.getBody());
+            entry.compressedBytes = temporaryBodyFile.length();
+            writeMetadata(temporaryMetadataFile, entry);
+
+            synchronized(this) {
+                Files.move(temporaryBodyFile.toPath(), bodyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporaryMetadataFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                CacheEntry replacedEntry = entries.put(key, entry);
+                if(replacedEntry != null) {
+                    storedBytes -= replacedEntry.compressedBytes;
+                }
+                storedBytes += entry.compressedBytes;
+                evictLeastRecentlyUsed();
+            }
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] IOException Could not cache response for " + url);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes the cached response for a URL (if there is one)
+     * @param url the URL to remove the cached response of
+     */
+    public synchronized void remove(String url) {
+        String key = findKey(url);
+        CacheEntry entry = entries.remove(key);
+        if(entry != null) {
+            storedBytes -= entry.compressedBytes;
+            deleteFiles(key);
+        }
+    }
+
+    /**
+     * Returns how many requests were answered from the cache
+     * @return how many requests were answered from the cache after the server said the response was unchanged
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many requests had to download their response
+     * @return how many requests had to download their response
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns how many bytes of compressed bodies the cache holds
+     * @return how many bytes of compressed bodies the cache holds
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Deletes least recently used responses until the cache fits in maxBytes (must hold the lock)
+     */
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<String, CacheEntry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while(storedBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, CacheEntry> entry = leastRecentlyUsed.next();
+            storedBytes -= entry.getValue().compressedBytes;
+            deleteFiles(entry.getKey());
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    /**
+     * Reads the metadata of every response stored in the directory, ordering them by when they were last used
+     * (and deleting leftover temporary files and responses whose files are incomplete)
+     */
+    private void loadEntries() {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return;
+        }
+        List<File> metadataFiles = new ArrayList<File>();
+        for(File file : files) {
+            if(file.getName().endsWith(METADATA_FILE_EXTENSION)) {
+                metadataFiles.add(file);
+            }
+            else if(!file.getName().endsWith(BODY_FILE_EXTENSION) || file.getName().split("\\.")[0].length() != 40) {
+                file.delete();  // Temporary file left over from a write that never finished
+            }
+        }
+        Collections.sort(metadataFiles, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+
+        for(File metadataFile : metadataFiles) {
+            String key = metadataFile.getName().substring(0, metadataFile.getName().length() - METADATA_FILE_EXTENSION.length());
+            File bodyFile = new File(directory, key + BODY_FILE_EXTENSION);
+            try {
+                CacheEntry entry = readMetadata(metadataFile);
+                if(!bodyFile.exists() || !key.equals(findKey(entry.url))) {
+                    deleteFiles(key);
+                    continue;
+                }
+                entry.compressedBytes = bodyFile.length();
+                entries.put(key, entry);
+                storedBytes += entry.compressedBytes;
+            }
+            catch(IOException ex) {
+                deleteFiles(key);
+            }
+        }
+        evictLeastRecentlyUsed();
+    }
+
+    // Deletes both files of a cached response
+    private void deleteFiles(String key) {
+        new File(directory, key + BODY_FILE_EXTENSION).delete();
+        new File(directory, key + METADATA_FILE_EXTENSION).delete();
+    }
+
+    /**
+     * Turns a URL into the name its files are stored under (SHA-1 of the URL in hexadecimal)
+     * @param url the URL to find the key of
+     * @return the key of the URL
+     */
+    private static String findKey(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for(byte digestByte : digest) {
+                key.append(String.format("%02x", digestByte));
+            }
+            return key.toString();
+        }
+        catch(NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void writeCompressed(File file, byte[] bytes) throws IOException {
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(file))) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static byte[] readCompressed(File file) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while((bytesRead = inputStream.read(buffer)) != -1) {
+                byteArrayOutputStream.write(buffer, 0, bytesRead);
+            }
+            return byteArrayOutputStream.toByteArray();
+        }
+    }
+
+    private static void writeMetadata(File file, CacheEntry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(URL_KEY, entry.url);
+        properties.setProperty(CHARSET_KEY, entry.charset);
+        if(entry.etag != null) {
+            properties.setProperty(ETAG_KEY, entry.etag);
+        }
+        if(entry.lastModified != null) {
+            properties.setProperty(LAST_MODIFIED_KEY, entry.lastModified);
+        }
+        if(entry.contentType != null) {
+            properties.setProperty(CONTENT_TYPE_KEY, entry.contentType);
+        }
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            properties.store(outputStream, null);
+        }
+    }
+
+    private static CacheEntry readMetadata(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            properties.load(inputStream);
+        }
+        String url = properties.getProperty(URL_KEY);
+        if(url == null) {
+            throw new IOException("Cached response metadata has no URL: " + file);
+        }
+        return new CacheEntry(url, properties.getProperty(ETAG_KEY), properties.getProperty(LAST_MODIFIED_KEY),
+                properties.getProperty(CONTENT_TYPE_KEY), properties.getProperty(CHARSET_KEY));
+    }
+
+    /**
+     * What the cache remembers about one stored response (its body stays on disk)
+     */
+    private static class CacheEntry {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final String charset;
+        private long compressedBytes;
+
+        private CacheEntry(String url, String etag, String lastModified, String contentType, String charset) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.charset = charset;
+        }
+
+        // Headers given back with the cached response
+        private Map<String, List<String>> createHeaders() {
+            Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            if(etag != null) {
+                headers.put("ETag", Arrays.asList(etag));
+            }
+            if(lastModified != null) {
+                headers.put("Last-Modified", Arrays.asList(lastModified));
+            }
+            if(contentType != null) {
+                headers.put("Content-Type", Arrays.asList(contentType));
+            }
+            return headers;
+        }
+    }
+}
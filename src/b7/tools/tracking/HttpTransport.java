@@ -0,0 +1,518 @@
+package b7.tools.tracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared transport the crawlers use to make plain (non-JavaScript) HTTP requests.
+ * Connections are kept alive and reused between requests to the same host, responses
+ * are requested with gzip / deflate compression, every request has a connect and
+ * read timeout, and response bodies are read as bytes and decoded with the charset
+ * reported by the server. If the transport has an HttpResponseCache, responses are revalidated
+ * with If-None-Match / If-Modified-Since and a 304 Not Modified is answered from the cache.
+ * Pages that are only needed up to a PageStreamReader.Cutoff are decoded straight off the connection
+ * instead, and the rest of the body is never downloaded
+ */
+public class HttpTransport {
+
+    // Default settings for the shared transport
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_KEEP_ALIVE_CONNECTIONS = 20;
+    public static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (compatible; AnimePriceTracker)";
+    public static final String DEFAULT_CHARSET = "UTF-8";
+
+    // System property the JDK reads (once) to decide how many idle keep-alive connections it keeps per host
+    public static final String MAX_KEEP_ALIVE_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+    // Size of the chunks we read response bodies in
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // Read buffer kept by each thread, so reading a response does not make a new buffer every time
+    private static final ThreadLocal<byte[]> READ_BUFFERS = ThreadLocal.withInitial(() -> new byte[READ_BUFFER_SIZE]);
+
+    // The transport used by WebCrawler when no other transport has been chosen
+    private static HttpTransport defaultTransport;
+
+    // Most bytes the default transport's response cache keeps on disk (0 or less for no cache)
+    private static long defaultResponseCacheMaxBytes = HttpResponseCache.DEFAULT_MAX_CACHE_BYTES;
+
+    private int connectTimeoutMillis;  // How long to wait for a connection to open before giving up
+    private int readTimeoutMillis;  // How long to wait for data on an open connection before giving up
+    private String userAgent;  // User-Agent header sent with every request
+    private HttpResponseCache responseCache;  // Cache of responses to revalidate instead of downloading again (null for no cache)
+
+    /**
+     * Constructs a new HttpTransport with the default settings
+     */
+    public HttpTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_USER_AGENT);
+    }
+
+    /**
+     * Constructs a new HttpTransport
+     * @param connectTimeoutMillis how long (in milliseconds) to wait for a connection to open (default used if value <= 0 given)
+     * @param readTimeoutMillis how long (in milliseconds) to wait for data on an open connection (default used if value <= 0 given)
+     * @param userAgent the User-Agent header to send (default used if null given)
+     */
+    public HttpTransport(int connectTimeoutMillis, int readTimeoutMillis, String userAgent) {
+        this.connectTimeoutMillis = connectTimeoutMillis <= 0 ? DEFAULT_CONNECT_TIMEOUT_MILLIS : connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis <= 0 ? DEFAULT_READ_TIMEOUT_MILLIS : readTimeoutMillis;
+        this.userAgent = userAgent == null ? DEFAULT_USER_AGENT : userAgent;
+    }
+
+    /**
+     * Tells the JDK how many idle keep-alive connections to keep open per host for reuse (the JDK pools the
+     * connections of every transport for us). The setting is JVM-wide and read once, so this is meant to be
+     * called by the program's setup before its first request, and leaves a http.maxConnections already set alone
+     * @param maxKeepAliveConnections how many idle connections to keep open per host (ignored if value <= 0 given)
+     */
+    public static void configureMaxKeepAliveConnections(int maxKeepAliveConnections) {
+        if(maxKeepAliveConnections > 0 && System.getProperty(MAX_KEEP_ALIVE_CONNECTIONS_PROPERTY) == null) {
+            System.setProperty(MAX_KEEP_ALIVE_CONNECTIONS_PROPERTY, Integer.toString(maxKeepAliveConnections));
+        }
+    }
+
+    /**
+     * Returns the transport shared by all crawlers (creating it with default settings if needed, and with
+     * the response cache createDefaultResponseCache() gives)
+     * @return the transport shared by all crawlers
+     */
+    public static synchronized HttpTransport getDefaultTransport() {
+        if(defaultTransport == null) {
+            defaultTransport = new HttpTransport();
+            defaultTransport.setResponseCache(createDefaultResponseCache());
+        }
+        return defaultTransport;
+    }
+
+    /**
+     * Sets how many bytes the default transport's response cache keeps on disk (only takes effect if set before
+     * the default transport is first used)
+     * @param maxBytes most bytes of compressed bodies to keep (0 or less to not cache responses at all)
+     */
+    public static synchronized void setDefaultResponseCacheMaxBytes(long maxBytes) {
+        defaultResponseCacheMaxBytes = maxBytes;
+    }
+
+    /**
+     * Creates the response cache the default transport uses, in HttpResponseCache.DEFAULT_CACHE_PATH
+     * @return the response cache, or null if the default transport is set to not cache responses
+     */
+    public static synchronized HttpResponseCache createDefaultResponseCache() {
+        if(defaultResponseCacheMaxBytes <= 0) {
+            return null;
+        }
+        return new HttpResponseCache(HttpResponseCache.DEFAULT_CACHE_PATH, defaultResponseCacheMaxBytes);
+    }
+
+    /**
+     * Sets the transport shared by all crawlers
+     * @param transport the new transport to share (ignored if null)
+     */
+    public static synchronized void setDefaultTransport(HttpTransport transport) {
+        if(transport != null) {
+            defaultTransport = transport;
+        }
+    }
+
+    /**
+     * Returns the connect timeout of this transport
+     * @return the connect timeout (in milliseconds) of this transport
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Returns the read timeout of this transport
+     * @return the read timeout (in milliseconds) of this transport
+     */
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Returns the User-Agent header sent by this transport
+     * @return the User-Agent header sent by this transport
+     */
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * Returns the response cache of this transport
+     * @return the response cache of this transport (null if responses are not cached)
+     */
+    public HttpResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the response cache of this transport
+     * @param responseCache the cache to revalidate responses with (null to stop caching responses)
+     */
+    public void setResponseCache(HttpResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Makes a GET request to the given URL and returns the body of a successful response
+     * @param url the URL to read
+     * @return the body of the response, decoded with the charset reported by the server
+     * @throws IOException if the request failed or the server did not respond with a 2xx status code
+     */
+    public String readString(String url) throws IOException {
+        HttpResponse response = fetch(url, null);
+        if(!response.isSuccessful()) {
+            throw new IOException("Server returned HTTP response code " + response.getStatusCode() + " for URL " + url);
+        }
+        return response.getBodyAsString();
+    }
+
+    /**
+     * Makes a GET request to the given URL. Responses with error status codes are returned (not thrown)
+     * so callers can decide how to handle them. If the URL is in the response cache, the request asks the
+     * server to only send the response if it changed, and an unchanged (304) response is answered from the cache
+     * @param url the URL to request
+     * @param requestHeaders extra headers to send with the request (can be null; if they hold their own
+     *                       If-None-Match / If-Modified-Since header, the response cache is not used)
+     * @return the response from the server (or from the cache, with status code 200, if it was unchanged)
+     * @throws IOException if the connection could not be made or the response could not be read
+     */
+    public HttpResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        return fetch(url, requestHeaders, null);
+    }
+
+    /**
+     * Makes a GET request to the given URL (like fetch(url, requestHeaders)), which can be aborted from another thread:
+     * aborting while waiting for the response disconnects the connection, so the request fails right away instead of at
+     * the read timeout, and aborting while the body is being read disconnects the connection at the next read
+     * @param url the URL to request
+     * @param requestHeaders extra headers to send with the request (can be null; if they hold their own
+     *                       If-None-Match / If-Modified-Since header, the response cache is not used)
+     * @param abortSignal signal to abort the request with (null if it is not to be aborted)
+     * @return the response from the server (or from the cache, with status code 200, if it was unchanged)
+     * @throws IOException if the connection could not be made, the response could not be read, or the request was aborted
+     */
+    public HttpResponse fetch(String url, Map<String, String> requestHeaders, AbortSignal abortSignal) throws IOException {
+        HttpResponseCache cache = responseCache;
+        boolean cacheable = cache != null && (url.startsWith("http://") || url.startsWith("https://"))
+                && !hasRevalidationHeader(requestHeaders);
+        if(!cacheable) {
+            return fetchFromServer(url, requestHeaders, abortSignal);
+        }
+
+        Map<String, String> conditionalHeaders = new HashMap<String, String>(cache.findRevalidationHeaders(url));
+        if(!conditionalHeaders.isEmpty()) {
+            if(requestHeaders != null) {
+                conditionalHeaders.putAll(requestHeaders);
+            }
+            HttpResponse response = fetchFromServer(url, conditionalHeaders, abortSignal);
+            if(response.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                HttpResponse cachedResponse = cache.findCachedResponse(url);
+                if(cachedResponse != null) {
+                    return cachedResponse;
+                }
+                // The cached copy went missing, so ask for the full response again
+                response = fetchFromServer(url, requestHeaders, abortSignal);
+            }
+            cache.store(response);
+            return response;
+        }
+
+        HttpResponse response = fetchFromServer(url, requestHeaders, abortSignal);
+        cache.store(response);
+        return response;
+    }
+
+    // Checks if the caller is already making its own conditional request
+    private static boolean hasRevalidationHeader(Map<String, String> requestHeaders) {
+        if(requestHeaders != null) {
+            for(String headerName : requestHeaders.keySet()) {
+                if("If-None-Match".equalsIgnoreCase(headerName) || "If-Modified-Since".equalsIgnoreCase(headerName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes a GET request to the given URL and reads the body of a successful response straight off the connection
+     * (decompressing it if needed) into text, stopping at the given cutoff. Once the cutoff has been reached the rest
+     * of the body is not downloaded; the connection is disconnected instead of going back to the keep-alive pool.
+     * The response cache is not used, since it keeps whole bodies only
+     * @param url the URL to request
+     * @param cutoff where to stop reading the body (null to read the whole body)
+     * @return the response from the server, with the text read from its body (no text if it was not successful)
+     * @throws IOException if the connection could not be made or the response could not be read
+     */
+    public TextResponse fetchText(String url, PageStreamReader.Cutoff cutoff) throws IOException {
+        URLConnection urlConnection = openConnection(url, null);
+        String charsetName = findCharset(urlConnection.getContentType());
+        if(!(urlConnection instanceof HttpURLConnection)) {
+            String text = PageStreamReader.readText(urlConnection.getInputStream(), charsetName, cutoff);
+            return new TextResponse(new HttpResponse(url, HttpURLConnection.HTTP_OK, null, charsetName, urlConnection.getHeaderFields()), text);
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+        int statusCode = httpConnection.getResponseCode();
+        HttpResponse response = new HttpResponse(url, statusCode, null, charsetName, httpConnection.getHeaderFields());
+        if(!response.isSuccessful()) {
+            // Error bodies are short, so they are read to the end to let the connection be reused
+            readFully(statusCode >= 400 ? httpConnection.getErrorStream() : httpConnection.getInputStream(),
+                    httpConnection.getContentEncoding(), httpConnection.getContentLength());
+            return new TextResponse(response, null);
+        }
+        InputStream bodyStream = new ConnectionBodyStream(httpConnection.getInputStream(), httpConnection);
+        return new TextResponse(response, PageStreamReader.readText(decode(bodyStream, httpConnection.getContentEncoding()),
+                charsetName, cutoff));
+    }
+
+    /**
+     * Makes a GET request to the given URL, without using the response cache
+     * @param url the URL to request
+     * @param requestHeaders extra headers to send with the request (can be null)
+     * @param abortSignal signal that disconnects the connection when aborted (null if the request is not to be aborted)
+     * @return the response from the server
+     * @throws IOException if the connection could not be made, the response could not be read, or the request was aborted
+     */
+    private HttpResponse fetchFromServer(String url, Map<String, String> requestHeaders, AbortSignal abortSignal) throws IOException {
+        URLConnection urlConnection = openConnection(url, requestHeaders);
+
+        // Non-HTTP URLs (such as file: URLs) have no status code, so treat them as always successful
+        if(!(urlConnection instanceof HttpURLConnection)) {
+            byte[] body = readFully(urlConnection.getInputStream(), null, urlConnection.getContentLength());
+            return new HttpResponse(url, HttpURLConnection.HTTP_OK, body, findCharset(urlConnection.getContentType()),
+                    urlConnection.getHeaderFields());
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+        AbortableConnection abortableConnection = abortSignal == null ? null : new AbortableConnection(httpConnection, abortSignal);
+        int statusCode = httpConnection.getResponseCode();
+        InputStream bodyStream = statusCode >= 400 ? httpConnection.getErrorStream() : httpConnection.getInputStream();
+        if(abortableConnection != null) {
+            bodyStream = abortableConnection.startBody(bodyStream);
+        }
+
+        // The body must be read to the end and closed (not disconnected) so the connection can go back to the keep-alive pool
+        byte[] body = readFully(bodyStream, httpConnection.getContentEncoding(), httpConnection.getContentLength());
+        return new HttpResponse(url, statusCode, body, findCharset(httpConnection.getContentType()),
+                httpConnection.getHeaderFields());
+    }
+
+    /**
+     * Opens a connection to the given URL with this transport's timeouts and headers
+     * @param url the URL to request
+     * @param requestHeaders extra headers to send with the request (can be null)
+     * @return the connection, ready to be read from
+     * @throws IOException if the URL could not be opened
+     */
+    private URLConnection openConnection(String url, Map<String, String> requestHeaders) throws IOException {
+        URLConnection urlConnection = new URL(url).openConnection();
+        urlConnection.setConnectTimeout(connectTimeoutMillis);
+        urlConnection.setReadTimeout(readTimeoutMillis);
+        urlConnection.setRequestProperty("User-Agent", userAgent);
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        if(requestHeaders != null) {
+            for(Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return urlConnection;
+    }
+
+    /**
+     * Wraps a body stream so it is decompressed while being read
+     * @param inputStream the body stream
+     * @param contentEncoding the Content-Encoding of the stream (gzip / deflate are decompressed, anything else is read as-is)
+     * @return the stream to read the decompressed body from
+     * @throws IOException if the gzip header could not be read
+     */
+    private static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        if("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream, READ_BUFFER_SIZE);
+        }
+        if("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Reads all the bytes of the given stream (decompressing them if needed) and closes the stream
+     * @param inputStream the stream to read (can be null, which gives back an empty array)
+     * @param contentEncoding the Content-Encoding of the stream (gzip / deflate are decompressed, anything else is read as-is)
+     * @param contentLength the Content-Length of the stream (-1 if unknown), used to size the body up front
+     * @return the (decompressed) bytes of the stream
+     * @throws IOException if the stream could not be read
+     */
+    private static byte[] readFully(InputStream inputStream, String contentEncoding, int contentLength) throws IOException {
+        if(inputStream == null) {
+            return new byte[0];
+        }
+        InputStream decodedStream = inputStream;
+        try {
+            decodedStream = decode(inputStream, contentEncoding);
+            // An uncompressed body is exactly Content-Length bytes, so it never has to grow (and be copied) while being read
+            boolean knownLength = decodedStream == inputStream && contentLength > 0;
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(knownLength ? contentLength : READ_BUFFER_SIZE);
+            byte[] buffer = READ_BUFFERS.get();
+            int bytesRead;
+            while((bytesRead = decodedStream.read(buffer)) != -1) {
+                byteArrayOutputStream.write(buffer, 0, bytesRead);
+            }
+            return byteArrayOutputStream.toByteArray();
+        }
+        finally {
+            decodedStream.close();
+        }
+    }
+
+    /**
+     * Finds the charset named in a Content-Type header
+     * @param contentType the Content-Type header value (can be null)
+     * @return the charset named in the header, or DEFAULT_CHARSET if no charset is named
+     */
+    public static String findCharset(String contentType) {
+        if(contentType != null) {
+            for(String parameter : contentType.split(";")) {
+                String trimmedParameter = parameter.trim();
+                if(trimmedParameter.toLowerCase().startsWith("charset=")) {
+                    String charset = trimmedParameter.substring("charset=".length()).replace("\"", "").trim();
+                    if(charset.length() > 0) {
+                        return charset;
+                    }
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * A response whose body was read as text (possibly only up to a cutoff) instead of as bytes
+     */
+    public static class TextResponse {
+        private final HttpResponse response;
+        private final String text;
+
+        private TextResponse(HttpResponse response, String text) {
+            this.response = response;
+            this.text = text;
+        }
+
+        /**
+         * Returns the status code and headers of the response (its body is left empty, since it was read as text)
+         * @return the status code and headers of the response
+         */
+        public HttpResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the text read from the response body
+         * @return the text read from the body, up to and including the end of the cutoff if it was found
+         *         (null if the response was not successful)
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    // HTTP connection whose request can be aborted from another thread. While the request waits for the response,
+    //   aborting disconnects the connection right away, which closes its socket. Once the body is being read,
+    //   disconnecting would wait for the read in progress (the connection's streams lock while reading), so the
+    //   body is checked for the abort between reads instead, and disconnected as soon as it is seen
+    private static class AbortableConnection {
+        private final HttpURLConnection httpConnection;
+        private final AbortSignal abortSignal;
+        private boolean readingBody;  // Whether the response has come in, and its body is being read
+
+        // Connects (so an abort from here on has a socket to close), failing right away if the request was already aborted
+        private AbortableConnection(HttpURLConnection httpConnection, AbortSignal abortSignal) throws IOException {
+            this.httpConnection = httpConnection;
+            this.abortSignal = abortSignal;
+            abortSignal.onAbort(this::disconnectUnlessReadingBody);
+            httpConnection.connect();
+            throwIfAborted();
+        }
+
+        private synchronized void disconnectUnlessReadingBody() {
+            if(!readingBody) {
+                httpConnection.disconnect();
+            }
+        }
+
+        // Hands over to checking the body for the abort between reads (the body stream is null if there is no body)
+        private synchronized InputStream startBody(InputStream bodyStream) throws IOException {
+            readingBody = true;
+            throwIfAborted();
+            return bodyStream == null ? null : new FilterInputStream(bodyStream) {
+                @Override
+                public int read() throws IOException {
+                    throwIfAborted();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    throwIfAborted();
+                    return super.read(buffer, offset, length);
+                }
+            };
+        }
+
+        private void throwIfAborted() throws IOException {
+            if(abortSignal.isAborted()) {
+                httpConnection.disconnect();
+                throw new IOException("Request to " + httpConnection.getURL() + " was aborted");
+            }
+        }
+    }
+
+    // Body of an HTTP connection that disconnects when closed before its end (like at a cutoff), instead of
+    //   leaving the rest of the body to be downloaded so the connection can go back to the keep-alive pool
+    private static class ConnectionBodyStream extends FilterInputStream {
+        private final HttpURLConnection httpConnection;
+        private boolean ended;  // Whether the whole body has been read
+
+        private ConnectionBodyStream(InputStream inputStream, HttpURLConnection httpConnection) {
+            super(inputStream);
+            this.httpConnection = httpConnection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            ended = value == -1;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = super.read(buffer, offset, length);
+            ended = bytesRead == -1;
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(ended) {
+                super.close();
+            }
+            else {
+                httpConnection.disconnect();
+            }
+        }
+    }
+}
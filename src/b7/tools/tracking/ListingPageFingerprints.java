@@ -0,0 +1,191 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fingerprint of what every listing page of a store listed (product names, links, and prices) on the last
+ * crawl of the store. A listing page with the same fingerprint on the next crawl has not changed, so the products
+ * on it can be extended to today instead of being requested or merged into the crawl data again.
+ * Saved and loaded with CrawlerDataHandler
+ */
+public class ListingPageFingerprints {
+
+    // Algorithm the fingerprints are made with
+    public static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+    private String storeName;  // Name of the store the listing pages are from
+    private String crawlDate;  // Day a fingerprint was last recorded on
+    private Map<String, String> fingerprints;  // Listing page URL leading to the fingerprint of what it listed
+
+    /**
+     * Constructs a new ListingPageFingerprints with no store name, for today, and with no fingerprints
+     */
+    public ListingPageFingerprints() {
+        this("");
+    }
+
+    /**
+     * Constructs a new ListingPageFingerprints for today with no fingerprints
+     * @param storeName name of the store the listing pages are from
+     */
+    public ListingPageFingerprints(String storeName) {
+        this.storeName = storeName;
+        crawlDate = DateTool.findCurrentDateString();
+        fingerprints = new HashMap<String, String>();
+    }
+
+    /**
+     * Returns the name of the store the listing pages are from
+     * @return the name of the store the listing pages are from
+     */
+    public String getStoreName() {
+        return storeName;
+    }
+
+    /**
+     * Sets the name of the store the listing pages are from
+     * @param storeName the new name of the store the listing pages are from
+     */
+    public void setStoreName(String storeName) {
+        this.storeName = storeName;
+    }
+
+    /**
+     * Returns the day a fingerprint was last recorded on
+     * @return the day a fingerprint was last recorded on
+     */
+    public String getCrawlDate() {
+        return crawlDate;
+    }
+
+    /**
+     * Sets the day a fingerprint was last recorded on
+     * @param crawlDate the new day a fingerprint was last recorded on
+     */
+    public void setCrawlDate(String crawlDate) {
+        this.crawlDate = crawlDate;
+    }
+
+    /**
+     * Returns the fingerprint of every listing page
+     * @return map of listing page URL to the fingerprint of what it listed (synchronize on the fingerprints while reading it)
+     */
+    public synchronized Map<String, String> getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Sets the fingerprint of every listing page
+     * @param fingerprints the new map of listing page URL to the fingerprint of what it listed
+     */
+    public synchronized void setFingerprints(Map<String, String> fingerprints) {
+        this.fingerprints = fingerprints == null ? new HashMap<String, String>() : new HashMap<String, String>(fingerprints);
+    }
+
+    /**
+     * Checks if a listing page lists the same thing it did when its fingerprint was last recorded
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now
+     * @return true if the page has the same fingerprint as last recorded, false if it changed or was never recorded
+     */
+    public synchronized boolean matchesFingerprint(String pageURL, String fingerprint) {
+        return fingerprint != null && fingerprint.equals(fingerprints.get(pageURL));
+    }
+
+    /**
+     * Records the fingerprint of what a listing page lists now
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now (null to forget the page's fingerprint)
+     */
+    public synchronized void recordFingerprint(String pageURL, String fingerprint) {
+        if(fingerprint == null) {
+            fingerprints.remove(pageURL);
+            return;
+        }
+        fingerprints.put(pageURL, fingerprint);
+        crawlDate = DateTool.findCurrentDateString();
+    }
+
+    /**
+     * Makes a fingerprint of the entries listed on a listing page
+     * @param entries what the page lists, one entry per product, in page order
+     * @return the fingerprint of the entries (hex String), or null if the fingerprint could not be made
+     */
+    public static String findFingerprint(List<String> entries) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+            for(String entry : entries) {
+                messageDigest.update(entry.getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) '\n');
+            }
+
+            StringBuilder fingerprint = new StringBuilder();
+            for(byte digestByte : messageDigest.digest()) {
+                fingerprint.append(String.format("%02x", digestByte));
+            }
+            return fingerprint.toString();
+        }
+        catch(NoSuchAlgorithmException ex) {
+            System.err.println("[ERROR] Could not make listing page fingerprints with " + FINGERPRINT_ALGORITHM);
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Makes a fingerprint of the products observed on a listing page (their names, links, and prices)
+     * @param observations the products observed on the page, in page order
+     * @return the fingerprint of the observations (hex String), or null if the fingerprint could not be made
+     */
+    public static String findObservationsFingerprint(List<ProductObservation> observations) {
+        List<String> entries = new ArrayList<String>(observations.size());
+        for(ProductObservation observation : observations) {
+            entries.add(observation.getProductName() + "\t" + observation.getProductURL() + "\t" + observation.getPrice());
+        }
+        return findFingerprint(entries);
+    }
+
+    /**
+     * The fingerprint of a listing page whose products are merged into the crawl data in several parts (like the
+     * page itself and a product JSON request for some of its products). The fingerprint is only recorded once every
+     * part has been merged, so a page that was not fully merged is read again on the next crawl
+     */
+    public static class PendingFingerprint {
+        private final ListingPageFingerprints fingerprints;
+        private final String pageURL;
+        private final String fingerprint;
+        private int unmergedParts;  // How many parts still have to be merged before the fingerprint is recorded
+
+        /**
+         * Constructs a new PendingFingerprint
+         * @param fingerprints the listing page fingerprints to record the fingerprint in (null to not record it)
+         * @param pageURL URL of the listing page
+         * @param fingerprint fingerprint of what the page lists now (null to not record it)
+         * @param partCount how many parts of the page have to be merged
+         */
+        public PendingFingerprint(ListingPageFingerprints fingerprints, String pageURL, String fingerprint, int partCount) {
+            this.fingerprints = fingerprints;
+            this.pageURL = pageURL;
+            this.fingerprint = fingerprint;
+            unmergedParts = partCount;
+        }
+
+        /**
+         * Records that one more part of the page was merged, recording the page's fingerprint if it was the last part
+         */
+        public synchronized void recordMergedPart() {
+            unmergedParts--;
+            if(unmergedParts == 0 && fingerprints != null && fingerprint != null) {
+                fingerprints.recordFingerprint(pageURL, fingerprint);
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package b7.tools.tracking;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An archive of the raw pages (listing pages, product JSON, and API pages) fetched while crawling a store on one
+ * day, so the extractors can be run over them again later (after a selector breaks or a parsing bug is fixed)
+ * without going back to the store. Every page is appended to the archive file as its own gzip member, and a line
+ * with its kind, where its member starts, how long it is, and its URL is appended to the archive's index file, so
+ * any page can be read without decompressing the pages before it. One archive is kept per store per day
+ */
+public class PageArchive implements Closeable {
+
+    // Extension of the archive files (named after the day they are from, like 2018-01-31.pages.gz)
+    public static final String ARCHIVE_EXTENSION = ".pages.gz";
+
+    // Extension added to an archive's filename to get the filename of its index
+    public static final String INDEX_EXTENSION = ".index";
+
+    // Separates the kind, start, length, and URL of a page on its index line (the URL comes last, so it can hold anything but a line break)
+    public static final String INDEX_SEPARATOR = "\t";
+
+    // Kinds of pages kept in the archives
+    public static final String LISTING_PAGE = "listing-page";
+    public static final String PRODUCT_JSON = "product-json";
+    public static final String CATALOG_JSON = "catalog-json";
+    public static final String ITEMS_API_PAGE = "items-api-page";
+    public static final String CARRIED_OVER = "carried-over";  // Products carried over to the day without being fetched (see formatCarriedOver())
+
+    // Keys of every product kept in a CARRIED_OVER entry
+    private static final String CARRIED_OVER_NAME_KEY = "name";
+    private static final String CARRIED_OVER_URL_KEY = "url";
+    private static final String CARRIED_OVER_PRICE_KEY = "price";
+
+    private final String archiveFilename;  // File the compressed pages are appended to
+    private final FileOutputStream archiveStream;  // Appends to the archive file
+    private final Writer indexWriter;  // Appends to the index file
+    private long archiveLength;  // Where the next page will start in the archive file
+    private int appendedCount;  // How many pages were appended since the archive was opened
+
+    /**
+     * Opens an archive to append pages to (creating it and its folders if it does not exist yet)
+     * @param archiveFilename the archive file (its index is kept next to it, in archiveFilename + INDEX_EXTENSION)
+     * @throws IOException if the archive or its index could not be opened
+     */
+    public PageArchive(String archiveFilename) throws IOException {
+        this.archiveFilename = archiveFilename;
+        File archiveFile = new File(archiveFilename);
+        File path = archiveFile.getAbsoluteFile().getParentFile();
+        if(path != null && !path.exists()) {  // Create path directories if they do not exist
+            path.mkdirs();
+        }
+        archiveStream = new FileOutputStream(archiveFile, true);
+        archiveLength = archiveFile.length();
+        indexWriter = new OutputStreamWriter(new FileOutputStream(archiveFilename + INDEX_EXTENSION, true), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the archive file of a day
+     * @param archivesPath folder a store's archives are kept in (ending in "/")
+     * @param crawlDate the day (like DateTool.findCurrentDateString())
+     * @return the filename of the day's archive
+     */
+    public static String findArchiveFilename(String archivesPath, String crawlDate) {
+        return archivesPath + crawlDate + ARCHIVE_EXTENSION;
+    }
+
+    /**
+     * Finds every archive in a store's archives folder
+     * @param archivesPath folder the store's archives are kept in (ending in "/")
+     * @return the filenames of the archives, oldest day first (empty if there are none)
+     */
+    public static List<String> findArchiveFilenames(String archivesPath) {
+        List<String> archiveFilenames = new ArrayList<String>();
+        String[] filenames = new File(archivesPath).list();
+        if(filenames == null) {
+            return archiveFilenames;
+        }
+        for(String filename : filenames) {
+            if(filename.endsWith(ARCHIVE_EXTENSION)) {
+                archiveFilenames.add(archivesPath + filename);
+            }
+        }
+        Collections.sort(archiveFilenames);  // Named after their days (YYYY-MM-DD), so this sorts them by day
+        return archiveFilenames;
+    }
+
+    /**
+     * Finds the day an archive is from
+     * @param archiveFilename the archive file
+     * @return the day the archive is from (its filename without the folder and ARCHIVE_EXTENSION)
+     */
+    public static String findArchiveDate(String archiveFilename) {
+        String filename = new File(archiveFilename).getName();
+        return filename.endsWith(ARCHIVE_EXTENSION) ? filename.substring(0, filename.length() - ARCHIVE_EXTENSION.length()) : filename;
+    }
+
+    /**
+     * Returns the archive file the pages are appended to
+     * @return the archive file the pages are appended to
+     */
+    public String getArchiveFilename() {
+        return archiveFilename;
+    }
+
+    /**
+     * Returns how many pages were appended since the archive was opened
+     * @return how many pages were appended since the archive was opened
+     */
+    public synchronized int getAppendedCount() {
+        return appendedCount;
+    }
+
+    /**
+     * Appends a page to the archive (and to its index). Pages are compressed before the archive is locked,
+     * so fetch workers can append at the same time
+     * @param kind what kind of page it is (like LISTING_PAGE)
+     * @param url URL the page was fetched from
+     * @param content the contents of the page (nothing is appended if null)
+     * @return true if the page was appended, false if it could not be
+     */
+    public boolean append(String kind, String url, String content) {
+        if(content == null) {
+            return false;
+        }
+        ByteArrayOutputStream compressedContent = new ByteArrayOutputStream(content.length() / 4 + 64);
+        try {
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedContent);
+            gzipOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            gzipOutputStream.close();
+
+            synchronized(this) {
+                // Write the page before its index line, so the index never points past the end of the archive
+                compressedContent.writeTo(archiveStream);
+                archiveStream.flush();
+                indexWriter.write(kind + INDEX_SEPARATOR + archiveLength + INDEX_SEPARATOR + compressedContent.size()
+                        + INDEX_SEPARATOR + url + "\n");
+                indexWriter.flush();
+                archiveLength += compressedContent.size();
+                appendedCount++;
+            }
+            return true;
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Could not append " + url + " to page archive " + archiveFilename);
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Turns the products a crawl carried over to today without fetching their pages (like the products on a listing
+     * page that did not change) into the content of a CARRIED_OVER entry, so rebuilding crawl data from the archive
+     * still prices them on the archive's day
+     * @param observations the carried over products, at the price they were carried over with
+     * @return the content to archive as a CARRIED_OVER entry
+     */
+    public static String formatCarriedOver(List<ProductObservation> observations) {
+        JSONArray carriedOver = new JSONArray();
+        for(ProductObservation observation : observations) {
+            JSONObject product = new JSONObject();
+            product.put(CARRIED_OVER_NAME_KEY, observation.getProductName());
+            product.put(CARRIED_OVER_URL_KEY, observation.getProductURL());
+            product.put(CARRIED_OVER_PRICE_KEY, observation.getPrice());
+            carriedOver.put(product);
+        }
+        return carriedOver.toString();
+    }
+
+    /**
+     * Reads the products back out of a CARRIED_OVER entry (for the extractors to replay)
+     * @param content the contents of the CARRIED_OVER entry (like formatCarriedOver() gives)
+     * @return an observation for every carried over product
+     * @throws JSONException if the content is not a list of carried over products
+     */
+    public static List<ProductObservation> parseCarriedOver(String content) throws JSONException {
+        JSONArray carriedOver = new JSONArray(content);
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        for(int i = 0; i < carriedOver.length(); i++) {
+            JSONObject product = carriedOver.getJSONObject(i);
+            observations.add(new ProductObservation(product.getString(CARRIED_OVER_NAME_KEY), product.getString(CARRIED_OVER_URL_KEY),
+                    product.getDouble(CARRIED_OVER_PRICE_KEY)));
+        }
+        return observations;
+    }
+
+    /**
+     * Closes the archive and its index
+     * @throws IOException if the archive or its index could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            indexWriter.close();
+        }
+        finally {
+            archiveStream.close();
+        }
+    }
+
+    /**
+     * Reads the index of an archive
+     * @param archiveFilename the archive file
+     * @return every page in the archive, in the order they were appended (lines that were cut off, like by a crash
+     *         while appending, are skipped)
+     * @throws IOException if the index could not be read
+     */
+    public static List<Entry> readIndex(String archiveFilename) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        long archiveLength = new File(archiveFilename).length();
+        BufferedReader indexReader = new BufferedReader(new InputStreamReader(new FileInputStream(archiveFilename + INDEX_EXTENSION),
+                StandardCharsets.UTF_8));
+        try {
+            String line;
+            while((line = indexReader.readLine()) != null) {
+                String[] fields = line.split(INDEX_SEPARATOR, 4);
+                if(fields.length < 4) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(fields[0], fields[3], Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+                    if(entry.start + entry.length <= archiveLength) {
+                        entries.add(entry);
+                    }
+                }
+                catch(NumberFormatException ex) {
+                    System.err.println("[ERROR] Skipping broken line in index of page archive " + archiveFilename + ": " + line);
+                }
+            }
+        }
+        finally {
+            indexReader.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the contents of a page in an archive
+     * @param archiveChannel channel of the archive file (only read with positional reads, so threads can share it)
+     * @param entry the page's entry in the archive's index
+     * @return the contents of the page
+     * @throws IOException if the page could not be read or decompressed
+     */
+    public static String readContent(FileChannel archiveChannel, Entry entry) throws IOException {
+        ByteBuffer compressedContent = ByteBuffer.allocate(entry.length);
+        while(compressedContent.hasRemaining()) {
+            if(archiveChannel.read(compressedContent, entry.start + compressedContent.position()) == -1) {
+                throw new IOException("Page archive ended in the middle of " + entry.url);
+            }
+        }
+        return PageStreamReader.readText(new GZIPInputStream(new ByteArrayInputStream(compressedContent.array())),
+                StandardCharsets.UTF_8.name(), null);
+    }
+
+    /**
+     * Runs an extractor over every page in an archive, with the pages spread over several threads
+     * (reading the archive does not touch the store, so this goes as fast as the pages can be parsed)
+     * @param archiveFilename the archive file
+     * @param extractor what to extract the products of each page with
+     * @param parallelism how many pages to extract at once (defaults to CrawlPipeline.DEFAULT_PARSE_WORKERS if non-positive number given)
+     * @return the products extracted from every page, in the order the pages were appended (pages that could not be
+     *         read or parsed are skipped), or null if the archive could not be read
+     */
+    public static List<ProductObservation> extractAll(String archiveFilename, final PageExtractor extractor, int parallelism) {
+        if(parallelism <= 0) {
+            parallelism = CrawlPipeline.DEFAULT_PARSE_WORKERS;
+        }
+
+        ExecutorService extractWorkers = null;
+        try (final FileChannel archiveChannel = FileChannel.open(new File(archiveFilename).toPath(), StandardOpenOption.READ)) {
+            extractWorkers = Executors.newFixedThreadPool(parallelism);
+            List<Future<List<ProductObservation>>> extractedPages = new ArrayList<Future<List<ProductObservation>>>();
+            for(final Entry entry : readIndex(archiveFilename)) {
+                extractedPages.add(extractWorkers.submit(() -> {
+                    try {
+                        return extractor.extract(entry, readContent(archiveChannel, entry));
+                    }
+                    catch(Exception ex) {
+                        System.err.println("[ERROR] Could not extract products from archived " + entry.kind + " " + entry.url + " (skipping it)");
+                        ex.printStackTrace();
+                        return Collections.<ProductObservation>emptyList();
+                    }
+                }));
+            }
+
+            List<ProductObservation> observations = new ArrayList<ProductObservation>();
+            for(Future<List<ProductObservation>> extractedPage : extractedPages) {
+                observations.addAll(extractedPage.get());
+            }
+            return observations;
+        }
+        catch(IOException | ExecutionException ex) {
+            System.err.println("[ERROR] Could not read page archive " + archiveFilename);
+            ex.printStackTrace();
+            return null;
+        }
+        catch(InterruptedException ex) {
+            System.err.println("[ERROR] Interrupted while extracting products from page archive " + archiveFilename);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally {
+            if(extractWorkers != null) {
+                extractWorkers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Runs an extractor over archives and merges every product into crawl data, priced on the day its archive is from.
+     * Archives are merged oldest day first, since a product's price history is only merged with its latest price
+     * (so to rebuild history, merge every archive into empty crawl data; archives newer than the latest prices in
+     * some crawl data can be merged into it directly)
+     * @param crawlData the crawl data to merge the products into
+     * @param archiveFilenames the archive files (like from findArchiveFilenames())
+     * @param extractor what to extract the products of each page with
+     * @param parallelism how many pages to extract at once (defaults to CrawlPipeline.DEFAULT_PARSE_WORKERS if non-positive number given)
+     * @return true if every archive could be read, false if one could not (the archives that could be read are still merged)
+     */
+    public static boolean mergeArchives(CrawlData crawlData, List<String> archiveFilenames, PageExtractor extractor, int parallelism) {
+        List<String> sortedArchiveFilenames = new ArrayList<String>(archiveFilenames);
+        Collections.sort(sortedArchiveFilenames, (filename1, filename2) -> findArchiveDate(filename1).compareTo(findArchiveDate(filename2)));
+
+        boolean allArchivesRead = true;
+        for(String archiveFilename : sortedArchiveFilenames) {
+            List<ProductObservation> observations = extractAll(archiveFilename, extractor, parallelism);
+            if(observations == null) {
+                allArchivesRead = false;
+                continue;
+            }
+            String crawlDate = findArchiveDate(archiveFilename);
+            for(ProductObservation observation : observations) {
+                Product product = new Product(observation.getProductName(), observation.getProductURL());
+                product.addNewPriceDateInfo(new PriceDateInfo(crawlDate, observation.getPrice()));
+                crawlData.addProduct(product);
+            }
+        }
+        return allArchivesRead;
+    }
+
+    /**
+     * Extracts the products from a page kept in an archive (with the same extractors the store's crawler uses)
+     */
+    public interface PageExtractor {
+
+        /**
+         * Extracts the products from a page kept in an archive
+         * @param entry the page's entry in the archive's index (its kind and URL)
+         * @param content the contents of the page
+         * @return the products (and their prices) found on the page
+         * @throws Exception if the page could not be parsed (the page is then skipped)
+         */
+        List<ProductObservation> extract(Entry entry, String content) throws Exception;
+    }
+
+    /**
+     * A page kept in an archive: its kind, its URL, and where its gzip member is in the archive file
+     */
+    public static class Entry {
+        private final String kind;
+        private final String url;
+        private final long start;
+        private final int length;
+
+        /**
+         * Constructs a new Entry
+         * @param kind what kind of page it is (like LISTING_PAGE)
+         * @param url URL the page was fetched from
+         * @param start where the page's gzip member starts in the archive file
+         * @param length how many bytes long the page's gzip member is
+         */
+        public Entry(String kind, String url, long start, int length) {
+            this.kind = kind;
+            this.url = url;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Returns what kind of page it is
+         * @return what kind of page it is (like LISTING_PAGE)
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the URL the page was fetched from
+         * @return the URL the page was fetched from
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns where the page's gzip member starts in the archive file
+         * @return where the page's gzip member starts in the archive file
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns how many bytes long the page's gzip member is
+         * @return how many bytes long the page's gzip member is
+         */
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + url;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package b7.tools.tracking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the bytes of a page (a response body, a saved page, or a renderer process's output) straight into the
+ * text the HTML parser works on, decoding them with the page's charset through buffers pooled per thread instead
+ * of building the page up line by line. A Cutoff lets reading stop as soon as the last part of the page the
+ * crawler needs (like the pagination of a listing page) has been seen, so the rest is never decoded or parsed.
+ * Jsoup (1.10.3) can parse an InputStream, but it reads the whole stream before parsing and has no way to stop
+ * early, so the text read up to the cutoff is handed to it as one String instead
+ */
+public class PageStreamReader {
+
+    // Size (in chars) of the pooled buffer the bytes are decoded into
+    public static final int DECODE_BUFFER_SIZE = 8192;
+
+    // Pooled text builders that grew bigger than this (in chars) are dropped after use instead of being kept for the next page
+    public static final int MAX_POOLED_TEXT_CAPACITY = 4 * 1024 * 1024;
+
+    // Buffers kept by each thread (fetch / parse workers read one page after another, so the buffers are reused page after page)
+    private static final ThreadLocal<char[]> DECODE_BUFFERS = ThreadLocal.withInitial(() -> new char[DECODE_BUFFER_SIZE]);
+    private static final ThreadLocal<StringBuilder> TEXT_BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(DECODE_BUFFER_SIZE * 16));
+
+    /**
+     * Reads the text of a page from a stream of its bytes, closing the stream afterwards
+     * @param inputStream the bytes of the page
+     * @param charsetName the charset to decode the bytes with (HttpTransport's DEFAULT_CHARSET is used if it is unknown)
+     * @param cutoff where to stop reading the page (null to read the whole page)
+     * @return the text of the page, up to and including the end of the cutoff if it was found
+     * @throws IOException if the stream could not be read
+     */
+    public static String readText(InputStream inputStream, String charsetName, Cutoff cutoff) throws IOException {
+        StringBuilder text = TEXT_BUILDERS.get();
+        text.setLength(0);
+        char[] buffer = DECODE_BUFFERS.get();
+        Reader reader = new InputStreamReader(inputStream, findCharset(charsetName));
+        try {
+            int startMarkerEnd = -1;  // Where the cutoff's start marker ends in the text (-1 until it has been seen)
+            int charsRead;
+            while((charsRead = reader.read(buffer)) != -1) {
+                int searchFrom = text.length();
+                text.append(buffer, 0, charsRead);
+                if(cutoff == null) {
+                    continue;
+                }
+
+                // Markers can be split between two reads, so look back a little into what was read before
+                if(startMarkerEnd == -1) {
+                    int startMarkerIndex = text.indexOf(cutoff.startMarker, Math.max(0, searchFrom - cutoff.startMarker.length() + 1));
+                    if(startMarkerIndex != -1) {
+                        startMarkerEnd = startMarkerIndex + cutoff.startMarker.length();
+                    }
+                }
+                if(startMarkerEnd != -1) {
+                    int endMarkerIndex = text.indexOf(cutoff.endMarker, Math.max(startMarkerEnd, searchFrom - cutoff.endMarker.length() + 1));
+                    if(endMarkerIndex != -1) {
+                        text.setLength(endMarkerIndex + cutoff.endMarker.length());
+                        break;
+                    }
+                }
+            }
+            return text.toString();
+        }
+        finally {
+            reader.close();
+            if(text.capacity() > MAX_POOLED_TEXT_CAPACITY) {
+                TEXT_BUILDERS.remove();
+            }
+            else {
+                text.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Finds the charset with the given name
+     * @param charsetName name of the charset
+     * @return the charset, or HttpTransport's DEFAULT_CHARSET if no charset has that name
+     */
+    private static Charset findCharset(String charsetName) {
+        if(charsetName != null) {
+            try {
+                return Charset.forName(charsetName);
+            }
+            catch(IllegalArgumentException ex) {
+                System.err.println("[ERROR] Unknown charset " + charsetName + "; decoding with " + HttpTransport.DEFAULT_CHARSET);
+            }
+        }
+        return Charset.forName(HttpTransport.DEFAULT_CHARSET);
+    }
+
+    /**
+     * Where reading a page can stop: right after the first end marker that comes after the start marker
+     * (like the end of the list of links inside a listing page's pagination). A page without the markers is read whole
+     */
+    public static class Cutoff {
+        private final String startMarker;
+        private final String endMarker;
+
+        /**
+         * Constructs a new Cutoff
+         * @param startMarker text marking the start of the last part of the page that is needed
+         * @param endMarker text marking the end of that part (the first one after the start marker is used)
+         */
+        public Cutoff(String startMarker, String endMarker) {
+            this.startMarker = startMarker;
+            this.endMarker = endMarker;
+        }
+
+        /**
+         * Returns the text marking the start of the last part of the page that is needed
+         * @return the start marker
+         */
+        public String getStartMarker() {
+            return startMarker;
+        }
+
+        /**
+         * Returns the text marking the end of the last part of the page that is needed
+         * @return the end marker
+         */
+        public String getEndMarker() {
+            return endMarker;
+        }
+
+        @Override
+        public String toString() {
+            return "Cutoff after " + endMarker + " following " + startMarker;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package b7.tools.tracking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which numbered listing pages to request, without knowing up front how many pages there are.
+ * The first pages are requested right away (speculatively), and every page that comes back with products
+ * and a link to a next page pushes the frontier further (and widens how far ahead of it pages are requested).
+ * Once a page comes back empty or without a next link, no pages past it are requested
+ */
+public class PaginationFrontier {
+
+    // Default number of pages requested before any page has come back
+    public static final int DEFAULT_INITIAL_WINDOW = 4;
+
+    // Most pages ever requested ahead of the furthest page known to have products
+    public static final int DEFAULT_MAX_WINDOW = 32;
+
+    // Value of the last page while it is not known yet
+    public static final int UNKNOWN_LAST_PAGE = Integer.MAX_VALUE;
+
+    private int window;  // How many pages past the furthest non-empty page are requested
+    private int maxWindow;  // How large the window can grow
+    private int highestDispatchedPage;  // Highest page number requested so far (0 before start())
+    private int highestNonEmptyPage;  // Highest page number that came back with products and a next link
+    private int lastPage;  // Last page with products (UNKNOWN_LAST_PAGE until a page shows where the listings end)
+    private int recordedPages;  // How many pages have come back
+
+    /**
+     * Constructs a new PaginationFrontier
+     * @param initialWindow how many pages to request before any page has come back
+     *                      (defaults to DEFAULT_INITIAL_WINDOW if non-positive number given)
+     * @param maxWindow most pages to request ahead of the furthest non-empty page
+     *                  (defaults to DEFAULT_MAX_WINDOW if smaller than initialWindow)
+     */
+    public PaginationFrontier(int initialWindow, int maxWindow) {
+        this.window = initialWindow <= 0 ? DEFAULT_INITIAL_WINDOW : initialWindow;
+        this.maxWindow = maxWindow < this.window ? Math.max(DEFAULT_MAX_WINDOW, this.window) : maxWindow;
+        lastPage = UNKNOWN_LAST_PAGE;
+    }
+
+    /**
+     * Returns the first pages to request
+     * @return page numbers 1 to the initial window (empty if start() was already called)
+     */
+    public synchronized List<Integer> start() {
+        if(highestDispatchedPage > 0) {
+            return Collections.emptyList();
+        }
+        return dispatchUpTo(window);
+    }
+
+    /**
+     * Records what a requested page came back with, and finds which pages to request next
+     * @param pageNumber the page number that came back
+     * @param hasProducts true if the page listed any products
+     * @param hasNextPage true if the page links to a next page
+     * @return the page numbers to request next (empty once the last page is known or the window is already requested)
+     */
+    public synchronized List<Integer> recordPage(int pageNumber, boolean hasProducts, boolean hasNextPage) {
+        recordedPages++;
+        if(!hasProducts) {
+            lastPage = Math.min(lastPage, pageNumber - 1);
+            return Collections.emptyList();
+        }
+        if(!hasNextPage) {
+            lastPage = Math.min(lastPage, pageNumber);
+            return Collections.emptyList();
+        }
+
+        // Each page with more pages after it widens the window (additively, up to maxWindow)
+        highestNonEmptyPage = Math.max(highestNonEmptyPage, pageNumber);
+        window = Math.min(window + 1, maxWindow);
+        return dispatchUpTo(highestNonEmptyPage + window);
+    }
+
+    /**
+     * Returns the last page with products, if it is known yet
+     * @return the last page with products, or UNKNOWN_LAST_PAGE if no page has shown where the listings end
+     */
+    public synchronized int getLastPage() {
+        return lastPage;
+    }
+
+    /**
+     * Checks if a page is past the last page (so it does not need to be fetched, even if it was already requested)
+     * @param pageNumber the page number to check
+     * @return true if the last page is known and the page comes after it
+     */
+    public synchronized boolean isPastLastPage(int pageNumber) {
+        return pageNumber > lastPage;
+    }
+
+    /**
+     * Returns how many pages have been requested
+     * @return the highest page number requested so far
+     */
+    public synchronized int getDispatchedCount() {
+        return highestDispatchedPage;
+    }
+
+    /**
+     * Returns how many pages have come back
+     * @return how many pages have been recorded with recordPage()
+     */
+    public synchronized int getRecordedCount() {
+        return recordedPages;
+    }
+
+    /**
+     * Works out how many requested pages were past the last page (requested speculatively, but empty)
+     * @return how many pages were requested past the last page (0 if the last page is not known yet)
+     */
+    public synchronized int findWastedCount() {
+        return lastPage == UNKNOWN_LAST_PAGE ? 0 : Math.max(0, highestDispatchedPage - lastPage);
+    }
+
+    // Requests every page up to the given page number that has not been requested yet (and is not past the last page)
+    private List<Integer> dispatchUpTo(int targetPage) {
+        List<Integer> pagesToRequest = new ArrayList<Integer>();
+        int lastPageToRequest = Math.min(targetPage, lastPage);
+        while(highestDispatchedPage < lastPageToRequest) {
+            highestDispatchedPage++;
+            pagesToRequest.add(highestDispatchedPage);
+        }
+        return pagesToRequest;
+    }
+}
@@ -0,0 +1,88 @@
+package b7.tools.tracking;
+
+/**
+ * A single sighting of a product's price on a store page, as extracted by a crawler
+ * before it is merged into the crawl data
+ */
+public class ProductObservation {
+
+    private String productName;  // Name of the product (including its format, if the store sells several)
+    private String productURL;  // URL of the page where the product can be bought
+    private double price;  // Price of the product when it was seen
+
+    /**
+     * Constructs a ProductObservation with name Product.INVALID_NAME, url Product.INVALID_URL, and price 0
+     */
+    public ProductObservation() {
+        this(Product.INVALID_NAME, Product.INVALID_URL, 0);
+    }
+
+    /**
+     * Constructs a new ProductObservation
+     * @param productName the name of the product
+     * @param productURL the URL of the product page
+     * @param price the price the product was seen at
+     */
+    public ProductObservation(String productName, String productURL, double price) {
+        this.productName = productName;
+        this.productURL = productURL;
+        this.price = price;
+    }
+
+    /**
+     * Returns the name of the product
+     * @return the name of the product
+     */
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * Sets the name of the product
+     * @param productName the new name of the product
+     */
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    /**
+     * Returns the URL of the product page
+     * @return the URL of the product page
+     */
+    public String getProductURL() {
+        return productURL;
+    }
+
+    /**
+     * Sets the URL of the product page
+     * @param productURL the new URL of the product page
+     */
+    public void setProductURL(String productURL) {
+        this.productURL = productURL;
+    }
+
+    /**
+     * Returns the price the product was seen at
+     * @return the price the product was seen at
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    /**
+     * Sets the price the product was seen at
+     * @param price the new price the product was seen at
+     */
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    /**
+     * Returns the observation as a String with the product name, URL, and price
+     * @return the observation as a String
+     */
+    @Override
+    public String toString() {
+        return productName + " (" + productURL + "): " + price;
+    }
+}
@@ -0,0 +1,388 @@
+package b7.tools.tracking;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of long-lived renderer processes (by default PhantomJS running scripts/rendererworker.js).
+ * Each worker takes one request at a time over its stdin and answers on its stdout with a header line
+ * "&lt;STATUS&gt; &lt;byte_length&gt;" followed by exactly that many bytes of UTF-8 content (see rendererworker.js).
+ * Keeping the workers running avoids starting a browser per page, and keeping them out of the crawler's
+ * JVM means their memory leaks go away whenever a worker is restarted. Workers are health checked before
+ * reuse, killed if a request takes too long, and replaced after a set number of renders
+ */
+public class RendererProcessPool implements AutoCloseable {
+
+    // Location of the rendererworker.js file which keeps PhantomJS running and renders URLs sent over stdin
+    public static final String RENDERER_WORKER_JS_FILE_PATH = "./scripts/rendererworker.js";
+
+    // Default settings for the shared pool
+    public static final int DEFAULT_WORKERS = 2;
+    public static final long DEFAULT_RENDER_TIMEOUT_MILLIS = 90000;
+    public static final int DEFAULT_MAX_RENDERS_PER_WORKER = 50;
+
+    // How long (in milliseconds) a worker has to answer a health check
+    public static final long HEALTH_CHECK_TIMEOUT_MILLIS = 10000;
+
+    // How long (in milliseconds) a worker can sit idle before it is health checked again before its next use
+    public static final long HEALTH_CHECK_IDLE_MILLIS = 30000;
+
+    // How often (in milliseconds) a caller waiting for a busy worker checks whether it may start a new one instead
+    public static final long WORKER_WAIT_POLL_MILLIS = 200;
+
+    // Largest response (in bytes) a worker is trusted to send
+    public static final int MAX_RESPONSE_BYTES = 64 * 1024 * 1024;
+
+    // The pool used by WebCrawler when no other pool has been chosen
+    private static RendererProcessPool defaultPool;
+
+    private List<String> workerCommand;  // Command (and its arguments) that starts one worker process
+    private int maxWorkers;  // Most workers that can run at once (callers wait when all of them are busy)
+    private long renderTimeoutMillis;  // How long a worker has to answer a render request before it is killed
+    private int maxRendersPerWorker;  // How many pages a worker can render before being restarted
+
+    private BlockingQueue<RendererWorker> idleWorkers;  // Running workers ready to take a request
+    private int startedWorkers;  // How many workers currently exist (idle or busy)
+    private ScheduledExecutorService watchdog;  // Kills workers that take too long to answer
+    private volatile boolean closed;  // Whether the pool has been closed
+
+    /**
+     * Constructs a new RendererProcessPool with default settings that runs rendererworker.js with PhantomJS
+     * @param phantomJSPath the path to PhantomJS executable (pass null to use WebCrawler.PHANTOM_JS_WINDOWS_EXE_PATH)
+     */
+    public RendererProcessPool(String phantomJSPath) {
+        this(createPhantomJSWorkerCommand(phantomJSPath), DEFAULT_WORKERS, DEFAULT_RENDER_TIMEOUT_MILLIS, DEFAULT_MAX_RENDERS_PER_WORKER);
+    }
+
+    /**
+     * Constructs a new RendererProcessPool
+     * @param workerCommand command (and its arguments) that starts one worker process
+     * @param maxWorkers most workers that can run at once (defaults to DEFAULT_WORKERS if non-positive number given)
+     * @param renderTimeoutMillis how long a worker has to answer a render request before it is killed
+     *                            (defaults to DEFAULT_RENDER_TIMEOUT_MILLIS if non-positive number given)
+     * @param maxRendersPerWorker how many pages a worker can render before being restarted
+     *                            (defaults to DEFAULT_MAX_RENDERS_PER_WORKER if non-positive number given)
+     */
+    public RendererProcessPool(List<String> workerCommand, int maxWorkers, long renderTimeoutMillis, int maxRendersPerWorker) {
+        this.workerCommand = new ArrayList<String>(workerCommand);
+        this.maxWorkers = maxWorkers <= 0 ? DEFAULT_WORKERS : maxWorkers;
+        this.renderTimeoutMillis = renderTimeoutMillis <= 0 ? DEFAULT_RENDER_TIMEOUT_MILLIS : renderTimeoutMillis;
+        this.maxRendersPerWorker = maxRendersPerWorker <= 0 ? DEFAULT_MAX_RENDERS_PER_WORKER : maxRendersPerWorker;
+        idleWorkers = new LinkedBlockingQueue<RendererWorker>();
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "renderer-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the pool shared by all crawlers (creating one that runs the default PhantomJS if needed)
+     * @return the pool shared by all crawlers
+     */
+    public static synchronized RendererProcessPool getDefaultPool() {
+        if(defaultPool == null) {
+            defaultPool = new RendererProcessPool(null);
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool shared by all crawlers (closing the previous shared pool)
+     * @param pool the new pool to share (ignored if null)
+     */
+    public static synchronized void setDefaultPool(RendererProcessPool pool) {
+        if(pool != null) {
+            if(defaultPool != null && defaultPool != pool) {
+                defaultPool.close();
+            }
+            defaultPool = pool;
+        }
+    }
+
+    /**
+     * Creates the command that starts a PhantomJS renderer worker
+     * @param phantomJSPath the path to PhantomJS executable (pass null to use WebCrawler.PHANTOM_JS_WINDOWS_EXE_PATH)
+     * @return the command that starts a PhantomJS renderer worker
+     */
+    public static List<String> createPhantomJSWorkerCommand(String phantomJSPath) {
+        if(phantomJSPath == null) {  // If path is null, we assume user wants to use default Windows executable
+            phantomJSPath = WebCrawler.PHANTOM_JS_WINDOWS_EXE_PATH;
+        }
+        return Arrays.asList(phantomJSPath, RENDERER_WORKER_JS_FILE_PATH);
+    }
+
+    /**
+     * Renders a URL with one of the pool's workers, waiting for a worker to be free if all of them are busy.
+     * If the worker fails, hangs past the render timeout, or sends a malformed response, it is killed
+     * and a new worker is started in its place for later requests
+     * @param url the URL to render
+     * @param pageLoadWaitTime how long (in milliseconds) the worker should wait for the page's JavaScript to load
+     * @return the HTML of the URL after being loaded with JavaScript, or null if an error occurs (or the pool has been closed)
+     */
+    public String render(String url, int pageLoadWaitTime) {
+        RendererWorker worker;
+        try {
+            worker = borrow();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Could not start renderer worker for URL " + url);
+            ex.printStackTrace();
+            return null;
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(IllegalStateException ex) {
+            System.err.println("[ERROR] Could not render URL " + url + ": " + ex.getMessage());
+            return null;
+        }
+
+        boolean healthy = false;
+        try {
+            WorkerResponse response = worker.send("RENDER " + Math.max(pageLoadWaitTime, 0) + " " + url, renderTimeoutMillis);
+            healthy = true;
+            if(!"OK".equals(response.status)) {
+                System.err.println("[ERROR] Renderer worker could not render URL " + url + ": " + response.getContent());
+                return null;
+            }
+            return response.getContent();
+        }
+        catch(IOException ex) {
+            System.err.println("[ERROR] Renderer worker failed or timed out on URL " + url + "; restarting it");
+            ex.printStackTrace();
+            return null;
+        }
+        finally {
+            giveBack(worker, healthy);
+        }
+    }
+
+    /**
+     * Stops every idle worker, and makes sure busy workers are stopped when they finish
+     */
+    @Override
+    public void close() {
+        List<RendererWorker> workersToStop = new ArrayList<RendererWorker>();
+        synchronized(this) {
+            closed = true;
+            idleWorkers.drainTo(workersToStop);
+        }
+        for(RendererWorker worker : workersToStop) {
+            stopWorker(worker);
+        }
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Takes a healthy worker from the pool, starting one if there is room, or waiting for one otherwise.
+     * Idle workers that died, or that have been idle a while and fail a health check, are replaced
+     * @return a running worker that must be given back with giveBack()
+     * @throws IOException if a new worker could not be started
+     * @throws InterruptedException if the thread was interrupted while waiting for a worker
+     */
+    private RendererWorker borrow() throws IOException, InterruptedException {
+        while(true) {
+            RendererWorker worker = idleWorkers.poll();
+            if(worker == null) {
+                synchronized(this) {
+                    if(closed) {
+                        throw new IllegalStateException("Cannot render with a closed renderer pool");
+                    }
+                    if(startedWorkers < maxWorkers) {
+                        startedWorkers++;
+                        try {
+                            return new RendererWorker(workerCommand);
+                        }
+                        catch(IOException ex) {
+                            startedWorkers--;
+                            throw ex;
+                        }
+                    }
+                }
+                // Check back now and then, since a busy worker that gets stopped frees up room to start a new one
+                worker = idleWorkers.poll(WORKER_WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(worker == null) {
+                    continue;
+                }
+            }
+
+            if(isHealthy(worker)) {
+                return worker;
+            }
+            stopWorker(worker);
+        }
+    }
+
+    /**
+     * Gives a worker back to the pool, or stops it if it failed, has rendered too many pages, or the pool is closed
+     * @param worker the worker to give back
+     * @param healthy whether the worker's last request went as expected
+     */
+    private void giveBack(RendererWorker worker, boolean healthy) {
+        worker.renders++;
+        worker.lastUsedMillis = System.currentTimeMillis();
+        if(!healthy || closed || worker.renders >= maxRendersPerWorker) {
+            stopWorker(worker);
+        }
+        else {
+            idleWorkers.offer(worker);
+        }
+    }
+
+    /**
+     * Checks that a worker is still running, pinging it if it has been idle a while
+     * @param worker the worker to check
+     * @return true if the worker can take a request
+     */
+    private boolean isHealthy(RendererWorker worker) {
+        if(!worker.process.isAlive()) {
+            return false;
+        }
+        if(System.currentTimeMillis() - worker.lastUsedMillis < HEALTH_CHECK_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            boolean answered = "PONG".equals(worker.send("PING", HEALTH_CHECK_TIMEOUT_MILLIS).status);
+            worker.lastUsedMillis = System.currentTimeMillis();
+            return answered;
+        }
+        catch(IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Kills a worker's process and frees up its spot in the pool
+     * @param worker the worker to stop
+     */
+    private void stopWorker(RendererWorker worker) {
+        synchronized(this) {
+            startedWorkers--;
+        }
+        worker.process.destroyForcibly();
+    }
+
+    /**
+     * Status and content of one worker response
+     */
+    private static class WorkerResponse {
+        private final String status;
+        private final byte[] content;
+
+        private WorkerResponse(String status, byte[] content) {
+            this.status = status;
+            this.content = content;
+        }
+
+        private String getContent() {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * One running renderer process, along with the pipes used to talk to it
+     */
+    private class RendererWorker {
+        private final Process process;
+        private final OutputStream requests;
+        private final InputStream responses;
+        private int renders;  // How many requests the worker has answered
+        private long lastUsedMillis;  // When the worker last answered a request
+
+        private RendererWorker(List<String> workerCommand) throws IOException {
+            ProcessBuilder processBuilder = new ProcessBuilder(workerCommand);
+            // Workers log to stderr, which would fill up and stall them if nobody read it
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = processBuilder.start();
+            requests = process.getOutputStream();
+            responses = new BufferedInputStream(process.getInputStream());
+            lastUsedMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * Sends a request and reads the response, killing the process if no full response arrives in time
+         * (killing it closes its stdout, which ends the blocked read)
+         * @param request the request line to send
+         * @param timeoutMillis how long the worker has to send back the full response
+         * @return the worker's response
+         * @throws IOException if the worker could not be talked to, timed out, or sent a malformed response
+         */
+        private WorkerResponse send(String request, long timeoutMillis) throws IOException {
+            ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+                process.destroyForcibly();
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                requests.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+                requests.flush();
+
+                String header = readHeaderLine();
+                int separatorIndex = header.indexOf(' ');
+                if(separatorIndex < 0) {
+                    throw new IOException("Malformed renderer response header: " + header);
+                }
+                String status = header.substring(0, separatorIndex);
+                int length;
+                try {
+                    length = Integer.parseInt(header.substring(separatorIndex + 1).trim());
+                }
+                catch(NumberFormatException ex) {
+                    throw new IOException("Malformed renderer response length: " + header, ex);
+                }
+                if(length < 0 || length > MAX_RESPONSE_BYTES) {
+                    throw new IOException("Renderer response length out of range: " + length);
+                }
+                return new WorkerResponse(status, readContent(length));
+            }
+            finally {
+                timeout.cancel(false);
+            }
+        }
+
+        // Reads the header line of a response (without its line ending)
+        private String readHeaderLine() throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            int nextByte;
+            while((nextByte = responses.read()) != '\n') {
+                if(nextByte == -1) {
+                    throw new IOException("Renderer worker stopped before sending a response");
+                }
+                if(header.size() > 1024) {
+                    throw new IOException("Renderer response header too long");
+                }
+                if(nextByte != '\r') {
+                    header.write(nextByte);
+                }
+            }
+            return new String(header.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        // Reads exactly length bytes of response content
+        private byte[] readContent(int length) throws IOException {
+            byte[] content = new byte[length];
+            int offset = 0;
+            while(offset < length) {
+                int bytesRead = responses.read(content, offset, length - offset);
+                if(bytesRead == -1) {
+                    throw new IOException("Renderer worker stopped after " + offset + " of " + length + " bytes");
+                }
+                offset += bytesRead;
+            }
+            return content;
+        }
+    }
+}
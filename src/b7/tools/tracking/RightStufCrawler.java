@@ -1,16 +1,29 @@
 package b7.tools.tracking;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
 
 import java.io.*;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebCrawler that is specifically customized for the Anime
@@ -44,13 +57,63 @@ public class RightStufCrawler extends WebCrawler {
     public static final String NUMBER_OF_PRODUCTS_CLASS = "facets-facet-browse-title";
     public static final String NUMBER_OF_PRODUCTS_ATTRIBUTE = "data-quantity";
 
+    // Precompiled plan for reading every product off a listing page: its title, the link to its page, and its sale price
+    //   (the span with the sale price, not the MSRP value), read into a record with the *_FIELD indices
+    public static final int TITLE_FIELD = 0;
+    public static final int LINK_FIELD = 1;
+    public static final int PRICE_FIELD = 2;
+    public static final ExtractionPlan LISTING_PAGE_PLAN = new ExtractionPlan("." + PRODUCT_INFORMATION_DIV_CLASS,
+            new ExtractionPlan.Field("." + PRODUCT_TITLE_CLASS, null),
+            new ExtractionPlan.Field("." + PRODUCT_TITLE_CLASS + " a", "href"),
+            new ExtractionPlan.Field("." + PRODUCT_PRICE_DIV_CLASS + " ." + PRODUCT_PRICE_SPAN_CLASS, PRODUCT_PRICE_ATTRIBUTE));
+
+    // CSS selector that matches once the JavaScript on a listing page has filled in what we need to read
+    public static final String LISTING_PAGE_READY_SELECTOR = "." + PRODUCT_INFORMATION_DIV_CLASS + " ." + PRODUCT_PRICE_SPAN_CLASS
+            + "[" + PRODUCT_PRICE_ATTRIBUTE + "]";
+
+    // Qualifiers to read the product listings straight from the JSON search API the listing pages fill themselves in from
+    public static final String ITEMS_API_URL = STORE_URL + "/api/items";
+    public static final String ITEMS_API_CATEGORY_QUERY = "commercecategoryurl=/category/Blu~ray,DVD&fieldset=search";
+    public static final int ITEMS_API_PAGE_SIZE = 100;  // Largest page size the API allows
+    public static final String ITEMS_API_ITEMS_KEY = "items";
+    public static final String ITEMS_API_TOTAL_KEY = "total";
+    public static final String ITEM_TITLE_KEY = "storedisplayname2";  // Title shown in the listing grid
+    public static final String ITEM_FALLBACK_TITLE_KEY = "displayname";  // Title to use if an item has no listing grid title
+    public static final String ITEM_URL_COMPONENT_KEY = "urlcomponent";
+    public static final String ITEM_PRICE_DETAIL_KEY = "onlinecustomerprice_detail";
+    public static final String ITEM_PRICE_KEY = "onlinecustomerprice";  // What the listing grid puts in PRODUCT_PRICE_ATTRIBUTE
+    public static final String ITEMS_API_ITEM_QUERY = "fieldset=search&url=";  // Looks up a single item by its URL component
+
+    // How many times we try to read a page of the items API (it can fail under load)
+    public final static int MAX_ITEMS_API_ATTEMPTS = 3;
+
     // Path we will save the test base page in (so we can create directory if it doesn't already exist)
     public final static String BASE_PAGE_PATH = "savedata/basepages/";
     // Where we will save the test base page
     public final static String BASE_PAGE_NAME = BASE_PAGE_PATH + "rightstuf.html";
 
+    // How many page loads from the store we allow in flight at once when crawling with multiple threads
+    //   (kept low since every page load runs a headless browser)
+    public final static int DEFAULT_PARALLELISM = 4;
+
+    // How many times the price of a product whose cell a rendered listing page left unfilled is re-queried from the
+    //   items API (instead of rendering the whole listing page again) before the page is dead-lettered
+    public final static int MAX_CELL_REQUERY_ATTEMPTS = 3;
+
+    // Host (and its subdomains) the headless browser is allowed to contact while rendering Right Stuf pages
+    public final static String STORE_HOST = "rightstufanime.com";
+
+    // Pool of headless browsers using the lean store crawling profile, shared by every RightStufCrawler
+    private static HtmlUnitWebClientPool webClientPool;
+
+    // Whether multithreaded crawls read the items API first (instead of going straight to rendering the listing pages)
+    private static volatile boolean useItemsApi = true;
+
     public final static String CRAWL_DATA_TITLE = "Right Stuf Crawl Data";
     private CrawlData crawlData;  // The current CrawlData (which we can update with this crawler)
+    private ListingPageFingerprints listingPageFingerprints;  // Fingerprints of the listing pages from the last crawl (null to not use any)
+    private final Queue<String> deadLetterPages = new ConcurrentLinkedQueue<String>();  // Listing pages to render once more at the end of the crawl
+    private volatile PageArchive pageArchive;  // Archive every fetched page is appended to (null to not archive pages)
 
     /**
      * Constructs a new RightStufCrawler with empty crawl data
@@ -80,6 +143,18 @@ public class RightStufCrawler extends WebCrawler {
         return String.format("?page=%d&show=%d", pageNumber, productsToShowOnPage);
     }
 
+    /**
+     * Returns the pool of headless browsers (using the lean store crawling profile) used to render Right Stuf pages
+     * @return the pool of headless browsers used to render Right Stuf pages
+     */
+    public static synchronized HtmlUnitWebClientPool getWebClientPool() {
+        if(webClientPool == null) {
+            webClientPool = new HtmlUnitWebClientPool(DEFAULT_PARALLELISM, 1, HtmlUnitWebClientPool.DEFAULT_MAX_USES_PER_CLIENT,
+                    HtmlUnitWebClientPool.DEFAULT_MAX_HEAP_USAGE, () -> HtmlUnitCrawlProfile.createStoreCrawlingWebClient(STORE_HOST));
+        }
+        return webClientPool;
+    }
+
     /**
      * Returns a copy of the Crawl Data
      * @return a copy of the Crawl data
@@ -96,6 +171,38 @@ public class RightStufCrawler extends WebCrawler {
         this.crawlData = crawlData;
     }
 
+    /**
+     * Sets the fingerprints of the listing pages to check and record listing pages against while crawling. Products
+     * on a listing page that has not changed since its fingerprint was recorded are extended to today instead of
+     * being merged into the crawl data again
+     * @param listingPageFingerprints the listing page fingerprints to use (null to not use any)
+     */
+    public void setListingPageFingerprints(ListingPageFingerprints listingPageFingerprints) {
+        this.listingPageFingerprints = listingPageFingerprints;
+    }
+
+    /**
+     * Sets the archive to append every page fetched while crawling to (rendered listing pages and items API
+     * pages), so extractArchivedPage() can be run over them again later
+     * @param pageArchive the page archive to use (null to not archive pages)
+     */
+    public void setPageArchive(PageArchive pageArchive) {
+        this.pageArchive = pageArchive;
+    }
+
+    /**
+     * Appends a fetched page to the page archive (if one is being used)
+     * @param kind what kind of page it is (like PageArchive.LISTING_PAGE)
+     * @param url URL the page was fetched from
+     * @param content the contents of the page (nothing is archived if null)
+     */
+    private void archivePage(String kind, String url, String content) {
+        PageArchive archive = pageArchive;
+        if(archive != null && content != null) {
+            archive.append(kind, url, content);
+        }
+    }
+
     /**
      * Saves the HTML code of the INITIAL_URL contents to a local file
      * (BASE_PAGE_NAME)
@@ -114,7 +221,7 @@ public class RightStufCrawler extends WebCrawler {
 
         // Use readUrlContentsWithJavaScript() too have a headless browser visit Right Stuf,
         //   because Right Stuf requires JavaScript to load their web page HTML properly
-        String fullPageHTML = WebCrawler.readUrlContentsWithJavaScriptHtmlunit(INITIAL_URL);
+        String fullPageHTML = WebCrawler.readUrlContentsWithJavaScriptHtmlunit(INITIAL_URL, LISTING_PAGE_READY_SELECTOR);
 
         // If HTML is returned as empty string, that means page wasn't able to be read
         if ("".equals(fullPageHTML)) {
@@ -141,29 +248,22 @@ public class RightStufCrawler extends WebCrawler {
      * Attempts to parse the base page (created with saveBasePage() method)
      */
     public void parseBasePage() {
-        StringBuilder stringBuilder = new StringBuilder();
+        String pageHTML = "";
         try {
-            // Read in the file
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(BASE_PAGE_NAME));
-            String currentLine = bufferedReader.readLine();
-            while(currentLine != null) {
-                stringBuilder.append(currentLine);
-                stringBuilder.append("\n");
-                currentLine = bufferedReader.readLine();
-            }
-            bufferedReader.close();
+            // Read in the file (saved with FileWriter, so in the default charset)
+            pageHTML = PageStreamReader.readText(new FileInputStream(BASE_PAGE_NAME), Charset.defaultCharset().name(), null);
         }
         catch(FileNotFoundException ex) {
             System.err.println("[ERROR] Could not find file " + BASE_PAGE_NAME + ", make sure it has been created!");
             ex.printStackTrace();
         }
         catch(IOException ex) {
-            System.err.println("[ERROR] Could not close reader going through " + BASE_PAGE_NAME);
+            System.err.println("[ERROR] Could not read " + BASE_PAGE_NAME);
             ex.printStackTrace();
         }
 
         // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(stringBuilder.toString());
+        Document document = Jsoup.parse(pageHTML);
 
         // Find elements which have matching product class, so that we can extract information from each one
         Elements productElements = document.getElementsByClass(PRODUCT_INFORMATION_DIV_CLASS);
@@ -229,17 +329,71 @@ public class RightStufCrawler extends WebCrawler {
                     " minutes due to how Right Stuf's website is designed. Please be patient\n");
         }
 
-        return visitPage(INITIAL_URL, printProgress, true);
+        boolean allPagesVisited = visitPage(INITIAL_URL, printProgress, true);
+
+        // Render the pages that were left with unread prices once more, now that the rest of the crawl is done
+        return retryDeadLetterPages(printProgress) && allPagesVisited;
     }
 
     /**
-     * Attempts to visit all store pages with product listings by utilizing multithreading to
-     * visit multiple product listing pages at the same time
+     * Attempts to visit all store pages with product listings by running the crawl through a CrawlPipeline,
+     * so listing pages are loaded, parsed, and merged into the crawl data at the same time
      * @param printProgress true to print out crawling progress to standard output, false to not print
-     * @param parallelism how many parallel threads to use (defaults to available processor count if non-positive number given)
+     * @param parallelism how many page loads from the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
      * @return true if visiting all pages worked without issue, false if an error occurred during the process
      */
     public boolean visitAllPagesMultithreaded(final boolean printProgress, int parallelism) {
+        return visitAllPagesMultithreaded(printProgress, parallelism, null, null);
+    }
+
+    /**
+     * Attempts to visit all store pages with product listings. The items API is read first (when turned on);
+     * if it cannot be read, the listing pages are rendered through a CrawlPipeline, recording every finished
+     * listing page in a checkpoint. Pages the checkpoint already has are not loaded again; their saved
+     * observations are merged into the crawl data instead
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @param parallelism how many page loads from the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
+     * @param checkpoint the checkpoint to resume from and record progress in (null to not checkpoint)
+     * @param checkpointFilename where to save the checkpoint every CrawlCheckpoint.DEFAULT_SAVE_INTERVAL_PAGES
+     *                           completed pages (null to only record progress in memory)
+     * @return true if visiting all pages worked without issue, false if an error occurred during the process
+     */
+    public boolean visitAllPagesMultithreaded(final boolean printProgress, int parallelism, CrawlCheckpoint checkpoint,
+                                              String checkpointFilename) {
+        return visitAllPagesMultithreaded(ITEMS_API_URL, printProgress, parallelism, checkpoint, checkpointFilename);
+    }
+
+    /**
+     * Attempts to visit all store pages with product listings. The items API is read first (when turned on);
+     * if it cannot be read, the listing pages are rendered through a CrawlPipeline, recording every finished
+     * listing page in a checkpoint. Pages the checkpoint already has are not loaded again; their saved
+     * observations are merged into the crawl data instead
+     * @param itemsApiURL URL of the items API to read first (like ITEMS_API_URL)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @param parallelism how many page loads from the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
+     * @param checkpoint the checkpoint to resume from and record progress in (null to not checkpoint)
+     * @param checkpointFilename where to save the checkpoint every CrawlCheckpoint.DEFAULT_SAVE_INTERVAL_PAGES
+     *                           completed pages (null to only record progress in memory)
+     * @return true if visiting all pages worked without issue, false if an error occurred during the process
+     */
+    public boolean visitAllPagesMultithreaded(String itemsApiURL, final boolean printProgress, int parallelism,
+                                              CrawlCheckpoint checkpoint, String checkpointFilename) {
+        if(parallelism <= 0) {
+            parallelism = DEFAULT_PARALLELISM;
+        }
+
+        // Read the listings straight from the items API if we can (no headless browser needed)
+        if(useItemsApi) {
+            if(visitItemsApi(itemsApiURL, printProgress, parallelism)) {
+                System.out.println("Success");
+                return true;
+            }
+            System.out.println("Could not read the Right Stuf items API; rendering the listing pages instead");
+        }
+
         // Give message indicating that this process will take a while if printProgress is true
         int maxExpectedRuntime = 30;
         if(printProgress) {
@@ -247,102 +401,593 @@ public class RightStufCrawler extends WebCrawler {
                     " minutes due to how Right Stuf's website is designed. Please be patient\n");
         }
 
-        // Create list of page visitors and set up each one to give back results from the page they visit
-        final int NUMBER_OF_PAGES_TO_VISIT = findNumberOfListingPages();
-        if(printProgress) {
-            System.out.println("Found " +  NUMBER_OF_PAGES_TO_VISIT + " pages to visit\n");
+        // Request the first few listing pages right away (instead of rendering the first page just to count the pages),
+        //   and let every listing page that comes back lead to more of them until the frontier finds the last page
+        boolean allPagesVisited;
+        PaginationFrontier paginationFrontier = new PaginationFrontier(Math.min(PaginationFrontier.DEFAULT_INITIAL_WINDOW, parallelism),
+                parallelism);  // No further ahead than there are fetch workers to fetch the pages
+        try (CrawlPipeline crawlPipeline = new CrawlPipeline("right-stuf", parallelism, CrawlPipeline.DEFAULT_PARSE_WORKERS,
+                CrawlPipeline.DEFAULT_QUEUE_CAPACITY, observation -> updateCrawlData(observation.getProductName(),
+                observation.getProductURL(), observation.getPrice(), printProgress))) {
+            for(int pageNumber : paginationFrontier.start()) {
+                crawlPipeline.submit(createListingPageRequest(pageNumber, paginationFrontier, checkpoint, checkpointFilename, printProgress));
+            }
+            allPagesVisited = crawlPipeline.awaitCompletion();
+            if(printProgress) {
+                System.out.println(crawlPipeline.findStatsSummary());
+                System.out.println("Visited " + paginationFrontier.getDispatchedCount() + " listing pages ("
+                        + paginationFrontier.findWastedCount() + " past the last page)");
+            }
+        }
+        catch(InterruptedException ex) {
+            ex.printStackTrace();
+            Thread.currentThread().interrupt();
+            allPagesVisited = false;
+        }
+
+        // Render the pages that were left with unread prices once more, now that the rest of the crawl is done
+        allPagesVisited = retryDeadLetterPages(printProgress) && allPagesVisited;
+
+        // Save whatever the last few pages added to the checkpoint
+        if(checkpoint != null && checkpointFilename != null) {
+            CrawlerDataHandler.saveCrawlCheckpoint(checkpoint, checkpointFilename);
+        }
+
+        if(!allPagesVisited) {
+            return false;
+        }
+        System.out.println("Success");
+        return true;
+    }
+
+    /**
+     * Creates the pipeline request for a product listing page, which is parsed into the products on the page
+     * (and into requests for the next listing pages the frontier decides on). Prices the page has not filled in yet
+     * are re-queried from the items API; if some still cannot be read, the page is dead-lettered (and left out of the
+     * checkpoint) instead of being rendered again. A page the checkpoint already has is not loaded at all, and gives
+     * back what the checkpoint saved for it; a page found to be past the last page before it is fetched is skipped
+     * @param pageNumber number of the product listing page
+     * @param paginationFrontier frontier deciding which listing pages to request
+     * @param checkpoint checkpoint to look the page up in and record it in once done (null to not checkpoint)
+     * @param checkpointFilename where to save the checkpoint (null to not save it)
+     * @param printProgress true to print when the page starts loading, false to not print
+     * @return the pipeline request for the listing page
+     */
+    private CrawlPipeline.PageRequest createListingPageRequest(final int pageNumber, final PaginationFrontier paginationFrontier,
+                                                               final CrawlCheckpoint checkpoint, final String checkpointFilename,
+                                                               final boolean printProgress) {
+        return new CrawlPipeline.PageRequest(BASE_URL + getUrlQuery(pageNumber, PRODUCTS_PER_LISTING_PAGE),
+                url -> {
+                    if(paginationFrontier.isPastLastPage(pageNumber)) {
+                        return "";  // Requested before the last page was found, so the parser skips it
+                    }
+                    if(checkpoint != null && checkpoint.findCompletedPage(pageNumber) != null) {
+                        return "";  // Already done, so the parser reads the page from the checkpoint
+                    }
+                    if(printProgress) {
+                        System.out.println("Starting to visit page " + pageNumber);
+                    }
+                    String pageHTML = FetchStrategySelector.getDefaultSelector().fetch(url, RightStufCrawler::getWebClientPool, LISTING_PAGE_READY_SELECTOR);
+                    archivePage(PageArchive.LISTING_PAGE, url, pageHTML);
+                    return pageHTML;
+                },
+                (request, pageHTML) -> {
+                    if(paginationFrontier.isPastLastPage(pageNumber)) {
+                        return new CrawlPipeline.ParsedPage(null, null);
+                    }
+                    List<ProductObservation> observations;
+                    boolean hasNextPage;
+                    Map<String, String> incompleteProducts = new LinkedHashMap<String, String>();
+                    CrawlCheckpoint.CompletedPage completedPage = checkpoint == null ? null : checkpoint.findCompletedPage(pageNumber);
+                    if(completedPage != null) {
+                        observations = completedPage.getObservations();
+                        hasNextPage = completedPage.isNextPage();
+                    }
+                    else {
+                        Document document = Jsoup.parse(pageHTML);
+                        observations = parseListingPage(document, request.getUrl(), incompleteProducts);
+                        hasNextPage = hasNextPage(document);
+                    }
+
+                    List<CrawlPipeline.PageRequest> followUpRequests = new ArrayList<CrawlPipeline.PageRequest>();
+                    for(int nextPageNumber : paginationFrontier.recordPage(pageNumber,
+                            !observations.isEmpty() || !incompleteProducts.isEmpty(), hasNextPage)) {
+                        followUpRequests.add(createListingPageRequest(nextPageNumber, paginationFrontier, checkpoint, checkpointFilename,
+                                printProgress));
+                    }
+                    if(!incompleteProducts.isEmpty()) {
+                        // The page is finished once the prices it had not filled in come back from the items API
+                        followUpRequests.add(createPriceRequeryRequest(pageNumber, request.getUrl(), hasNextPage, observations,
+                                incompleteProducts, checkpoint, checkpointFilename, printProgress));
+                        return new CrawlPipeline.ParsedPage(null, followUpRequests);
+                    }
+                    if(completedPage == null) {
+                        recordCompletedPage(pageNumber, hasNextPage, observations, checkpoint, checkpointFilename);
+                    }
+                    return createListingPageMerge(request.getUrl(), observations, followUpRequests, printProgress);
+                });
+    }
+
+    /**
+     * Creates the pipeline request that re-queries the items API for the prices a listing page had not filled in yet.
+     * The lookups run in the fetch stage (see requeryProductPrices), where the prices read are also archived under the
+     * listing page's URL (see archiveRequeriedPrices), and the parser adds them to the products the page did show before
+     * finishing the page like any other listing page. If some prices could still not be read, what was read is merged
+     * and the page is dead-lettered instead
+     * @param pageNumber number of the product listing page
+     * @param pageURL URL of the product listing page
+     * @param hasNextPage true if the listing page links to a next page
+     * @param observations the products the listing page showed the price of
+     * @param incompleteProducts the products (link to title) the listing page had not filled in the price of
+     * @param checkpoint checkpoint to record the page in once done (null to not checkpoint)
+     * @param checkpointFilename where to save the checkpoint (null to not save it)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @return the pipeline request for the re-queried prices
+     */
+    private CrawlPipeline.PageRequest createPriceRequeryRequest(final int pageNumber, final String pageURL, final boolean hasNextPage,
+                                                                final List<ProductObservation> observations,
+                                                                final Map<String, String> incompleteProducts,
+                                                                final CrawlCheckpoint checkpoint, final String checkpointFilename,
+                                                                final boolean printProgress) {
+        return new CrawlPipeline.PageRequest(pageURL,
+                url -> {
+                    JSONObject productPrices = requeryProductPrices(ITEMS_API_URL, incompleteProducts.keySet());
+                    archiveRequeriedPrices(pageArchive, pageURL, productPrices, incompleteProducts);
+                    return productPrices.toString();
+                },
+                (request, pricesJson) -> {
+                    List<ProductObservation> pageObservations = new ArrayList<ProductObservation>(observations);
+                    if(!addRequeriedPrices(new JSONObject(pricesJson), pageURL, incompleteProducts, pageObservations)) {
+                        // Merge what was read, and leave the rest for the end of the crawl
+                        deadLetterPage(pageURL);
+                        return new CrawlPipeline.ParsedPage(pageObservations, null);
+                    }
+                    recordCompletedPage(pageNumber, hasNextPage, pageObservations, checkpoint, checkpointFilename);
+                    return createListingPageMerge(pageURL, pageObservations, null, printProgress);
+                });
+    }
+
+    /**
+     * Records a fully read listing page in the checkpoint, saving the checkpoint every DEFAULT_SAVE_INTERVAL_PAGES pages
+     * @param pageNumber number of the product listing page
+     * @param hasNextPage true if the listing page links to a next page
+     * @param observations every product on the page
+     * @param checkpoint checkpoint to record the page in (null to not checkpoint)
+     * @param checkpointFilename where to save the checkpoint (null to not save it)
+     */
+    private static void recordCompletedPage(int pageNumber, boolean hasNextPage, List<ProductObservation> observations,
+                                            CrawlCheckpoint checkpoint, String checkpointFilename) {
+        if(checkpoint == null) {
+            return;
+        }
+        int unsavedPageCount = checkpoint.recordCompletedPage(pageNumber, hasNextPage, observations);
+        if(checkpointFilename != null && unsavedPageCount >= CrawlCheckpoint.DEFAULT_SAVE_INTERVAL_PAGES) {
+            CrawlerDataHandler.saveCrawlCheckpoint(checkpoint, checkpointFilename);
         }
+    }
+
+    /**
+     * Checks if a product listing page links to a next listing page
+     * @param document the parsed product listing page
+     * @return true if the page's pagination has a next page link, false otherwise
+     */
+    public static boolean hasNextPage(Document document) {
+        Element paginationNav = document.getElementsByClass(NEXT_PAGE_NAV_CLASS).last();
+        return paginationNav != null && paginationNav.getElementsByClass(NEXT_PAGE_LIST_ITEM_CLASS).size() > 0;
+    }
 
+    /**
+     * Visits every page of the items API (ITEMS_API_PAGE_SIZE items at a time) with plain HTTP requests, and
+     * updates the crawl data with every item once all the pages have been read. The first page gives the total
+     * number of items, after which the rest of the pages are requested at the same time
+     * @param itemsApiURL URL of the items API (like ITEMS_API_URL)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @param parallelism how many requests to the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
+     * @return true if every page of the items API was read (the crawl data is only updated then), false if a page
+     *         could not be read or parsed, or the pages gave no products or fewer products than the total they reported
+     */
+    public boolean visitItemsApi(final String itemsApiURL, final boolean printProgress, int parallelism) {
         if(parallelism <= 0) {
-            parallelism = Runtime.getRuntime().availableProcessors() - 1;
+            parallelism = DEFAULT_PARALLELISM;
         }
-        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
-        try {
-            forkJoinPool.submit(() -> {
-                List<Boolean> successList = IntStream.range(1, NUMBER_OF_PAGES_TO_VISIT)
-                        .parallel()
-                        .mapToObj(i -> visitPageByIndex(i, printProgress))
-                        .collect(Collectors.toList());
-            }).get();
+
+        // Hold on to every observation until all pages are read, so a failure partway through leaves the crawl data alone
+        //   (observations from pages that have not changed since the last crawl are held separately, to be extended to today,
+        //   and the fingerprints of the pages are only recorded once everything has been merged)
+        final List<ProductObservation> observations = Collections.synchronizedList(new ArrayList<ProductObservation>());
+        final List<ProductObservation> unchangedObservations = Collections.synchronizedList(new ArrayList<ProductObservation>());
+        final Map<String, String> pageFingerprints = new ConcurrentHashMap<String, String>();
+        final AtomicInteger totalItems = new AtomicInteger(0);  // Total number of items the first page reports
+        boolean allPagesVisited;
+        try (CrawlPipeline crawlPipeline = new CrawlPipeline("right-stuf-items-api", parallelism, CrawlPipeline.DEFAULT_PARSE_WORKERS,
+                CrawlPipeline.DEFAULT_QUEUE_CAPACITY, observations::add)) {
+            crawlPipeline.submit(createItemsApiPageRequest(itemsApiURL, 0, unchangedObservations, pageFingerprints, totalItems,
+                    printProgress));
+            allPagesVisited = crawlPipeline.awaitCompletion();
+            if(printProgress) {
+                System.out.println(crawlPipeline.findStatsSummary());
+            }
+        }
+        catch(InterruptedException ex) {
+            ex.printStackTrace();
+            Thread.currentThread().interrupt();
+            allPagesVisited = false;
         }
-        catch(InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        if(!allPagesVisited) {
+            return false;
         }
 
-        System.out.println("Success");
+        // An empty or cut short catalog means the query no longer matches what the store sells, so it is not trusted
+        int observedCount = observations.size() + unchangedObservations.size();
+        if(observedCount == 0 || observedCount < totalItems.get()) {
+            System.err.println("[ERROR] The items API gave " + observedCount + " products out of the " + totalItems.get()
+                    + " it reported for " + itemsApiURL);
+            return false;
+        }
+
+        observations.addAll(extendObservedProducts(unchangedObservations));
+        for(ProductObservation observation : observations) {
+            updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+        }
+        for(Map.Entry<String, String> pageFingerprint : pageFingerprints.entrySet()) {
+            recordListingPageFingerprint(pageFingerprint.getKey(), pageFingerprint.getValue());
+        }
         return true;
     }
 
     /**
-     * Visits a Right Stuf product listing page, at the given page index
-     * @param pageIndex what page number to visit
-     * @param printProgress true to print progress, false to not print
-     * @return result of visitPage() [true if there is no more pages to visit, false if there is a link to a next page from the visited page]
+     * Creates the pipeline request for a page of the items API, which is parsed into the items on the page.
+     * The first page (offset 0) also leads to requests for every other page, once it gives the total number of items
+     * @param itemsApiURL URL of the items API
+     * @param offset how many items come before the page
+     * @param unchangedObservations list to add the items to instead if the page has not changed since the last crawl
+     * @param pageFingerprints map to put the fingerprint of the page in, to record once every page has been merged
+     * @param totalItems set to the total number of items the first page reports
+     * @param printProgress true to print when the page has been read, false to not print
+     * @return the pipeline request for the page of the items API
      */
-    private boolean visitPageByIndex(int pageIndex, boolean printProgress)
-    {
-        String urlToVisit = BASE_URL + getUrlQuery(pageIndex, PRODUCTS_PER_LISTING_PAGE);
-        if(printProgress) {
-            System.out.println("Starting to visit page " + pageIndex);
+    private CrawlPipeline.PageRequest createItemsApiPageRequest(final String itemsApiURL, final int offset,
+                                                                final List<ProductObservation> unchangedObservations,
+                                                                final Map<String, String> pageFingerprints,
+                                                                final AtomicInteger totalItems, final boolean printProgress) {
+        return new CrawlPipeline.PageRequest(itemsApiURL + getItemsApiQuery(offset),
+                url -> {
+                    String pageJson = null;
+                    for(int attempt = 1; pageJson == null && attempt <= MAX_ITEMS_API_ATTEMPTS; attempt++) {
+                        pageJson = WebCrawler.readUrlContents(url);
+                    }
+                    archivePage(PageArchive.ITEMS_API_PAGE, url, pageJson);
+                    return pageJson;
+                },
+                (request, pageJson) -> {
+                    JSONObject page = new JSONObject(pageJson);
+                    List<ProductObservation> observations = parseItemsApiPage(page, request.getUrl());
+                    if(printProgress) {
+                        System.out.println("Read " + observations.size() + " products from items API page " + request.getUrl());
+                    }
+
+                    List<CrawlPipeline.PageRequest> otherPageRequests = new ArrayList<CrawlPipeline.PageRequest>();
+                    if(offset == 0) {
+                        totalItems.set(page.getInt(ITEMS_API_TOTAL_KEY));
+                        for(int nextOffset = ITEMS_API_PAGE_SIZE; nextOffset < totalItems.get(); nextOffset += ITEMS_API_PAGE_SIZE) {
+                            otherPageRequests.add(createItemsApiPageRequest(itemsApiURL, nextOffset, unchangedObservations, pageFingerprints,
+                                    totalItems, printProgress));
+                        }
+                    }
+                    String fingerprint = findListingPageFingerprint(observations);
+                    if(fingerprint != null) {
+                        pageFingerprints.put(request.getUrl(), fingerprint);
+                    }
+                    if(isUnchangedListingPage(request.getUrl(), fingerprint)) {
+                        unchangedObservations.addAll(observations);
+                        return new CrawlPipeline.ParsedPage(null, otherPageRequests);
+                    }
+                    return new CrawlPipeline.ParsedPage(observations, otherPageRequests);
+                });
+    }
+
+    /**
+     * Makes the fingerprint of the products observed on a listing page, to check the page against (and later record in)
+     * the listing page fingerprints
+     * @param observations the products observed on the page
+     * @return the fingerprint of the page, or null if no listing page fingerprints are being used (or the page has no products)
+     */
+    private String findListingPageFingerprint(List<ProductObservation> observations) {
+        if(listingPageFingerprints == null || observations.isEmpty()) {
+            return null;
         }
-        return visitPage(urlToVisit, printProgress, false);
+        return ListingPageFingerprints.findObservationsFingerprint(observations);
     }
 
     /**
-     * Uses some math on the INITIAL_URL page to find out how many products are currently
-     * on the Right Stuf store, to determine how many pages of product listings should be
-     * visited to visit all products (plus buffer of 1 extra page)
-     * @return the number of expected pages for Right Stuf product listings, plus 1
+     * Checks a listing page against its fingerprint from the last crawl
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now (null if no listing page fingerprints are being used)
+     * @return true if the page lists the same products at the same prices as on the last crawl,
+     *         false if it changed (or no listing page fingerprints are being used)
      */
-    public static int findNumberOfListingPages() {
-        // Visit the INITIAL_URL
-        String pageHTML = WebCrawler.readUrlContentsWithJavaScriptHtmlunit(INITIAL_URL);
+    private boolean isUnchangedListingPage(String pageURL, String fingerprint) {
+        ListingPageFingerprints fingerprints = listingPageFingerprints;
+        return fingerprints != null && fingerprints.matchesFingerprint(pageURL, fingerprint);
+    }
 
-        // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(pageHTML);
+    /**
+     * Records the fingerprint of a listing page whose products were all merged into the crawl data
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now (null if no listing page fingerprints are being used)
+     */
+    private void recordListingPageFingerprint(String pageURL, String fingerprint) {
+        ListingPageFingerprints fingerprints = listingPageFingerprints;
+        if(fingerprints != null && fingerprint != null) {
+            fingerprints.recordFingerprint(pageURL, fingerprint);
+        }
+    }
+
+    /**
+     * Finds how the merge stage is to merge a listing page whose prices were all read. If the page has not changed
+     * since the last crawl, its products are extended to today instead of being merged again (and those that cannot
+     * be extended are merged). Either way, the page's fingerprint is only recorded once the page has been merged
+     * @param pageURL URL of the listing page
+     * @param observations the products observed on the page
+     * @param nextPageRequests requests for the listing pages the page leads to
+     * @param printProgress true to print the merged products, false to not print
+     * @return what the page was parsed into
+     */
+    private CrawlPipeline.ParsedPage createListingPageMerge(final String pageURL, final List<ProductObservation> observations,
+                                                           List<CrawlPipeline.PageRequest> nextPageRequests, final boolean printProgress) {
+        final String fingerprint = findListingPageFingerprint(observations);
+        if(isUnchangedListingPage(pageURL, fingerprint)) {
+            return new CrawlPipeline.ParsedPage(null, nextPageRequests, () -> {
+                for(ProductObservation observation : extendObservedProducts(observations)) {
+                    updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+                }
+                recordListingPageFingerprint(pageURL, fingerprint);
+            });
+        }
+        return new CrawlPipeline.ParsedPage(observations, nextPageRequests, () -> recordListingPageFingerprint(pageURL, fingerprint));
+    }
 
-        // Find the element that indicates how many total products are listed at the moment
-        Element totalProductCountElement = document.getElementsByClass(NUMBER_OF_PRODUCTS_CLASS).first();
+    /**
+     * Extends every observed product to today in the crawl data (keeping the price in its latest price information)
+     * @param observations the observed products to extend
+     * @return the observations whose products could not be extended (they are missing from the crawl data, or have no price yet)
+     */
+    private synchronized List<ProductObservation> extendObservedProducts(List<ProductObservation> observations) {
+        Set<String> productURLs = new HashSet<String>();
+        for(ProductObservation observation : observations) {
+            productURLs.add(observation.getProductURL());
+        }
+        Set<String> extendedProductURLs = crawlData.extendLatestPricesToToday(productURLs);
 
-        // Get attribute information from the element to determine how many products there are
-        int totalPages = Integer.parseInt(totalProductCountElement.attr(NUMBER_OF_PRODUCTS_ATTRIBUTE));
+        List<ProductObservation> observationsNotExtended = new ArrayList<ProductObservation>();
+        for(ProductObservation observation : observations) {
+            if(!extendedProductURLs.contains(observation.getProductURL())) {
+                observationsNotExtended.add(observation);
+            }
+        }
+        return observationsNotExtended;
+    }
 
-        // Divide total products by number of products per page to get final result of expected pages to visit
-        return totalPages / PRODUCTS_PER_LISTING_PAGE + 2;  // + 2 because we lose 1 page to truncation after division
+    /**
+     * Creates the GET query for a page of the items API
+     * @param offset how many items come before the page
+     * @return the URL query for the page (with the largest page size allowed)
+     */
+    public static String getItemsApiQuery(int offset) {
+        return String.format("?%s&limit=%d&offset=%d", ITEMS_API_CATEGORY_QUERY, ITEMS_API_PAGE_SIZE, offset);
     }
 
     /**
-     * Visits the given pageURL and looks for link to next page to visit that link, updating the crawl
-     * data with Product information as data is analyzed
+     * Extracts the products (and their prices) on a page of the items API, reading the same information the
+     * listing grid shows (title, link to the product page, and the price put in PRODUCT_PRICE_ATTRIBUTE)
+     * @param page the items API page JSON object
+     * @param pageURL URL of the page (used in error messages)
+     * @return an observation for every item on the page (items without a title are skipped)
+     * @throws JSONException if the page has no items, or an item has no link or price
+     */
+    public static List<ProductObservation> parseItemsApiPage(JSONObject page, String pageURL) throws JSONException {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        JSONArray items = page.getJSONArray(ITEMS_API_ITEMS_KEY);
+        for(int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            String productLink = STORE_URL + "/" + item.getString(ITEM_URL_COMPONENT_KEY);
+
+            // Titles can have HTML entities like "&amp;" in them, which the listing grid shows as regular characters
+            String productTitle = item.optString(ITEM_TITLE_KEY, "").trim();
+            if("".equals(productTitle)) {
+                productTitle = item.optString(ITEM_FALLBACK_TITLE_KEY, "").trim();
+            }
+            productTitle = Parser.unescapeEntities(productTitle, false).trim();
+            if("".equals(productTitle)) {
+                System.err.println("Find broken product with no title with link " + productLink + " on page " + pageURL + " ; skipping this product");
+                continue;
+            }
+
+            double productPrice = item.getJSONObject(ITEM_PRICE_DETAIL_KEY).getDouble(ITEM_PRICE_KEY);
+            observations.add(new ProductObservation(productTitle, productLink, productPrice));
+        }
+        return observations;
+    }
+
+    /**
+     * Extracts the products from a page kept in a page archive, with the same extractors used while crawling
+     * (usable as a PageArchive.PageExtractor). Products an archived listing page had not filled in the price of are
+     * left out, since their re-queried prices were archived on their own as an items API page (see archiveRequeriedPrices)
+     * @param entry the page's entry in the archive's index
+     * @param content the contents of the page
+     * @return an observation for every product found on the page
+     * @throws JSONException if an items API page has no items, or an item has no link or price
+     */
+    public static List<ProductObservation> extractArchivedPage(PageArchive.Entry entry, String content) throws JSONException {
+        switch(entry.getKind()) {
+            case PageArchive.LISTING_PAGE:
+                return parseListingPage(Jsoup.parse(content), entry.getUrl(), new LinkedHashMap<String, String>());
+            case PageArchive.ITEMS_API_PAGE:
+                return parseItemsApiPage(new JSONObject(content), entry.getUrl());
+            default:
+                System.err.println("[ERROR] Unknown kind of archived page " + entry + " (skipping it)");
+                return new ArrayList<ProductObservation>();
+        }
+    }
+
+    /**
+     * Turns reading the items API on or off. With it on, multithreaded crawls read the items API first, and only
+     * render the listing pages with a headless browser if the items API could not be read
+     * @param useItemsApi true to read the items API first, false to always render the listing pages
+     */
+    public static void setUseItemsApi(boolean useItemsApi) {
+        RightStufCrawler.useItemsApi = useItemsApi;
+    }
+
+    /**
+     * Visits the given pageURL and follows the links to the next pages (one page after another, in a loop), updating
+     * the crawl data with Product information as data is analyzed. A page whose prices could not all be read is
+     * dead-lettered (after merging the products that were read) so it can be retried at the end of the crawl
      * @param pageURL URL to visit
      * @param printProgress true to print out crawling progress to standard output, false to not print
-     * @param visitAllPages true to recursively visit all pages starting from the given page, false to visit the given pageURL only
+     * @param visitAllPages true to visit all pages starting from the given page, false to visit the given pageURL only
      * @return true if there is no more pages to visit, false if there is a link to a next page from the last visited page
      */
     private boolean visitPage(String pageURL, boolean printProgress, boolean visitAllPages) {
-        // Use readUrlContentsWithJavaScript to load Right Stuf pages (since JavaScript is needed to view content)
-        String pageHTML = WebCrawler.readUrlContentsWithJavaScriptHtmlunit(pageURL);
+        while(true) {
+            // Let the fetch strategy selector decide if a headless browser is needed to get the product listings onto the page
+            String pageHTML = FetchStrategySelector.getDefaultSelector().fetch(pageURL, RightStufCrawler::getWebClientPool, LISTING_PAGE_READY_SELECTOR);
 
-        // If the HTML is an empty string, that means the page couldn't be read
-        if ("".equals(pageHTML)) {
-            throw new RuntimeException("ERROR: Could not load page " + pageURL + "; exiting program");
+            // If the HTML is null, that means the page couldn't be read
+            if (pageHTML == null) {
+                throw new RuntimeException("ERROR: Could not load page " + pageURL + "; exiting program");
+            }
+            archivePage(PageArchive.LISTING_PAGE, pageURL, pageHTML);
+
+            // Use Jsoup to start parsing the HTML code of the base page
+            Document document = Jsoup.parse(pageHTML);
+
+            // Extract the products and add them to the crawl data (unless the page has not changed since the last update)
+            List<ProductObservation> observations = new ArrayList<ProductObservation>();
+            String fingerprint = null;  // Left null for a dead-lettered page, so its fingerprint is not recorded
+            if(readListingPage(document, pageURL, ITEMS_API_URL, pageArchive, observations)) {
+                fingerprint = findListingPageFingerprint(observations);
+                if(isUnchangedListingPage(pageURL, fingerprint)) {
+                    observations = extendObservedProducts(observations);
+                }
+            }
+            else {
+                deadLetterPage(pageURL);
+            }
+            for(ProductObservation observation : observations) {
+                updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+            }
+            recordListingPageFingerprint(pageURL, fingerprint);
+
+            // Find link to next page (if there isn't one, we have reached the end of all pages)
+            String nextPageLink = findNextPageLink(document);
+            if(nextPageLink == null) {
+                return true;
+            }
+            if(!visitAllPages) {  // Return false to indicate the next page of product listings exists for single-page call to visitPage()
+                return false;
+            }
+            pageURL = nextPageLink;
         }
+    }
 
-        // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(pageHTML);
+    /**
+     * Finds the link to the next listing page in a product listing page's pagination
+     * @param document the parsed product listing page
+     * @return the link to the next listing page, or null if there is none (the page is the last page, or comes after it)
+     */
+    private static String findNextPageLink(Document document) {
+        // Get nav element that has link to next page
+        Element paginationNav = document.getElementsByClass(NEXT_PAGE_NAV_CLASS).last();
+        if(paginationNav == null) {
+            return null;
+        }
 
-        // Find elements which have matching product class, so that we can extract information from each one
-        Elements productElements = document.getElementsByClass(PRODUCT_INFORMATION_DIV_CLASS);
+        //  Find next page list item from the nav element (should only be 1 result if next page element is present)
+        Element nextPageListItem = paginationNav.getElementsByClass(NEXT_PAGE_LIST_ITEM_CLASS).first();
+        if(nextPageListItem == null) {
+            return null;
+        }
+        // Extract anchor href value from element link
+        String nextPageAnchor = nextPageListItem.getElementsByTag("a").first().attr("href");
+        return STORE_URL + "/" + nextPageAnchor;
+    }
 
-        // Find elements which have matching product class, so that we can extract information from each one
-        for(Element productElement : productElements) {
-            // Extract title (and convert any HTML entities like &amp; back to regular characters)
-            Element productTitleElement = productElement.getElementsByClass(PRODUCT_TITLE_CLASS).first();
+    /**
+     * Adds a listing page to the dead-letter queue, to be rendered once more at the end of the crawl
+     * @param pageURL URL of the listing page
+     */
+    private void deadLetterPage(String pageURL) {
+        System.err.println("Could not get every product price on page " + pageURL + " ; retrying the page at the end of the crawl");
+        deadLetterPages.add(pageURL);
+    }
+
+    /**
+     * Renders every dead-lettered listing page once more, merging every product that can be read off it
+     * (the queue is emptied, so each page gets a single retry)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @return true if every dead-lettered page was read completely (or no page was dead-lettered), false otherwise
+     */
+    private boolean retryDeadLetterPages(boolean printProgress) {
+        boolean allPagesRead = true;
+        String pageURL;
+        while((pageURL = deadLetterPages.poll()) != null) {
+            if(printProgress) {
+                System.out.println("Retrying dead-lettered page " + pageURL);
+            }
+            String pageHTML = FetchStrategySelector.getDefaultSelector().fetch(pageURL, RightStufCrawler::getWebClientPool, LISTING_PAGE_READY_SELECTOR);
+            if(pageHTML == null) {
+                System.err.println("[ERROR] Could not load dead-lettered page " + pageURL);
+                allPagesRead = false;
+                continue;
+            }
+            archivePage(PageArchive.LISTING_PAGE, pageURL, pageHTML);
+
+            List<ProductObservation> observations = new ArrayList<ProductObservation>();
+            if(!readListingPage(Jsoup.parse(pageHTML), pageURL, ITEMS_API_URL, pageArchive, observations)) {
+                System.err.println("[ERROR] Could not get every product price on dead-lettered page " + pageURL + " ; skipping those products");
+                allPagesRead = false;
+            }
+            for(ProductObservation observation : observations) {
+                updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+            }
+        }
+        return allPagesRead;
+    }
+
+    /**
+     * Extracts the products (and their prices) listed on a product listing page
+     * @param document the parsed product listing page
+     * @param pageURL URL of the page (used in error messages)
+     * @return an observation for every product listed on the page (products without a title are skipped)
+     * @throws NumberFormatException if a product's price could not be read (the page was likely not fully loaded)
+     */
+    public static List<ProductObservation> parseListingPage(Document document, String pageURL) throws NumberFormatException {
+        Map<String, String> incompleteProducts = new LinkedHashMap<String, String>();
+        List<ProductObservation> observations = parseListingPage(document, pageURL, incompleteProducts);
+        if(!incompleteProducts.isEmpty()) {
+            throw new NumberFormatException("No price for " + incompleteProducts.keySet() + " on page " + pageURL);
+        }
+        return observations;
+    }
+
+    /**
+     * Extracts the products (and their prices) listed on a product listing page, setting aside the products
+     * whose price cell has not been filled in yet instead of failing on them
+     * @param document the parsed product listing page
+     * @param pageURL URL of the page (used in error messages)
+     * @param incompleteProducts map to put the link and title of every product without a readable price in
+     * @return an observation for every product listed on the page with a readable price (products without a title are skipped)
+     */
+    public static List<ProductObservation> parseListingPage(Document document, String pageURL, Map<String, String> incompleteProducts) {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        ExtractionPlan.Record record = LISTING_PAGE_PLAN.createRecord();
+        for(Element productElement : LISTING_PAGE_PLAN.findProducts(document)) {
+            LISTING_PAGE_PLAN.extract(productElement, record);
             // The title text is surrounded by an anchor that links to the product page
-            String relativeLink = productTitleElement.getElementsByTag("a").first().attr("href");
-            String productLink = STORE_URL + relativeLink;
-            // Pull title information and parse it to convert any special characters like "&amp;" back to "&"
-            String productTitle = Jsoup.parse(productTitleElement.html()).text().trim();
+            String productLink = STORE_URL + record.getValue(LINK_FIELD);
+            String productTitle = record.getValue(TITLE_FIELD);
 
             // Check product title - if it is an empty string, that means the product is probably broken so don't process it
             if("".equals(productTitle)) {
@@ -350,57 +995,175 @@ public class RightStufCrawler extends WebCrawler {
                 continue;
             }
 
-            // Extract product price
-            // Get the div element which contains the product price information
-            Element priceDivElement = productElement.getElementsByClass(PRODUCT_PRICE_DIV_CLASS).first();
-            // Get the span element which specifically has the sale price (not the MSRP value)
-            Element productPriceSpanElement = priceDivElement.getElementsByClass(PRODUCT_PRICE_SPAN_CLASS).first();
-            // Extract product price, and check if the extraction actually got a number or not (if not, retry loading the page again, as that is the likely cause of error)
-            double productPrice;
+            // Extract product price (a missing or non-numeric price means the page has not filled in the product's cell yet)
             try {
-                productPrice = Double.parseDouble(productPriceSpanElement.attr(PRODUCT_PRICE_ATTRIBUTE));
-
-                // Add product information to the crawl data if we got the price successfully
-                updateCrawlData(productTitle, productLink, productPrice, printProgress);
+                double productPrice = Double.parseDouble(record.getValue(PRICE_FIELD));
+                observations.add(new ProductObservation(productTitle, productLink, productPrice));
             }
             catch(NumberFormatException ex) {
-                ex.printStackTrace();
-                System.err.println("Could not get product Price for " + productTitle + " at " + productLink + " on page " + pageURL + " ; attempting to reload the page");
-                // Try the page again if we ran into an issue parsing a product's price
-                return visitPage(pageURL, printProgress, visitAllPages);
+                incompleteProducts.put(productLink, productTitle);
             }
         }
+        return observations;
+    }
 
-        // Find link to next page
-        // Get nav element that has link to next page
-        Element paginationNav = document.getElementsByClass(NEXT_PAGE_NAV_CLASS).last();
+    /**
+     * Reads every product off a rendered product listing page. The prices of products whose cell the page has not
+     * filled in yet are re-queried one product at a time from the items API (up to MAX_CELL_REQUERY_ATTEMPTS times
+     * each), instead of rendering the whole page again
+     * @param document the parsed product listing page
+     * @param pageURL URL of the page (used in error messages)
+     * @param itemsApiURL URL of the items API (like ITEMS_API_URL)
+     * @param observations list to add an observation to for every product whose price was read
+     * @return true if the price of every product on the page was read, false if some prices could still not be read
+     */
+    public static boolean readListingPage(Document document, String pageURL, String itemsApiURL, List<ProductObservation> observations) {
+        return readListingPage(document, pageURL, itemsApiURL, null, observations);
+    }
 
-        //Make sure paginationNav exists (if it doesn't, we have hit a page that comes after final page)
-        if(paginationNav == null) {
-            return true;  // Indicate there are no more pages from this page
-        }
+    /**
+     * Reads every product off a rendered product listing page (see readListingPage), archiving the re-queried
+     * prices under the page's URL (see archiveRequeriedPrices)
+     * @param document the parsed product listing page
+     * @param pageURL URL of the page (used in error messages, and to archive the re-queried prices under)
+     * @param itemsApiURL URL of the items API (like ITEMS_API_URL)
+     * @param archive the page archive to append the re-queried prices to (null to not archive them)
+     * @param observations list to add an observation to for every product whose price was read
+     * @return true if the price of every product on the page was read, false if some prices could still not be read
+     */
+    public static boolean readListingPage(Document document, String pageURL, String itemsApiURL, PageArchive archive,
+                                          List<ProductObservation> observations) {
+        Map<String, String> incompleteProducts = new LinkedHashMap<String, String>();
+        observations.addAll(parseListingPage(document, pageURL, incompleteProducts));
+        JSONObject productPrices = requeryProductPrices(itemsApiURL, incompleteProducts.keySet());
+        archiveRequeriedPrices(archive, pageURL, productPrices, incompleteProducts);
+        return addRequeriedPrices(productPrices, pageURL, incompleteProducts, observations);
+    }
 
-        //  Find next page list item from the nav element (should only be 1 result if next page element is present)
-        Elements nextPageListItemElements = paginationNav.getElementsByClass(NEXT_PAGE_LIST_ITEM_CLASS);
+    /**
+     * Appends the prices re-queried for a listing page to a page archive as an items API page (see
+     * createRequeriedItemsPage) under the listing page's URL, so rebuilding from the archive also finds the
+     * products the archived listing page had not filled in the price of
+     * @param archive the page archive to append to (nothing is archived if null)
+     * @param pageURL URL of the listing page the prices complete
+     * @param productPrices object mapping product links to their re-queried prices (like requeryProductPrices gives)
+     * @param incompleteProducts the products (link to title) the listing page had not filled in the price of
+     */
+    private static void archiveRequeriedPrices(PageArchive archive, String pageURL, JSONObject productPrices,
+                                               Map<String, String> incompleteProducts) {
+        if(archive != null && productPrices.length() > 0) {
+            archive.append(PageArchive.ITEMS_API_PAGE, pageURL, createRequeriedItemsPage(productPrices, incompleteProducts).toString());
+        }
+    }
 
-        if(nextPageListItemElements.size() > 0) {   // Make sure the next page list item was present in the nav
-            // Get direct access to next page list item element
-            Element nextPageListItem = nextPageListItemElements.first();
-            // Extract anchor href value from element link
-            String nextPageAnchor = nextPageListItem.getElementsByTag("a").first().attr("href");
-            String nextPageLink = STORE_URL + "/" + nextPageAnchor;
+    /**
+     * Creates an items API page holding the re-queried prices of the products a listing page had not filled in,
+     * which parseItemsApiPage reads back into the same observations addRequeriedPrices gives (each item keeps
+     * the title the listing grid showed, and links back to the same product page)
+     * @param productPrices object mapping product links to their re-queried prices (like requeryProductPrices gives)
+     * @param incompleteProducts the products (link to title) the listing page had not filled in the price of
+     * @return the items API page JSON object, with an item for every product whose price was re-queried
+     */
+    public static JSONObject createRequeriedItemsPage(JSONObject productPrices, Map<String, String> incompleteProducts) {
+        JSONArray items = new JSONArray();
+        for(Map.Entry<String, String> incompleteProduct : incompleteProducts.entrySet()) {
+            String productLink = incompleteProduct.getKey();
+            if(!productPrices.has(productLink)) {
+                continue;
+            }
+            // parseItemsApiPage puts the store URL back in front of the URL component
+            String urlComponent = productLink.startsWith(STORE_URL + "/") ? productLink.substring(STORE_URL.length() + 1)
+                    : productLink.substring(productLink.lastIndexOf('/') + 1);
+            JSONObject priceDetail = new JSONObject();
+            priceDetail.put(ITEM_PRICE_KEY, productPrices.getDouble(productLink));
+            JSONObject item = new JSONObject();
+            item.put(ITEM_TITLE_KEY, incompleteProduct.getValue());
+            item.put(ITEM_URL_COMPONENT_KEY, urlComponent);
+            item.put(ITEM_PRICE_DETAIL_KEY, priceDetail);
+            items.put(item);
+        }
+        JSONObject itemsPage = new JSONObject();
+        itemsPage.put(ITEMS_API_TOTAL_KEY, items.length());
+        itemsPage.put(ITEMS_API_ITEMS_KEY, items);
+        return itemsPage;
+    }
 
-            // Visit the next page
-            if(visitAllPages) {  // If visitAllPages is true, then visit the next page
-                return visitPage(nextPageLink, printProgress, true);
+    /**
+     * Re-queries the prices of products one at a time from the items API (see requeryProductPrice)
+     * @param itemsApiURL URL of the items API (like ITEMS_API_URL)
+     * @param productLinks links to the product pages
+     * @return object mapping the link of every product whose price was read to the price
+     */
+    public static JSONObject requeryProductPrices(String itemsApiURL, Collection<String> productLinks) {
+        JSONObject productPrices = new JSONObject();
+        for(String productLink : productLinks) {
+            Double productPrice = requeryProductPrice(itemsApiURL, productLink);
+            if(productPrice != null) {
+                productPrices.put(productLink, productPrice.doubleValue());
             }
-            else {  // If visitAllPages is false, return false to indicate the next page or product listings exists for single-page call to visitPage()
-                return false;
+        }
+        return productPrices;
+    }
+
+    /**
+     * Adds an observation for every product a listing page had not filled in the price of, using the re-queried prices
+     * @param productPrices object mapping product links to their re-queried prices (like requeryProductPrices gives)
+     * @param pageURL URL of the page (used in error messages)
+     * @param incompleteProducts the products (link to title) the listing page had not filled in the price of
+     * @param observations list to add an observation to for every product whose price was re-queried
+     * @return true if every product had its price re-queried, false if some prices could not be read
+     */
+    public static boolean addRequeriedPrices(JSONObject productPrices, String pageURL, Map<String, String> incompleteProducts,
+                                             List<ProductObservation> observations) {
+        boolean allPricesRead = true;
+        for(Map.Entry<String, String> incompleteProduct : incompleteProducts.entrySet()) {
+            if(!productPrices.has(incompleteProduct.getKey())) {
+                System.err.println("Could not get the price of " + incompleteProduct.getKey() + " on page " + pageURL);
+                allPricesRead = false;
+                continue;
             }
+            // Keep the title the listing grid showed, so the product is stored under the same name either way
+            observations.add(new ProductObservation(incompleteProduct.getValue(), incompleteProduct.getKey(),
+                    productPrices.getDouble(incompleteProduct.getKey())));
         }
+        return allPricesRead;
+    }
 
-        // We reached the end of all pages, so return true (there are no more pages)
-        return true;
+    /**
+     * Looks up the price of a single product in the items API (the price the listing grid puts in PRODUCT_PRICE_ATTRIBUTE)
+     * @param itemsApiURL URL of the items API
+     * @param productLink link to the product page
+     * @return the price of the product, or null if it could not be read within MAX_CELL_REQUERY_ATTEMPTS attempts
+     */
+    private static Double requeryProductPrice(String itemsApiURL, String productLink) {
+        String itemURL;
+        try {
+            String urlComponent = productLink.substring(productLink.lastIndexOf('/') + 1);
+            itemURL = itemsApiURL + "?" + ITEMS_API_ITEM_QUERY + URLEncoder.encode(urlComponent, "UTF-8");
+        }
+        catch(UnsupportedEncodingException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+
+        for(int attempt = 1; attempt <= MAX_CELL_REQUERY_ATTEMPTS; attempt++) {
+            String itemJson = WebCrawler.readUrlContents(itemURL);
+            if(itemJson == null) {
+                continue;
+            }
+            try {
+                JSONArray items = new JSONObject(itemJson).getJSONArray(ITEMS_API_ITEMS_KEY);
+                if(items.length() == 0) {
+                    return null;  // The items API does not know the product, so asking again will not help
+                }
+                return items.getJSONObject(0).getJSONObject(ITEM_PRICE_DETAIL_KEY).getDouble(ITEM_PRICE_KEY);
+            }
+            catch(JSONException ex) {
+                System.err.println("[ERROR] Could not read the price in " + itemURL);
+                ex.printStackTrace();
+            }
+        }
+        return null;
     }
 
     /**
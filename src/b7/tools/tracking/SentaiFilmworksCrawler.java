@@ -1,22 +1,26 @@
 package b7.tools.tracking;
 
+import b7.tools.DateTool;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONPointer;
+import org.json.JSONTokener;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Set;
 
 /**
  * WebCrawler that is specifically customized for the Anime
@@ -43,6 +47,14 @@ public class SentaiFilmworksCrawler extends WebCrawler {
 
     // Qualifiers to help search through product listing pages for relevant information
     public final static String PRODUCTS_ID = "product-loop";
+    public final static String PRODUCTS_SELECTOR = "#" + PRODUCTS_ID;  // Marks a listing page that has its products on it
+    // Precompiled plan for finding every product form in the product loop, and the format selector in each form
+    //   (whose parent's id is the handle of the product's information JSON)
+    public final static int FORMAT_SELECTOR_FIELD = 0;
+    public final static ExtractionPlan LISTING_PAGE_PLAN = new ExtractionPlan("form",
+            new ExtractionPlan.Field("div > ul > li > div > select", null));
+    // The pagination comes after the product loop, so a listing page is only read up to the end of its pagination links
+    public final static PageStreamReader.Cutoff LISTING_PAGE_CUTOFF = new PageStreamReader.Cutoff("id=\"" + PAGINATION_ID + "\"", "</ul>");
     public final static String PRODUCT_JSON_START_STRING = "var product = ";
     public final static String PRODUCT_JSON_END_STRING = "$('#product-select-'";
     public final static String PRODUCT_JSON_VARIANTS_KEY = "variants";
@@ -53,6 +65,27 @@ public class SentaiFilmworksCrawler extends WebCrawler {
     public final static String PRODUCT_PRICE_KEY = "price";
     public final static double PRODUCT_PRICE_MULTIPLIER = 100.0;
 
+    // The only parts of a product JSON that are read (the description, images, options, and such are skipped without being parsed)
+    public final static JSONPointer.Selection PRODUCT_JSON_SELECTION = new JSONPointer.Selection(
+            "/" + PRODUCT_JSON_URL_COMPONENT_KEY, "/" + PRODUCT_TITLE_KEY,
+            "/" + PRODUCT_JSON_VARIANTS_KEY + "/*/" + PRODUCT_VARIANT_KEY, "/" + PRODUCT_JSON_VARIANTS_KEY + "/*/" + PRODUCT_PRICE_KEY);
+
+    // Qualifiers to read the whole catalog of a collection as JSON, a page of products at a time
+    public final static String CATALOG_JSON_PATH = "/products.json";
+    public final static String CATALOG_JSON_PRODUCTS_KEY = "products";
+    public final static JSONPointer.Selection CATALOG_JSON_SELECTION = new JSONPointer.Selection(
+            "/" + CATALOG_JSON_PRODUCTS_KEY + "/*/" + PRODUCT_JSON_URL_COMPONENT_KEY, "/" + CATALOG_JSON_PRODUCTS_KEY + "/*/" + PRODUCT_TITLE_KEY,
+            "/" + CATALOG_JSON_PRODUCTS_KEY + "/*/" + PRODUCT_JSON_VARIANTS_KEY + "/*/" + PRODUCT_VARIANT_KEY,
+            "/" + CATALOG_JSON_PRODUCTS_KEY + "/*/" + PRODUCT_JSON_VARIANTS_KEY + "/*/" + PRODUCT_PRICE_KEY);
+    public final static int CATALOG_JSON_PAGE_SIZE = 250;  // Largest page size the store allows
+    public final static int MAX_CATALOG_JSON_PAGES = 200;  // Stops a catalog that never ends from being read forever
+
+    // Qualifiers to find which products changed since the last update through the store's sitemap
+    public final static String SITEMAP_URL = STORE_URL + "/sitemap.xml";
+    public final static String PRODUCT_SITEMAP_FILTER = "sitemap_products";  // Part of the URL of sitemaps that list products
+    public final static String SITEMAP_PRODUCT_PATH = "/products/";  // Part of the URL of sitemap entries that are products
+    public final static String PRODUCT_JSON_EXTENSION = ".js";  // Added to a product page URL to request its information JSON
+
     // Certain qualifiers used to help us search through product description pages for relevant information
     public final static String PRODUCT_DESCRIPTION_ID = "product-description";
     public final static String PRODUCT_FORMAT_SELECTOR_CLASS = "x-second";
@@ -72,9 +105,28 @@ public class SentaiFilmworksCrawler extends WebCrawler {
     // What descriptor for format we will give to products with just one format (i.e., we do not know if Blu-Ray or DVD)
     public final static String SINGLE_FORMAT_PRODUCT = "N/A";
 
+    // How many requests to the store we allow in flight at once when crawling with multiple threads
+    public final static int DEFAULT_PARALLELISM = 8;
+
+    // How many times we try to read a product's information JSON (it can return HTTP response 504)
+    public final static int MAX_PRODUCT_VISIT_ATTEMPTS = 10;
+
     public final static String CRAWL_DATA_TITLE = "Sentai Filmworks Crawl Data";
-    private CrawlData crawlData;  // The current CrawlData (which we can update with this crawler)
 
+    // Product JSON requests in flight, so the same product showing up on two pages at once is only fetched once
+    private final static SingleFlight<String, String> productJsonFlights = new SingleFlight<String, String>();
+
+    // Hedges slow product JSON requests with a second attempt (null to not hedge requests)
+    private static volatile HedgedFetcher productJsonHedgedFetcher;
+
+    // Whether product JSON embedded in listing pages is read (instead of requesting every product's JSON on its own)
+    private static volatile boolean useEmbeddedProductJson = true;
+
+    // Whether multithreaded crawls read the catalog JSON first (instead of going straight to the listing pages)
+    private static volatile boolean useCatalogJson = true;
+    private CrawlData crawlData;  // The current CrawlData (which we can update with this crawler)
+    private ListingPageFingerprints listingPageFingerprints;  // Fingerprints of the listing pages from the last crawl (null to not use any)
+    private volatile PageArchive pageArchive;  // Archive every fetched page is appended to (null to not archive pages)
 
     /**
      * Creates a new SentaiFilmworksCrawler with empty crawl data
@@ -119,6 +171,38 @@ public class SentaiFilmworksCrawler extends WebCrawler {
         this.crawlData = crawlData;
     }
 
+    /**
+     * Sets the fingerprints of the listing pages to check and record listing pages against while crawling. Products
+     * on a listing page that has not changed since its fingerprint was recorded are extended to today instead of
+     * being requested again
+     * @param listingPageFingerprints the listing page fingerprints to use (null to not use any)
+     */
+    public void setListingPageFingerprints(ListingPageFingerprints listingPageFingerprints) {
+        this.listingPageFingerprints = listingPageFingerprints;
+    }
+
+    /**
+     * Sets the archive to append every page fetched while crawling to (listing pages, product JSON, and
+     * catalog JSON pages), so extractArchivedPage() can be run over them again later
+     * @param pageArchive the page archive to use (null to not archive pages)
+     */
+    public void setPageArchive(PageArchive pageArchive) {
+        this.pageArchive = pageArchive;
+    }
+
+    /**
+     * Appends a fetched page to the page archive (if one is being used)
+     * @param kind what kind of page it is (like PageArchive.LISTING_PAGE)
+     * @param url URL the page was fetched from
+     * @param content the contents of the page (nothing is archived if null)
+     */
+    private void archivePage(String kind, String url, String content) {
+        PageArchive archive = pageArchive;
+        if(archive != null && content != null) {
+            archive.append(kind, url, content);
+        }
+    }
+
     /**
      * Saves the HTML code of the INITIAL_URL contents to a local file
      * (BASE_PAGE_NAME)
@@ -193,29 +277,22 @@ public class SentaiFilmworksCrawler extends WebCrawler {
      * Attempts to parse the base page (created with saveBasePage() method)
      */
     public void parseBasePage() {
-        StringBuilder stringBuilder = new StringBuilder();
+        String pageHTML = "";
         try {
-            // Read in the file
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(BASE_PAGE_NAME));
-            String currentLine = bufferedReader.readLine();
-            while(currentLine != null) {
-                stringBuilder.append(currentLine);
-                stringBuilder.append("\n");
-                currentLine = bufferedReader.readLine();
-            }
-            bufferedReader.close();
+            // Read in the file (saved with FileWriter, so in the default charset)
+            pageHTML = PageStreamReader.readText(new FileInputStream(BASE_PAGE_NAME), Charset.defaultCharset().name(), LISTING_PAGE_CUTOFF);
         }
         catch(FileNotFoundException ex) {
             System.err.println("[ERROR] Could not find file " + BASE_PAGE_NAME + ", make sure it has been created!");
             ex.printStackTrace();
         }
         catch(IOException ex) {
-            System.err.println("[ERROR] Could not close reader going through " + BASE_PAGE_NAME);
+            System.err.println("[ERROR] Could not read " + BASE_PAGE_NAME);
             ex.printStackTrace();
         }
 
         // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(stringBuilder.toString());
+        Document document = Jsoup.parse(pageHTML);
 
         // Find products portion of page
         Element allProductsElement = document.getElementById(PRODUCTS_ID);
@@ -296,29 +373,22 @@ public class SentaiFilmworksCrawler extends WebCrawler {
         }
         String productFilename = SAMPLE_PRODUCT_PAGES_PATH + productName + ".html";
 
-        StringBuilder stringBuilder = new StringBuilder();
+        String pageHTML = "";
         try {
-            // Read in the file
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(productFilename));
-            String currentLine = bufferedReader.readLine();
-            while(currentLine != null) {
-                stringBuilder.append(currentLine);
-                stringBuilder.append("\n");
-                currentLine = bufferedReader.readLine();
-            }
-            bufferedReader.close();
+            // Read in the file (saved with FileWriter, so in the default charset)
+            pageHTML = PageStreamReader.readText(new FileInputStream(productFilename), Charset.defaultCharset().name(), null);
         }
         catch(FileNotFoundException ex) {
             System.err.println("[ERROR] Could not find file " + productFilename + ", make sure it has been created!");
             ex.printStackTrace();
         }
         catch(IOException ex) {
-            System.err.println("[ERROR] Could not close reader going through " + productFilename);
+            System.err.println("[ERROR] Could not read " + productFilename);
             ex.printStackTrace();
         }
 
         // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(stringBuilder.toString());
+        Document document = Jsoup.parse(pageHTML);
 
         // Get the product description portion of the document
         Element productDescriptionElement = document.getElementById(PRODUCT_DESCRIPTION_ID);
@@ -423,69 +493,133 @@ public class SentaiFilmworksCrawler extends WebCrawler {
     }
 
     /**
-     * Attempts to visit all store pages with product listings by utilizing multithreading to
-     * visit multiple product listing pages at the same time
+     * Attempts to visit all store pages with product listings. The collection's catalog JSON is read first (when
+     * turned on); if it cannot be read, the crawl runs through a CrawlPipeline, so listing pages and product JSON are
+     * fetched, parsed, and merged into the crawl data at the same time. Listing pages are requested speculatively
+     * through a PaginationFrontier (instead of counting the pages first)
      * @param printProgress true to print out crawling progress to standard output, false to not print
-     * @param parallelism how many parallel threads to use (defaults to available processor count if non-positive number given)
+     * @param parallelism how many requests to the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
      * @return true if visiting all pages worked without issue, false if an error occurred during the process
      */
     public boolean visitAllPagesMultithreaded(final boolean printProgress, int parallelism) {
-        // Create list of page visitors and set up each one to give back results from the page they visit
-        final int NUMBER_OF_PAGES_TO_VISIT = findNumberOfListingPages();
+        // Read the whole catalog as JSON if we can (a few requests instead of one or more per listing page)
+        if(useCatalogJson) {
+            if(visitCatalogJson(BASE_URL, printProgress)) {
+                return true;
+            }
+            System.out.println("Could not read the Sentai Filmworks catalog JSON; visiting the listing pages instead");
+        }
 
-        // Create list of page visitors and set up each one to give back results from the page they visit
         if (parallelism <= 0) {
-            parallelism = Runtime.getRuntime().availableProcessors() - 1;
+            parallelism = DEFAULT_PARALLELISM;
         }
-        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
-        try {
-            forkJoinPool.submit(() -> {
-                List<Boolean> successList = IntStream.range(1, NUMBER_OF_PAGES_TO_VISIT)
-                        .parallel()
-                        .mapToObj(i -> visitPageByIndex(i, printProgress))
-                        .collect(Collectors.toList());
-            }).get();
+
+        // Request the first few listing pages right away; each listing page leads to one product JSON request
+        //   per product on it, and to more listing pages while the frontier has not found the last page
+        //   (products on listing pages that have not changed can be carried over to today if the crawl data has a price for them)
+        boolean allPagesVisited;
+        PaginationFrontier paginationFrontier = new PaginationFrontier(Math.min(PaginationFrontier.DEFAULT_INITIAL_WINDOW, parallelism),
+                parallelism);  // No further ahead than there are fetch workers to fetch the pages
+        Set<String> extendableProductURLs = findExtendableProductURLs();
+        try (CrawlPipeline crawlPipeline = new CrawlPipeline("sentai-filmworks", parallelism, CrawlPipeline.DEFAULT_PARSE_WORKERS,
+                CrawlPipeline.DEFAULT_QUEUE_CAPACITY, observation -> updateCrawlData(observation.getProductName(),
+                observation.getProductURL(), observation.getPrice(), printProgress))) {
+            for(int pageNumber : paginationFrontier.start()) {
+                crawlPipeline.submit(createListingPageRequest(pageNumber, paginationFrontier, extendableProductURLs));
+            }
+            allPagesVisited = crawlPipeline.awaitCompletion();
+            if(printProgress) {
+                System.out.println(crawlPipeline.findStatsSummary());
+            }
         }
-        catch(InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        catch(InterruptedException ex) {
+            ex.printStackTrace();
+            Thread.currentThread().interrupt();
+            allPagesVisited = false;
         }
 
-        return true;
-    }
-
-    /**
-     * Visits a Right Stuf product listing page, at the given page index
-     * @param pageIndex what page number to visit
-     * @param printProgress true to print progress, false to not print
-     * @return result of visitPage() [true if there is no more pages to visit, false if there is a link to a next page from the visited page]
-     */
-    private boolean visitPageByIndex(int pageIndex, boolean printProgress)
-    {
-        String urlToVisit = BASE_URL + getUrlQuery(pageIndex);
-        return visitPage(urlToVisit, printProgress, false);
+        if(printProgress) {
+            System.out.println("Visited " + paginationFrontier.getDispatchedCount() + " listing pages ("
+                    + paginationFrontier.findWastedCount() + " past the last page)");
+        }
+        if(printProgress && productJsonFlights.getTotalCoalescedCount() > 0) {
+            System.out.println("Shared in-flight fetches for " + productJsonFlights.getTotalCoalescedCount()
+                    + " duplicate product JSON requests");
+        }
+        HedgedFetcher hedgedFetcher = productJsonHedgedFetcher;
+        if(printProgress && hedgedFetcher != null) {
+            System.out.println("Hedged " + hedgedFetcher.getHedgeCount() + " of " + hedgedFetcher.getFetchCount()
+                    + " product JSON requests (" + hedgedFetcher.getHedgeWinCount() + " won by the hedge)");
+        }
+        return allPagesVisited;
     }
 
     /**
-     * Uses some math on the INITIAL_URL page o determine how many pages of product listings should be
-     * visited to visit all products (plus buffer of 1 extra page)
-     * @return the number of expected pages for Sentai Filmworks product listings, plus 1
+     * Creates the pipeline request for a product listing page, which is parsed into the products whose JSON is
+     * embedded in the page, one product JSON request for every other product on the page, and requests for
+     * the next listing pages the frontier decides on (a page found to be past the last page before it is fetched is skipped).
+     * Products on a page that has not changed since the last crawl are carried over to today by the merge stage instead,
+     * and the page's fingerprint is only recorded once the page and every product JSON it led to have been merged
+     * @param pageNumber number of the product listing page
+     * @param paginationFrontier frontier deciding which listing pages to request
+     * @param extendableProductURLs URLs of the products the crawl data had a price for when the crawl started
+     * @return the pipeline request for the listing page
      */
-    public static int findNumberOfListingPages() {
-        // Visit the INITIAL_URL
-        String pageHTML = WebCrawler.readUrlContents(INITIAL_URL);
-
-        // Use Jsoup to start parsing the HTML code of the base page
-        Document document = Jsoup.parse(pageHTML);
-
-        // Find the element with the link to last page (and extract that page number)
-        Element paginationElement = document.getElementById(PAGINATION_ID);
-        Elements paginationLinks = paginationElement.select("ul > li > a");
-
-        // The final page link comes before the last link (that links to next page), so keep second-to-last Element
-        Element finalPageElement = paginationLinks.get(paginationLinks.size() - 2);
-
-        int nextPageValue = Integer.parseInt(finalPageElement.html());
-        return nextPageValue + 1;  // Do + 1 to buffer page visits by 1 more
+    private CrawlPipeline.PageRequest createListingPageRequest(final int pageNumber, final PaginationFrontier paginationFrontier,
+                                                               final Set<String> extendableProductURLs) {
+        return new CrawlPipeline.PageRequest(BASE_URL + getUrlQuery(pageNumber),
+                url -> {
+                    if(paginationFrontier.isPastLastPage(pageNumber)) {
+                        return "";  // Requested before the last page was found, so the parser skips it
+                    }
+                    String pageHTML = FetchStrategySelector.getDefaultSelector().fetch(url, HtmlUnitWebClientPool::getDefaultPool,
+                            LISTING_PAGE_CUTOFF, PRODUCTS_SELECTOR);
+                    archivePage(PageArchive.LISTING_PAGE, url, pageHTML);
+                    return pageHTML;
+                },
+                (request, pageHTML) -> {
+                    if(paginationFrontier.isPastLastPage(pageNumber)) {
+                        return new CrawlPipeline.ParsedPage(null, null);
+                    }
+                    Document document = Jsoup.parse(pageHTML);
+                    Map<String, String> productJsons = findProductJsons(document);
+                    String fingerprint = findListingPageFingerprint(document, productJsons.keySet());
+                    final Set<String> unchangedProductJsonUrls = findUnchangedProductJsonUrls(request.getUrl(), fingerprint,
+                            productJsons.keySet(), extendableProductURLs);
+                    List<ProductObservation> observations = new ArrayList<ProductObservation>();
+                    List<String> requestedProductJsonUrls = new ArrayList<String>();
+                    for(Map.Entry<String, String> productJson : productJsons.entrySet()) {
+                        if(unchangedProductJsonUrls.contains(productJson.getKey())) {
+                            continue;  // Carried over to today once the page is merged
+                        }
+                        List<ProductObservation> embeddedObservations = parseEmbeddedProductJson(productJson.getValue());
+                        if(embeddedObservations != null) {
+                            observations.addAll(embeddedObservations);
+                        }
+                        else {  // Fall back to requesting the product's JSON
+                            requestedProductJsonUrls.add(productJson.getKey());
+                        }
+                    }
+
+                    // The page and each product JSON it leads to are merged separately, and all of them have to be merged
+                    //   before the page's fingerprint is recorded
+                    final ListingPageFingerprints.PendingFingerprint pendingFingerprint = new ListingPageFingerprints.PendingFingerprint(
+                            listingPageFingerprints, request.getUrl(), fingerprint, requestedProductJsonUrls.size() + 1);
+                    List<CrawlPipeline.PageRequest> followUpRequests = new ArrayList<CrawlPipeline.PageRequest>();
+                    for(String productJsonUrl : requestedProductJsonUrls) {
+                        followUpRequests.add(new CrawlPipeline.PageRequest(productJsonUrl, this::fetchProductJson,
+                                (productRequest, productJsonString) -> new CrawlPipeline.ParsedPage(parseProductJson(productJsonString),
+                                        null, pendingFingerprint::recordMergedPart)));
+                    }
+                    for(int nextPageNumber : paginationFrontier.recordPage(pageNumber, !productJsons.isEmpty(), hasNextPage(document))) {
+                        followUpRequests.add(createListingPageRequest(nextPageNumber, paginationFrontier, extendableProductURLs));
+                    }
+                    return new CrawlPipeline.ParsedPage(observations, followUpRequests, () -> {
+                        extendProductsToToday(request.getUrl(), unchangedProductJsonUrls);
+                        pendingFingerprint.recordMergedPart();
+                    });
+                });
     }
 
     /**
@@ -497,69 +631,57 @@ public class SentaiFilmworksCrawler extends WebCrawler {
      * @return true if visiting all pages was successful, false if there was an error during the process
      */
     private boolean visitPage(String pageURL, boolean printProgress, boolean visitAllPages) {
-        String pageHTML = WebCrawler.readUrlContents(pageURL);
-        if(pageHTML == null) {  // readUrlContents() failed for some reason or another, so return false
+        String pageHTML = FetchStrategySelector.getDefaultSelector().fetch(pageURL,
+                HtmlUnitWebClientPool::getDefaultPool, LISTING_PAGE_CUTOFF, PRODUCTS_SELECTOR);
+        if(pageHTML == null) {  // fetch() failed for some reason or another, so return false
             System.err.println("Could not read URL contents of " + pageURL);
             return false;
         }
+        archivePage(PageArchive.LISTING_PAGE, pageURL, pageHTML);
 
         // Use Jsoup to start parsing the HTML code of the page
         Document document = Jsoup.parse(pageHTML);
 
-        // Find products portion of page
-        Element allProductsElement = document.getElementById(PRODUCTS_ID);
-
-        // Extract the JSON objects representing each product, and then parse the object to get Product information
-        Elements productsForms = allProductsElement.getElementsByTag("form");
-
-        List<JSONObject> JSONProducts = new ArrayList<JSONObject>();
-        for (Element productForm : productsForms) {
-
-            // Find the id of the product, to make request for product information JSON object
-            Element formatSelector = productForm.select("div > ul > li > div > select").first();
-            Element formatSelectorParent = formatSelector.parent();
-            String productAJAXResource = STORE_URL + "/products/" + formatSelectorParent.id() + ".js";
-
-            // The product information JSON object can return HTTP response 504, so retry a few times when information fails to retrieve
-            String productJsonString = null;
-            int maxProductVisitAttempts = 10;
-            int currentProductVisitAttempts = 0;
-            while(productJsonString == null && currentProductVisitAttempts < maxProductVisitAttempts) {
-                currentProductVisitAttempts++;
-                productJsonString = readUrlContents(productAJAXResource);
+        // Read every product's JSON (from the page if it is embedded there, otherwise by requesting it)
+        //   and update the crawl data with every variant of the product (unless the page has not changed since the last crawl)
+        Map<String, String> productJsons = findProductJsons(document);
+        String fingerprint = findListingPageFingerprint(document, productJsons.keySet());
+        Set<String> unchangedProductJsonUrls = findUnchangedProductJsonUrls(pageURL, fingerprint, productJsons.keySet(),
+                findExtendableProductURLs());
+        extendProductsToToday(pageURL, unchangedProductJsonUrls);
+        boolean allProductsRead = true;
+        for(Map.Entry<String, String> productJson : productJsons.entrySet()) {
+            if(unchangedProductJsonUrls.contains(productJson.getKey())) {
+                continue;  // Already extended to today
+            }
+            List<ProductObservation> embeddedObservations = parseEmbeddedProductJson(productJson.getValue());
+            if(embeddedObservations != null) {
+                for(ProductObservation observation : embeddedObservations) {
+                    updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+                }
+                continue;
             }
 
-            // Create JSONObject from the product JSON String and add it to the JSONProducts list
-            JSONObject productJson = new JSONObject(productJsonString);
-
-            // Go through the JSONProducts list to get information about all the products listed, wrapped in try-catch to know when something goes wrong in parsing
+            String productJsonString = fetchProductJson(productJson.getKey());
+            if(productJsonString == null) {
+                System.err.println("[ERROR] Could not read product information JSON after " + MAX_PRODUCT_VISIT_ATTEMPTS + " attempts (skipping it)");
+                allProductsRead = false;
+                continue;
+            }
             try {
-                JSONArray productVariants = productJson.getJSONArray(PRODUCT_JSON_VARIANTS_KEY);
-                String productLinkComponent = productJson.getString(PRODUCT_JSON_URL_COMPONENT_KEY);
-                String productLink = PRODUCT_BASE_URL + "/" + productLinkComponent;
-
-                // Loop through the variants (there is one variant per video format product can be bought in)
-                for(int i = 0; i < productVariants.length(); i++) {
-                    JSONObject productVariant = productVariants.getJSONObject(i);
-                    String productFullName = productJson.getString(PRODUCT_TITLE_KEY);
-
-                    // Add format to title
-                    productFullName += " " + productVariant.getString(PRODUCT_VARIANT_KEY);
-
-                    double productPrice = productVariant.getInt(PRODUCT_PRICE_KEY) / PRODUCT_PRICE_MULTIPLIER;
-
-                    // Now update crawl data with product information
-                    updateCrawlData(productFullName, productLink, productPrice, printProgress);
+                for(ProductObservation observation : parseProductJson(productJsonString)) {
+                    updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
                 }
             }
             catch(JSONException ex) {
                 ex.printStackTrace();
                 System.err.println("[ERROR] Could not parse product information from following JSON (skipping it): " + productJsonString);
+                allProductsRead = false;
             }
-            catch(Exception ex) {
-                ex.printStackTrace();
-                System.err.println("[ERROR] Unknown error occurred");
-            }
+        }
+        // A page with products that were skipped is read again on the next crawl, even if it has not changed
+        if(allProductsRead) {
+            recordListingPageFingerprint(pageURL, fingerprint);
         }
 
         // Get link to next page (if it exists)
@@ -579,6 +701,551 @@ public class SentaiFilmworksCrawler extends WebCrawler {
         return true;
     }
 
+    /**
+     * Makes the fingerprint of what a listing page lists, to check the page against (and later record in) the
+     * listing page fingerprints
+     * @param document the parsed listing page
+     * @param productJsonUrls URLs of the information JSON of every product on the page
+     * @return the fingerprint of the page, or null if no listing page fingerprints are being used (or the page has no products)
+     */
+    private String findListingPageFingerprint(Document document, Collection<String> productJsonUrls) {
+        if(listingPageFingerprints == null || productJsonUrls.isEmpty()) {
+            return null;
+        }
+        return ListingPageFingerprints.findFingerprint(findListingPageEntries(document));
+    }
+
+    /**
+     * Checks a listing page against its fingerprint from the last crawl, to find which of its products can be carried
+     * over to today instead of being read. Nothing is changed here; the products are extended to today (and the page's
+     * fingerprint is recorded) by whatever merges the page into the crawl data
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now (null if no listing page fingerprints are being used)
+     * @param productJsonUrls URLs of the information JSON of every product on the page
+     * @param extendableProductURLs URLs of the products the crawl data has a price for
+     * @return the product information JSON URLs whose products can be extended to today, and do not have to be read
+     *         (empty if the page changed, or no listing page fingerprints are being used)
+     */
+    private Set<String> findUnchangedProductJsonUrls(String pageURL, String fingerprint, Collection<String> productJsonUrls,
+                                                     Set<String> extendableProductURLs) {
+        Set<String> unchangedProductJsonUrls = new HashSet<String>();
+        ListingPageFingerprints fingerprints = listingPageFingerprints;
+        if(fingerprints == null || !fingerprints.matchesFingerprint(pageURL, fingerprint)) {
+            return unchangedProductJsonUrls;
+        }
+        // Products missing from the crawl data cannot be extended, so they are still read
+        for(String productJsonUrl : productJsonUrls) {
+            if(extendableProductURLs.contains(findProductURLFromJsonUrl(productJsonUrl))) {
+                unchangedProductJsonUrls.add(productJsonUrl);
+            }
+        }
+        return unchangedProductJsonUrls;
+    }
+
+    /**
+     * Records the fingerprint of a listing page whose products were all merged into the crawl data
+     * @param pageURL URL of the listing page
+     * @param fingerprint fingerprint of what the page lists now (null if no listing page fingerprints are being used)
+     */
+    private void recordListingPageFingerprint(String pageURL, String fingerprint) {
+        ListingPageFingerprints fingerprints = listingPageFingerprints;
+        if(fingerprints != null && fingerprint != null) {
+            fingerprints.recordFingerprint(pageURL, fingerprint);
+        }
+    }
+
+    /**
+     * Finds the products the crawl data has a price for, which can be extended to today if they are unchanged
+     * @return the product URLs with price history in the crawl data
+     */
+    private synchronized Set<String> findExtendableProductURLs() {
+        return crawlData.findPricedProductURLs();
+    }
+
+    /**
+     * Extends the products with the given information JSON URLs to today in the crawl data
+     * (keeping the price in their latest price information)
+     * @param pageURL URL of the listing page the products are on (what they are archived under)
+     * @param productJsonUrls URLs of the information JSON of the products to extend
+     */
+    private synchronized void extendProductsToToday(String pageURL, Collection<String> productJsonUrls) {
+        if(productJsonUrls.isEmpty()) {
+            return;
+        }
+        Set<String> productURLs = new HashSet<String>();
+        for(String productJsonUrl : productJsonUrls) {
+            productURLs.add(findProductURLFromJsonUrl(productJsonUrl));
+        }
+        archiveCarriedOverProducts(pageURL, crawlData.extendLatestPricesToToday(productURLs));
+    }
+
+    /**
+     * Archives the products that were extended to today without their JSON being fetched (if a page archive is
+     * being used), so crawl data rebuilt from the archive does not leave them out of today
+     * @param url URL of the page the products were carried over from (like a listing page or the sitemap)
+     * @param productURLs URLs of the products that were extended to today
+     */
+    private synchronized void archiveCarriedOverProducts(String url, Set<String> productURLs) {
+        if(pageArchive != null && !productURLs.isEmpty()) {
+            archivePage(PageArchive.CARRIED_OVER, url, PageArchive.formatCarriedOver(crawlData.findLatestObservations(productURLs)));
+        }
+    }
+
+    /**
+     * Finds what a product listing page lists for every product (the product information JSON URL, the text shown
+     * for the product, like its title and price, and its embedded product JSON), to make a fingerprint of the page from
+     * @param document the parsed product listing page
+     * @return one entry for every product on the page, in page order
+     */
+    public static List<String> findListingPageEntries(Document document) {
+        List<String> entries = new ArrayList<String>();
+        Element allProductsElement = document.getElementById(PRODUCTS_ID);
+        if(allProductsElement == null) {
+            return entries;
+        }
+        for(Element productForm : LISTING_PAGE_PLAN.findProducts(allProductsElement)) {
+            String productAJAXResource = findProductJsonUrl(productForm);
+            Element productElement = findProductElement(allProductsElement, productForm);
+            String embeddedProductJson = findEmbeddedProductJson(productElement);
+            entries.add(productAJAXResource + "\t" + productElement.text() + "\t" + (embeddedProductJson == null ? "" : embeddedProductJson));
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the URL a product is listed under in the crawl data from the URL of its information JSON
+     * @param productJsonUrl URL of the product information JSON (like STORE_URL/products/handle.js)
+     * @return the product URL used in the crawl data
+     */
+    public static String findProductURLFromJsonUrl(String productJsonUrl) {
+        String productPage = productJsonUrl.endsWith(PRODUCT_JSON_EXTENSION)
+                ? productJsonUrl.substring(0, productJsonUrl.length() - PRODUCT_JSON_EXTENSION.length()) : productJsonUrl;
+        return findProductURLFromPage(productPage);
+    }
+
+    /**
+     * Finds the URL of every product's information JSON on a product listing page
+     * @param document the parsed product listing page
+     * @return the product information JSON URLs, in page order
+     */
+    public static List<String> findProductJsonUrls(Document document) {
+        return new ArrayList<String>(findProductJsons(document).keySet());
+    }
+
+    /**
+     * Finds every product on a product listing page, along with the product information JSON embedded
+     * in the page for it (when embedded JSON is turned on and the page has it)
+     * @param document the parsed product listing page
+     * @return map of every product information JSON URL to the product's embedded JSON
+     *         (null if the JSON is not embedded and has to be requested), in page order
+     */
+    public static Map<String, String> findProductJsons(Document document) {
+        // Find products portion of page (pages past the last page have none)
+        Map<String, String> productJsons = new LinkedHashMap<String, String>();
+        Element allProductsElement = document.getElementById(PRODUCTS_ID);
+        if(allProductsElement == null) {
+            return productJsons;
+        }
+
+        // Find the id of each product, to make request for product information JSON object
+        for (Element productForm : LISTING_PAGE_PLAN.findProducts(allProductsElement)) {
+            productJsons.put(findProductJsonUrl(productForm), useEmbeddedProductJson
+                    ? findEmbeddedProductJson(findProductElement(allProductsElement, productForm)) : null);
+        }
+        return productJsons;
+    }
+
+    // The URL of the information JSON of the product a form belongs to (from the id of its format selector's parent)
+    private static String findProductJsonUrl(Element productForm) {
+        Element formatSelector = LISTING_PAGE_PLAN.findFirst(FORMAT_SELECTOR_FIELD, productForm);
+        return STORE_URL + "/products/" + formatSelector.parent().id() + PRODUCT_JSON_EXTENSION;
+    }
+
+    /**
+     * Finds the product information JSON embedded in a product's scripts
+     * (the object literal between PRODUCT_JSON_START_STRING and PRODUCT_JSON_END_STRING)
+     * @param productElement the element holding everything listed for one product
+     * @return the embedded product JSON, or null if the product has none
+     */
+    public static String findEmbeddedProductJson(Element productElement) {
+        for(Element script : productElement.getElementsByTag("script")) {
+            String scriptText = script.data();
+            int startIndex = scriptText.indexOf(PRODUCT_JSON_START_STRING);
+            if(startIndex == -1) {
+                continue;
+            }
+            startIndex += PRODUCT_JSON_START_STRING.length();
+            int endIndex = scriptText.indexOf(PRODUCT_JSON_END_STRING, startIndex);
+            String productJson = (endIndex == -1 ? scriptText.substring(startIndex) : scriptText.substring(startIndex, endIndex)).trim();
+            if(productJson.endsWith(";")) {
+                productJson = productJson.substring(0, productJson.length() - 1).trim();
+            }
+            if(productJson.startsWith("{")) {
+                return productJson;
+            }
+        }
+        return null;
+    }
+
+    // The element holding everything listed for the product the form belongs to (the form's ancestor right under the product list)
+    private static Element findProductElement(Element allProductsElement, Element productForm) {
+        Element productElement = productForm;
+        while(productElement.parent() != null && productElement.parent() != allProductsElement) {
+            productElement = productElement.parent();
+        }
+        return productElement.parent() == null ? productForm : productElement;
+    }
+
+    /**
+     * Parses a product's embedded JSON, if it has any that can be used
+     * @param embeddedProductJson the product's embedded JSON (null if it has none)
+     * @return an observation for every variant of the product, or null if the product JSON has to be requested instead
+     */
+    private static List<ProductObservation> parseEmbeddedProductJson(String embeddedProductJson) {
+        if(embeddedProductJson == null) {
+            return null;
+        }
+        try {
+            return parseProductJson(embeddedProductJson);
+        }
+        catch(JSONException ex) {
+            System.err.println("[ERROR] Could not parse embedded product information JSON (requesting it instead): " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Turns reading the product JSON embedded in listing pages on or off. With it off, every product's
+     * JSON is requested on its own
+     * @param useEmbeddedProductJson true to read embedded product JSON when a listing page has it, false to always request it
+     */
+    public static void setUseEmbeddedProductJson(boolean useEmbeddedProductJson) {
+        SentaiFilmworksCrawler.useEmbeddedProductJson = useEmbeddedProductJson;
+    }
+
+    /**
+     * Checks if a product listing page links to a next listing page
+     * @param document the parsed product listing page
+     * @return true if the last pagination link on the page points to a next page, false otherwise
+     */
+    public static boolean hasNextPage(Document document) {
+        Element paginationElement = document.getElementById(PAGINATION_ID);
+        if(paginationElement == null) {
+            return false;
+        }
+        Element lastPaginationLink = paginationElement.select("ul > li > a").last();
+        return lastPaginationLink != null && NEXT_PAGE_HTML.equals(lastPaginationLink.html());
+    }
+
+    /**
+     * Reads a product information JSON resource, retrying a few times since the resource can return HTTP response 504
+     * @param productAJAXResource URL of the product information JSON
+     * @return the product JSON String, or null if every attempt failed
+     */
+    private String fetchProductJson(final String productAJAXResource) {
+        // Requests for a product that is already being fetched wait for (and share) that fetch
+        return productJsonFlights.run(productAJAXResource, () -> {
+            String productJsonString = null;
+            int currentProductVisitAttempts = 0;
+            while(productJsonString == null && currentProductVisitAttempts < MAX_PRODUCT_VISIT_ATTEMPTS) {
+                currentProductVisitAttempts++;
+                HedgedFetcher hedgedFetcher = productJsonHedgedFetcher;
+                if(hedgedFetcher == null) {
+                    productJsonString = WebCrawler.readUrlContents(productAJAXResource);
+                }
+                else {
+                    productJsonString = hedgedFetcher.fetch(abortSignal -> WebCrawler.readUrlContents(productAJAXResource, abortSignal));
+                }
+            }
+            archivePage(PageArchive.PRODUCT_JSON, productAJAXResource, productJsonString);
+            return productJsonString;
+        });
+    }
+
+    /**
+     * Turns hedging of product JSON requests on or off. With hedging on, a product request that is slower
+     * than most recent requests gets a second attempt, and the first attempt to succeed is used
+     * @param hedgedFetcher the HedgedFetcher to run product requests through (null to turn hedging off;
+     *                      the previous HedgedFetcher is closed)
+     */
+    public static synchronized void setProductJsonHedgedFetcher(HedgedFetcher hedgedFetcher) {
+        if(productJsonHedgedFetcher != null && productJsonHedgedFetcher != hedgedFetcher) {
+            productJsonHedgedFetcher.close();
+        }
+        productJsonHedgedFetcher = hedgedFetcher;
+    }
+
+    /**
+     * Returns the single-flight layer the product JSON requests go through, which counts (per product URL)
+     * how many requests shared a fetch that was already in flight
+     * @return the single-flight layer of the product JSON requests
+     */
+    public static SingleFlight<String, String> getProductJsonFlights() {
+        return productJsonFlights;
+    }
+
+    /**
+     * Parses a product information JSON String into one observation for every variant of the product
+     * @param productJsonString the product JSON String to parse
+     * @return an observation for every variant (video format) of the product
+     * @throws JSONException if the product information could not be found in the JSON
+     */
+    public static List<ProductObservation> parseProductJson(String productJsonString) throws JSONException {
+        // Only build the parts of the JSON that are read
+        return parseProductJson(new JSONObject(new JSONTokener(productJsonString), PRODUCT_JSON_SELECTION));
+    }
+
+    /**
+     * Parses a product information JSON object into one observation for every variant of the product
+     * @param productJson the product JSON object to parse (from a product's own JSON, or from the catalog JSON)
+     * @return an observation for every variant (video format) of the product
+     * @throws JSONException if the product information could not be found in the JSON
+     */
+    public static List<ProductObservation> parseProductJson(JSONObject productJson) throws JSONException {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        JSONArray productVariants = productJson.getJSONArray(PRODUCT_JSON_VARIANTS_KEY);
+        String productLinkComponent = productJson.getString(PRODUCT_JSON_URL_COMPONENT_KEY);
+        String productLink = PRODUCT_BASE_URL + "/" + productLinkComponent;
+
+        // Loop through the variants (there is one variant per video format product can be bought in)
+        for(int i = 0; i < productVariants.length(); i++) {
+            JSONObject productVariant = productVariants.getJSONObject(i);
+            String productFullName = productJson.getString(PRODUCT_TITLE_KEY);
+
+            // Add format to title
+            productFullName += " " + productVariant.getString(PRODUCT_VARIANT_KEY);
+
+            double productPrice = findVariantPrice(productVariant);
+            observations.add(new ProductObservation(productFullName, productLink, productPrice));
+        }
+        return observations;
+    }
+
+    /**
+     * Finds the price of a product variant. A product's own JSON gives the price as a number of cents, while
+     * the catalog JSON gives it as a String of dollars
+     * @param productVariant the product variant JSON object
+     * @return the price of the variant in dollars
+     * @throws JSONException if the variant has no price, or the price is not a number
+     */
+    public static double findVariantPrice(JSONObject productVariant) throws JSONException {
+        Object price = productVariant.get(PRODUCT_PRICE_KEY);
+        if(price instanceof String) {
+            try {
+                return Double.parseDouble((String) price);
+            }
+            catch(NumberFormatException ex) {
+                throw new JSONException("Variant price \"" + price + "\" is not a number");
+            }
+        }
+        return productVariant.getInt(PRODUCT_PRICE_KEY) / PRODUCT_PRICE_MULTIPLIER;
+    }
+
+    /**
+     * Visits every page of a collection's catalog JSON (CATALOG_JSON_PAGE_SIZE products at a time), and updates
+     * the crawl data with every variant of every product once all the pages have been read
+     * @param collectionURL URL of the collection to read the catalog JSON of (like BASE_URL)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @return true if every page of the catalog JSON was read (the crawl data is only updated then),
+     *         false if a page could not be read or parsed
+     */
+    public boolean visitCatalogJson(String collectionURL, boolean printProgress) {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        for(int pageNumber = 1; pageNumber <= MAX_CATALOG_JSON_PAGES; pageNumber++) {
+            String catalogPageURL = collectionURL + CATALOG_JSON_PATH + getCatalogJsonQuery(pageNumber);
+            String catalogPageJson = WebCrawler.readUrlContents(catalogPageURL);
+            if(catalogPageJson == null) {
+                System.err.println("[ERROR] Could not read catalog JSON page " + catalogPageURL);
+                return false;
+            }
+            archivePage(PageArchive.CATALOG_JSON, catalogPageURL, catalogPageJson);
+
+            JSONArray products;
+            try {
+                products = new JSONObject(new JSONTokener(catalogPageJson), CATALOG_JSON_SELECTION).getJSONArray(CATALOG_JSON_PRODUCTS_KEY);
+                for(int i = 0; i < products.length(); i++) {
+                    observations.addAll(parseProductJson(products.getJSONObject(i)));
+                }
+            }
+            catch(JSONException ex) {
+                ex.printStackTrace();
+                System.err.println("[ERROR] Could not parse product information from catalog JSON page " + catalogPageURL);
+                return false;
+            }
+            if(printProgress) {
+                System.out.println("Read " + products.length() + " products from catalog JSON page " + pageNumber);
+            }
+
+            // A page that is not full is the last page
+            if(products.length() < CATALOG_JSON_PAGE_SIZE) {
+                for(ProductObservation observation : observations) {
+                    updateCrawlData(observation.getProductName(), observation.getProductURL(), observation.getPrice(), printProgress);
+                }
+                return true;
+            }
+        }
+        System.err.println("[ERROR] Catalog JSON of " + collectionURL + " still had products after " + MAX_CATALOG_JSON_PAGES + " pages");
+        return false;
+    }
+
+    /**
+     * Extracts the products from a page kept in a page archive, with the same extractors used while crawling
+     * (usable as a PageArchive.PageExtractor). Only the product JSON embedded in an archived listing page is read,
+     * since the JSON of the other products on it was fetched (and archived) on its own, or the products were carried
+     * over to the day (and archived as a CARRIED_OVER entry) if the page had not changed
+     * @param entry the page's entry in the archive's index
+     * @param content the contents of the page
+     * @return an observation for every variant of every product found on the page
+     * @throws JSONException if the product information could not be found in a product JSON or catalog JSON page
+     */
+    public static List<ProductObservation> extractArchivedPage(PageArchive.Entry entry, String content) throws JSONException {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        switch(entry.getKind()) {
+            case PageArchive.LISTING_PAGE:
+                for(String embeddedProductJson : findProductJsons(Jsoup.parse(content)).values()) {
+                    List<ProductObservation> embeddedObservations = parseEmbeddedProductJson(embeddedProductJson);
+                    if(embeddedObservations != null) {
+                        observations.addAll(embeddedObservations);
+                    }
+                }
+                break;
+            case PageArchive.PRODUCT_JSON:
+                observations.addAll(parseProductJson(content));
+                break;
+            case PageArchive.CATALOG_JSON:
+                JSONArray products = new JSONObject(new JSONTokener(content), CATALOG_JSON_SELECTION).getJSONArray(CATALOG_JSON_PRODUCTS_KEY);
+                for(int i = 0; i < products.length(); i++) {
+                    observations.addAll(parseProductJson(products.getJSONObject(i)));
+                }
+                break;
+            case PageArchive.CARRIED_OVER:
+                observations.addAll(PageArchive.parseCarriedOver(content));
+                break;
+            default:
+                System.err.println("[ERROR] Unknown kind of archived page " + entry + " (skipping it)");
+        }
+        return observations;
+    }
+
+    /**
+     * Creates the GET query for a page of the catalog JSON
+     * @param pageNumber the page number to go to
+     * @return the URL query for the chosen page number (with the largest page size allowed)
+     */
+    public static String getCatalogJsonQuery(int pageNumber) {
+        return String.format("?limit=%d&page=%d", CATALOG_JSON_PAGE_SIZE, pageNumber);
+    }
+
+    /**
+     * Turns reading the store's catalog JSON on or off. With it on, multithreaded crawls read the catalog JSON
+     * first, and only scrape the listing pages if the catalog JSON could not be read
+     * @param useCatalogJson true to read the catalog JSON first, false to always scrape the listing pages
+     */
+    public static void setUseCatalogJson(boolean useCatalogJson) {
+        SentaiFilmworksCrawler.useCatalogJson = useCatalogJson;
+    }
+
+    /**
+     * Updates the crawl data by only requesting the products that changed since the last update, according to
+     * the last modified dates in the store's product sitemap. Products that did not change are given today's
+     * price from their latest price information instead, without any request
+     * @param sitemapSnapshot last modified dates of the products as of the last update (updated as products are requested)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @param parallelism how many requests to the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
+     * @return true if every changed product was requested without issue, false if an error occurred during the process
+     */
+    public boolean visitChangedProducts(SitemapSnapshot sitemapSnapshot, boolean printProgress, int parallelism) {
+        return visitChangedProducts(SITEMAP_URL, sitemapSnapshot, printProgress, parallelism);
+    }
+
+    /**
+     * Updates the crawl data by only requesting the products that changed since the last update, according to
+     * the last modified dates in the given sitemap. Products that did not change are given today's price from
+     * their latest price information instead, without any request
+     * @param sitemapURL URL of the sitemap (or sitemap index) listing the store's products
+     * @param sitemapSnapshot last modified dates of the products as of the last update (updated as products are requested)
+     * @param printProgress true to print out crawling progress to standard output, false to not print
+     * @param parallelism how many requests to the store can be in flight at once
+     *                    (defaults to DEFAULT_PARALLELISM if non-positive number given)
+     * @return true if every changed product was requested without issue, false if an error occurred during the process
+     */
+    public boolean visitChangedProducts(String sitemapURL, final SitemapSnapshot sitemapSnapshot, final boolean printProgress,
+                                        int parallelism) {
+        if (parallelism <= 0) {
+            parallelism = DEFAULT_PARALLELISM;
+        }
+
+        // Only sitemap entries that are product pages matter
+        Map<String, String> lastModifiedDates = SitemapSnapshot.readSitemap(sitemapURL, PRODUCT_SITEMAP_FILTER);
+        if(lastModifiedDates == null) {
+            return false;
+        }
+        Map<String, String> productLastModifiedDates = new LinkedHashMap<String, String>();
+        for(Map.Entry<String, String> lastModified : lastModifiedDates.entrySet()) {
+            if(lastModified.getKey().contains(SITEMAP_PRODUCT_PATH)) {
+                productLastModifiedDates.put(lastModified.getKey(), lastModified.getValue());
+            }
+        }
+
+        // Unchanged products we already have a price for are carried over to today; everything else is requested
+        Set<String> changedProductPages = sitemapSnapshot.findChangedUrls(productLastModifiedDates);
+        Map<String, String> unchangedProductURLs = new HashMap<String, String>();  // Product URL in crawl data to product page
+        for(String productPage : productLastModifiedDates.keySet()) {
+            if(!changedProductPages.contains(productPage)) {
+                unchangedProductURLs.put(findProductURLFromPage(productPage), productPage);
+            }
+        }
+        Set<String> extendedProductURLs;
+        synchronized(this) {
+            extendedProductURLs = crawlData.extendLatestPricesToToday(unchangedProductURLs.keySet());
+            archiveCarriedOverProducts(sitemapURL, extendedProductURLs);
+        }
+        for(Map.Entry<String, String> unchangedProductURL : unchangedProductURLs.entrySet()) {
+            if(!extendedProductURLs.contains(unchangedProductURL.getKey())) {
+                changedProductPages.add(unchangedProductURL.getValue());
+            }
+        }
+        if(printProgress) {
+            System.out.println("Sitemap lists " + productLastModifiedDates.size() + " products: " + changedProductPages.size()
+                    + " changed, " + extendedProductURLs.size() + " carried over to today");
+        }
+
+        // Request every changed product's JSON, and only record its last modified date once the product has been merged
+        boolean allProductsVisited;
+        try (CrawlPipeline crawlPipeline = new CrawlPipeline("sentai-filmworks-sitemap", parallelism, CrawlPipeline.DEFAULT_PARSE_WORKERS,
+                CrawlPipeline.DEFAULT_QUEUE_CAPACITY, observation -> updateCrawlData(observation.getProductName(),
+                observation.getProductURL(), observation.getPrice(), printProgress))) {
+            for(final String productPage : changedProductPages) {
+                final String lastModified = productLastModifiedDates.get(productPage);
+                crawlPipeline.submit(new CrawlPipeline.PageRequest(productPage + PRODUCT_JSON_EXTENSION, this::fetchProductJson,
+                        (productRequest, productJsonString) -> new CrawlPipeline.ParsedPage(parseProductJson(productJsonString), null,
+                                () -> sitemapSnapshot.recordLastModified(productPage, lastModified))));
+            }
+            allProductsVisited = crawlPipeline.awaitCompletion();
+            if(printProgress) {
+                System.out.println(crawlPipeline.findStatsSummary());
+            }
+        }
+        catch(InterruptedException ex) {
+            ex.printStackTrace();
+            Thread.currentThread().interrupt();
+            allProductsVisited = false;
+        }
+        sitemapSnapshot.setCrawlDate(DateTool.findCurrentDateString());
+        return allProductsVisited;
+    }
+
+    /**
+     * Finds the URL a product page is listed under in the crawl data (the URL parseProductJson gives its observations)
+     * @param productPage URL of the product page (as listed in the sitemap)
+     * @return the product URL used in the crawl data
+     */
+    public static String findProductURLFromPage(String productPage) {
+        String productLinkComponent = productPage.substring(productPage.lastIndexOf(SITEMAP_PRODUCT_PATH) + SITEMAP_PRODUCT_PATH.length());
+        return PRODUCT_BASE_URL + "/" + productLinkComponent;
+    }
+
     /**
      * Adds a new Product (or updates existing one with same name) in the crawl data
      * @param productName the name of the product
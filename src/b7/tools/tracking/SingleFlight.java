@@ -0,0 +1,120 @@
+package b7.tools.tracking;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: while one call for a key is running, other callers
+ * for that key wait for it and share its result instead of running the work again. Once the call
+ * finishes, the next call for the key runs the work afresh (results are not cached).
+ * Counts how many calls for each key were coalesced
+ * @param <K> type of the keys calls are coalesced by
+ * @param <V> type of the results the calls give back
+ */
+public class SingleFlight<K, V> {
+
+    private Map<K, CompletableFuture<V>> inFlightCalls;  // Calls currently running, by key
+    private Map<K, AtomicLong> coalescedCounts;  // How many calls for each key shared another call's result
+
+    /**
+     * Constructs a new SingleFlight
+     */
+    public SingleFlight() {
+        inFlightCalls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+        coalescedCounts = new ConcurrentHashMap<K, AtomicLong>();
+    }
+
+    /**
+     * Runs the work for a key, or waits for the call already running for that key and gives back its result
+     * @param key the key to coalesce calls by
+     * @param work the work to run if no call for the key is running
+     * @return the result of the work (or null if the thread was interrupted while waiting for another call)
+     * @throws RuntimeException whatever the work threw (also thrown to every caller that shared the call)
+     */
+    public V run(K key, Supplier<V> work) {
+        CompletableFuture<V> call = new CompletableFuture<V>();
+        CompletableFuture<V> runningCall = inFlightCalls.putIfAbsent(key, call);
+        if(runningCall != null) {
+            coalescedCounts.computeIfAbsent(key, k -> new AtomicLong(0)).incrementAndGet();
+            return waitFor(runningCall);
+        }
+
+        try {
+            V result = work.get();
+            call.complete(result);
+            return result;
+        }
+        catch(RuntimeException | Error ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            inFlightCalls.remove(key, call);
+        }
+    }
+
+    /**
+     * Returns how many calls for the key shared another call's result
+     * @param key the key to look up
+     * @return how many calls for the key were coalesced
+     */
+    public long findCoalescedCount(K key) {
+        AtomicLong coalescedCount = coalescedCounts.get(key);
+        return coalescedCount == null ? 0 : coalescedCount.get();
+    }
+
+    /**
+     * Returns how many calls shared another call's result, by key (only keys with at least one coalesced call are included)
+     * @return a snapshot of how many calls were coalesced for each key
+     */
+    public Map<K, Long> getCoalescedCounts() {
+        Map<K, Long> snapshot = new HashMap<K, Long>();
+        for(Map.Entry<K, AtomicLong> coalescedCount : coalescedCounts.entrySet()) {
+            snapshot.put(coalescedCount.getKey(), coalescedCount.getValue().get());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Returns how many calls (for any key) shared another call's result
+     * @return the total number of coalesced calls
+     */
+    public long getTotalCoalescedCount() {
+        long total = 0;
+        for(AtomicLong coalescedCount : coalescedCounts.values()) {
+            total += coalescedCount.get();
+        }
+        return total;
+    }
+
+    /**
+     * Waits for a running call and gives back its result (rethrowing what it threw)
+     * @param runningCall the call to wait for
+     * @return the result of the call, or null if the thread was interrupted while waiting
+     */
+    private V waitFor(CompletableFuture<V> runningCall) {
+        try {
+            return runningCall.get();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The last modified date of every page listed in a store's sitemap, as of the last update of the store.
+ * Comparing it with the store's current sitemap finds which products changed since then, so an update only
+ * has to request those. Saved and loaded with CrawlerDataHandler
+ */
+public class SitemapSnapshot {
+
+    // Tags used in sitemaps (https://www.sitemaps.org/protocol.html)
+    public static final String SITEMAP_TAG = "sitemap";  // Entry of a sitemap index, pointing to another sitemap
+    public static final String URL_TAG = "url";  // Entry of a sitemap, pointing to a page
+    public static final String LOCATION_TAG = "loc";
+    public static final String LAST_MODIFIED_TAG = "lastmod";
+
+    // Last modified date of a page whose sitemap entry has none (such a page always counts as changed)
+    public static final String UNKNOWN_LAST_MODIFIED = "";
+
+    private String storeName;  // Name of the store the sitemap is for
+    private String crawlDate;  // Day the snapshot was last updated on
+    private Map<String, String> lastModifiedDates;  // Page URL leading to its last modified date when it was last requested
+
+    /**
+     * Constructs a new SitemapSnapshot with no store name, for today, and with no pages
+     */
+    public SitemapSnapshot() {
+        this("");
+    }
+
+    /**
+     * Constructs a new SitemapSnapshot for today with no pages
+     * @param storeName name of the store the sitemap is for
+     */
+    public SitemapSnapshot(String storeName) {
+        this.storeName = storeName;
+        crawlDate = DateTool.findCurrentDateString();
+        lastModifiedDates = new HashMap<String, String>();
+    }
+
+    /**
+     * Returns the name of the store the sitemap is for
+     * @return the name of the store the sitemap is for
+     */
+    public String getStoreName() {
+        return storeName;
+    }
+
+    /**
+     * Sets the name of the store the sitemap is for
+     * @param storeName the new name of the store the sitemap is for
+     */
+    public void setStoreName(String storeName) {
+        this.storeName = storeName;
+    }
+
+    /**
+     * Returns the day the snapshot was last updated on
+     * @return the day the snapshot was last updated on
+     */
+    public String getCrawlDate() {
+        return crawlDate;
+    }
+
+    /**
+     * Sets the day the snapshot was last updated on
+     * @param crawlDate the new day the snapshot was last updated on
+     */
+    public void setCrawlDate(String crawlDate) {
+        this.crawlDate = crawlDate;
+    }
+
+    /**
+     * Returns the last modified date of every page, as of when it was last requested
+     * @return map of page URL to its last modified date (synchronize on the snapshot while reading it)
+     */
+    public synchronized Map<String, String> getLastModifiedDates() {
+        return lastModifiedDates;
+    }
+
+    /**
+     * Sets the last modified date of every page
+     * @param lastModifiedDates the new map of page URL to its last modified date
+     */
+    public synchronized void setLastModifiedDates(Map<String, String> lastModifiedDates) {
+        this.lastModifiedDates = lastModifiedDates == null ? new HashMap<String, String>() : new HashMap<String, String>(lastModifiedDates);
+    }
+
+    /**
+     * Finds which pages of the current sitemap changed since they were last requested
+     * @param currentLastModifiedDates map of every page URL in the current sitemap to its last modified date
+     * @return the URLs of pages that are new, have a different last modified date, or have no last modified date
+     */
+    public synchronized Set<String> findChangedUrls(Map<String, String> currentLastModifiedDates) {
+        Set<String> changedUrls = new LinkedHashSet<String>();
+        for(Map.Entry<String, String> currentLastModified : currentLastModifiedDates.entrySet()) {
+            String lastModified = currentLastModified.getValue();
+            if(UNKNOWN_LAST_MODIFIED.equals(lastModified) || !lastModified.equals(lastModifiedDates.get(currentLastModified.getKey()))) {
+                changedUrls.add(currentLastModified.getKey());
+            }
+        }
+        return changedUrls;
+    }
+
+    /**
+     * Records the last modified date of a page that was just requested
+     * @param url URL of the page
+     * @param lastModified last modified date of the page in the sitemap it was requested from
+     */
+    public synchronized void recordLastModified(String url, String lastModified) {
+        lastModifiedDates.put(url, lastModified);
+    }
+
+    /**
+     * Reads a sitemap, following a sitemap index to the sitemaps it lists
+     * @param sitemapURL URL of the sitemap (or sitemap index) to read
+     * @param childSitemapFilter text the URL of a sitemap listed in a sitemap index must contain to be read
+     *                           (null or empty to read every listed sitemap)
+     * @return map of every page URL in the sitemap(s) to its last modified date, in sitemap order,
+     *         or null if a sitemap could not be read
+     */
+    public static Map<String, String> readSitemap(String sitemapURL, String childSitemapFilter) {
+        String sitemapXML = WebCrawler.readUrlContents(sitemapURL);
+        if(sitemapXML == null) {
+            System.err.println("[ERROR] Could not read sitemap " + sitemapURL);
+            return null;
+        }
+
+        Map<String, String> lastModifiedDates = parseSitemap(sitemapXML);
+        for(String childSitemapURL : findChildSitemaps(sitemapXML)) {
+            if(childSitemapFilter != null && !childSitemapFilter.isEmpty() && !childSitemapURL.contains(childSitemapFilter)) {
+                continue;
+            }
+            Map<String, String> childLastModifiedDates = readSitemap(childSitemapURL, childSitemapFilter);
+            if(childLastModifiedDates == null) {
+                return null;
+            }
+            lastModifiedDates.putAll(childLastModifiedDates);
+        }
+        return lastModifiedDates;
+    }
+
+    /**
+     * Parses the pages listed in a sitemap
+     * @param sitemapXML the sitemap XML to parse
+     * @return map of every page URL in the sitemap to its last modified date
+     *         (UNKNOWN_LAST_MODIFIED if the entry has none), in sitemap order
+     */
+    public static Map<String, String> parseSitemap(String sitemapXML) {
+        Map<String, String> lastModifiedDates = new LinkedHashMap<String, String>();
+        Document document = Jsoup.parse(sitemapXML, "", Parser.xmlParser());
+        for(Element urlElement : document.getElementsByTag(URL_TAG)) {
+            Element locationElement = urlElement.getElementsByTag(LOCATION_TAG).first();
+            if(locationElement == null) {
+                continue;
+            }
+            Element lastModifiedElement = urlElement.getElementsByTag(LAST_MODIFIED_TAG).first();
+            lastModifiedDates.put(locationElement.text().trim(),
+                    lastModifiedElement == null ? UNKNOWN_LAST_MODIFIED : lastModifiedElement.text().trim());
+        }
+        return lastModifiedDates;
+    }
+
+    /**
+     * Finds the sitemaps listed in a sitemap index
+     * @param sitemapXML the sitemap index XML to search
+     * @return URLs of the sitemaps listed (empty if the XML is a plain sitemap)
+     */
+    public static List<String> findChildSitemaps(String sitemapXML) {
+        List<String> childSitemapURLs = new ArrayList<String>();
+        Document document = Jsoup.parse(sitemapXML, "", Parser.xmlParser());
+        for(Element sitemapElement : document.getElementsByTag(SITEMAP_TAG)) {
+            Element locationElement = sitemapElement.getElementsByTag(LOCATION_TAG).first();
+            if(locationElement != null) {
+                childSitemapURLs.add(locationElement.text().trim());
+            }
+        }
+        return childSitemapURLs;
+    }
+}
@@ -1,19 +1,13 @@
 package b7.tools.tracking;
 
+import com.gargoylesoftware.htmlunit.FailingHttpStatusCodeException;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.Scanner;
-import java.util.logging.Level;
 
 /**
  * Basic class to represent a web crawler
@@ -26,6 +20,13 @@ public class WebCrawler {
     // Location of Windows phantomJS
     public static final String PHANTOM_JS_WINDOWS_EXE_PATH = "./bin/phantomjs-2.1.1-windows/phantomjs.exe";
 
+    // How often (in milliseconds) htmlunit pages are checked for being ready while their JavaScript runs
+    public static final long HTMLUNIT_READY_POLL_MILLIS = 100;
+
+    // How long (in milliseconds) to wait before the first retry of a failed htmlunit page load (doubles each retry, up to the maximum)
+    public static final long HTMLUNIT_BASE_RETRY_BACKOFF_MILLIS = 500;
+    public static final long HTMLUNIT_MAX_RETRY_BACKOFF_MILLIS = 8000;
+
     private String initialURL;  // Where to start crawling from
 
     /**
@@ -63,27 +64,63 @@ public class WebCrawler {
     }
 
     /**
-     * Reads the given URL and returns the HTML on that page
+     * Reads the given URL and returns the HTML on that page (using the shared HttpTransport, at the pace
+     * the shared HostRateController allows for the URL's host)
      * @param URL the URL to read the contents of
      * @return the contents of the URL, or null if an exception occurred
      */
     public static String readUrlContents(String URL) {
-        // Use a StringBuilder to efficiently append all the page contents that gets returned at the end of the method
-        StringBuilder stringBuilder = new StringBuilder();
+        return readUrlContents(URL, (PageStreamReader.Cutoff) null);
+    }
+
+    /**
+     * Reads the given URL and returns the HTML on that page up to the given cutoff, decoding the response bytes
+     * straight off the connection into the text to parse and not downloading the rest of the page (using the shared
+     * HttpTransport, at the pace the shared HostRateController allows for the URL's host)
+     * @param URL the URL to read the contents of
+     * @param cutoff where to stop reading the page (null to read the whole page)
+     * @return the contents of the URL (up to and including the end of the cutoff), or null if an exception occurred
+     */
+    public static String readUrlContents(String URL, PageStreamReader.Cutoff cutoff) {
+        return readUrlContents(URL, cutoff, null);
+    }
+
+    /**
+     * Reads the given URL and returns the HTML on that page (like readUrlContents(URL)), in a way that can be aborted
+     * from another thread: aborting disconnects the connection, which also gives back the request's host permit
+     * @param URL the URL to read the contents of
+     * @param abortSignal signal to abort the request with
+     * @return the contents of the URL, or null if an exception occurred or the request was aborted
+     */
+    public static String readUrlContents(String URL, AbortSignal abortSignal) {
+        return readUrlContents(URL, null, abortSignal);
+    }
+
+    // Reads the given URL up to the cutoff (null for the whole page), abortable with the signal (null if it cannot be aborted)
+    private static String readUrlContents(String URL, PageStreamReader.Cutoff cutoff, AbortSignal abortSignal) {
+        HostRateController hostRateController = HostRateController.getDefaultController();
+        HostRateController.Permit permit = null;
+        int statusCode = HostRateController.FAILED_REQUEST_STATUS;
+        String retryAfter = null;
         try {
-            URL url = new URL(URL);
-            URLConnection urlConnection = url.openConnection();
-            BufferedReader br = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
-            String currentLine;
-            while(true) {
-                currentLine = br.readLine();
-                if(currentLine == null) {
-                    break;
+            permit = hostRateController.acquire(URL);
+            if(cutoff != null) {
+                // Decode the body straight off the connection, and stop downloading it at the cutoff
+                HttpTransport.TextResponse textResponse = HttpTransport.getDefaultTransport().fetchText(URL, cutoff);
+                statusCode = textResponse.getResponse().getStatusCode();
+                retryAfter = textResponse.getResponse().getHeader("Retry-After");
+                if(!textResponse.getResponse().isSuccessful()) {
+                    throw new IOException("Server returned HTTP response code " + statusCode + " for URL " + URL);
                 }
-                stringBuilder.append(currentLine);
-                stringBuilder.append("\n");
+                return textResponse.getText();
             }
-            br.close();
+            HttpResponse response = HttpTransport.getDefaultTransport().fetch(URL, null, abortSignal);
+            statusCode = response.getStatusCode();
+            retryAfter = response.getHeader("Retry-After");
+            if(!response.isSuccessful()) {
+                throw new IOException("Server returned HTTP response code " + statusCode + " for URL " + URL);
+            }
+            return response.getBodyAsString();
         }
         catch(MalformedURLException ex) {
             System.err.println("Malformed URL " + URL + " could not be instantiated");
@@ -91,98 +128,268 @@ public class WebCrawler {
             return null;
         }
         catch(IOException ex) {
+            if(abortSignal != null && abortSignal.isAborted()) {
+                statusCode = HostRateController.ABORTED_REQUEST_STATUS;  // Given up on by the crawler, not failed by the host
+                return null;
+            }
             System.err.println("Could not open a connection to " + URL);
             ex.printStackTrace();
             return null;
         }
-        return stringBuilder.toString();
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while waiting to read " + URL);
+            return null;
+        }
+        finally {
+            hostRateController.release(permit, statusCode, retryAfter);
+        }
+    }
+
+    /**
+     * Uses htmlunit headless browser (version 2.27), borrowed from the given pool, to read a given URL with JavaScript.
+     * Will attempt to load the page 10 times before returning an empty string
+     * @param url the url to load
+     * @param webClientPool the pool to borrow the headless browser from
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready to read
+     *                       (if none given, the page is ready once its JavaScript jobs finish)
+     * @return String of the contents of the page once ready, or empty string if page could not be successfully read
+     */
+    public static String readUrlContentsWithJavaScriptHtmlunit(String url, HtmlUnitWebClientPool webClientPool, String... readySelectors) {
+        return readUrlContentsWithJavaScriptHtmlunit(webClientPool, url, 1, 10, 60, 1, readySelectors);
     }
 
     /**
      * Uses htmlunit headless browser (version 2.27) to read a given URL with JavaScript
-     * The htnlunit page will wait for all jobs on the page to finish before returning the HTML String back
+     * The htnlunit page will wait for all jobs on the page to finish (or for all the readySelectors to match
+     * something on the page) before returning the HTML String back
      * Will attempt to load the page 10 times before returning an empty string
      * @param url the url to load
-     * @return String of the contents of the page with all jobs fully completed, or empty string if page could not be successfully read
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready to read
+     *                       (if none given, the page is ready once its JavaScript jobs finish)
+     * @return String of the contents of the page once ready, or empty string if page could not be successfully read
      */
-    public static String readUrlContentsWithJavaScriptHtmlunit(String url) {
-        return readUrlContentsWithJavaScriptHtmlunit(url, 1, 10, 60, 1);
+    public static String readUrlContentsWithJavaScriptHtmlunit(String url, String... readySelectors) {
+        return readUrlContentsWithJavaScriptHtmlunit(url, 1, 10, 60, 1, readySelectors);
     }
 
     /**
      * Uses htmlunit headless browser (version 2.27) to read a given URL with JavaScript
-     * The htnlunit page will wait for all jobs on the page to finish before returning the HTML String back
+     * The htnlunit page will wait for all jobs on the page to finish (or for all the readySelectors to match
+     * something on the page) before returning the HTML String back. Failed attempts are retried after a
+     * backoff that doubles each attempt (up to HTMLUNIT_MAX_RETRY_BACKOFF_MILLIS)
      * @param url the url to load
-     * @param attempt attempt number to load the url
-     * @param maxAttempts the maximum amount
+     * @param attempt attempt number to start at when loading the url
+     * @param maxAttempts the maximum amount of attempts
      * @param maxWaitSeconds the maximum amount of seconds to wait for the page to load its contents before returning it (default 60 if value <= 0 given)
      * @param minJobCount the amount of JavaScript jobs to allow remaining to load on the page before returning the page contents (default 1 if value <= 0 given)
-     * @return String of the contents of the page with all jobs fully completed
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready to read
+     *                       (if none given, the page is ready once its JavaScript jobs finish)
+     * @return String of the contents of the page once ready, or empty string if page could not be successfully read
      */
-    public static String readUrlContentsWithJavaScriptHtmlunit(String url, int attempt, int maxAttempts, int maxWaitSeconds, int minJobCount) {
-        // Turn off the error messages from htmlunit
-        java.util.logging.Logger.getLogger("com.gargoylesoftware").setLevel(Level.OFF);
+    public static String readUrlContentsWithJavaScriptHtmlunit(String url, int attempt, int maxAttempts, int maxWaitSeconds, int minJobCount,
+                                                               String... readySelectors) {
+        return readUrlContentsWithJavaScriptHtmlunit(HtmlUnitWebClientPool.getDefaultPool(), url, attempt, maxAttempts,
+                maxWaitSeconds, minJobCount, readySelectors);
+    }
 
+    /**
+     * Uses htmlunit headless browser (version 2.27), borrowed from the given pool, to read a given URL with JavaScript
+     * The htnlunit page will wait for all jobs on the page to finish (or for all the readySelectors to match
+     * something on the page) before returning the HTML String back. Failed attempts are retried after a
+     * backoff that doubles each attempt (up to HTMLUNIT_MAX_RETRY_BACKOFF_MILLIS)
+     * @param webClientPool the pool to borrow the headless browser from
+     * @param url the url to load
+     * @param attempt attempt number to start at when loading the url
+     * @param maxAttempts the maximum amount of attempts
+     * @param maxWaitSeconds the maximum amount of seconds to wait for the page to load its contents before returning it (default 60 if value <= 0 given)
+     * @param minJobCount the amount of JavaScript jobs to allow remaining to load on the page before returning the page contents (default 1 if value <= 0 given)
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready to read
+     *                       (if none given, the page is ready once its JavaScript jobs finish)
+     * @return String of the contents of the page once ready, or empty string if page could not be successfully read
+     */
+    public static String readUrlContentsWithJavaScriptHtmlunit(HtmlUnitWebClientPool webClientPool, String url, int attempt, int maxAttempts,
+                                                               int maxWaitSeconds, int minJobCount, String... readySelectors) {
         // If bad attempt / maxAttempt numbers given throw Exception
         if (attempt < 1 || maxAttempts < 1) {
             throw new IllegalArgumentException("Invalid attempt number (" + attempt +
                     ") and / or maximum attempt number (" + maxAttempts + ") given");
         }
+
+        for(int currentAttempt = attempt; currentAttempt <= maxAttempts; currentAttempt++) {
+            // Back off before every retry, so a struggling server gets some room to recover
+            if(currentAttempt > attempt) {
+                try {
+                    Thread.sleep(findRetryBackoffMillis(currentAttempt - attempt));
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("Interrupted while waiting to retry url " + url + ", aborting attempts to read page");
+                    return "";
+                }
+            }
+
+            // Borrow a headless browser from the shared pool, and always give it back (even if loading the page failed)
+            String pageContents;
+            WebClient webClient = null;
+            try {
+                webClient = webClientPool.borrow();
+                pageContents = loadPageWithHtmlunit(webClient, url, currentAttempt, maxAttempts, maxWaitSeconds, minJobCount, readySelectors);
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted while waiting for a headless browser to read url " + url + ", aborting attempts to read page");
+                return "";
+            }
+            catch(IllegalStateException ex) {  // Only borrow() throws it (the page load catches its own errors)
+                System.err.println("[ERROR] " + ex.getMessage() + "; aborting attempts to read url " + url);
+                return "";
+            }
+            finally {
+                webClientPool.giveBack(webClient);
+            }
+
+            if(pageContents != null) {
+                return pageContents;
+            }
+        }
+
         // If maximum amount of attempts has been reached return empty string
-        if (attempt > maxAttempts) {
-            System.err.println("Maximum attempts (" + maxAttempts + ") reached for attempting to read url " + url + ", aborting attempts to read page");
-            return "";
+        System.err.println("Maximum attempts (" + maxAttempts + ") reached for attempting to read url " + url + ", aborting attempts to read page");
+        return "";
+    }
+
+    /**
+     * Finds how long to wait before the given retry of a page load
+     * @param retryNumber which retry is about to happen (1 for the first retry)
+     * @return how long (in milliseconds) to wait before the retry
+     */
+    private static long findRetryBackoffMillis(int retryNumber) {
+        long backoffMillis = HTMLUNIT_BASE_RETRY_BACKOFF_MILLIS;
+        for(int i = 1; i < retryNumber && backoffMillis < HTMLUNIT_MAX_RETRY_BACKOFF_MILLIS; i++) {
+            backoffMillis *= 2;
         }
+        return Math.min(backoffMillis, HTMLUNIT_MAX_RETRY_BACKOFF_MILLIS);
+    }
 
-        // Access the given url
-        WebClient webClient = new WebClient();
+    /**
+     * Makes a single attempt at loading the given url with the given htmlunit WebClient, waiting for the
+     * page to be ready before returning the HTML String back
+     * @param webClient the WebClient to load the page with
+     * @param url the url to load
+     * @param attempt attempt number to load the url
+     * @param maxAttempts the maximum amount of attempts
+     * @param maxWaitSeconds the maximum amount of seconds to wait for the page to load its contents before returning it (default 60 if value <= 0 given)
+     * @param minJobCount the amount of JavaScript jobs to allow remaining to load on the page before returning the page contents (default 1 if value <= 0 given)
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready to read
+     * @return String of the contents of the page, or null if the attempt failed
+     */
+    private static String loadPageWithHtmlunit(WebClient webClient, String url, int attempt, int maxAttempts, int maxWaitSeconds,
+                                               int minJobCount, String... readySelectors) {
         HtmlPage page = null;
         try {
-            page = webClient.getPage(url);
+            // Only the page request itself is paced by the host rate controller (not the scripts it loads afterwards),
+            //   and since getPage() also runs the page's scripts, how long it takes says nothing about the host
+            HostRateController hostRateController = HostRateController.getDefaultController();
+            HostRateController.Permit permit = hostRateController.acquire(url);
+            int statusCode = HostRateController.FAILED_REQUEST_STATUS;
+            String retryAfter = null;
+            try {
+                page = webClient.getPage(url);
+                if(page != null) {
+                    statusCode = page.getWebResponse().getStatusCode();
+                    retryAfter = page.getWebResponse().getResponseHeaderValue("Retry-After");
+                }
+            }
+            catch(FailingHttpStatusCodeException ex) {
+                statusCode = ex.getStatusCode();
+                retryAfter = ex.getResponse().getResponseHeaderValue("Retry-After");
+                throw ex;
+            }
+            finally {
+                hostRateController.release(permit, statusCode, retryAfter, false);
+            }
 
             if (page == null) {
                 System.err.println("Failed to get page \"" + url + "\" on attempt " + attempt + " of a maximum "
                         + maxAttempts + " attempts; trying again");
-                attempt++;
-            }
-            else {
-                // Wait for page to fully load before getting the final HTML code
-                // From https://stackoverflow.com/questions/16956952/htmlunit-return-a-completely-loaded-page
-                WebWindow pageWindow = page.getEnclosingWindow();
-                if (pageWindow == null) {
-                    return readUrlContentsWithJavaScriptHtmlunit(url);
-                }
-
-                JavaScriptJobManager manager = pageWindow.getJobManager();
-                final int maxLoops = maxWaitSeconds <= 0 ? 60 : maxWaitSeconds;
-                final int minJobs = minJobCount <= 0 ? 1 : minJobCount;
-                int loop = 1;
-                while (manager.getJobCount() > minJobs && loop <= maxLoops) {
-                    try {
-                        //System.out.println("On loop " + loop + ", jobs left is " + manager.getJobCount());
-                        Thread.sleep(1000);
-                        loop++;
-                    }
-                    catch(InterruptedException ex) {
-                        ex.printStackTrace();
-                        System.err.println("Failed to get page \"" + url + "\" on attempt " + attempt + " of a maximum "
-                                + maxAttempts + " attempts; trying again");
-                        return readUrlContentsWithJavaScriptHtmlunit(url, attempt + 1, maxAttempts, maxWaitSeconds, minJobCount);
-                    }
-                }
+                return null;
+            }
 
-                // Return the page XML (i.e., HTML)
-                System.err.println("Exited job loop at loop number " + (loop - 1) + " and job count " + manager.getJobCount() + " for url " + url);
-                return page.asXml();
+            WebWindow pageWindow = page.getEnclosingWindow();
+            if (pageWindow == null) {
+                return null;
             }
+
+            // Wait for page to be ready before getting the final HTML code
+            long waitMillis = waitForPageReady(page, pageWindow.getJobManager(), maxWaitSeconds, minJobCount, readySelectors);
+
+            // Return the page XML (i.e., HTML)
+            System.err.println("Page ready after " + waitMillis + " ms with job count " + pageWindow.getJobManager().getJobCount() + " for url " + url);
+            return page.asXml();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while waiting to get page \"" + url + "\"");
         }
         catch (Exception e) {
             e.printStackTrace();
             System.err.println("Failed to get page \"" + url + "\" on attempt " + attempt + " of a maximum "
                     + maxAttempts + " attempts; trying again");
         }
+        return null;
+    }
 
-        return readUrlContentsWithJavaScriptHtmlunit(url, attempt + 1, maxAttempts, maxWaitSeconds, minJobCount);  // If we get down here, an error occurred while getting page contents
+    /**
+     * Waits until the page is ready: either every one of the readySelectors matches something on the page, or
+     * the page's JavaScript job count has gone down to minJobCount. Waiting is done on the job manager itself,
+     * which wakes up as soon as the jobs finish, checking the selectors every HTMLUNIT_READY_POLL_MILLIS
+     * @param page the page to wait on
+     * @param jobManager the JavaScript job manager of the page's window
+     * @param maxWaitSeconds the maximum amount of seconds to wait (default 60 if value <= 0 given)
+     * @param minJobCount the amount of JavaScript jobs to allow remaining on the page (default 1 if value <= 0 given)
+     * @param readySelectors CSS selectors which, once all of them match something on the page, mean the page is ready
+     * @return how long (in milliseconds) was spent waiting
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private static long waitForPageReady(HtmlPage page, JavaScriptJobManager jobManager, int maxWaitSeconds, int minJobCount,
+                                         String... readySelectors) throws InterruptedException {
+        final long maxWaitMillis = (maxWaitSeconds <= 0 ? 60 : maxWaitSeconds) * 1000L;
+        final int minJobs = minJobCount <= 0 ? 1 : minJobCount;
+        final long startTime = System.currentTimeMillis();
+
+        while(true) {
+            if(areSelectorsPresent(page, readySelectors) || jobManager.getJobCount() <= minJobs) {
+                break;
+            }
+            long waitedMillis = System.currentTimeMillis() - startTime;
+            if(waitedMillis >= maxWaitMillis) {
+                break;
+            }
+            jobManager.waitForJobs(Math.min(HTMLUNIT_READY_POLL_MILLIS, maxWaitMillis - waitedMillis));
+            if(Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for page to be ready");
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Checks if every one of the given CSS selectors matches something on the page
+     * @param page the page to check
+     * @param selectors the CSS selectors to check for
+     * @return true if selectors were given and each of them matches at least one node, false otherwise
+     */
+    private static boolean areSelectorsPresent(HtmlPage page, String... selectors) {
+        if(selectors == null || selectors.length == 0) {
+            return false;
+        }
+        for(String selector : selectors) {
+            if(page.querySelector(selector) == null) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -196,9 +403,12 @@ public class WebCrawler {
      * @return the HTML code of the URL after being loaded with JavaScript, or null if an error occurs
      */
     public static String readUrlContentsWithJavaScriptPhantomJS(String URL, String phantomJSPath, int pageLoadWaitTime) {
-        // Use a StringBuilder to efficiently append all the page contents that gets returned at the end of the method
-        StringBuilder stringBuilder = new StringBuilder();
+        String pageHTML;
+        HostRateController hostRateController = HostRateController.getDefaultController();
+        HostRateController.Permit permit = null;
+        int statusCode = HostRateController.FAILED_REQUEST_STATUS;
         try{
+            permit = hostRateController.acquire(URL);
             // Use PhantomJS with a script that simply prints the loaded HTML of a given URL argument
             if(phantomJSPath == null) {  // If path is null, we assume user wants to use default Windows executable
                 phantomJSPath = PHANTOM_JS_WINDOWS_EXE_PATH;
@@ -207,23 +417,64 @@ public class WebCrawler {
             // With terminal / command line in root folder of repository, command looks like:
             //   ./bin/phantomjs-2.1.1-windows/phantomjs.exe ./scripts/loadpage.js <URL> <pageLoadWaitTime>
             Process process = Runtime.getRuntime().exec(executeCommand);
-            InputStream inputStream = process.getInputStream();
-            Scanner scanner = new Scanner(inputStream);
-            String line;
-            do {
-                line = scanner.nextLine();
-                stringBuilder.append(line);
-                stringBuilder.append("\n");
-            }
-            while(scanner.hasNextLine());
-            scanner.close();
+            // Decode the printed HTML straight from the process output (closing it once read)
+            pageHTML = PageStreamReader.readText(process.getInputStream(), HttpTransport.DEFAULT_CHARSET, null);
+            statusCode = 200;
         }
         catch(IOException ex) {
             System.err.println("[ERROR] IOException when getting page with PhantomJS for URL " + URL);
             ex.printStackTrace();
             return null;
         }
-        return stringBuilder.toString();
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("[ERROR] Interrupted while waiting to get page with PhantomJS for URL " + URL);
+            return null;
+        }
+        finally {
+            hostRateController.release(permit, statusCode, null, false);  // The time includes rendering the page
+        }
+        return pageHTML;
+    }
+
+    /**
+     * Reads a given URL with JavaScript using the shared pool of long-lived renderer processes
+     * (PhantomJS running scripts/rendererworker.js), instead of starting a new PhantomJS process for the URL
+     * @param URL the URL to open
+     * @param pageLoadWaitTime how long (in milliseconds) to wait for the page's JavaScript to load
+     * @return the HTML code of the URL after being loaded with JavaScript, or null if an error occurs
+     */
+    public static String readUrlContentsWithJavaScriptRendererPool(String URL, int pageLoadWaitTime) {
+        return readUrlContentsWithJavaScriptRendererPool(URL, RendererProcessPool.getDefaultPool(), pageLoadWaitTime);
+    }
+
+    /**
+     * Reads a given URL with JavaScript using one of the long-lived renderer processes in the given pool
+     * @param URL the URL to open
+     * @param rendererProcessPool the pool of renderer processes to render the URL with
+     * @param pageLoadWaitTime how long (in milliseconds) to wait for the page's JavaScript to load
+     * @return the HTML code of the URL after being loaded with JavaScript, or null if an error occurs
+     */
+    public static String readUrlContentsWithJavaScriptRendererPool(String URL, RendererProcessPool rendererProcessPool, int pageLoadWaitTime) {
+        HostRateController hostRateController = HostRateController.getDefaultController();
+        HostRateController.Permit permit;
+        try {
+            permit = hostRateController.acquire(URL);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("[ERROR] Interrupted while waiting to render URL " + URL);
+            return null;
+        }
+        String pageHTML = null;
+        try {
+            pageHTML = rendererProcessPool.render(URL, pageLoadWaitTime);
+            return pageHTML;
+        }
+        finally {
+            hostRateController.release(permit, pageHTML == null ? HostRateController.FAILED_REQUEST_STATUS : 200, null,
+                    false);  // The time includes rendering the page
+        }
     }
 
 }
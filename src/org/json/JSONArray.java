@@ -133,6 +133,56 @@ public class JSONArray implements Iterable<Object> {
         }
     }
 
+    /**
+     * Construct a JSONArray from a JSONTokener, keeping only the elements
+     * picked out by the selection. The other elements are skipped without
+     * being built, and are kept as JSONObject.NULL so the selected elements
+     * keep their indexes.
+     *
+     * @param x
+     *            A JSONTokener
+     * @param selection
+     *            The pointers (relative to this array) to keep.
+     * @throws JSONException
+     *             If there is a syntax error.
+     */
+    public JSONArray(JSONTokener x, JSONPointer.Selection selection) throws JSONException {
+        this();
+        if (x.nextClean() != '[') {
+            throw x.syntaxError("A JSONArray text must start with '['");
+        }
+        if (x.nextClean() != ']') {
+            x.back();
+            for (int index = 0;; index += 1) {
+                if (x.nextClean() == ',') {
+                    x.back();
+                    this.myArrayList.add(JSONObject.NULL);
+                } else {
+                    x.back();
+                    JSONPointer.Selection elementSelection = selection.find(index);
+                    if (elementSelection == null) {
+                        x.skipValue();
+                        this.myArrayList.add(JSONObject.NULL);
+                    } else {
+                        this.myArrayList.add(x.nextValue(elementSelection));
+                    }
+                }
+                switch (x.nextClean()) {
+                case ',':
+                    if (x.nextClean() == ']') {
+                        return;
+                    }
+                    x.back();
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+                }
+            }
+        }
+    }
+
     /**
      * Construct a JSONArray from a source JSON text.
      *
@@ -265,6 +265,77 @@ public class JSONObject {
         }
     }
 
+    /**
+     * Construct a JSONObject from a JSONTokener, keeping only the members
+     * picked out by the selection. The values of the other members are
+     * skipped without being built.
+     *
+     * @param x
+     *            A JSONTokener object containing the source string.
+     * @param selection
+     *            The pointers (relative to this object) to keep.
+     * @throws JSONException
+     *             If there is a syntax error in the source string or a
+     *             duplicated selected key.
+     */
+    public JSONObject(JSONTokener x, JSONPointer.Selection selection) throws JSONException {
+        this();
+        char c;
+        String key;
+
+        if (x.nextClean() != '{') {
+            throw x.syntaxError("A JSONObject text must begin with '{'");
+        }
+        for (;;) {
+            c = x.nextClean();
+            switch (c) {
+            case 0:
+                throw x.syntaxError("A JSONObject text must end with '}'");
+            case '}':
+                return;
+            default:
+                x.back();
+                key = x.nextValue().toString();
+            }
+
+            // The key is followed by ':'.
+
+            c = x.nextClean();
+            if (c != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+
+            JSONPointer.Selection memberSelection = selection.find(key);
+            if (memberSelection == null) {
+                x.skipValue();
+            } else {
+                if (this.opt(key) != null) {
+                    throw x.syntaxError("Duplicate key \"" + key + "\"");
+                }
+                Object value = x.nextValue(memberSelection);
+                if (value != null) {
+                    this.put(key, value);
+                }
+            }
+
+            // Pairs are separated by ','.
+
+            switch (x.nextClean()) {
+            case ';':
+            case ',':
+                if (x.nextClean() == '}') {
+                    return;
+                }
+                x.back();
+                break;
+            case '}':
+                return;
+            default:
+                throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
     /**
      * Construct a JSONObject from a Map.
      *
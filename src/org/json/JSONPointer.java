@@ -104,6 +104,127 @@ public class JSONPointer {
         }
     }
 
+    /**
+     * A set of JSON pointers to read out of a JSON text with
+     * {@link JSONTokener#nextValue(Selection)}. Everything outside of the
+     * selected pointers is skipped by the tokenizer without being turned into
+     * objects. Besides the usual reference tokens, a {@code "*"} token matches
+     * every member of an object or every element of an array, so
+     * <code>"/variants/&#42;/price"</code> selects the price of every variant.
+     * A Selection holds no state while reading, so one instance can be shared
+     * for any number of texts (and threads).
+     */
+    public static class Selection {
+
+        /** The token that matches every member or element. */
+        public static final String WILDCARD = "*";
+
+        // Selections below this point, by reference token
+        private final Map<String, Selection> children = new HashMap<String, Selection>();
+
+        // Selection below this point for every member or element (null if there is no wildcard)
+        private Selection wildcard;
+
+        // Reference tokens selected below the wildcard, which also apply to every child
+        private final List<List<String>> wildcardRefTokens = new ArrayList<List<String>>();
+
+        // Whether the whole value at this point is selected
+        private boolean whole;
+
+        /**
+         * Creates a Selection of the given pointers.
+         *
+         * @param pointers the JSON String representations of the pointers to select
+         * @throws IllegalArgumentException if one of the pointers is not a valid JSON pointer
+         */
+        public Selection(String... pointers) {
+            for (String pointer : pointers) {
+                this.add(new JSONPointer(pointer).refTokens, 0);
+            }
+        }
+
+        /**
+         * Creates a Selection of the given pointers.
+         *
+         * @param pointers the pointers to select
+         */
+        public Selection(Collection<JSONPointer> pointers) {
+            for (JSONPointer pointer : pointers) {
+                this.add(pointer.refTokens, 0);
+            }
+        }
+
+        private Selection() {
+        }
+
+        private void add(List<String> refTokens, int depth) {
+            if (this.whole) {
+                return;
+            }
+            if (depth == refTokens.size()) {
+                // A value selected entirely makes the selections below it pointless
+                this.whole = true;
+                this.children.clear();
+                this.wildcard = null;
+                this.wildcardRefTokens.clear();
+                return;
+            }
+            String token = refTokens.get(depth);
+            if (WILDCARD.equals(token)) {
+                if (this.wildcard == null) {
+                    this.wildcard = new Selection();
+                }
+                List<String> remainingRefTokens = refTokens.subList(depth + 1, refTokens.size());
+                this.wildcardRefTokens.add(remainingRefTokens);
+                this.wildcard.add(remainingRefTokens, 0);
+                for (Selection child : this.children.values()) {
+                    child.add(remainingRefTokens, 0);
+                }
+                return;
+            }
+            Selection child = this.children.get(token);
+            if (child == null) {
+                child = new Selection();
+                for (List<String> remainingRefTokens : this.wildcardRefTokens) {
+                    child.add(remainingRefTokens, 0);
+                }
+                this.children.put(token, child);
+            }
+            child.add(refTokens, depth + 1);
+        }
+
+        /**
+         * Returns whether the whole value at this point is selected.
+         *
+         * @return true if the whole value is selected, false if only parts of it are
+         */
+        public boolean selectsWhole() {
+            return this.whole;
+        }
+
+        /**
+         * Finds what is selected of an object member.
+         *
+         * @param key the key of the member
+         * @return the selection of the member, or null if nothing of it is selected
+         */
+        public Selection find(String key) {
+            Selection child = this.children.isEmpty() ? null : this.children.get(key);
+            return child == null ? this.wildcard : child;
+        }
+
+        /**
+         * Finds what is selected of an array element.
+         *
+         * @param index the index of the element
+         * @return the selection of the element, or null if nothing of it is selected
+         */
+        public Selection find(int index) {
+            Selection child = this.children.isEmpty() ? null : this.children.get(String.valueOf(index));
+            return child == null ? this.wildcard : child;
+        }
+    }
+
     /**
      * Static factory method for {@link Builder}. Example usage:
      * 
@@ -458,6 +458,122 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Get the next value, keeping only the parts of it picked out by the
+     * selection. Members of objects and elements of arrays that are not
+     * selected are skipped with {@link #skipValue()}, so they are never
+     * turned into objects (array elements that are skipped are kept as
+     * JSONObject.NULL, so the selected elements keep their indexes).
+     *
+     * @param selection The pointers to keep.
+     * @return A JSONObject or JSONArray holding only the selected parts, or
+     *  the whole value if it is selected entirely (or is not an object or array).
+     * @throws JSONException If syntax error.
+     */
+    public Object nextValue(JSONPointer.Selection selection) throws JSONException {
+        if (selection.selectsWhole()) {
+            return this.nextValue();
+        }
+        char c = this.nextClean();
+        this.back();
+        switch (c) {
+        case '{':
+            return new JSONObject(this, selection);
+        case '[':
+            return new JSONArray(this, selection);
+        }
+        return this.nextValue();
+    }
+
+
+    /**
+     * Skip the next value (a string, number, literal, object, or array)
+     * without building it. Strings are only scanned for their closing quote,
+     * and objects and arrays are only scanned for their closing bracket, so
+     * the values inside of them are not checked as strictly as nextValue()
+     * checks them.
+     * @throws JSONException If the value is missing or not terminated.
+     */
+    public void skipValue() throws JSONException {
+        char c = this.nextClean();
+        switch (c) {
+        case '"':
+        case '\'':
+            this.skipString(c);
+            return;
+        case '{':
+        case '[':
+            this.skipNested();
+            return;
+        }
+
+        int length = 0;
+        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+            length += 1;
+            c = this.next();
+        }
+        this.back();
+        if (length == 0) {
+            throw this.syntaxError("Missing value");
+        }
+    }
+
+
+    /**
+     * Skip the characters up to and including the next close quote character,
+     * the way nextString() reads them.
+     * @param quote The quoting character.
+     * @throws JSONException Unterminated string.
+     */
+    private void skipString(char quote) throws JSONException {
+        for (;;) {
+            char c = this.next();
+            switch (c) {
+            case 0:
+            case '\n':
+            case '\r':
+                throw this.syntaxError("Unterminated string");
+            case '\\':
+                this.next();
+                break;
+            default:
+                if (c == quote) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Skip the rest of an object or array whose opening bracket has been
+     * read, up to and including its closing bracket.
+     * @throws JSONException If the object or array is not terminated.
+     */
+    private void skipNested() throws JSONException {
+        int depth = 1;
+        while (depth > 0) {
+            char c = this.next();
+            switch (c) {
+            case 0:
+                throw this.syntaxError("Unterminated object or array");
+            case '"':
+            case '\'':
+                this.skipString(c);
+                break;
+            case '{':
+            case '[':
+                depth += 1;
+                break;
+            case '}':
+            case ']':
+                depth -= 1;
+                break;
+            }
+        }
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -0,0 +1,72 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+import org.junit.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.CrawlCheckpoint class
+ */
+public class CrawlCheckpointTest {
+
+    private static final String CHECKPOINT_FILENAME = "savedata/checkpoints/testcheckpoint.json";
+
+    @After
+    public void tearDown() {
+        new File(CHECKPOINT_FILENAME).delete();
+    }
+
+    @Test
+    public void testRecordCompletedPage() {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint("Test Store");
+        assertNull(checkpoint.findCompletedPage(1));
+
+        assertEquals(1, checkpoint.recordCompletedPage(1, true, Arrays.asList(
+                new ProductObservation("Show A", "https://example.com/a", 19.99),
+                new ProductObservation("Show B", "https://example.com/b", 29.99))));
+        // Recording the same page twice does not count it twice
+        assertEquals(1, checkpoint.recordCompletedPage(1, true, Collections.<ProductObservation>emptyList()));
+        assertEquals(2, checkpoint.recordCompletedPage(2, false, null));
+
+        assertTrue(checkpoint.findCompletedPage(1).isNextPage());
+        assertFalse(checkpoint.findCompletedPage(2).isNextPage());
+        assertEquals(2, checkpoint.findObservationCount());
+
+        checkpoint.markSaved();
+        assertEquals(1, checkpoint.recordCompletedPage(3, false, null));
+    }
+
+    @Test
+    public void testSaveLoadCheckpoint() {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint("Test Store");
+        checkpoint.recordCompletedPage(4, true, Collections.singletonList(
+                new ProductObservation("Show A", "https://example.com/a", 19.99)));
+        CrawlerDataHandler.saveCrawlCheckpoint(checkpoint, CHECKPOINT_FILENAME);
+        assertFalse(new File(CHECKPOINT_FILENAME + ".tmp").exists());
+
+        CrawlCheckpoint loadedCheckpoint = CrawlerDataHandler.loadCrawlCheckpoint(CHECKPOINT_FILENAME);
+        assertNotNull(loadedCheckpoint);
+        assertTrue(loadedCheckpoint.canResume("Test Store"));
+        assertFalse(loadedCheckpoint.canResume("Other Store"));
+
+        CrawlCheckpoint.CompletedPage completedPage = loadedCheckpoint.findCompletedPage(4);
+        assertNotNull(completedPage);
+        assertTrue(completedPage.isNextPage());
+        assertEquals(1, completedPage.getObservations().size());
+        assertEquals("Show A", completedPage.getObservations().get(0).getProductName());
+        assertEquals(19.99, completedPage.getObservations().get(0).getPrice(), 0.0);
+    }
+
+    @Test
+    public void testCheckpointFromAnotherDayCannotResume() {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint("Test Store");
+        checkpoint.setCrawlDate(DateTool.findDateOffset(DateTool.findCurrentDateString(), -1));
+        assertFalse(checkpoint.canResume("Test Store"));
+    }
+}
@@ -1,5 +1,6 @@
 package b7.tools.tracking;
 
+import b7.tools.DateTool;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -19,4 +20,27 @@ public class CrawlDataTest {
         crawlData.setTitle("Crawler 3");
         assertEquals("Crawler 3", crawlData.getTitle());
     }
+
+    @Test
+    public void testExtendLatestPricesToToday() {
+        String today = DateTool.findCurrentDateString();
+        String lastWeek = DateTool.findDateOffset(today, -7);
+        CrawlData crawlData = new CrawlData("Crawler");
+        crawlData.addProduct(new Product("Show A Blu-ray", "https://example.com/a",
+                new ArrayList<PriceDateInfo>(Arrays.asList(new PriceDateInfo(lastWeek, 29.99)))));
+        crawlData.addProduct(new Product("Show A DVD", "https://example.com/a",
+                new ArrayList<PriceDateInfo>(Arrays.asList(new PriceDateInfo(lastWeek, 19.99)))));
+        crawlData.addProduct(new Product("Show B", "https://example.com/b"));
+
+        Set<String> extendedProductURLs = crawlData.extendLatestPricesToToday(
+                new HashSet<String>(Arrays.asList("https://example.com/a", "https://example.com/b", "https://example.com/c")));
+        // Show B has no price to carry over, and there is no product for the third URL
+        assertEquals(Collections.singleton("https://example.com/a"), extendedProductURLs);
+
+        List<PriceDateInfo> priceHistory = crawlData.getProductMap().get("Show A DVD").getPriceHistory();
+        assertEquals(1, priceHistory.size());
+        assertEquals(new PriceDateInfo(lastWeek, today, 19.99), priceHistory.get(0));
+        assertFalse(crawlData.extendLatestPriceToToday("Show B"));
+        assertFalse(crawlData.extendLatestPriceToToday("Show C"));
+    }
 }
@@ -0,0 +1,60 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.CrawlExecutor class
+ */
+public class CrawlExecutorTest {
+
+    /**
+     * Test that every task finishes, and that no more than the maximum number of requests ever run at once
+     */
+    @Test
+    public void testInFlightRequestLimit() throws Exception {
+        final int maxInFlightRequests = 3;
+        final AtomicInteger inFlight = new AtomicInteger(0);
+        final AtomicInteger highestInFlight = new AtomicInteger(0);
+        final AtomicInteger totalFetched = new AtomicInteger(0);
+        final CountDownLatch tasksDone = new CountDownLatch(10);
+
+        try (final CrawlExecutor crawlExecutor = new CrawlExecutor("test", maxInFlightRequests)) {
+            for(int i = 0; i < 10; i++) {
+                crawlExecutor.execute(() -> {
+                    for(int j = 0; j < 5; j++) {
+                        totalFetched.addAndGet(crawlExecutor.runRequest(() -> {
+                            int current = inFlight.incrementAndGet();
+                            highestInFlight.accumulateAndGet(current, Math::max);
+                            try {
+                                Thread.sleep(5);
+                            }
+                            catch(InterruptedException ex) {
+                                Thread.currentThread().interrupt();
+                            }
+                            inFlight.decrementAndGet();
+                            return 1;
+                        }));
+                    }
+                    tasksDone.countDown();
+                });
+            }
+            assertTrue(tasksDone.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals(50, totalFetched.get());
+        assertTrue(highestInFlight.get() <= maxInFlightRequests);
+    }
+
+    @Test
+    public void testDefaultLimit() {
+        try (CrawlExecutor crawlExecutor = new CrawlExecutor("test", 0)) {
+            assertEquals(CrawlExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS, crawlExecutor.getMaxInFlightRequests());
+        }
+    }
+}
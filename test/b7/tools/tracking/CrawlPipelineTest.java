@@ -0,0 +1,182 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.CrawlPipeline class
+ */
+public class CrawlPipelineTest {
+
+    @Test
+    public void testFollowUpRequestsAreMergedOnOneThread() throws Exception {
+        final List<ProductObservation> merged = Collections.synchronizedList(new ArrayList<ProductObservation>());
+        final Set<String> mergeThreads = Collections.synchronizedSet(new HashSet<String>());
+
+        try(CrawlPipeline crawlPipeline = new CrawlPipeline("test", 4, 2, 4, observation -> {
+            mergeThreads.add(Thread.currentThread().getName());
+            merged.add(observation);
+        })) {
+            for(int page = 1; page <= 5; page++) {
+                crawlPipeline.submit(createListingRequest("page" + page, 3));
+            }
+            assertTrue(crawlPipeline.awaitCompletion());
+
+            assertEquals(15, merged.size());
+            assertEquals(1, mergeThreads.size());
+            assertEquals(20, crawlPipeline.getFetchStats().getProcessedCount());
+            assertEquals(20, crawlPipeline.getParseStats().getProcessedCount());
+            assertEquals(20, crawlPipeline.getMergeStats().getProcessedCount());
+            assertEquals(0, crawlPipeline.getFetchStats().getQueueDepth());
+            assertTrue(crawlPipeline.getMergeStats().findThroughputPerSecond() > 0);
+        }
+    }
+
+    @Test
+    public void testFailedFetchIsCountedAndSkipped() throws Exception {
+        final List<ProductObservation> merged = Collections.synchronizedList(new ArrayList<ProductObservation>());
+
+        try(CrawlPipeline crawlPipeline = new CrawlPipeline("test", 2, 2, 4, merged::add)) {
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("missing", url -> null, (request, content) -> {
+                fail("A request that could not be fetched should not be parsed");
+                return null;
+            }));
+            crawlPipeline.submit(createProductRequest("product"));
+
+            assertFalse(crawlPipeline.awaitCompletion());
+            assertEquals(1, crawlPipeline.getFailedRequestCount());
+            assertEquals(1, merged.size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorsInEveryStageAreCountedAndSkipped() throws Exception {
+        final List<ProductObservation> merged = Collections.synchronizedList(new ArrayList<ProductObservation>());
+
+        try(CrawlPipeline crawlPipeline = new CrawlPipeline("test", 2, 2, 4, observation -> {
+            if("Unmergeable".equals(observation.getProductName())) {
+                throw new StackOverflowError();
+            }
+            merged.add(observation);
+        })) {
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("unfetchable", url -> {
+                throw new OutOfMemoryError();
+            }, (request, content) -> null));
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("unparseable", url -> "content", (request, content) -> {
+                throw new StackOverflowError();
+            }));
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("unmergeable", url -> "content", (request, content) ->
+                    new CrawlPipeline.ParsedPage(Collections.singletonList(new ProductObservation("Unmergeable", request.getUrl(), 1)), null)));
+            crawlPipeline.submit(createProductRequest("product"));
+
+            // Every request still completes, so the pipeline does not wait forever on the ones that hit an Error
+            assertFalse(crawlPipeline.awaitCompletion());
+            assertEquals(3, crawlPipeline.getFailedRequestCount());
+            assertEquals(1, merged.size());
+        }
+    }
+
+    @Test
+    public void testMergeActionRunsAfterObservationsAreMerged() throws Exception {
+        final List<ProductObservation> merged = Collections.synchronizedList(new ArrayList<ProductObservation>());
+        final List<String> mergeActionResults = Collections.synchronizedList(new ArrayList<String>());
+
+        try(CrawlPipeline crawlPipeline = new CrawlPipeline("test", 2, 2, 4, observation -> {
+            if("Unmergeable".equals(observation.getProductName())) {
+                throw new IllegalStateException();
+            }
+            merged.add(observation);
+        })) {
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("page", url -> "content", (request, content) ->
+                    new CrawlPipeline.ParsedPage(Collections.singletonList(new ProductObservation("Product", request.getUrl(), 1)), null,
+                            () -> mergeActionResults.add(merged.size() + " merged on " + Thread.currentThread().getName()))));
+            crawlPipeline.submit(new CrawlPipeline.PageRequest("unmergeable", url -> "content", (request, content) ->
+                    new CrawlPipeline.ParsedPage(Collections.singletonList(new ProductObservation("Unmergeable", request.getUrl(), 1)), null,
+                            () -> mergeActionResults.add("unmergeable"))));
+
+            // The merge action of a page whose observations could not all be merged does not run
+            assertFalse(crawlPipeline.awaitCompletion());
+            assertEquals(1, crawlPipeline.getFailedRequestCount());
+            assertEquals(1, mergeActionResults.size());
+            assertTrue(mergeActionResults.get(0).startsWith("1 merged on test-merge"));
+        }
+    }
+
+    @Test
+    public void testSubmitWaitsWhenFetchStageIsFull() throws Exception {
+        final CountDownLatch releaseFetches = new CountDownLatch(1);
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+
+        try(CrawlPipeline crawlPipeline = new CrawlPipeline("test", 1, 1, 2, observation -> { })) {
+            CrawlPipeline.PageRequest blockedRequest = new CrawlPipeline.PageRequest("blocked", url -> {
+                try {
+                    releaseFetches.await();
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return "content";
+            }, (request, content) -> new CrawlPipeline.ParsedPage(null, null));
+
+            // One request is taken by the only fetch thread, and two more fill the queue
+            crawlPipeline.submit(blockedRequest);
+            long deadline = System.currentTimeMillis() + 5000;
+            while(crawlPipeline.getFetchStats().getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            crawlPipeline.submit(blockedRequest);
+            crawlPipeline.submit(blockedRequest);
+
+            Future<?> fourthSubmit = submitter.submit(() -> {
+                crawlPipeline.submit(blockedRequest);
+                return null;
+            });
+            try {
+                fourthSubmit.get(200, TimeUnit.MILLISECONDS);
+                fail("Submitting past the queue capacity should wait");
+            }
+            catch(TimeoutException ex) {
+                // Expected, the fetch stage is full
+            }
+
+            releaseFetches.countDown();
+            fourthSubmit.get(5, TimeUnit.SECONDS);
+            assertTrue(crawlPipeline.awaitCompletion());
+            assertEquals(4, crawlPipeline.getFetchStats().getProcessedCount());
+        }
+        finally {
+            submitter.shutdownNow();
+        }
+    }
+
+    // A listing page whose parse leads to the given number of product requests
+    private static CrawlPipeline.PageRequest createListingRequest(final String pageName, final int productCount) {
+        return new CrawlPipeline.PageRequest(pageName, url -> "<html>" + url + "</html>", (request, content) -> {
+            List<CrawlPipeline.PageRequest> productRequests = new ArrayList<CrawlPipeline.PageRequest>();
+            for(int i = 0; i < productCount; i++) {
+                productRequests.add(createProductRequest(pageName + "/product" + i));
+            }
+            return new CrawlPipeline.ParsedPage(null, productRequests);
+        });
+    }
+
+    // A product request that parses into one observation
+    private static CrawlPipeline.PageRequest createProductRequest(String productName) {
+        return new CrawlPipeline.PageRequest(productName, url -> "{\"price\": 1999}", (request, content) ->
+                new CrawlPipeline.ParsedPage(Collections.singletonList(new ProductObservation(request.getUrl(), request.getUrl(), 19.99)), null));
+    }
+}
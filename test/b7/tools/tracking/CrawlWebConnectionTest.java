@@ -0,0 +1,36 @@
+package b7.tools.tracking;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import org.junit.*;
+
+import java.net.URL;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.CrawlWebConnection class
+ */
+public class CrawlWebConnectionTest {
+
+    @Test
+    public void testIsBlocked() throws Exception {
+        try (WebClient webClient = new WebClient()) {
+            CrawlWebConnection crawlWebConnection = new CrawlWebConnection(webClient, Collections.singletonList("example.com"));
+
+            // Store pages and scripts are allowed, on the store's host or its subdomains
+            assertFalse(crawlWebConnection.isBlocked(new URL("https://www.example.com/anime")));
+            assertFalse(crawlWebConnection.isBlocked(new URL("https://example.com/static/app.js?v=3")));
+
+            // Third-party hosts and resources the crawlers never read are blocked
+            assertTrue(crawlWebConnection.isBlocked(new URL("https://analytics.other.com/track.js")));
+            assertTrue(crawlWebConnection.isBlocked(new URL("https://notexample.com/anime")));
+            assertTrue(crawlWebConnection.isBlocked(new URL("https://www.example.com/styles/site.CSS")));
+            assertTrue(crawlWebConnection.isBlocked(new URL("https://www.example.com/images/cover.jpg")));
+
+            // Non-network URLs are left alone
+            assertFalse(crawlWebConnection.isBlocked(WebClient.URL_ABOUT_BLANK));
+        }
+    }
+}
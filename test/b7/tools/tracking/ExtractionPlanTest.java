@@ -0,0 +1,55 @@
+package b7.tools.tracking;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.ExtractionPlan class
+ */
+public class ExtractionPlanTest {
+
+    private static final ExtractionPlan PLAN = new ExtractionPlan(".product",
+            new ExtractionPlan.Field(".title", null),
+            new ExtractionPlan.Field(".title a", "href"),
+            new ExtractionPlan.Field(".price span", "data-rate"));
+
+    private static final String PAGE = "<div class=\"product\"><h3 class=\"title\"><a href=\"/a\">Show A &amp; Friends</a></h3>"
+            + "<div class=\"price\"><span data-rate=\"19.99\">$19.99</span><span data-rate=\"29.99\">$29.99</span></div></div>"
+            + "<div class=\"product\"><h3 class=\"title\"> </h3></div>";
+
+    @Test
+    public void testExtract() {
+        Document document = Jsoup.parse(PAGE);
+        Elements products = PLAN.findProducts(document);
+        assertEquals(2, products.size());
+
+        ExtractionPlan.Record record = PLAN.createRecord();
+        PLAN.extract(products.get(0), record);
+        assertEquals("Show A & Friends", record.getValue(0));
+        assertEquals("/a", record.getValue(1));
+        assertEquals("19.99", record.getValue(2));  // First match in page order
+
+        // The record is reused, and fields with nothing matching are empty
+        PLAN.extract(products.get(1), record);
+        assertEquals("", record.getValue(0));
+        assertEquals("", record.getValue(1));
+        assertEquals("", record.getValue(2));
+    }
+
+    @Test
+    public void testFindFirstMatchesLikeSelect() {
+        Document document = Jsoup.parse("<form><div><ul><li><div id=\"show-a\"><select></select></div></li></ul></div>"
+                + "<div><ul><li><div id=\"show-b\"><select></select></div></li></ul></div></form>");
+        ExtractionPlan plan = new ExtractionPlan("form", new ExtractionPlan.Field("div > ul > li > div > select", null));
+        Element form = plan.findProducts(document).first();
+        assertSame(form.select("div > ul > li > div > select").first(), plan.findFirst(0, form));
+        assertEquals("show-a", plan.findFirst(0, form).parent().id());
+        assertNull(plan.findFirst(0, Jsoup.parse("<form><div><select></select></div></form>").select("form").first()));
+    }
+}
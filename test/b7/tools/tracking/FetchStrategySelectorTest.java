@@ -0,0 +1,131 @@
+package b7.tools.tracking;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.FetchStrategySelector class
+ */
+public class FetchStrategySelectorTest {
+
+    private static final String MARKER = "#products";
+
+    private HttpServer server;  // Local server the tests make requests to
+    private String baseURL;  // Base URL of the local server
+    private AtomicInteger scriptedRequests;  // How many times the page that needs JavaScript has been requested
+
+    @Before
+    public void startServer() throws IOException {
+        scriptedRequests = new AtomicInteger(0);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/static", exchange -> {
+            if("page=9".equals(exchange.getRequestURI().getQuery())) {  // Past the last page
+                TestHttpResponses.respondHtml(exchange, 200, "<html><body><p>No products found</p></body></html>");
+                return;
+            }
+            TestHttpResponses.respondHtml(exchange, 200, "<html><body><div id=\"products\">static</div></body></html>");
+        });
+        server.createContext("/scripted", exchange -> {
+            scriptedRequests.incrementAndGet();
+            TestHttpResponses.respondHtml(exchange, 200, "<html><body><script>var products = document.createElement('div');"
+                    + "products.id = 'products'; products.textContent = 'scripted'; document.body.appendChild(products);"
+                    + "</script></body></html>");
+        });
+        server.createContext("/empty", exchange -> {
+            TestHttpResponses.respondHtml(exchange, 200, "<html><body><p>No products found</p></body></html>");
+        });
+        server.start();
+        baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFindUrlPattern() {
+        assertEquals("https://example.com/collections/shows", FetchStrategySelector.findUrlPattern("https://example.com/collections/shows?page=3"));
+        assertEquals("https://example.com/products/#.js", FetchStrategySelector.findUrlPattern("https://example.com/products/123.js#top"));
+    }
+
+    @Test
+    public void testPlainAndHeadlessDecisions() {
+        FetchStrategySelector selector = new FetchStrategySelector(null);
+        try (HtmlUnitWebClientPool pool = new HtmlUnitWebClientPool()) {
+            String staticHTML = selector.fetch(baseURL + "/static?page=1", () -> pool, MARKER);
+            assertEquals("static", Jsoup.parse(staticHTML).select(MARKER).text());
+            assertEquals(FetchStrategySelector.Strategy.PLAIN, selector.findDecision(baseURL + "/static?page=2", MARKER));
+
+            String scriptedHTML = selector.fetch(baseURL + "/scripted?page=1", () -> pool, MARKER);
+            assertEquals("scripted", Jsoup.parse(scriptedHTML).select(MARKER).text());
+            assertEquals(FetchStrategySelector.Strategy.HEADLESS, selector.findDecision(baseURL + "/scripted?page=2", MARKER));
+
+            // Once decided, the next page of the pattern goes straight to the headless browser (no plain probe first)
+            int requestsBefore = scriptedRequests.get();
+            selector.fetch(baseURL + "/scripted?page=2", () -> pool, MARKER);
+            assertEquals(requestsBefore + 1, scriptedRequests.get());
+        }
+    }
+
+    @Test
+    public void testPlainPagesNeverStartHeadlessBrowser() {
+        // The pool is only asked for when a page needs the headless browser
+        FetchStrategySelector selector = new FetchStrategySelector(null);
+        AtomicInteger poolRequests = new AtomicInteger(0);
+        String staticHTML = selector.fetch(baseURL + "/static?page=1", () -> {
+            poolRequests.incrementAndGet();
+            return null;
+        }, MARKER);
+        assertEquals("static", Jsoup.parse(staticHTML).select(MARKER).text());
+        assertEquals(0, poolRequests.get());
+    }
+
+    @Test
+    public void testDecisionsArePersisted() throws IOException {
+        File decisionsFile = File.createTempFile("fetchstrategies", ".json");
+        decisionsFile.delete();
+        try (HtmlUnitWebClientPool pool = new HtmlUnitWebClientPool()) {
+            new FetchStrategySelector(decisionsFile.getPath()).fetch(baseURL + "/scripted", () -> pool, MARKER);
+            FetchStrategySelector reloadedSelector = new FetchStrategySelector(decisionsFile.getPath());
+            assertEquals(FetchStrategySelector.Strategy.HEADLESS, reloadedSelector.findDecision(baseURL + "/scripted", MARKER));
+        }
+        finally {
+            decisionsFile.delete();
+        }
+    }
+
+    @Test
+    public void testPageWithoutMarkersKeepsDecision() throws IOException {
+        File decisionsFile = File.createTempFile("fetchstrategies", ".json");
+        decisionsFile.delete();
+        try (HtmlUnitWebClientPool pool = new HtmlUnitWebClientPool()) {
+            FetchStrategySelector selector = new FetchStrategySelector(decisionsFile.getPath());
+
+            // An empty page lacks the markers with or without JavaScript, so it says nothing about how to fetch the pattern
+            String emptyHTML = selector.fetch(baseURL + "/empty?page=9", () -> pool, MARKER);
+            assertEquals("No products found", Jsoup.parse(emptyHTML).select("p").text());
+            assertNull(selector.findDecision(baseURL + "/empty?page=1", MARKER));
+            assertFalse(decisionsFile.exists());
+
+            // Nor does it turn a pattern that was decided to be plain into a headless one when the decision is checked again
+            selector.fetch(baseURL + "/static?page=1", () -> pool, MARKER);
+            for(int i = 0; i < FetchStrategySelector.REVERIFY_INTERVAL; i++) {
+                assertNotNull(selector.fetch(baseURL + "/static?page=9", () -> pool, MARKER));
+            }
+            assertEquals(FetchStrategySelector.Strategy.PLAIN, selector.findDecision(baseURL + "/static?page=3", MARKER));
+        }
+        finally {
+            decisionsFile.delete();
+        }
+    }
+}
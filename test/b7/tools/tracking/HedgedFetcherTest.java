@@ -0,0 +1,120 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.HedgedFetcher class
+ */
+public class HedgedFetcherTest {
+
+    // Attempt that takes a few milliseconds, to fill up the latency window
+    private static String fastAttempt(AbortSignal abortSignal) {
+        try {
+            Thread.sleep(2);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return "fast";
+    }
+
+    @Test
+    public void testSlowFetchIsHedged() {
+        try (HedgedFetcher hedgedFetcher = new HedgedFetcher("test", 0.95, 1.0)) {
+            for(int i = 0; i < HedgedFetcher.MIN_LATENCY_SAMPLES; i++) {
+                assertEquals("fast", hedgedFetcher.fetch(HedgedFetcherTest::fastAttempt));
+            }
+            assertTrue(hedgedFetcher.findHedgeDelayMillis() >= 0);
+
+            // The first attempt hangs, so the hedge (second attempt) has to win
+            final AtomicInteger attempts = new AtomicInteger(0);
+            long startTime = System.currentTimeMillis();
+            String result = hedgedFetcher.fetch(abortSignal -> {
+                if(attempts.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(10000);
+                    }
+                    catch(InterruptedException ex) {
+                        return null;  // Cancelled once the hedge won
+                    }
+                    return "slow";
+                }
+                return "hedge";
+            });
+            assertEquals("hedge", result);
+            assertTrue(System.currentTimeMillis() - startTime < 5000);
+            assertEquals(1, hedgedFetcher.getHedgeCount());
+            assertEquals(1, hedgedFetcher.getHedgeWinCount());
+        }
+    }
+
+    @Test
+    public void testLosingAttemptIsAbortedAndNotTimed() throws InterruptedException {
+        try (HedgedFetcher hedgedFetcher = new HedgedFetcher("test", 0.99, 1.0, 2)) {
+            for(int i = 0; i < HedgedFetcher.MIN_LATENCY_SAMPLES; i++) {
+                hedgedFetcher.fetch(HedgedFetcherTest::fastAttempt);
+            }
+
+            // The first attempt ignores interrupts (like a blocking read) and only stops once it is aborted
+            final AtomicInteger attempts = new AtomicInteger(0);
+            final CountDownLatch aborted = new CountDownLatch(1);
+            final CountDownLatch loserDone = new CountDownLatch(1);
+            String result = hedgedFetcher.fetch(abortSignal -> {
+                if(attempts.incrementAndGet() == 1) {
+                    abortSignal.onAbort(aborted::countDown);
+                    long startTime = System.currentTimeMillis();
+                    while(!abortSignal.isAborted() && System.currentTimeMillis() - startTime < 10000) {
+                        Thread.interrupted();
+                    }
+                    // Finish well after the hedge, which would pull up the hedge delay if it were recorded
+                    long finishTime = System.currentTimeMillis() + 500;
+                    while(System.currentTimeMillis() < finishTime) {
+                        Thread.interrupted();
+                    }
+                    loserDone.countDown();
+                    return "slow";
+                }
+                return "hedge";
+            });
+            assertEquals("hedge", result);
+            assertTrue(aborted.await(1, TimeUnit.SECONDS));
+            assertTrue(loserDone.await(5, TimeUnit.SECONDS));
+            assertTrue(hedgedFetcher.findHedgeDelayMillis() < 500);
+        }
+    }
+
+    @Test
+    public void testHedgeBudget() {
+        try (HedgedFetcher hedgedFetcher = new HedgedFetcher("test", 0.5, 0.0)) {
+            for(int i = 0; i < HedgedFetcher.MIN_LATENCY_SAMPLES; i++) {
+                hedgedFetcher.fetch(HedgedFetcherTest::fastAttempt);
+            }
+            // With no budget, a slow fetch is simply waited on
+            String result = hedgedFetcher.fetch(abortSignal -> {
+                try {
+                    Thread.sleep(100);
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            });
+            assertEquals("slow", result);
+            assertEquals(0, hedgedFetcher.getHedgeCount());
+        }
+    }
+
+    @Test
+    public void testFailedFetchGivesNull() {
+        try (HedgedFetcher hedgedFetcher = new HedgedFetcher("test", 0.95, 0.1)) {
+            assertNull(hedgedFetcher.fetch(abortSignal -> null));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.HostRateController class
+ */
+public class HostRateControllerTest {
+
+    private static final String URL = "https://shop.example.com/products/1.js";
+    private static final String HOST = "shop.example.com";
+
+    @Test
+    public void testHealthyResponsesRaiseLimits() throws InterruptedException {
+        HostRateController controller = new HostRateController(2, HostRateController.MAX_REQUESTS_PER_SECOND);
+        for(int i = 0; i < 20; i++) {
+            controller.release(controller.acquire(URL), 200, null);
+        }
+        assertTrue(controller.findConcurrencyLimit(HOST) > 2);
+    }
+
+    @Test
+    public void testStrainCutsLimitsOncePerCooldown() throws InterruptedException {
+        HostRateController controller = new HostRateController(8, 8);
+        controller.release(controller.acquire(URL), 503, null);
+        assertEquals(4, controller.findConcurrencyLimit(HOST), 0.001);
+        assertEquals(4, controller.findRequestsPerSecond(HOST), 0.001);
+
+        // A burst of errors right after the first one does not keep cutting the limits
+        controller.release(controller.acquire(URL), 429, null);
+        controller.release(controller.acquire(URL), HostRateController.FAILED_REQUEST_STATUS, null);
+        assertEquals(4, controller.findConcurrencyLimit(HOST), 0.001);
+    }
+
+    @Test
+    public void testLastingSlowdownStopsCountingAsStrain() throws InterruptedException {
+        HostRateController controller = new HostRateController(8, HostRateController.MAX_REQUESTS_PER_SECOND);
+        for(int i = 0; i < 5; i++) {
+            releaseAfter(controller, URL, 10, 200);
+        }
+
+        // The first slow responses cut the limits, but they also move the usual latency until slow is the new usual
+        double concurrencyLimit = 0;
+        for(int i = 0; i < 20; i++) {
+            releaseAfter(controller, URL, 100, 200);
+            if(i == 14) {
+                concurrencyLimit = controller.findConcurrencyLimit(HOST);
+            }
+        }
+        assertTrue(controller.findConcurrencyLimit(HOST) > concurrencyLimit);
+    }
+
+    @Test
+    public void testKindsOfRequestsHaveTheirOwnUsualLatency() throws InterruptedException {
+        HostRateController controller = new HostRateController(8, HostRateController.MAX_REQUESTS_PER_SECOND);
+        for(int i = 0; i < 5; i++) {
+            releaseAfter(controller, URL, 10, 200);
+        }
+
+        // A listing page taking longer than the small product JSON files is not a sign of strain, and neither is
+        //   a page rendered in a headless browser while holding its permit
+        releaseAfter(controller, "https://shop.example.com/collections/all?page=2", 100, 200);
+        HostRateController.Permit permit = controller.acquire(URL);
+        Thread.sleep(100);
+        controller.release(permit, 200, null, false);
+        assertTrue(controller.findConcurrencyLimit(HOST) > 8);
+
+        assertEquals("products.js", HostRateController.findRequestKind(URL));
+        assertEquals("collections", HostRateController.findRequestKind("https://shop.example.com/collections/all?page=2"));
+        assertEquals("", HostRateController.findRequestKind("https://shop.example.com/"));
+    }
+
+    @Test
+    public void testTokenBucketSpacesRequests() throws InterruptedException {
+        HostRateController controller = new HostRateController(1, 10);
+        long startTime = System.currentTimeMillis();
+        for(int i = 0; i < 6; i++) {
+            HostRateController.Permit permit = controller.acquire(URL);
+            controller.release(permit, 500, null);  // Errors keep the rate from rising during the test
+        }
+        // First request uses the starting token; the rest wait roughly 100 ms or more each
+        assertTrue(System.currentTimeMillis() - startTime >= 400);
+    }
+
+    @Test
+    public void testRetryAfterPausesHost() throws InterruptedException {
+        HostRateController controller = new HostRateController(4, HostRateController.MAX_REQUESTS_PER_SECOND);
+        controller.release(controller.acquire(URL), 429, "1");
+        long startTime = System.currentTimeMillis();
+        controller.release(controller.acquire(URL), 200, null);
+        assertTrue(System.currentTimeMillis() - startTime >= 900);
+    }
+
+    @Test
+    public void testNonHttpUrlsAreNotControlled() throws InterruptedException {
+        HostRateController controller = new HostRateController(1, HostRateController.MIN_REQUESTS_PER_SECOND);
+        long startTime = System.currentTimeMillis();
+        for(int i = 0; i < 5; i++) {
+            controller.acquire("about:blank");  // Never given back, yet never held up
+        }
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+        assertNull(HostRateController.findHost("file:///tmp/page.html"));
+    }
+
+    // Gives back a permit for the URL once the given number of milliseconds have passed
+    private static void releaseAfter(HostRateController controller, String url, long latencyMillis, int statusCode)
+            throws InterruptedException {
+        HostRateController.Permit permit = controller.acquire(url);
+        Thread.sleep(latencyMillis);
+        controller.release(permit, statusCode, null);
+    }
+}
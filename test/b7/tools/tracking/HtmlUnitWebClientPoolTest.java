@@ -0,0 +1,74 @@
+package b7.tools.tracking;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import org.junit.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.HtmlUnitWebClientPool class
+ */
+public class HtmlUnitWebClientPoolTest {
+
+    @Test
+    public void testClientIsReusedUntilMaxUses() throws InterruptedException {
+        final AtomicInteger createdClients = new AtomicInteger(0);
+        try (HtmlUnitWebClientPool pool = new HtmlUnitWebClientPool(1, 1, 2, 1.0, () -> {
+            createdClients.incrementAndGet();
+            return HtmlUnitWebClientPool.createDefaultWebClient();
+        })) {
+            assertEquals(1, createdClients.get());
+
+            WebClient firstClient = pool.borrow();
+            pool.giveBack(firstClient);
+            WebClient secondClient = pool.borrow();
+            assertSame(firstClient, secondClient);
+
+            // Second use reaches the maximum, so the client is replaced with a new one
+            pool.giveBack(secondClient);
+            WebClient thirdClient = pool.borrow();
+            assertNotSame(firstClient, thirdClient);
+            assertEquals(2, createdClients.get());
+            pool.giveBack(thirdClient);
+        }
+    }
+
+    @Test
+    public void testWaitingBorrowerFailsOnceClosed() throws InterruptedException {
+        HtmlUnitWebClientPool pool = new HtmlUnitWebClientPool(1, 1, 2, 1.0, HtmlUnitWebClientPool::createDefaultWebClient);
+        WebClient borrowedClient = pool.borrow();
+
+        // The only client is borrowed, so the next borrower waits until the pool is closed, then gives up
+        final AtomicReference<Exception> borrowFailure = new AtomicReference<Exception>();
+        final CountDownLatch borrowEnded = new CountDownLatch(1);
+        Thread borrower = new Thread(() -> {
+            try {
+                pool.borrow();
+            }
+            catch(Exception ex) {
+                borrowFailure.set(ex);
+            }
+            borrowEnded.countDown();
+        });
+        borrower.start();
+        Thread.sleep(100);
+        pool.close();
+        assertTrue(borrowEnded.await(2, TimeUnit.SECONDS));
+        assertTrue(borrowFailure.get() instanceof IllegalStateException);
+
+        pool.giveBack(borrowedClient);
+        try {
+            pool.borrow();
+            fail("Borrowing from a closed pool should fail");
+        }
+        catch(IllegalStateException ex) {
+            // Expected
+        }
+    }
+}
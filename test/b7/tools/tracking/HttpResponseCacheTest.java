@@ -0,0 +1,97 @@
+package b7.tools.tracking;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.HttpResponseCache class
+ */
+public class HttpResponseCacheTest {
+
+    private HttpServer server;  // Local server the tests make requests to
+    private String baseURL;  // Base URL of the local server
+    private AtomicInteger fullResponses;  // How many times the server sent back a full body
+    private File cacheDirectory;  // Folder the cache under test stores responses in
+
+    @Before
+    public void startServer() throws IOException {
+        fullResponses = new AtomicInteger(0);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/product", exchange -> {
+            String etag = "\"v1-" + exchange.getRequestURI().getPath() + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullResponses.incrementAndGet();
+            TestHttpResponses.respondJson(exchange, 200, "{\"title\":\"" + exchange.getRequestURI().getPath() + "\",\"padding\":\""
+                    + new String(new char[2000]).replace('\0', 'x') + "\"}");
+        });
+        server.start();
+        baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+        cacheDirectory = Files.createTempDirectory("httpcache").toFile();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        File[] files = cacheDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+
+    @Test
+    public void testNotModifiedIsAnsweredFromCache() throws IOException {
+        HttpTransport transport = new HttpTransport(1000, 1000, null);
+        HttpResponseCache cache = new HttpResponseCache(cacheDirectory.getPath(), 0);
+        transport.setResponseCache(cache);
+
+        String firstBody = transport.readString(baseURL + "/product/1.js");
+        String secondBody = transport.readString(baseURL + "/product/1.js");
+        assertEquals(firstBody, secondBody);
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, cache.getHitCount());
+
+        // A new cache over the same folder picks up what was stored on disk
+        transport.setResponseCache(new HttpResponseCache(cacheDirectory.getPath(), 0));
+        assertEquals(firstBody, transport.readString(baseURL + "/product/1.js"));
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        HttpTransport transport = new HttpTransport(1000, 1000, null);
+        transport.setResponseCache(new HttpResponseCache(cacheDirectory.getPath(), 0));
+        transport.readString(baseURL + "/product/1.js");
+        long oneResponseBytes = transport.getResponseCache().getStoredBytes();
+
+        // Room for two compressed responses only
+        HttpResponseCache cache = new HttpResponseCache(cacheDirectory.getPath(), oneResponseBytes * 2 + oneResponseBytes / 2);
+        transport.setResponseCache(cache);
+        transport.readString(baseURL + "/product/2.js");
+        transport.readString(baseURL + "/product/1.js");  // 1 is now more recently used than 2
+        transport.readString(baseURL + "/product/3.js");  // Pushes out 2
+        assertEquals(3, fullResponses.get());
+
+        transport.readString(baseURL + "/product/1.js");
+        transport.readString(baseURL + "/product/3.js");
+        assertEquals(3, fullResponses.get());
+        transport.readString(baseURL + "/product/2.js");
+        assertEquals(4, fullResponses.get());
+    }
+}
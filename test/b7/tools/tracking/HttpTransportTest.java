@@ -0,0 +1,153 @@
+package b7.tools.tracking;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.HttpTransport class
+ */
+public class HttpTransportTest {
+
+    private HttpServer server;  // Local server the tests make requests to
+    private String baseURL;  // Base URL of the local server
+    private CountDownLatch finishSlowBody;  // Lets the slow page send the rest of its body
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed);
+            gzipOutputStream.write("café au lait".getBytes("ISO-8859-1"));
+            gzipOutputStream.close();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            TestHttpResponses.respond(exchange, 200, "text/html; charset=ISO-8859-1", compressed.toByteArray());
+        });
+        finishSlowBody = new CountDownLatch(1);
+        server.createContext("/slow", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream outputStream = exchange.getResponseBody();
+            try {
+                outputStream.write("<ul><li>1</li></ul>".getBytes("UTF-8"));
+                outputStream.flush();
+                finishSlowBody.await(10, TimeUnit.SECONDS);
+                outputStream.write("<p>rest of the page</p>".getBytes("UTF-8"));
+                outputStream.close();
+            }
+            catch(IOException | InterruptedException ex) {
+                // The client stopped reading at the cutoff and disconnected
+            }
+        });
+        server.createContext("/late", exchange -> {
+            try {
+                finishSlowBody.await(10, TimeUnit.SECONDS);
+                TestHttpResponses.respond(exchange, 200, null, "late page".getBytes("UTF-8"));
+            }
+            catch(IOException | InterruptedException ex) {
+                // The client gave up on the page and disconnected
+            }
+        });
+        server.createContext("/missing", exchange -> TestHttpResponses.respond(exchange, 404, null, "not here".getBytes("UTF-8")));
+        server.start();
+        baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        finishSlowBody.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testReadGzipWithCharset() throws IOException {
+        HttpTransport transport = new HttpTransport(1000, 1000, null);
+        assertEquals("café au lait", transport.readString(baseURL + "/gzip"));
+    }
+
+    @Test
+    public void testErrorStatusIsReturned() throws IOException {
+        HttpTransport transport = new HttpTransport(1000, 1000, null);
+        HttpResponse response = transport.fetch(baseURL + "/missing", null);
+        assertEquals(404, response.getStatusCode());
+        assertFalse(response.isSuccessful());
+        assertEquals("not here", response.getBodyAsString());
+    }
+
+    @Test
+    public void testReadUrlContentsReturnsNullOnError() {
+        assertNull(WebCrawler.readUrlContents(baseURL + "/missing"));
+    }
+
+    @Test
+    public void testReadUrlContentsWithCutoff() {
+        // The body is decompressed and decoded with its charset before the cutoff markers are looked for
+        assertEquals("café au", WebCrawler.readUrlContents(baseURL + "/gzip", new PageStreamReader.Cutoff("café", " au")));
+        assertEquals("café au lait", WebCrawler.readUrlContents(baseURL + "/gzip", new PageStreamReader.Cutoff("thé", " au")));
+    }
+
+    @Test(timeout = 5000)
+    public void testFetchTextStopsAtCutoff() throws IOException {
+        // The text comes back as soon as the cutoff has been read, without waiting for the rest of the body
+        HttpTransport transport = new HttpTransport(1000, 10000, null);
+        HttpTransport.TextResponse textResponse = transport.fetchText(baseURL + "/slow", new PageStreamReader.Cutoff("<ul>", "</ul>"));
+        assertEquals(200, textResponse.getResponse().getStatusCode());
+        assertEquals("<ul><li>1</li></ul>", textResponse.getText());
+        finishSlowBody.countDown();  // The server handles one request at a time, so let it finish the slow page
+
+        assertNull(transport.fetchText(baseURL + "/missing", null).getText());
+        assertEquals("café au", transport.fetchText(baseURL + "/gzip", new PageStreamReader.Cutoff("café", " au")).getText());
+    }
+
+    @Test(timeout = 5000)
+    public void testAbortDisconnectsWaitingRequest() throws InterruptedException {
+        // Waiting for the response would only time out after 10 seconds, but aborting it from another thread ends it right away
+        final HttpTransport transport = new HttpTransport(1000, 10000, null);
+        final AbortSignal abortSignal = new AbortSignal();
+        final CountDownLatch readEnded = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                transport.fetch(baseURL + "/late", null, abortSignal);
+            }
+            catch(IOException ex) {
+                readEnded.countDown();
+            }
+        });
+        reader.start();
+        Thread.sleep(200);
+        abortSignal.abort();
+        assertTrue(readEnded.await(2, TimeUnit.SECONDS));
+        finishSlowBody.countDown();
+    }
+
+    @Test
+    public void testDefaultResponseCacheCanBeTurnedOff() {
+        try {
+            HttpTransport.setDefaultResponseCacheMaxBytes(0);
+            assertNull(HttpTransport.createDefaultResponseCache());
+            HttpTransport.setDefaultResponseCacheMaxBytes(-1);
+            assertNull(HttpTransport.createDefaultResponseCache());
+        }
+        finally {
+            HttpTransport.setDefaultResponseCacheMaxBytes(HttpResponseCache.DEFAULT_MAX_CACHE_BYTES);
+        }
+    }
+
+    @Test
+    public void testFindCharset() {
+        assertEquals("ISO-8859-1", HttpTransport.findCharset("text/html; charset=\"ISO-8859-1\""));
+        assertEquals(HttpTransport.DEFAULT_CHARSET, HttpTransport.findCharset("application/json"));
+        assertEquals(HttpTransport.DEFAULT_CHARSET, HttpTransport.findCharset(null));
+    }
+}
@@ -0,0 +1,86 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.ListingPageFingerprints class
+ */
+public class ListingPageFingerprintsTest {
+
+    private static final String FINGERPRINTS_FILENAME = "savedata/fingerprints/testfingerprints.json";
+
+    private static final List<ProductObservation> OBSERVATIONS = Arrays.asList(
+            new ProductObservation("Show A", "https://example.com/a", 19.99),
+            new ProductObservation("Show B", "https://example.com/b", 29.99));
+
+    @After
+    public void tearDown() {
+        new File(FINGERPRINTS_FILENAME).delete();
+    }
+
+    @Test
+    public void testFindObservationsFingerprint() {
+        String fingerprint = ListingPageFingerprints.findObservationsFingerprint(OBSERVATIONS);
+        assertNotNull(fingerprint);
+        assertEquals(fingerprint, ListingPageFingerprints.findObservationsFingerprint(Arrays.asList(
+                new ProductObservation("Show A", "https://example.com/a", 19.99),
+                new ProductObservation("Show B", "https://example.com/b", 29.99))));
+
+        // A different price or order is a different page
+        assertNotEquals(fingerprint, ListingPageFingerprints.findObservationsFingerprint(Arrays.asList(
+                new ProductObservation("Show A", "https://example.com/a", 19.99),
+                new ProductObservation("Show B", "https://example.com/b", 24.99))));
+        assertNotEquals(fingerprint, ListingPageFingerprints.findObservationsFingerprint(Arrays.asList(OBSERVATIONS.get(1), OBSERVATIONS.get(0))));
+    }
+
+    @Test
+    public void testMatchesFingerprint() {
+        ListingPageFingerprints listingPageFingerprints = new ListingPageFingerprints("Test Store");
+        String fingerprint = ListingPageFingerprints.findObservationsFingerprint(OBSERVATIONS);
+        assertFalse(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+
+        listingPageFingerprints.recordFingerprint("https://example.com/?page=1", fingerprint);
+        assertTrue(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+        assertFalse(listingPageFingerprints.matchesFingerprint("https://example.com/?page=2", fingerprint));
+        assertFalse(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", null));
+
+        listingPageFingerprints.recordFingerprint("https://example.com/?page=1", null);
+        assertFalse(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+    }
+
+    @Test
+    public void testPendingFingerprintWaitsForEveryPart() {
+        ListingPageFingerprints listingPageFingerprints = new ListingPageFingerprints("Test Store");
+        String fingerprint = ListingPageFingerprints.findObservationsFingerprint(OBSERVATIONS);
+        ListingPageFingerprints.PendingFingerprint pendingFingerprint = new ListingPageFingerprints.PendingFingerprint(
+                listingPageFingerprints, "https://example.com/?page=1", fingerprint, 2);
+
+        pendingFingerprint.recordMergedPart();
+        assertFalse(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+        pendingFingerprint.recordMergedPart();
+        assertTrue(listingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+
+        // Nothing is recorded without fingerprints to record in
+        new ListingPageFingerprints.PendingFingerprint(null, "https://example.com/?page=2", fingerprint, 1).recordMergedPart();
+    }
+
+    @Test
+    public void testSaveLoadListingPageFingerprints() {
+        ListingPageFingerprints listingPageFingerprints = new ListingPageFingerprints("Test Store");
+        String fingerprint = ListingPageFingerprints.findObservationsFingerprint(OBSERVATIONS);
+        listingPageFingerprints.recordFingerprint("https://example.com/?page=1", fingerprint);
+        CrawlerDataHandler.saveListingPageFingerprints(listingPageFingerprints, FINGERPRINTS_FILENAME);
+
+        ListingPageFingerprints loadedListingPageFingerprints = CrawlerDataHandler.loadListingPageFingerprints(FINGERPRINTS_FILENAME);
+        assertNotNull(loadedListingPageFingerprints);
+        assertEquals("Test Store", loadedListingPageFingerprints.getStoreName());
+        assertTrue(loadedListingPageFingerprints.matchesFingerprint("https://example.com/?page=1", fingerprint));
+    }
+}
@@ -0,0 +1,132 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.PageArchive class
+ */
+public class PageArchiveTest {
+
+    private static final String ARCHIVES_PATH = "savedata/archives/test/";
+
+    // Reads "name|url|price" pages into one observation (anything else fails to parse)
+    private static final PageArchive.PageExtractor EXTRACTOR = (entry, content) -> {
+        String[] fields = content.split("\\|");
+        return Collections.singletonList(new ProductObservation(fields[0], fields[1], Double.parseDouble(fields[2])));
+    };
+
+    @After
+    public void tearDown() {
+        File[] files = new File(ARCHIVES_PATH).listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        new File(ARCHIVES_PATH).delete();
+    }
+
+    @Test
+    public void testAppendAndReadContent() throws IOException {
+        String archiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-01-31");
+        PageArchive pageArchive = new PageArchive(archiveFilename);
+        assertTrue(pageArchive.append(PageArchive.LISTING_PAGE, "https://example.com/?page=1", "<html>Show A &amp; Friends</html>"));
+        assertFalse(pageArchive.append(PageArchive.LISTING_PAGE, "https://example.com/?page=2", null));
+        pageArchive.close();
+
+        // Opening the archive again appends to it
+        pageArchive = new PageArchive(archiveFilename);
+        assertTrue(pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/products/a.js", "{\"title\": \"Shōw B\"}"));
+        assertEquals(1, pageArchive.getAppendedCount());
+        pageArchive.close();
+
+        List<PageArchive.Entry> entries = PageArchive.readIndex(archiveFilename);
+        assertEquals(2, entries.size());
+        assertEquals(PageArchive.LISTING_PAGE, entries.get(0).getKind());
+        assertEquals("https://example.com/?page=1", entries.get(0).getUrl());
+        assertEquals(PageArchive.PRODUCT_JSON, entries.get(1).getKind());
+        assertEquals(entries.get(0).getLength(), entries.get(1).getStart());
+
+        // Any page can be read on its own
+        try (FileChannel archiveChannel = FileChannel.open(new File(archiveFilename).toPath(), StandardOpenOption.READ)) {
+            assertEquals("{\"title\": \"Shōw B\"}", PageArchive.readContent(archiveChannel, entries.get(1)));
+            assertEquals("<html>Show A &amp; Friends</html>", PageArchive.readContent(archiveChannel, entries.get(0)));
+        }
+    }
+
+    @Test
+    public void testReadIndexSkipsCutOffLines() throws IOException {
+        String archiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-01-31");
+        PageArchive pageArchive = new PageArchive(archiveFilename);
+        pageArchive.append(PageArchive.LISTING_PAGE, "https://example.com/?page=1", "page 1");
+        pageArchive.close();
+
+        // Lines cut off while being appended, or pointing past the end of the archive, are skipped
+        FileWriter indexWriter = new FileWriter(archiveFilename + PageArchive.INDEX_EXTENSION, true);
+        indexWriter.write(PageArchive.LISTING_PAGE + "\t1000\t20\thttps://example.com/?page=2\n" + PageArchive.LISTING_PAGE + "\t2");
+        indexWriter.close();
+
+        List<PageArchive.Entry> entries = PageArchive.readIndex(archiveFilename);
+        assertEquals(1, entries.size());
+        assertEquals("https://example.com/?page=1", entries.get(0).getUrl());
+    }
+
+    @Test
+    public void testExtractAll() throws IOException {
+        String archiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-01-31");
+        PageArchive pageArchive = new PageArchive(archiveFilename);
+        for(int i = 0; i < 20; i++) {
+            pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/" + i, "Show " + i + "|https://example.com/" + i + "|" + i);
+        }
+        pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/broken", "broken");
+        pageArchive.close();
+
+        // The page that cannot be parsed is skipped, and the rest come back in archive order
+        List<ProductObservation> observations = PageArchive.extractAll(archiveFilename, EXTRACTOR, 4);
+        assertNotNull(observations);
+        assertEquals(20, observations.size());
+        for(int i = 0; i < 20; i++) {
+            assertEquals("Show " + i, observations.get(i).getProductName());
+            assertEquals(i, observations.get(i).getPrice(), 0.001);
+        }
+
+        assertNull(PageArchive.extractAll(PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-02-01"), EXTRACTOR, 4));
+    }
+
+    @Test
+    public void testMergeArchives() throws IOException {
+        // Archives are named after their days, and merged oldest day first
+        String laterArchiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-02-01");
+        PageArchive pageArchive = new PageArchive(laterArchiveFilename);
+        pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/a", "Show A|https://example.com/a|24.99");
+        pageArchive.close();
+        String earlierArchiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, "2018-01-31");
+        pageArchive = new PageArchive(earlierArchiveFilename);
+        pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/a", "Show A|https://example.com/a|19.99");
+        pageArchive.append(PageArchive.PRODUCT_JSON, "https://example.com/b", "Show B|https://example.com/b|9.99");
+        pageArchive.close();
+
+        List<String> archiveFilenames = PageArchive.findArchiveFilenames(ARCHIVES_PATH);
+        assertEquals(Arrays.asList(earlierArchiveFilename, laterArchiveFilename), archiveFilenames);
+        assertEquals("2018-01-31", PageArchive.findArchiveDate(earlierArchiveFilename));
+
+        CrawlData crawlData = new CrawlData("Test Store");
+        assertTrue(PageArchive.mergeArchives(crawlData, Arrays.asList(laterArchiveFilename, earlierArchiveFilename), EXTRACTOR, 2));
+        assertEquals(Arrays.asList(new PriceDateInfo("2018-01-31", 19.99), new PriceDateInfo("2018-02-01", 24.99)),
+                crawlData.getProductMap().get("Show A").getPriceHistory());
+        assertEquals(Collections.singletonList(new PriceDateInfo("2018-01-31", 9.99)),
+                crawlData.getProductMap().get("Show B").getPriceHistory());
+    }
+}
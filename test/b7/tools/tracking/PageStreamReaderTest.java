@@ -0,0 +1,66 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.PageStreamReader class
+ */
+public class PageStreamReaderTest {
+
+    private static final PageStreamReader.Cutoff PAGINATION_CUTOFF = new PageStreamReader.Cutoff("id=\"pagination\"", "</ul>");
+
+    private static final String LISTING_PAGE = "<html><body><ul id=\"menu\"><li>Shows</li></ul>"
+            + "<div id=\"product-loop\"><p>Show A</p></div>"
+            + "<div id=\"pagination\"><ul><li><a href=\"?page=2\">&gt;</a></li></ul></div>"
+            + "<footer><ul><li>About</li></ul></footer></body></html>";
+
+    @Test
+    public void testReadText() throws IOException {
+        assertEquals(LISTING_PAGE, PageStreamReader.readText(toStream(LISTING_PAGE, "UTF-8"), "UTF-8", null));
+        assertEquals("", PageStreamReader.readText(toStream("", "UTF-8"), "UTF-8", PAGINATION_CUTOFF));
+    }
+
+    @Test
+    public void testReadTextStopsAtCutoff() throws IOException {
+        // The list before the pagination does not end the page; the first one after it does
+        String pageText = PageStreamReader.readText(toStream(LISTING_PAGE, "UTF-8"), "UTF-8", PAGINATION_CUTOFF);
+        assertEquals(LISTING_PAGE.substring(0, LISTING_PAGE.indexOf("</ul></div><footer>") + "</ul>".length()), pageText);
+
+        // Without the start marker the whole page is read
+        String pageWithoutPagination = LISTING_PAGE.replace("pagination", "paging");
+        assertEquals(pageWithoutPagination, PageStreamReader.readText(toStream(pageWithoutPagination, "UTF-8"), "UTF-8", PAGINATION_CUTOFF));
+    }
+
+    @Test
+    public void testReadTextFindsMarkersSplitBetweenReads() throws IOException {
+        // Put the start marker and the end marker across the end of the first decode buffer
+        StringBuilder padding = new StringBuilder();
+        while(padding.length() < PageStreamReader.DECODE_BUFFER_SIZE - 5) {
+            padding.append('x');
+        }
+        String page = padding + "id=\"pagination\"><ul><li>2</li></ul>" + padding + "<ul></ul>";
+        assertEquals(padding + "id=\"pagination\"><ul><li>2</li></ul>", PageStreamReader.readText(toStream(page, "UTF-8"), "UTF-8", PAGINATION_CUTOFF));
+
+        String splitEndPage = padding.substring(20) + "id=\"pagination\"><ul><li>2</li></ul>" + padding;
+        assertEquals(splitEndPage.substring(0, splitEndPage.indexOf("</ul>") + "</ul>".length()),
+                PageStreamReader.readText(toStream(splitEndPage, "UTF-8"), "UTF-8", PAGINATION_CUTOFF));
+    }
+
+    @Test
+    public void testReadTextWithCharset() throws IOException {
+        assertEquals("café au lait", PageStreamReader.readText(toStream("café au lait", "ISO-8859-1"), "ISO-8859-1", null));
+
+        // Unknown charsets fall back to the default charset
+        assertEquals("café au lait", PageStreamReader.readText(toStream("café au lait", HttpTransport.DEFAULT_CHARSET), "not-a-charset", null));
+    }
+
+    private static ByteArrayInputStream toStream(String text, String charsetName) throws IOException {
+        return new ByteArrayInputStream(text.getBytes(charsetName));
+    }
+}
@@ -0,0 +1,111 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.PaginationFrontier class
+ */
+public class PaginationFrontierTest {
+
+    @Test
+    public void testStartDispatchesInitialWindowOnce() {
+        PaginationFrontier paginationFrontier = new PaginationFrontier(3, 10);
+        assertEquals(Arrays.asList(1, 2, 3), paginationFrontier.start());
+        assertEquals(Collections.emptyList(), paginationFrontier.start());
+        assertEquals(3, paginationFrontier.getDispatchedCount());
+        assertEquals(PaginationFrontier.UNKNOWN_LAST_PAGE, paginationFrontier.getLastPage());
+    }
+
+    @Test
+    public void testNonEmptyPagesGrowTheWindow() {
+        PaginationFrontier paginationFrontier = new PaginationFrontier(2, 4);
+        paginationFrontier.start();
+
+        // Page 1 has more pages after it, so the window grows to 3 pages past page 1
+        assertEquals(Arrays.asList(3, 4), paginationFrontier.recordPage(1, true, true));
+        // Page 2 pushes the frontier to page 2 + 4
+        assertEquals(Arrays.asList(5, 6), paginationFrontier.recordPage(2, true, true));
+        // The window cannot grow past its maximum
+        assertEquals(Arrays.asList(7), paginationFrontier.recordPage(3, true, true));
+        assertEquals(7, paginationFrontier.getDispatchedCount());
+    }
+
+    @Test
+    public void testEmptyPageStopsDispatching() {
+        PaginationFrontier paginationFrontier = new PaginationFrontier(4, 8);
+        paginationFrontier.start();
+
+        assertEquals(Collections.emptyList(), paginationFrontier.recordPage(3, false, false));
+        assertEquals(2, paginationFrontier.getLastPage());
+        // Pages that come back late cannot dispatch past the last page
+        assertEquals(Collections.emptyList(), paginationFrontier.recordPage(1, true, true));
+        assertEquals(Collections.emptyList(), paginationFrontier.recordPage(2, true, true));
+        assertEquals(4, paginationFrontier.getDispatchedCount());
+        assertEquals(2, paginationFrontier.findWastedCount());
+        assertEquals(3, paginationFrontier.getRecordedCount());
+    }
+
+    @Test
+    public void testPageWithoutNextLinkIsLastPage() {
+        PaginationFrontier paginationFrontier = new PaginationFrontier(2, 8);
+        paginationFrontier.start();
+
+        List<Integer> nextPages = paginationFrontier.recordPage(1, true, true);
+        assertEquals(Arrays.asList(3, 4), nextPages);
+        assertEquals(Collections.emptyList(), paginationFrontier.recordPage(2, true, false));
+        assertEquals(2, paginationFrontier.getLastPage());
+        assertEquals(Collections.emptyList(), paginationFrontier.recordPage(3, false, false));
+        assertEquals(2, paginationFrontier.getLastPage());
+        assertEquals(2, paginationFrontier.findWastedCount());
+    }
+
+    @Test
+    public void testPagesPastLastPageAreSkipped() {
+        PaginationFrontier paginationFrontier = new PaginationFrontier(4, 4);
+        paginationFrontier.start();
+
+        assertFalse(paginationFrontier.isPastLastPage(4));
+        paginationFrontier.recordPage(2, true, false);
+        assertFalse(paginationFrontier.isPastLastPage(2));
+        assertTrue(paginationFrontier.isPastLastPage(3));
+    }
+
+    @Test
+    public void testDispatchedPagesOfLongListing() {
+        final int pageCount = 120;
+        final int parallelism = 4;
+        PaginationFrontier paginationFrontier = new PaginationFrontier(parallelism, parallelism);
+
+        // Fetch the requested pages parallelism at a time (in the order they were requested), the way the fetch workers do
+        Deque<Integer> requestedPages = new ArrayDeque<Integer>(paginationFrontier.start());
+        int fetchedCount = 0;
+        while(!requestedPages.isEmpty()) {
+            List<Integer> fetchedPages = new ArrayList<Integer>();
+            while(!requestedPages.isEmpty() && fetchedPages.size() < parallelism) {
+                int pageNumber = requestedPages.poll();
+                if(!paginationFrontier.isPastLastPage(pageNumber)) {
+                    fetchedPages.add(pageNumber);
+                }
+            }
+            fetchedCount += fetchedPages.size();
+            for(int pageNumber : fetchedPages) {
+                requestedPages.addAll(paginationFrontier.recordPage(pageNumber, pageNumber <= pageCount, pageNumber < pageCount));
+            }
+        }
+
+        assertEquals(pageCount, paginationFrontier.getLastPage());
+        // Less than a window of pages is requested past the last page, and those are skipped instead of fetched
+        assertEquals(pageCount + parallelism - 1, paginationFrontier.getDispatchedCount());
+        assertEquals(pageCount, fetchedCount);
+    }
+}
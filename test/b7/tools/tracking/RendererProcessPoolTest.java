@@ -0,0 +1,70 @@
+package b7.tools.tracking;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.RendererProcessPool class
+ * (using StubRendererWorker in place of PhantomJS)
+ */
+public class RendererProcessPoolTest {
+
+    private static final List<String> STUB_WORKER_COMMAND = Arrays.asList(
+            System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+            "-cp", System.getProperty("java.class.path"), StubRendererWorker.class.getName());
+
+    @Test
+    public void testWorkerIsReused() {
+        try (RendererProcessPool pool = new RendererProcessPool(STUB_WORKER_COMMAND, 1, 20000, 10)) {
+            Document firstPage = Jsoup.parse(pool.render("http://example.com/first", 0));
+            Document secondPage = Jsoup.parse(WebCrawler.readUrlContentsWithJavaScriptRendererPool("http://example.com/second", pool, 0));
+
+            assertEquals("http://example.com/first", firstPage.getElementById("url").text());
+            assertEquals("http://example.com/second", secondPage.getElementById("url").text());
+            assertTrue(firstPage.html().contains("£€"));
+            assertEquals(firstPage.getElementById("worker").text(), secondPage.getElementById("worker").text());
+        }
+    }
+
+    @Test
+    public void testWorkerIsRestartedAfterMaxRenders() {
+        try (RendererProcessPool pool = new RendererProcessPool(STUB_WORKER_COMMAND, 1, 20000, 1)) {
+            String firstWorker = Jsoup.parse(pool.render("http://example.com/first", 0)).getElementById("worker").text();
+            String secondWorker = Jsoup.parse(pool.render("http://example.com/second", 0)).getElementById("worker").text();
+            assertNotEquals(firstWorker, secondWorker);
+        }
+    }
+
+    @Test
+    public void testHungWorkerIsKilledAndReplaced() {
+        try (RendererProcessPool pool = new RendererProcessPool(STUB_WORKER_COMMAND, 1, 3000, 10)) {
+            assertNull(pool.render("http://example.com/hang", 0));
+            assertEquals("http://example.com/after", Jsoup.parse(pool.render("http://example.com/after", 0)).getElementById("url").text());
+        }
+    }
+
+    @Test
+    public void testCrashedWorkerIsReplaced() {
+        try (RendererProcessPool pool = new RendererProcessPool(STUB_WORKER_COMMAND, 1, 20000, 10)) {
+            assertNull(pool.render("http://example.com/crash", 0));
+            assertEquals("http://example.com/after", Jsoup.parse(pool.render("http://example.com/after", 0)).getElementById("url").text());
+        }
+    }
+
+    @Test
+    public void testClosedPoolRendersNothing() {
+        RendererProcessPool pool = new RendererProcessPool(STUB_WORKER_COMMAND, 1, 20000, 10);
+        assertNotNull(pool.render("http://example.com/first", 0));
+        pool.close();
+        assertNull(pool.render("http://example.com/after", 0));
+        assertNull(WebCrawler.readUrlContentsWithJavaScriptRendererPool("http://example.com/after", pool, 0));
+    }
+}
@@ -0,0 +1,361 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.RightStufCrawler class
+ */
+public class RightStufCrawlerTest {
+
+    // Total number of items the recorded items API has (one more than fits on a page)
+    private static final int TOTAL_ITEMS = RightStufCrawler.ITEMS_API_PAGE_SIZE + 1;
+
+    private static final String ARCHIVES_PATH = "savedata/archives/test-rightstuf/";
+
+    private HttpServer server;  // Local stand-in for the store, serving recorded items API pages
+    private String serverURL;  // Base URL of the local server
+    private List<String> itemsApiQueries;  // Queries of the items API pages requested
+
+    @Before
+    public void startServer() throws IOException {
+        itemsApiQueries = Collections.synchronizedList(new ArrayList<String>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/items", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            itemsApiQueries.add(query);
+            int offset = Integer.parseInt(query.substring(query.indexOf("offset=") + "offset=".length()));
+            TestHttpResponses.respondJson(exchange, 200, createItemsApiPage(offset, Math.min(RightStufCrawler.ITEMS_API_PAGE_SIZE, TOTAL_ITEMS - offset)));
+        });
+        server.createContext("/broken/api/items", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if(query.contains("offset=0&") || query.endsWith("offset=0")) {
+                TestHttpResponses.respondJson(exchange, 200, createItemsApiPage(0, RightStufCrawler.ITEMS_API_PAGE_SIZE));
+            }
+            else {
+                TestHttpResponses.respondJson(exchange, 500, "Internal Server Error");
+            }
+        });
+        server.createContext("/empty/api/items", exchange -> {
+            itemsApiQueries.add(exchange.getRequestURI().getQuery());
+            TestHttpResponses.respondJson(exchange, 200, "{\"total\": 0, \"items\": []}");
+        });
+        server.createContext("/short/api/items", exchange -> TestHttpResponses.respondJson(exchange, 200, createItemsApiPage(0, 1)));
+        server.createContext("/cells/api/items", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            itemsApiQueries.add(query);
+            if(query.endsWith("url=show-b")) {
+                TestHttpResponses.respondJson(exchange, 200, "{\"total\": 1, \"items\": [{\"storedisplayname2\": \"Show B (API title)\", \"urlcomponent\": \"show-b\", "
+                        + "\"onlinecustomerprice_detail\": {\"onlinecustomerprice\": 14.99}}]}");
+            }
+            else if(query.endsWith("url=show-c")) {
+                TestHttpResponses.respondJson(exchange, 500, "Internal Server Error");
+            }
+            else {
+                TestHttpResponses.respondJson(exchange, 200, "{\"total\": 0, \"items\": []}");
+            }
+        });
+        server.start();
+        serverURL = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] archiveFiles = new File(ARCHIVES_PATH).listFiles();
+        if(archiveFiles != null) {
+            for(File archiveFile : archiveFiles) {
+                archiveFile.delete();
+            }
+        }
+        new File(ARCHIVES_PATH).delete();
+    }
+
+    @Test
+    public void testVisitItemsApi() {
+        RightStufCrawler crawler = new RightStufCrawler();
+        assertTrue(crawler.visitItemsApi(serverURL + "/api/items", false, 2));
+
+        // The first page gives the total, which leads to the one other page
+        assertEquals(2, itemsApiQueries.size());
+        for(String query : itemsApiQueries) {
+            assertTrue(query.contains("limit=" + RightStufCrawler.ITEMS_API_PAGE_SIZE));
+        }
+
+        Map<String, Product> productMap = crawler.getCrawlData().getProductMap();
+        assertEquals(TOTAL_ITEMS, productMap.size());
+        Product product = productMap.get("Show " + RightStufCrawler.ITEMS_API_PAGE_SIZE + " & Friends Blu-ray");
+        assertNotNull(product);
+        assertEquals(RightStufCrawler.STORE_URL + "/show-" + RightStufCrawler.ITEMS_API_PAGE_SIZE, product.getProductURL());
+        assertEquals(24.99, product.findLatestPriceDateInfo().getPrice(), 0.001);
+    }
+
+    @Test
+    public void testVisitItemsApiLeavesCrawlDataAloneOnFailure() {
+        RightStufCrawler crawler = new RightStufCrawler();
+        assertFalse(crawler.visitItemsApi(serverURL + "/broken/api/items", false, 2));
+        assertTrue(crawler.getCrawlData().getProductMap().isEmpty());
+    }
+
+    @Test
+    public void testVisitItemsApiRejectsEmptyOrShortCatalog() {
+        // A page with no items, or fewer items than the total reported, does not count as reading the catalog
+        RightStufCrawler crawler = new RightStufCrawler();
+        assertFalse(crawler.visitItemsApi(serverURL + "/empty/api/items", false, 2));
+        assertFalse(crawler.visitItemsApi(serverURL + "/short/api/items", false, 2));
+        assertTrue(crawler.getCrawlData().getProductMap().isEmpty());
+    }
+
+    @Test
+    public void testEmptyItemsApiFallsBackToListingPages() {
+        // The only listing page is already in the checkpoint, so the fallback reads it from there instead of the store
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(RightStufCrawler.CRAWL_DATA_TITLE);
+        checkpoint.recordCompletedPage(1, false, Collections.singletonList(
+                new ProductObservation("Show A", RightStufCrawler.STORE_URL + "/show-a", 19.99)));
+        RightStufCrawler crawler = new RightStufCrawler();
+        assertTrue(crawler.visitAllPagesMultithreaded(serverURL + "/empty/api/items", false, 1, checkpoint, null));
+
+        assertEquals(1, itemsApiQueries.size());
+        Product product = crawler.getCrawlData().getProductMap().get("Show A");
+        assertNotNull(product);
+        assertEquals(19.99, product.findLatestPriceDateInfo().getPrice(), 0.001);
+    }
+
+    @Test
+    public void testVisitItemsApiOnlyRecordsFingerprintsOnSuccess() {
+        // The first page is read before the second one fails, but nothing was merged, so nothing can be skipped next time
+        ListingPageFingerprints listingPageFingerprints = new ListingPageFingerprints(RightStufCrawler.CRAWL_DATA_TITLE);
+        RightStufCrawler crawler = new RightStufCrawler();
+        crawler.setListingPageFingerprints(listingPageFingerprints);
+        assertFalse(crawler.visitItemsApi(serverURL + "/broken/api/items", false, 2));
+        assertTrue(listingPageFingerprints.getFingerprints().isEmpty());
+
+        assertTrue(crawler.visitItemsApi(serverURL + "/api/items", false, 2));
+        assertEquals(2, listingPageFingerprints.getFingerprints().size());
+    }
+
+    @Test
+    public void testVisitItemsApiSkipsUnchangedPages() {
+        ListingPageFingerprints listingPageFingerprints = new ListingPageFingerprints(RightStufCrawler.CRAWL_DATA_TITLE);
+        RightStufCrawler firstCrawler = new RightStufCrawler();
+        firstCrawler.setListingPageFingerprints(listingPageFingerprints);
+        assertTrue(firstCrawler.visitItemsApi(serverURL + "/api/items", false, 2));
+
+        // Products on unchanged pages keep the price they had (even though the page lists another price for them,
+        //   it listed that same price last time too), while products missing from the crawl data are still merged
+        String today = DateTool.findCurrentDateString();
+        String lastWeek = DateTool.findDateOffset(today, -7);
+        CrawlData crawlData = new CrawlData(RightStufCrawler.CRAWL_DATA_TITLE);
+        crawlData.addProduct(new Product("Show 0 & Friends Blu-ray", RightStufCrawler.STORE_URL + "/show-0",
+                new ArrayList<PriceDateInfo>(Collections.singletonList(new PriceDateInfo(lastWeek, 99.99)))));
+        RightStufCrawler secondCrawler = new RightStufCrawler(crawlData);
+        secondCrawler.setListingPageFingerprints(listingPageFingerprints);
+        assertTrue(secondCrawler.visitItemsApi(serverURL + "/api/items", false, 2));
+
+        Map<String, Product> productMap = secondCrawler.getCrawlData().getProductMap();
+        assertEquals(TOTAL_ITEMS, productMap.size());
+        assertEquals(Collections.singletonList(new PriceDateInfo(lastWeek, today, 99.99)),
+                productMap.get("Show 0 & Friends Blu-ray").getPriceHistory());
+        assertEquals(Collections.singletonList(new PriceDateInfo(today, 24.99)),
+                productMap.get("Show 1 & Friends Blu-ray").getPriceHistory());
+    }
+
+    @Test
+    public void testParseItemsApiPage() {
+        JSONObject page = new JSONObject("{\"total\": 3, \"items\": ["
+                + "{\"storedisplayname2\": \"Show A\", \"urlcomponent\": \"show-a\", \"onlinecustomerprice_detail\": {\"onlinecustomerprice\": 19.99}},"
+                + "{\"storedisplayname2\": \"\", \"displayname\": \"Show B\", \"urlcomponent\": \"show-b\", \"onlinecustomerprice_detail\": {\"onlinecustomerprice\": 9}},"
+                + "{\"urlcomponent\": \"broken\", \"onlinecustomerprice_detail\": {\"onlinecustomerprice\": 5.0}}]}");
+        List<ProductObservation> observations = RightStufCrawler.parseItemsApiPage(page, "test page");
+
+        // The item with no title at all is skipped, like on the listing pages
+        assertEquals(2, observations.size());
+        assertEquals("Show A", observations.get(0).getProductName());
+        assertEquals(RightStufCrawler.STORE_URL + "/show-a", observations.get(0).getProductURL());
+        assertEquals(19.99, observations.get(0).getPrice(), 0.001);
+        assertEquals("Show B", observations.get(1).getProductName());
+        assertEquals(9.0, observations.get(1).getPrice(), 0.001);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testParseItemsApiPageWithoutPrice() {
+        RightStufCrawler.parseItemsApiPage(new JSONObject("{\"items\": [{\"storedisplayname2\": \"Show A\", \"urlcomponent\": \"show-a\"}]}"),
+                "test page");
+    }
+
+    @Test
+    public void testParseListingPage() {
+        Document document = Jsoup.parse("<div class=\"facets-item-cell-grid\">"
+                + "<div class=\"facets-item-cell-grid-title\"><a href=\"/show-a\"> Show A &amp; Friends </a></div>"
+                + "<div class=\"product-views-price\"><span class=\"product-views-price-lead\" data-rate=\"19.99\">$19.99</span></div></div>"
+                + "<div class=\"facets-item-cell-grid\"><div class=\"facets-item-cell-grid-title\"><a href=\"/broken\"></a></div></div>");
+        List<ProductObservation> observations = RightStufCrawler.parseListingPage(document, "test page");
+
+        // The product with no title is skipped
+        assertEquals(1, observations.size());
+        assertEquals("Show A & Friends", observations.get(0).getProductName());
+        assertEquals(RightStufCrawler.STORE_URL + "/show-a", observations.get(0).getProductURL());
+        assertEquals(19.99, observations.get(0).getPrice(), 0.001);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseListingPageWithoutPrice() {
+        // A product whose price has not been filled in yet means the page has to be reloaded
+        RightStufCrawler.parseListingPage(Jsoup.parse("<div class=\"facets-item-cell-grid\">"
+                + "<div class=\"facets-item-cell-grid-title\"><a href=\"/show-a\">Show A</a></div></div>"), "test page");
+    }
+
+    @Test
+    public void testParseListingPageSetsAsideIncompleteProducts() {
+        Map<String, String> incompleteProducts = new HashMap<String, String>();
+        List<ProductObservation> observations = RightStufCrawler.parseListingPage(createListingPage(), "test page", incompleteProducts);
+
+        assertEquals(1, observations.size());
+        assertEquals("Show A", observations.get(0).getProductName());
+        assertEquals(2, incompleteProducts.size());
+        assertEquals("Show B", incompleteProducts.get(RightStufCrawler.STORE_URL + "/show-b"));
+        assertEquals("Show C", incompleteProducts.get(RightStufCrawler.STORE_URL + "/show-c"));
+    }
+
+    @Test
+    public void testReadListingPageRequeriesIncompleteProducts() {
+        Document document = Jsoup.parse("<div class=\"facets-item-cell-grid\">"
+                + "<div class=\"facets-item-cell-grid-title\"><a href=\"/show-a\">Show A</a></div>"
+                + "<div class=\"product-views-price\"><span class=\"product-views-price-lead\" data-rate=\"19.99\">$19.99</span></div></div>"
+                + "<div class=\"facets-item-cell-grid\"><div class=\"facets-item-cell-grid-title\"><a href=\"/show-b\">Show B</a></div></div>");
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        assertTrue(RightStufCrawler.readListingPage(document, "test page", serverURL + "/cells/api/items", observations));
+
+        // Only the incomplete product is looked up, and it keeps the title the listing grid showed
+        assertEquals(Collections.singletonList("fieldset=search&url=show-b"), itemsApiQueries);
+        assertEquals(2, observations.size());
+        assertEquals("Show B", observations.get(1).getProductName());
+        assertEquals(RightStufCrawler.STORE_URL + "/show-b", observations.get(1).getProductURL());
+        assertEquals(14.99, observations.get(1).getPrice(), 0.001);
+    }
+
+    @Test
+    public void testReadListingPageWithUnreadablePrice() {
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        assertFalse(RightStufCrawler.readListingPage(createListingPage(), "test page", serverURL + "/cells/api/items", observations));
+
+        // The failing lookup is only tried MAX_CELL_REQUERY_ATTEMPTS times, and the products that were read are kept
+        int showCQueries = 0;
+        for(String query : itemsApiQueries) {
+            if(query.endsWith("url=show-c")) {
+                showCQueries++;
+            }
+        }
+        assertEquals(RightStufCrawler.MAX_CELL_REQUERY_ATTEMPTS, showCQueries);
+        assertEquals(2, observations.size());
+        assertEquals("Show A", observations.get(0).getProductName());
+        assertEquals("Show B", observations.get(1).getProductName());
+    }
+
+    @Test
+    public void testRequeriedPricesCarryOverAsJson() {
+        // The pipeline fetches the prices as text, so they go through toString before the parser adds them
+        JSONObject productPrices = new JSONObject(RightStufCrawler.requeryProductPrices(serverURL + "/cells/api/items",
+                Arrays.asList(RightStufCrawler.STORE_URL + "/show-b", RightStufCrawler.STORE_URL + "/show-c")).toString());
+        Map<String, String> incompleteProducts = new LinkedHashMap<String, String>();
+        incompleteProducts.put(RightStufCrawler.STORE_URL + "/show-b", "Show B");
+        incompleteProducts.put(RightStufCrawler.STORE_URL + "/show-c", "Show C");
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        assertFalse(RightStufCrawler.addRequeriedPrices(productPrices, "test page", incompleteProducts, observations));
+
+        // Only the product whose price could be read is added, under the title the listing grid showed
+        assertEquals(1, observations.size());
+        assertEquals("Show B", observations.get(0).getProductName());
+        assertEquals(14.99, observations.get(0).getPrice(), 0.001);
+    }
+
+    @Test
+    public void testExtractArchivedPage() throws JSONException {
+        // Products the archived listing page had not filled in the price of are left out
+        List<ProductObservation> observations = RightStufCrawler.extractArchivedPage(new PageArchive.Entry(PageArchive.LISTING_PAGE,
+                "test page", 0, 0), createListingPage().outerHtml());
+        assertEquals(1, observations.size());
+        assertEquals("Show A", observations.get(0).getProductName());
+
+        observations = RightStufCrawler.extractArchivedPage(new PageArchive.Entry(PageArchive.ITEMS_API_PAGE, "test page", 0, 0),
+                createItemsApiPage(0, 2));
+        assertEquals(2, observations.size());
+        assertEquals("Show 1 & Friends Blu-ray", observations.get(1).getProductName());
+        assertEquals(24.99, observations.get(1).getPrice(), 0.001);
+    }
+
+    @Test
+    public void testRequeriedPricesAreArchivedWithListingPage() throws IOException {
+        String archiveFilename = PageArchive.findArchiveFilename(ARCHIVES_PATH, DateTool.findCurrentDateString());
+        PageArchive pageArchive = new PageArchive(archiveFilename);
+        String pageHTML = createListingPage().outerHtml();
+        pageArchive.append(PageArchive.LISTING_PAGE, "test page", pageHTML);
+        List<ProductObservation> observations = new ArrayList<ProductObservation>();
+        assertFalse(RightStufCrawler.readListingPage(Jsoup.parse(pageHTML), "test page", serverURL + "/cells/api/items", pageArchive,
+                observations));
+        pageArchive.close();
+
+        // The re-queried price is archived under the listing page, so a rebuild gets the same products the crawl merged
+        List<PageArchive.Entry> entries = PageArchive.readIndex(archiveFilename);
+        assertEquals(2, entries.size());
+        assertEquals(PageArchive.ITEMS_API_PAGE, entries.get(1).getKind());
+        assertEquals("test page", entries.get(1).getUrl());
+        List<ProductObservation> rebuiltObservations = PageArchive.extractAll(archiveFilename, RightStufCrawler::extractArchivedPage, 1);
+        assertEquals(2, observations.size());
+        assertEquals(findObservationStrings(observations), findObservationStrings(rebuiltObservations));
+    }
+
+    // The observations as strings, in no particular order (archived pages are extracted in parallel)
+    private static Set<String> findObservationStrings(List<ProductObservation> observations) {
+        Set<String> observationStrings = new HashSet<String>();
+        for(ProductObservation observation : observations) {
+            observationStrings.add(observation.toString());
+        }
+        return observationStrings;
+    }
+
+    // A rendered listing page with one priced product and two products whose price cells were not filled in
+    private static Document createListingPage() {
+        return Jsoup.parse("<div class=\"facets-item-cell-grid\">"
+                + "<div class=\"facets-item-cell-grid-title\"><a href=\"/show-a\">Show A</a></div>"
+                + "<div class=\"product-views-price\"><span class=\"product-views-price-lead\" data-rate=\"19.99\">$19.99</span></div></div>"
+                + "<div class=\"facets-item-cell-grid\"><div class=\"facets-item-cell-grid-title\"><a href=\"/show-b\">Show B</a></div>"
+                + "<div class=\"product-views-price\"><span class=\"product-views-price-lead\">$</span></div></div>"
+                + "<div class=\"facets-item-cell-grid\"><div class=\"facets-item-cell-grid-title\"><a href=\"/show-c\">Show C</a></div></div>");
+    }
+
+    // A recorded items API page with the given number of items, starting from the given offset
+    private static String createItemsApiPage(int offset, int itemCount) {
+        StringBuilder itemsApiPage = new StringBuilder("{\"total\": " + TOTAL_ITEMS + ", \"items\": [");
+        for(int i = offset; i < offset + itemCount; i++) {
+            if(i > offset) {
+                itemsApiPage.append(", ");
+            }
+            itemsApiPage.append("{\"storedisplayname2\": \"Show ").append(i).append(" &amp; Friends Blu-ray\", \"urlcomponent\": \"show-")
+                    .append(i).append("\", \"onlinecustomerprice_detail\": {\"onlinecustomerprice\": 24.99}}");
+        }
+        return itemsApiPage.append("]}").toString();
+    }
+
+}
@@ -0,0 +1,284 @@
+package b7.tools.tracking;
+
+import b7.tools.DateTool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.SentaiFilmworksCrawler class
+ */
+public class SentaiFilmworksCrawlerTest {
+
+    // Listing page with one product that has its JSON embedded and one that does not
+    private static final String LISTING_PAGE_HTML = "<html><body><div id=\"product-loop\">"
+            + "<div class=\"product\">" + createProductForm("show-a")
+            + "<script>var product = {\"title\": \"Show A\", \"handle\": \"show-a\", \"variants\": ["
+            + "{\"title\": \"Blu-ray\", \"price\": 2999}, {\"title\": \"DVD\", \"price\": 1999}]};\n"
+            + "$('#product-select-show-a').change();</script></div>"
+            + "<div class=\"product\">" + createProductForm("show-b") + "</div>"
+            + "</div><div id=\"pagination\"><ul><li><a href=\"?page=1\">1</a></li><li><a href=\"?page=2\">&gt;</a></li></ul></div>"
+            + "</body></html>";
+
+    private static final String ARCHIVES_PATH = "savedata/archives/test-sentai/";
+
+    private HttpServer server;  // Local stand-in for the store, serving recorded catalog JSON
+    private String collectionURL;  // URL of the collection on the local server
+    private AtomicInteger catalogRequests;  // How many catalog JSON pages have been requested
+    private List<String> productRequests;  // Paths of the product JSON requested
+
+    @Before
+    public void startServer() throws IOException {
+        catalogRequests = new AtomicInteger(0);
+        productRequests = Collections.synchronizedList(new ArrayList<String>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/collections/shows/products.json", exchange -> {
+            catalogRequests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            if(query.contains("page=1")) {
+                TestHttpResponses.respondJson(exchange, 200, createCatalogPage(SentaiFilmworksCrawler.CATALOG_JSON_PAGE_SIZE));
+            }
+            else if(query.contains("page=2")) {
+                TestHttpResponses.respondJson(exchange, 200, createCatalogPage(1));
+            }
+            else {
+                TestHttpResponses.respondJson(exchange, 200, "{\"products\": []}");
+            }
+        });
+        server.createContext("/collections/broken/products.json", exchange -> TestHttpResponses.respondJson(exchange, 200, "<html>Not JSON</html>"));
+        server.createContext("/sitemap.xml", exchange -> TestHttpResponses.respondJson(exchange, 200, "<sitemapindex>"
+                + "<sitemap><loc>" + storeURL(exchange) + "/sitemap_products_1.xml?from=1&amp;to=3</loc></sitemap>"
+                + "<sitemap><loc>" + storeURL(exchange) + "/sitemap_pages_1.xml</loc></sitemap></sitemapindex>"));
+        server.createContext("/sitemap_products_1.xml", exchange -> TestHttpResponses.respondJson(exchange, 200, "<urlset>"
+                + "<url><loc>" + storeURL(exchange) + "/</loc></url>"
+                + "<url><loc>" + storeURL(exchange) + "/products/show-a</loc><lastmod>2018-03-01</lastmod></url>"
+                + "<url><loc>" + storeURL(exchange) + "/products/show-b</loc><lastmod>2018-03-05</lastmod></url></urlset>"));
+        server.createContext("/sitemap_pages_1.xml", exchange -> TestHttpResponses.respondJson(exchange, 500, "Pages sitemap should not be read"));
+        server.createContext("/products/", exchange -> {
+            productRequests.add(exchange.getRequestURI().getPath());
+            TestHttpResponses.respondJson(exchange, 200, "{\"title\": \"Show B\", \"handle\": \"show-b\", \"variants\": [{\"title\": \"DVD\", \"price\": 1499}]}");
+        });
+        server.start();
+        collectionURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/collections";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        SentaiFilmworksCrawler.setUseEmbeddedProductJson(true);
+        File[] archiveFiles = new File(ARCHIVES_PATH).listFiles();
+        if(archiveFiles != null) {
+            for(File archiveFile : archiveFiles) {
+                archiveFile.delete();
+            }
+        }
+        new File(ARCHIVES_PATH).delete();
+    }
+
+    @Test
+    public void testVisitCatalogJson() {
+        SentaiFilmworksCrawler crawler = new SentaiFilmworksCrawler();
+        assertTrue(crawler.visitCatalogJson(collectionURL + "/shows", false));
+
+        // The second page is not full, so it is the last page requested
+        assertEquals(2, catalogRequests.get());
+        CrawlData crawlData = crawler.getCrawlData();
+        // The product on the second page is also on the first page, so it only shows up once
+        assertEquals(SentaiFilmworksCrawler.CATALOG_JSON_PAGE_SIZE * 2, crawlData.getProductMap().size());
+
+        Product product = crawlData.getProductMap().get("Show 0 Blu-ray");
+        assertNotNull(product);
+        assertEquals(SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-0", product.getProductURL());
+        assertEquals(29.99, product.getPriceHistory().get(0).getPrice(), 0.001);
+        assertEquals(19.99, crawlData.getProductMap().get("Show 0 DVD").getPriceHistory().get(0).getPrice(), 0.001);
+    }
+
+    @Test
+    public void testVisitCatalogJsonLeavesCrawlDataAloneOnFailure() {
+        SentaiFilmworksCrawler crawler = new SentaiFilmworksCrawler();
+        assertFalse(crawler.visitCatalogJson(collectionURL + "/broken", false));
+        assertTrue(crawler.getCrawlData().getProductMap().isEmpty());
+    }
+
+    @Test
+    public void testVisitChangedProducts() {
+        String today = DateTool.findCurrentDateString();
+        String lastWeek = DateTool.findDateOffset(today, -7);
+        CrawlData crawlData = new CrawlData(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        crawlData.addProduct(new Product("Show A DVD", SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-a",
+                new ArrayList<PriceDateInfo>(Collections.singletonList(new PriceDateInfo(lastWeek, 19.99)))));
+        crawlData.addProduct(new Product("Show B DVD", SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-b",
+                new ArrayList<PriceDateInfo>(Collections.singletonList(new PriceDateInfo(lastWeek, 19.99)))));
+        SentaiFilmworksCrawler crawler = new SentaiFilmworksCrawler(crawlData);
+
+        // Show A has not changed since the last update, but Show B has
+        String storeURL = "http://127.0.0.1:" + server.getAddress().getPort();
+        SitemapSnapshot sitemapSnapshot = new SitemapSnapshot(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        sitemapSnapshot.recordLastModified(storeURL + "/products/show-a", "2018-03-01");
+        sitemapSnapshot.recordLastModified(storeURL + "/products/show-b", "2018-03-01");
+        assertTrue(crawler.visitChangedProducts(storeURL + "/sitemap.xml", sitemapSnapshot, false, 2));
+
+        // Only the changed product is requested
+        assertEquals(Collections.singletonList("/products/show-b.js"), productRequests);
+        assertEquals("2018-03-05", sitemapSnapshot.getLastModifiedDates().get(storeURL + "/products/show-b"));
+
+        Map<String, Product> productMap = crawler.getCrawlData().getProductMap();
+        assertEquals(Collections.singletonList(new PriceDateInfo(lastWeek, today, 19.99)),
+                productMap.get("Show A DVD").getPriceHistory());
+        assertEquals(new PriceDateInfo(today, 14.99), productMap.get("Show B DVD").findLatestPriceDateInfo());
+    }
+
+    @Test
+    public void testRebuildAcrossDayWithCarriedOverProducts() throws IOException {
+        String today = DateTool.findCurrentDateString();
+        String yesterday = DateTool.findDateOffset(today, -1);
+
+        // Yesterday both products were fetched
+        PageArchive pageArchive = new PageArchive(PageArchive.findArchiveFilename(ARCHIVES_PATH, yesterday));
+        pageArchive.append(PageArchive.PRODUCT_JSON, "/products/show-a.js",
+                "{\"title\": \"Show A\", \"handle\": \"show-a\", \"variants\": [{\"title\": \"DVD\", \"price\": 1999}]}");
+        pageArchive.append(PageArchive.PRODUCT_JSON, "/products/show-b.js",
+                "{\"title\": \"Show B\", \"handle\": \"show-b\", \"variants\": [{\"title\": \"DVD\", \"price\": 1999}]}");
+        pageArchive.close();
+        CrawlData crawlData = new CrawlData(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        assertTrue(PageArchive.mergeArchives(crawlData, PageArchive.findArchiveFilenames(ARCHIVES_PATH),
+                SentaiFilmworksCrawler::extractArchivedPage, 2));
+
+        // Today Show A is carried over without its JSON being fetched, and only Show B is fetched
+        String storeURL = "http://127.0.0.1:" + server.getAddress().getPort();
+        SitemapSnapshot sitemapSnapshot = new SitemapSnapshot(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        sitemapSnapshot.recordLastModified(storeURL + "/products/show-a", "2018-03-01");
+        sitemapSnapshot.recordLastModified(storeURL + "/products/show-b", "2018-03-01");
+        SentaiFilmworksCrawler crawler = new SentaiFilmworksCrawler(crawlData);
+        pageArchive = new PageArchive(PageArchive.findArchiveFilename(ARCHIVES_PATH, today));
+        crawler.setPageArchive(pageArchive);
+        assertTrue(crawler.visitChangedProducts(storeURL + "/sitemap.xml", sitemapSnapshot, false, 2));
+        crawler.setPageArchive(null);
+        pageArchive.close();
+        assertEquals(Collections.singletonList("/products/show-b.js"), productRequests);
+
+        // Rebuilding from both days still prices the carried over product today
+        CrawlData rebuiltCrawlData = new CrawlData(SentaiFilmworksCrawler.CRAWL_DATA_TITLE);
+        assertTrue(PageArchive.mergeArchives(rebuiltCrawlData, PageArchive.findArchiveFilenames(ARCHIVES_PATH),
+                SentaiFilmworksCrawler::extractArchivedPage, 2));
+        assertEquals(crawler.getCrawlData().getProductMap().get("Show A DVD").getPriceHistory(),
+                rebuiltCrawlData.getProductMap().get("Show A DVD").getPriceHistory());
+        assertEquals(new PriceDateInfo(yesterday, today, 19.99), rebuiltCrawlData.getProductMap().get("Show A DVD").findLatestPriceDateInfo());
+        assertEquals(new PriceDateInfo(today, 14.99), rebuiltCrawlData.getProductMap().get("Show B DVD").findLatestPriceDateInfo());
+    }
+
+    @Test
+    public void testParseProductJsonSkipsUnreadParts() {
+        String productJson = "{\"id\": 1, \"handle\": \"show-a\", \"title\": \"Show A\", \"description\": \"<p>{[\\\"long\\\"]}</p>\","
+                + " \"images\": [\"a.jpg\"], \"options\": [{\"name\": \"Format\"}],"
+                + " \"variants\": [{\"title\": \"Blu-ray\", \"price\": 2999, \"featured_image\": {\"src\": \"b.jpg\"}}]}";
+        List<ProductObservation> observations = SentaiFilmworksCrawler.parseProductJson(productJson);
+        assertEquals(1, observations.size());
+        assertEquals("Show A Blu-ray", observations.get(0).getProductName());
+        assertEquals(SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-a", observations.get(0).getProductURL());
+        assertEquals(29.99, observations.get(0).getPrice(), 0.001);
+    }
+
+    @Test
+    public void testFindVariantPrice() {
+        assertEquals(29.99, SentaiFilmworksCrawler.findVariantPrice(new JSONObject("{\"price\": 2999}")), 0.001);
+        assertEquals(29.99, SentaiFilmworksCrawler.findVariantPrice(new JSONObject("{\"price\": \"29.99\"}")), 0.001);
+    }
+
+    @Test
+    public void testFindProductJsonsReadsEmbeddedJson() {
+        Document document = Jsoup.parse(LISTING_PAGE_HTML);
+        Map<String, String> productJsons = SentaiFilmworksCrawler.findProductJsons(document);
+
+        List<String> productJsonUrls = new ArrayList<String>(productJsons.keySet());
+        assertEquals(2, productJsonUrls.size());
+        assertEquals(SentaiFilmworksCrawler.STORE_URL + "/products/show-a.js", productJsonUrls.get(0));
+        assertEquals(SentaiFilmworksCrawler.STORE_URL + "/products/show-b.js", productJsonUrls.get(1));
+        assertNull(productJsons.get(productJsonUrls.get(1)));
+
+        List<ProductObservation> observations = SentaiFilmworksCrawler.parseProductJson(productJsons.get(productJsonUrls.get(0)));
+        assertEquals(2, observations.size());
+        assertEquals("Show A Blu-ray", observations.get(0).getProductName());
+        assertEquals(SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-a", observations.get(0).getProductURL());
+        assertEquals(29.99, observations.get(0).getPrice(), 0.001);
+        assertEquals(19.99, observations.get(1).getPrice(), 0.001);
+        assertTrue(SentaiFilmworksCrawler.hasNextPage(document));
+    }
+
+    @Test
+    public void testEmbeddedJsonCanBeTurnedOff() {
+        SentaiFilmworksCrawler.setUseEmbeddedProductJson(false);
+        Map<String, String> productJsons = SentaiFilmworksCrawler.findProductJsons(Jsoup.parse(LISTING_PAGE_HTML));
+        assertEquals(2, productJsons.size());
+        for(String productJson : productJsons.values()) {
+            assertNull(productJson);
+        }
+    }
+
+    @Test
+    public void testFindListingPageEntries() {
+        Document document = Jsoup.parse(LISTING_PAGE_HTML);
+        List<String> entries = SentaiFilmworksCrawler.findListingPageEntries(document);
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(0).startsWith(SentaiFilmworksCrawler.STORE_URL + "/products/show-a.js\t"));
+        assertTrue(entries.get(0).contains("\"price\": 2999"));
+        assertTrue(entries.get(1).startsWith(SentaiFilmworksCrawler.STORE_URL + "/products/show-b.js\t"));
+
+        // A price change in the embedded JSON changes the page's fingerprint
+        String fingerprint = ListingPageFingerprints.findFingerprint(entries);
+        assertEquals(fingerprint, ListingPageFingerprints.findFingerprint(SentaiFilmworksCrawler.findListingPageEntries(Jsoup.parse(LISTING_PAGE_HTML))));
+        assertNotEquals(fingerprint, ListingPageFingerprints.findFingerprint(SentaiFilmworksCrawler.findListingPageEntries(
+                Jsoup.parse(LISTING_PAGE_HTML.replace("2999", "2499")))));
+
+        assertEquals(SentaiFilmworksCrawler.PRODUCT_BASE_URL + "/show-a",
+                SentaiFilmworksCrawler.findProductURLFromJsonUrl(SentaiFilmworksCrawler.STORE_URL + "/products/show-a.js"));
+        assertTrue(SentaiFilmworksCrawler.findListingPageEntries(Jsoup.parse("<html><body></body></html>")).isEmpty());
+    }
+
+    @Test
+    public void testEmptyListingPage() {
+        Document document = Jsoup.parse("<html><body><p>No products found</p></body></html>");
+        assertTrue(SentaiFilmworksCrawler.findProductJsons(document).isEmpty());
+        assertFalse(SentaiFilmworksCrawler.hasNextPage(document));
+    }
+
+    // A recorded catalog JSON page with the given number of products (each on Blu-ray and DVD, with prices as dollar Strings)
+    private static String createCatalogPage(int productCount) {
+        StringBuilder catalogPage = new StringBuilder("{\"products\": [");
+        for(int i = 0; i < productCount; i++) {
+            if(i > 0) {
+                catalogPage.append(", ");
+            }
+            catalogPage.append("{\"id\": ").append(i).append(", \"title\": \"Show ").append(i).append("\", \"handle\": \"show-")
+                    .append(i).append("\", \"variants\": [{\"title\": \"Blu-ray\", \"price\": \"29.99\"},")
+                    .append(" {\"title\": \"DVD\", \"price\": \"19.99\"}]}");
+        }
+        return catalogPage.append("]}").toString();
+    }
+
+    // Base URL of the local server the exchange came in to
+    private static String storeURL(HttpExchange exchange) {
+        return "http://127.0.0.1:" + exchange.getLocalAddress().getPort();
+    }
+
+
+    // The product form as it appears on a listing page (the product id is on the parent of the format select)
+    private static String createProductForm(String productId) {
+        return "<form action=\"/cart/add\"><div><ul><li><div id=\"" + productId + "\"><select name=\"id\"></select></div></li></ul></div></form>";
+    }
+}
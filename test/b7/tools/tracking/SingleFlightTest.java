@@ -0,0 +1,81 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.SingleFlight class
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneRun() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+        final AtomicInteger runs = new AtomicInteger(0);
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLeader = new CountDownLatch(1);
+        final int callers = 5;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            results.add(executorService.submit(() -> singleFlight.run("product/1.js", () -> {
+                runs.incrementAndGet();
+                leaderStarted.countDown();
+                try {
+                    releaseLeader.await();
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return "json";
+            })));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+            for(int i = 1; i < callers; i++) {
+                results.add(executorService.submit(() -> singleFlight.run("product/1.js", () -> {
+                    runs.incrementAndGet();
+                    return "duplicate";
+                })));
+            }
+            // Wait for every follower to join the running call before letting it finish
+            long deadline = System.currentTimeMillis() + 5000;
+            while(singleFlight.findCoalescedCount("product/1.js") < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            releaseLeader.countDown();
+
+            for(Future<String> result : results) {
+                assertEquals("json", result.get());
+            }
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, runs.get());
+        assertEquals(callers - 1, singleFlight.findCoalescedCount("product/1.js"));
+        assertEquals(callers - 1, singleFlight.getTotalCoalescedCount());
+
+        // The call is over, so the next call runs the work again
+        assertEquals("fresh", singleFlight.run("product/1.js", () -> "fresh"));
+        assertEquals(0, singleFlight.findCoalescedCount("product/2.js"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsRethrown() {
+        new SingleFlight<String, String>().run("product/1.js", () -> {
+            throw new IllegalStateException("504");
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package b7.tools.tracking;
+
+import org.junit.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the
+ * b7.tools.tracking.SitemapSnapshot class
+ */
+public class SitemapSnapshotTest {
+
+    private static final String SNAPSHOT_FILENAME = "savedata/sitemaps/testsitemap.json";
+
+    private static final String SITEMAP_INDEX_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+            + "<sitemap><loc>https://example.com/sitemap_products_1.xml?from=1&amp;to=2</loc></sitemap>"
+            + "<sitemap><loc>https://example.com/sitemap_pages_1.xml</loc></sitemap>"
+            + "</sitemapindex>";
+
+    private static final String SITEMAP_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+            + "<url><loc>https://example.com/products/show-a</loc><lastmod>2018-03-01T10:00:00-05:00</lastmod></url>"
+            + "<url><loc>https://example.com/products/show-b</loc></url>"
+            + "</urlset>";
+
+    @After
+    public void tearDown() {
+        new File(SNAPSHOT_FILENAME).delete();
+    }
+
+    @Test
+    public void testParseSitemap() {
+        Map<String, String> lastModifiedDates = SitemapSnapshot.parseSitemap(SITEMAP_XML);
+        assertEquals(Arrays.asList("https://example.com/products/show-a", "https://example.com/products/show-b"),
+                Arrays.asList(lastModifiedDates.keySet().toArray()));
+        assertEquals("2018-03-01T10:00:00-05:00", lastModifiedDates.get("https://example.com/products/show-a"));
+        assertEquals(SitemapSnapshot.UNKNOWN_LAST_MODIFIED, lastModifiedDates.get("https://example.com/products/show-b"));
+        assertTrue(SitemapSnapshot.findChildSitemaps(SITEMAP_XML).isEmpty());
+
+        assertEquals(Arrays.asList("https://example.com/sitemap_products_1.xml?from=1&to=2", "https://example.com/sitemap_pages_1.xml"),
+                SitemapSnapshot.findChildSitemaps(SITEMAP_INDEX_XML));
+        assertTrue(SitemapSnapshot.parseSitemap(SITEMAP_INDEX_XML).isEmpty());
+    }
+
+    @Test
+    public void testFindChangedUrls() {
+        SitemapSnapshot sitemapSnapshot = new SitemapSnapshot("Test Store");
+        sitemapSnapshot.recordLastModified("https://example.com/products/show-a", "2018-03-01");
+        sitemapSnapshot.recordLastModified("https://example.com/products/show-b", "2018-03-01");
+        sitemapSnapshot.recordLastModified("https://example.com/products/show-c", SitemapSnapshot.UNKNOWN_LAST_MODIFIED);
+
+        Map<String, String> currentLastModifiedDates = new LinkedHashMap<String, String>();
+        currentLastModifiedDates.put("https://example.com/products/show-a", "2018-03-01");  // Unchanged
+        currentLastModifiedDates.put("https://example.com/products/show-b", "2018-03-05");  // Changed
+        currentLastModifiedDates.put("https://example.com/products/show-c", SitemapSnapshot.UNKNOWN_LAST_MODIFIED);  // Cannot tell
+        currentLastModifiedDates.put("https://example.com/products/show-d", "2018-03-01");  // New
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("https://example.com/products/show-b",
+                "https://example.com/products/show-c", "https://example.com/products/show-d")),
+                sitemapSnapshot.findChangedUrls(currentLastModifiedDates));
+    }
+
+    @Test
+    public void testSaveLoadSitemapSnapshot() {
+        SitemapSnapshot sitemapSnapshot = new SitemapSnapshot("Test Store");
+        sitemapSnapshot.recordLastModified("https://example.com/products/show-a", "2018-03-01");
+        CrawlerDataHandler.saveSitemapSnapshot(sitemapSnapshot, SNAPSHOT_FILENAME);
+
+        SitemapSnapshot loadedSitemapSnapshot = CrawlerDataHandler.loadSitemapSnapshot(SNAPSHOT_FILENAME);
+        assertNotNull(loadedSitemapSnapshot);
+        assertEquals("Test Store", loadedSitemapSnapshot.getStoreName());
+        assertEquals(sitemapSnapshot.getCrawlDate(), loadedSitemapSnapshot.getCrawlDate());
+        Map<String, String> expectedLastModifiedDates = new HashMap<String, String>();
+        expectedLastModifiedDates.put("https://example.com/products/show-a", "2018-03-01");
+        assertEquals(expectedLastModifiedDates, loadedSitemapSnapshot.getLastModifiedDates());
+    }
+}
@@ -0,0 +1,49 @@
+package b7.tools.tracking;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stand-in for scripts/rendererworker.js that follows the same stdin / stdout contract without a browser,
+ * so RendererProcessPool can be tested. URLs containing "hang" never get an answer, and URLs containing
+ * "crash" make the worker exit. Rendered pages include the worker's process name, so tests can tell workers apart
+ */
+public class StubRendererWorker {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        OutputStream responses = System.out;
+        String workerName = ManagementFactory.getRuntimeMXBean().getName();
+        String request;
+        while((request = requests.readLine()) != null) {
+            if(request.equals("PING")) {
+                respond(responses, "PONG", "");
+            }
+            else if(request.startsWith("RENDER ")) {
+                String url = request.substring(request.indexOf(' ', "RENDER ".length()) + 1);
+                if(url.contains("hang")) {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+                if(url.contains("crash")) {
+                    System.exit(1);
+                }
+                respond(responses, "OK", "<html><body><p id=\"url\">" + url + "</p><p id=\"worker\">" + workerName
+                        + "</p><p>£€</p></body></html>");
+            }
+            else {
+                respond(responses, "ERROR", "Unknown request: " + request);
+            }
+        }
+    }
+
+    private static void respond(OutputStream responses, String status, String content) throws IOException {
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        responses.write((status + " " + contentBytes.length + "\n").getBytes(StandardCharsets.UTF_8));
+        responses.write(contentBytes);
+        responses.flush();
+    }
+}
@@ -0,0 +1,56 @@
+package b7.tools.tracking;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends the responses of the local HttpServer stand-ins the tests make requests to
+ */
+public class TestHttpResponses {
+
+    public static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    public static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
+
+    /**
+     * Sends a JSON response, and closes the exchange
+     * @param exchange the exchange to respond to
+     * @param statusCode HTTP status code of the response
+     * @param content the JSON to send (encoded as UTF-8)
+     * @throws IOException if the response could not be sent
+     */
+    public static void respondJson(HttpExchange exchange, int statusCode, String content) throws IOException {
+        respond(exchange, statusCode, JSON_CONTENT_TYPE, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends an HTML response, and closes the exchange
+     * @param exchange the exchange to respond to
+     * @param statusCode HTTP status code of the response
+     * @param html the HTML to send (encoded as UTF-8)
+     * @throws IOException if the response could not be sent
+     */
+    public static void respondHtml(HttpExchange exchange, int statusCode, String html) throws IOException {
+        respond(exchange, statusCode, HTML_CONTENT_TYPE, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a response with the given body as is, and closes the exchange
+     * @param exchange the exchange to respond to
+     * @param statusCode HTTP status code of the response
+     * @param contentType Content-Type header of the response (null to send none)
+     * @param body the bytes of the body
+     * @throws IOException if the response could not be sent
+     */
+    public static void respond(HttpExchange exchange, int statusCode, String contentType, byte[] body) throws IOException {
+        if(contentType != null) {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(body);
+        outputStream.close();
+    }
+}
@@ -0,0 +1,74 @@
+package org.json;
+
+import org.junit.*;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class to run JUnit tests on the selective extraction of the
+ * org.json.JSONTokener class (with org.json.JSONPointer.Selection)
+ */
+public class JSONTokenerTest {
+
+    private static final String PRODUCT_JSON = "{\"id\": 7, \"handle\": \"show-a\", \"title\": \"Show A\","
+            + " \"description\": \"<p>A \\\"quoted\\\" {show} [with] brackets \\u00e9</p>\", \"images\": [{\"src\": \"a.jpg\"}, [1, 2]],"
+            + " \"variants\": [{\"title\": \"Blu-ray\", \"price\": 2999, \"sku\": \"x\"}, {\"title\": \"DVD\", \"price\": 1999, \"weight\": null}],"
+            + " \"available\": true}";
+
+    @Test
+    public void testNextValueWithSelection() {
+        JSONPointer.Selection selection = new JSONPointer.Selection("/handle", "/title", "/variants/*/title", "/variants/*/price");
+        JSONObject product = (JSONObject) new JSONTokener(PRODUCT_JSON).nextValue(selection);
+
+        assertEquals(3, product.length());
+        assertEquals("show-a", product.getString("handle"));
+        assertEquals("Show A", product.getString("title"));
+        JSONArray variants = product.getJSONArray("variants");
+        assertEquals(2, variants.length());
+        assertEquals(2, variants.getJSONObject(0).length());
+        assertEquals("Blu-ray", variants.getJSONObject(0).getString("title"));
+        assertEquals(1999, variants.getJSONObject(1).getInt("price"));
+    }
+
+    @Test
+    public void testSelectionOfIndexesAndWholeValues() {
+        // Skipped elements keep their place, and a specific index also gets what the wildcard selects
+        JSONPointer.Selection selection = new JSONPointer.Selection("/variants/1/sku", "/variants/*/title", "/images");
+        JSONObject product = new JSONObject(new JSONTokener(PRODUCT_JSON), selection);
+        assertEquals("DVD", product.getJSONArray("variants").getJSONObject(1).getString("title"));
+        assertFalse(product.getJSONArray("variants").getJSONObject(0).has("sku"));
+        assertEquals(new JSONArray("[{\"src\": \"a.jpg\"}, [1, 2]]").toString(), product.getJSONArray("images").toString());
+
+        JSONArray onlySecond = new JSONArray(new JSONTokener("[{\"a\": 1}, {\"a\": 2}, {\"a\": 3}]"), new JSONPointer.Selection("/1/a"));
+        assertEquals(Arrays.asList(JSONObject.NULL, 2, JSONObject.NULL),
+                Arrays.asList(onlySecond.get(0), onlySecond.getJSONObject(1).get("a"), onlySecond.get(2)));
+
+        // The empty pointer selects everything
+        assertEquals(new JSONObject(PRODUCT_JSON).toString(), new JSONTokener(PRODUCT_JSON).nextValue(new JSONPointer.Selection("")).toString());
+    }
+
+    @Test
+    public void testSkipValue() {
+        JSONTokener tokener = new JSONTokener("\"a \\\" ] } string\" , {\"b\": [1, \"]\", {}]}, -12.5e3 , true]");
+        tokener.skipValue();
+        assertEquals(',', tokener.nextClean());
+        tokener.skipValue();
+        assertEquals(',', tokener.nextClean());
+        tokener.skipValue();
+        assertEquals(',', tokener.nextClean());
+        tokener.skipValue();
+        assertEquals(']', tokener.nextClean());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testSkipValueUnterminated() {
+        new JSONTokener("{\"a\": [1, 2}").skipValue();
+    }
+
+    @Test(expected = JSONException.class)
+    public void testSkipValueMissing() {
+        new JSONTokener(", 1").skipValue();
+    }
+}